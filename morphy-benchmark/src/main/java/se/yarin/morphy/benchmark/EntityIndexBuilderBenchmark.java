@@ -0,0 +1,137 @@
+package se.yarin.morphy.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import se.yarin.morphy.entities.ImmutablePlayer;
+import se.yarin.morphy.entities.Player;
+import se.yarin.morphy.entities.PlayerIndex;
+import se.yarin.morphy.exceptions.MorphyInvalidDataException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building a player index by bulk loading against adding the players one by one.
+ *
+ * Can also be run standalone, in which case it creates a player index file with the given number
+ * of random players and reports the time it took:
+ * <pre>java -cp target/benchmarks.jar se.yarin.morphy.benchmark.EntityIndexBuilderBenchmark [numPlayers]</pre>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EntityIndexBuilderBenchmark {
+
+    private static final int DEFAULT_NUM_PLAYERS = 1_000_000;
+
+    @Param({"10000", "100000"})
+    public int numPlayers;
+
+    private List<Player> players;
+    private File directory;
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        players = randomPlayers(numPlayers, 0);
+        directory = Files.createTempDirectory("morphy-benchmark").toFile();
+    }
+
+    @Setup(Level.Invocation)
+    public void deleteFile() {
+        file = new File(directory, "players.cbp");
+        file.delete();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+        directory.delete();
+    }
+
+    @Benchmark
+    public int bulkLoad() throws IOException {
+        PlayerIndex playerIndex = PlayerIndex.create(file);
+        playerIndex.bulkLoad(players);
+        playerIndex.close();
+        return playerIndex.count();
+    }
+
+    @Benchmark
+    public int addOneByOne() throws IOException {
+        PlayerIndex playerIndex = PlayerIndex.create(file);
+        for (Player player : players) {
+            playerIndex.add(player);
+        }
+        playerIndex.close();
+        return playerIndex.count();
+    }
+
+    static List<Player> randomPlayers(int count, long seed) {
+        Random random = new Random(seed);
+        ArrayList<Player> players = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            players.add(ImmutablePlayer.builder()
+                    .lastName(randomName(random, 4 + random.nextInt(10)))
+                    .firstName(randomName(random, 3 + random.nextInt(8)))
+                    .count(1 + random.nextInt(100))
+                    .firstGameId(1 + random.nextInt(count))
+                    .build());
+        }
+        return players;
+    }
+
+    private static String randomName(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        sb.append((char) ('A' + random.nextInt(26)));
+        for (int i = 1; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws IOException, MorphyInvalidDataException {
+        int numPlayers = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_PLAYERS;
+        List<Player> players = randomPlayers(numPlayers, 0);
+
+        File file = File.createTempFile("players", ".cbp");
+        file.delete();
+        try {
+            long start = System.nanoTime();
+            PlayerIndex playerIndex = PlayerIndex.create(file);
+            playerIndex.bulkLoad(players);
+            playerIndex.close();
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("Bulk loaded %,d players in %,d ms (%,d bytes)%n", numPlayers, elapsed, file.length());
+
+            start = System.nanoTime();
+            playerIndex = PlayerIndex.open(file);
+            playerIndex.validateStructure();
+            System.out.printf("Validated the index in %,d ms%n", (System.nanoTime() - start) / 1_000_000);
+
+            start = System.nanoTime();
+            long count = playerIndex.streamOrderedAscending().count();
+            System.out.printf("Iterated over %,d players in order in %,d ms%n", count, (System.nanoTime() - start) / 1_000_000);
+            start = System.nanoTime();
+            count = playerIndex.streamOrderedAscendingReadAhead().count();
+            System.out.printf("Iterated over %,d players in order with read-ahead in %,d ms%n", count, (System.nanoTime() - start) / 1_000_000);
+            playerIndex.close();
+
+            start = System.nanoTime();
+            playerIndex = PlayerIndex.openInMemory(file);
+            System.out.printf("Loaded the index into memory in %,d ms%n", (System.nanoTime() - start) / 1_000_000);
+            start = System.nanoTime();
+            playerIndex.validateStructure();
+            System.out.printf("Validated the in-memory index in %,d ms%n", (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package se.yarin.morphy.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import se.yarin.morphy.entities.EntityIndexTransaction;
+import se.yarin.morphy.entities.Player;
+import se.yarin.morphy.entities.PlayerIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time it takes to commit a transaction adding a number of players
+ * to a player index file that already contains 100,000 players.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EntityIndexCommitBenchmark {
+
+    private static final int NUM_EXISTING_PLAYERS = 100_000;
+
+    @Param({"1", "10", "100", "1000"})
+    public int transactionSize;
+
+    private List<Player> players;
+    private int nextPlayer;
+    private File directory;
+    private File file;
+    private PlayerIndex playerIndex;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        players = EntityIndexBuilderBenchmark.randomPlayers(NUM_EXISTING_PLAYERS + 1_000_000, 1);
+        directory = Files.createTempDirectory("morphy-benchmark").toFile();
+        file = new File(directory, "players.cbp");
+        playerIndex = PlayerIndex.create(file);
+        playerIndex.bulkLoad(players.subList(0, NUM_EXISTING_PLAYERS));
+        nextPlayer = NUM_EXISTING_PLAYERS;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        playerIndex.close();
+        file.delete();
+        directory.delete();
+    }
+
+    @Benchmark
+    public int commit() {
+        EntityIndexTransaction<Player> txn = playerIndex.beginTransaction();
+        for (int i = 0; i < transactionSize; i++) {
+            txn.addEntity(players.get(nextPlayer));
+            nextPlayer = nextPlayer + 1 < players.size() ? nextPlayer + 1 : NUM_EXISTING_PLAYERS;
+        }
+        txn.commit();
+        return txn.header().numEntities();
+    }
+}
@@ -0,0 +1,78 @@
+package se.yarin.morphy.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import se.yarin.chess.Chess960;
+import se.yarin.chess.Perft;
+import se.yarin.chess.Position;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the move generator by running perft from a few start positions.
+ *
+ * Can also be run standalone, in which case it reports the number of nodes per second
+ * for the regular start position and a range of Chess960 start positions:
+ * <pre>java -cp target/benchmarks.jar se.yarin.morphy.benchmark.PerftBenchmark [depth]</pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PerftBenchmark {
+
+    private static final int DEFAULT_DEPTH = 5;
+    private static final long START_POSITION_DEPTH_4 = 197281;
+
+    @Param({"518", "0", "959"})
+    public int startPosition;
+
+    @Param({"4"})
+    public int depth;
+
+    private Position position;
+
+    @Setup
+    public void setup() {
+        position = Chess960.getStartPosition(startPosition);
+        // Don't benchmark a broken move generator
+        long nodes = Perft.perft(Chess960.getStartPosition(Chess960.REGULAR_CHESS_SP), 4);
+        if (nodes != START_POSITION_DEPTH_4) {
+            throw new IllegalStateException(String.format(
+                    "perft(4) from start position was %d, expected %d", nodes, START_POSITION_DEPTH_4));
+        }
+    }
+
+    @Benchmark
+    public long perft() {
+        return Perft.perft(position, depth);
+    }
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_DEPTH;
+
+        // Warm up the JIT before measuring anything
+        for (int i = 0; i < 5; i++) {
+            Perft.perft(Position.start(), 4);
+        }
+
+        long start = System.nanoTime();
+        long nodes = Perft.perft(Position.start(), depth);
+        report("Regular chess", depth, nodes, System.nanoTime() - start);
+
+        long totalNodes = 0, totalNanos = 0;
+        for (int sp = 0; sp < 960; sp += 97) {
+            start = System.nanoTime();
+            totalNodes += Perft.perft(Chess960.getStartPosition(sp), depth);
+            totalNanos += System.nanoTime() - start;
+        }
+        report("Chess960 sample", depth, totalNodes, totalNanos);
+    }
+
+    private static void report(String name, int depth, long nodes, long nanos) {
+        long nodesPerSecond = nanos == 0 ? 0 : nodes * 1_000_000_000L / nanos;
+        System.out.printf("%-16s depth %d: %,14d nodes in %,8d ms, %,12d nodes/s%n",
+                name, depth, nodes, nanos / 1_000_000, nodesPerSecond);
+    }
+}
@@ -0,0 +1,92 @@
+package se.yarin.morphy.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import se.yarin.chess.Position;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro benchmarks of the basic operations in {@link Position}.
+ *
+ * Each invocation runs the operation over a fixed set of positions taken from random games,
+ * so the results are reported per position. Since {@link Position#isCheck()} and the Zobrist
+ * hashes are cached in the position, those are measured on a newly created position and should
+ * be compared against {@link #doMove(Blackhole)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PositionBenchmark {
+
+    private static final int NUM_POSITIONS = 1000;
+    private static final int MAX_GAME_LENGTH = 200;
+
+    private Position[] positions;
+    private int[] nextMoves;
+    private final int[] moveBuffer = new int[Position.MAX_MOVES];
+
+    @Setup
+    public void setup() {
+        positions = new Position[NUM_POSITIONS];
+        nextMoves = new int[NUM_POSITIONS];
+
+        // Play random games until we have enough positions with at least one legal move
+        Random random = new Random(0);
+        Position position = Position.start();
+        int[] moves = new int[Position.MAX_MOVES];
+        int count = 0, ply = 0;
+        while (count < NUM_POSITIONS) {
+            int numMoves = position.generateAllLegalMoves(moves);
+            if (numMoves == 0 || ply == MAX_GAME_LENGTH) {
+                position = Position.start();
+                ply = 0;
+                continue;
+            }
+            int move = moves[random.nextInt(numMoves)];
+            positions[count] = position;
+            nextMoves[count] = move;
+            count++;
+            position = position.doMove(move);
+            ply++;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_POSITIONS)
+    public void doMove(Blackhole blackhole) {
+        for (int i = 0; i < NUM_POSITIONS; i++) {
+            blackhole.consume(positions[i].doMove(nextMoves[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_POSITIONS)
+    public void doMoveAndIsCheck(Blackhole blackhole) {
+        for (int i = 0; i < NUM_POSITIONS; i++) {
+            blackhole.consume(positions[i].doMove(nextMoves[i]).isCheck());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_POSITIONS)
+    public void doMoveAndZobristHash(Blackhole blackhole) {
+        for (int i = 0; i < NUM_POSITIONS; i++) {
+            Position next = positions[i].doMove(nextMoves[i]);
+            blackhole.consume(next.getZobristHashLo());
+            blackhole.consume(next.getZobristHashHi());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_POSITIONS)
+    public void generateAllLegalMoves(Blackhole blackhole) {
+        for (int i = 0; i < NUM_POSITIONS; i++) {
+            blackhole.consume(positions[i].generateAllLegalMoves(moveBuffer));
+        }
+    }
+}
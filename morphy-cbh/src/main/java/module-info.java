@@ -16,7 +16,10 @@ module se.yarin.morphy.cbh {
     exports se.yarin.cbhlib.games.search;
     exports se.yarin.cbhlib.media;
     exports se.yarin.cbhlib.moves;
+    exports se.yarin.cbhlib.operations;
+    exports se.yarin.cbhlib.pgn;
     exports se.yarin.cbhlib.exceptions;
+    exports se.yarin.cbhlib.export;
 
     exports se.yarin.cbhlib.storage to se.yarin.morphy.cli, se.yarin.morphy.tools;
     exports se.yarin.cbhlib.storage.transaction to se.yarin.morphy.cli;
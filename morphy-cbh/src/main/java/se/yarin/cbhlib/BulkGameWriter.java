@@ -0,0 +1,240 @@
+package se.yarin.cbhlib;
+
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.yarin.cbhlib.entities.*;
+import se.yarin.cbhlib.exceptions.ChessBaseIOException;
+import se.yarin.cbhlib.exceptions.ChessBaseInvalidDataException;
+import se.yarin.cbhlib.games.ExtendedGameHeader;
+import se.yarin.cbhlib.games.GameHeader;
+import se.yarin.cbhlib.games.GameLoader;
+import se.yarin.cbhlib.storage.EntityStorageException;
+import se.yarin.chess.Date;
+import se.yarin.chess.GameHeaderModel;
+import se.yarin.chess.GameModel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Appends a large number of games to a database.
+ *
+ * Unlike {@link Database#addGame(GameModel)}, the entities referenced by the games are resolved through
+ * in-memory maps from entity key to id, and the entity statistics are not updated for every added game.
+ * Instead the changes are accumulated and written in one transaction per entity type when
+ * {@link #flush()} is called, which happens automatically every {@code flushInterval} games and on close.
+ * Until then, the statistics of the entities in the database are not up to date.
+ *
+ * The writer is not thread safe and should be the only one writing to the database while it's open.
+ */
+public class BulkGameWriter implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(BulkGameWriter.class);
+
+    public static final int DEFAULT_FLUSH_INTERVAL = 10000;
+
+    private final Database database;
+    private final GameLoader loader;
+    private final int flushInterval;
+
+    private final EntityResolver<PlayerEntity> players;
+    private final EntityResolver<TournamentEntity> tournaments;
+    private final EntityResolver<AnnotatorEntity> annotators;
+    private final EntityResolver<SourceEntity> sources;
+    private final EntityResolver<TeamEntity> teams;
+    private final EntityResolver<GameTagEntity> gameTags;
+
+    private int numUnflushedGames;
+
+    public BulkGameWriter(@NonNull Database database) {
+        this(database, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    public BulkGameWriter(@NonNull Database database, int flushInterval) {
+        this.database = database;
+        this.loader = database.getLoader();
+        this.flushInterval = flushInterval;
+        this.players = new EntityResolver<>(database.getPlayerBase());
+        this.tournaments = new EntityResolver<>(database.getTournamentBase());
+        this.annotators = new EntityResolver<>(database.getAnnotatorBase());
+        this.sources = new EntityResolver<>(database.getSourceBase());
+        this.teams = new EntityResolver<>(database.getTeamBase());
+        this.gameTags = new EntityResolver<>(database.getGameTagBase());
+    }
+
+    /**
+     * Maps the keys of the entities of one type to their ids, and accumulates the changes to their statistics
+     */
+    private static class EntityResolver<T extends Entity & Comparable<T>> {
+        private final EntityBase<T> base;
+        private final Map<T, Integer> ids = new TreeMap<>();
+        // Entity id -> {added games, first added game id}
+        private final Map<Integer, int[]> statsDelta = new HashMap<>();
+        // The entities created for the game that is being added
+        private final List<T> created = new ArrayList<>();
+
+        EntityResolver(EntityBase<T> base) {
+            this.base = base;
+        }
+
+        int resolve(T key) {
+            Integer id = ids.get(key);
+            if (id == null) {
+                T entity = base.getAny(key);
+                if (entity == null) {
+                    try {
+                        entity = base.add(key);
+                    } catch (EntityStorageException e) {
+                        // Shouldn't happen since we tried to lookup the entity first
+                        throw new ChessBaseIOException("Failed to add entity " + key, e);
+                    }
+                    created.add(entity);
+                }
+                id = entity.getId();
+                ids.put(key, id);
+            }
+            return id;
+        }
+
+        /**
+         * Deletes the entities created for a game that couldn't be added, since no game references them
+         */
+        void deleteCreated() {
+            for (T entity : created) {
+                ids.remove(entity);
+                try {
+                    base.delete(entity.getId());
+                } catch (EntityStorageException e) {
+                    log.warn("Failed to delete unused entity " + entity + ": " + e.getMessage());
+                }
+            }
+            created.clear();
+        }
+
+        void addGame(int id, int gameId) {
+            int[] delta = statsDelta.computeIfAbsent(id, ignored -> new int[] { 0, gameId });
+            delta[0]++;
+            created.clear();
+        }
+
+        int flush() throws EntityStorageException {
+            List<T> updated = new ArrayList<>(statsDelta.size());
+            for (Map.Entry<Integer, int[]> entry : statsDelta.entrySet()) {
+                T entity = base.get(entry.getKey());
+                int count = entry.getValue()[0], firstGameId = entry.getValue()[1];
+                if (entity.getFirstGameId() > 0) {
+                    firstGameId = Math.min(firstGameId, entity.getFirstGameId());
+                }
+                updated.add(entity.withNewStats(entity.getCount() + count, firstGameId));
+            }
+            base.putAll(updated);
+            statsDelta.clear();
+            return updated.size();
+        }
+    }
+
+    /**
+     * Adds a game to the end of the database
+     * @param model the model of the game to add
+     * @return the added game
+     * @throws ChessBaseInvalidDataException if the game model contained invalid data
+     * @throws ChessBaseIOException if the game couldn't be stored due to an IO error
+     */
+    public Game add(@NonNull GameModel model) throws ChessBaseInvalidDataException {
+        int gameId = database.getHeaderBase().getNextGameId();
+
+        GameHeader gameHeader;
+        ExtendedGameHeader extendedGameHeader;
+        int whiteId, blackId, tournamentId, annotatorId, sourceId, whiteTeamId, blackTeamId, gameTagId;
+        try {
+            // Resolve the entities here, and pass on the ids to the loader so it doesn't have to search for them
+            GameHeaderModel header = model.header();
+            whiteId = players.resolve(PlayerEntity.fromFullName(defaultName(header.getWhite())));
+            blackId = players.resolve(PlayerEntity.fromFullName(defaultName(header.getBlack())));
+            tournamentId = tournaments.resolve(tournamentKey(header));
+            annotatorId = annotators.resolve(new AnnotatorEntity(defaultName(header.getAnnotator())));
+            sourceId = sources.resolve(new SourceEntity(defaultName(header.getSourceTitle())));
+            whiteTeamId = teams.resolve(new TeamEntity(defaultName(header.getWhiteTeam())));
+            blackTeamId = teams.resolve(new TeamEntity(defaultName(header.getBlackTeam())));
+            gameTagId = gameTags.resolve(new GameTagEntity(defaultName(header.getGameTag())));
+            header.setField(GameLoader.DATABASE_ID, database.getDatabaseId());
+            header.setField(GameLoader.WHITE_ID, whiteId);
+            header.setField(GameLoader.BLACK_ID, blackId);
+            header.setField(GameLoader.EVENT_ID, tournamentId);
+            header.setField(GameLoader.ANNOTATOR_ID, annotatorId);
+            header.setField(GameLoader.SOURCE_ID, sourceId);
+            header.setField(GameLoader.WHITE_TEAM_ID, whiteTeamId);
+            header.setField(GameLoader.BLACK_TEAM_ID, blackTeamId);
+            header.setField(GameLoader.GAME_TAG_ID, gameTagId);
+
+            long annotationOfs = database.getAnnotationBase().putAnnotations(gameId, 0, model.moves());
+            long movesOfs = database.getMovesBase().putMoves(0, model.moves());
+
+            gameHeader = loader.createGameHeader(model, movesOfs, annotationOfs);
+            extendedGameHeader = loader.createExtendedGameHeader(model, gameId, movesOfs, annotationOfs);
+        } catch (ChessBaseInvalidDataException | RuntimeException e) {
+            for (EntityResolver<?> resolver : List.of(players, tournaments, annotators, sources, teams, gameTags)) {
+                resolver.deleteCreated();
+            }
+            throw e;
+        }
+
+        gameHeader = database.getHeaderBase().add(gameHeader);
+        assert gameHeader.getId() == gameId;
+        extendedGameHeader = database.getExtendedHeaderBase().add(extendedGameHeader);
+
+        // The statistics are only changed once the game has been added, so a game that failed isn't counted
+        players.addGame(whiteId, gameId);
+        players.addGame(blackId, gameId);
+        tournaments.addGame(tournamentId, gameId);
+        annotators.addGame(annotatorId, gameId);
+        sources.addGame(sourceId, gameId);
+        teams.addGame(whiteTeamId, gameId);
+        teams.addGame(blackTeamId, gameId);
+        gameTags.addGame(gameTagId, gameId);
+
+        if (++numUnflushedGames >= flushInterval) {
+            flush();
+        }
+        return new Game(database, gameHeader, extendedGameHeader);
+    }
+
+    private static TournamentEntity tournamentKey(GameHeaderModel header) {
+        Date date = header.getEventDate();
+        if (date == null || date.isUnset()) {
+            // Tournaments are keyed by year, so use the year the game was played
+            date = header.getDate() == null ? Date.unset() : new Date(header.getDate().year());
+        }
+        return new TournamentEntity(defaultName(header.getEvent()), defaultName(header.getEventSite()), date);
+    }
+
+    private static @NonNull String defaultName(String name) {
+        return name == null ? "" : name;
+    }
+
+    /**
+     * Writes the accumulated changes of the entity statistics to the database
+     * @throws ChessBaseIOException if the entities couldn't be updated
+     */
+    public void flush() {
+        try {
+            int numUpdated = players.flush() + tournaments.flush() + annotators.flush()
+                    + sources.flush() + teams.flush() + gameTags.flush();
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Updated the statistics of %d entities after adding %d games",
+                        numUpdated, numUnflushedGames));
+            }
+        } catch (EntityStorageException e) {
+            throw new ChessBaseIOException("Entity storage is in an inconsistent state. Please run repair.", e);
+        }
+        numUnflushedGames = 0;
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+}
@@ -14,6 +14,7 @@ import se.yarin.cbhlib.games.*;
 import se.yarin.cbhlib.games.search.GameSearcher;
 import se.yarin.cbhlib.games.search.SearchFilter;
 import se.yarin.cbhlib.moves.MovesBase;
+import se.yarin.chess.GameHeaderModel;
 import se.yarin.chess.GameModel;
 
 import java.io.File;
@@ -257,6 +258,34 @@ public final class Database implements AutoCloseable {
         return loader.getGameModel(game);
     }
 
+    GameLoader getLoader() {
+        return loader;
+    }
+
+    /**
+     * Gets a model of the header of a game
+     * @param game the game
+     * @return a model of the game header
+     * @throws ChessBaseInvalidDataException if the header contains invalid references
+     * @throws IllegalArgumentException if the game is actually a text
+     */
+    public GameHeaderModel getGameHeaderModel(Game game) throws ChessBaseInvalidDataException {
+        return loader.getGameHeaderModel(game);
+    }
+
+    /**
+     * Gets models of the headers of multiple games.
+     * The entities referenced by the games are fetched together, so this is faster
+     * than getting the models one by one when there are many games.
+     * @param games the games
+     * @return models of the game headers, in the same order as the games
+     * @throws ChessBaseInvalidDataException if a header contains invalid references
+     * @throws IllegalArgumentException if one of the games is actually a text
+     */
+    public List<GameHeaderModel> getGameHeaderModels(List<Game> games) throws ChessBaseInvalidDataException {
+        return loader.getGameHeaderModels(games);
+    }
+
     /**
      * Gets a text model
      * @param game the game
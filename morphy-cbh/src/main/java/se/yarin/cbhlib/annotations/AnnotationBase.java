@@ -127,7 +127,7 @@ public class AnnotationBase implements BlobSizeRetriever {
         if (model.countAnnotations() == 0) {
             return 0;
         }
-        ByteBuffer buf = AnnotationsSerializer.serializeAnnotations(gameId, model);
+        ByteBuffer buf = AnnotationsSerializer.serializeAnnotationsShared(gameId, model);
         return putAnnotationsBlob(ofs, buf);
     }
 
@@ -151,7 +151,7 @@ public class AnnotationBase implements BlobSizeRetriever {
         if (model.countAnnotations() == 0 || targetAnnotationOffset == 0) {
             return 0;
         }
-        ByteBuffer buf = AnnotationsSerializer.serializeAnnotations(0, model);
+        ByteBuffer buf = AnnotationsSerializer.serializeAnnotationsShared(0, model);
         int newAnnotationSize = getBlobSize(buf);
         if (currentAnnotationOffset == 0) {
             storage.insert(targetAnnotationOffset, newAnnotationSize);
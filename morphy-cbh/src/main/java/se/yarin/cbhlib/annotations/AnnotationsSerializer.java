@@ -4,6 +4,7 @@ import lombok.NonNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.yarin.cbhlib.util.ByteBufferUtil;
+import se.yarin.cbhlib.util.SerializationBuffer;
 import se.yarin.chess.GameMovesModel;
 import se.yarin.chess.annotations.Annotation;
 
@@ -57,11 +58,25 @@ public final class AnnotationsSerializer {
      * Serializes the annotations in a {@link GameMovesModel}
      * @param gameId the id of the game
      * @param model the game model
-     * @return a buffer containing the serialized annotations
+     * @return a new buffer containing the serialized annotations
      */
     public static ByteBuffer serializeAnnotations(int gameId, @NonNull GameMovesModel model) {
-        // TODO: Double size on demand
-        ByteBuffer buf = ByteBuffer.allocate(16384*2);
+        return SerializationBuffer.serialize(buf -> serializeAnnotations(gameId, model, buf));
+    }
+
+    /**
+     * Serializes the annotations in a {@link GameMovesModel} into the current thread's {@link SerializationBuffer}.
+     * The returned buffer must be consumed before anything else is serialized on the same thread.
+     * @param gameId the id of the game
+     * @param model the game model
+     * @return a shared buffer containing the serialized annotations
+     */
+    static ByteBuffer serializeAnnotationsShared(int gameId, @NonNull GameMovesModel model) {
+        return SerializationBuffer.serializeShared(buf -> serializeAnnotations(gameId, model, buf));
+    }
+
+    private static void serializeAnnotations(int gameId, GameMovesModel model, ByteBuffer buf) {
+        int start = buf.position();
         ByteBufferUtil.put24BitB(buf, gameId);
         ByteBufferUtil.putIntB(buf, 0x01000E0E);
         ByteBufferUtil.put24BitB(buf, 0); // noAnnotations + 1 (filled in later)
@@ -89,13 +104,11 @@ public final class AnnotationsSerializer {
             posNo++;
         }
 
-        buf.flip();
-        buf.position(7);
+        int end = buf.position();
+        buf.position(start + 7);
         ByteBufferUtil.put24BitB(buf, noAnnotations + 1);
-        ByteBufferUtil.putIntB(buf, buf.limit());
-        buf.position(0);
-
-        return buf;
+        ByteBufferUtil.putIntB(buf, end - start);
+        buf.position(end);
     }
 
     public static void deserializeAnnotations(@NonNull ByteBuffer buf, @NonNull GameMovesModel model) {
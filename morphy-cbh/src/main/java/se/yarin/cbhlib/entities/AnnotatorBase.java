@@ -40,7 +40,9 @@ public class AnnotatorBase extends EntityBase<AnnotatorEntity> {
      * @throws IOException if something went wrong when opening the database
      */
     public static AnnotatorBase open(@NonNull File file) throws IOException {
-        return new AnnotatorBase(EntityStorageImpl.open(file, new AnnotatorBase()));
+        AnnotatorBase base = new AnnotatorBase(EntityStorageImpl.open(file, new AnnotatorBase()));
+        base.persistNameIndex(file);
+        return base;
     }
 
     /**
@@ -65,7 +67,9 @@ public class AnnotatorBase extends EntityBase<AnnotatorEntity> {
      */
     public static AnnotatorBase create(@NonNull File file, boolean createOnClose) throws IOException {
         if (!createOnClose) {
-            return new AnnotatorBase(EntityStorageImpl.create(file, new AnnotatorBase()));
+            AnnotatorBase base = new AnnotatorBase(EntityStorageImpl.create(file, new AnnotatorBase()));
+            base.persistNameIndex(file);
+            return base;
         } else {
             if (file.exists()) throw new IllegalArgumentException("The file " + file + " already exists");
             AnnotatorBase annotatorBase = new AnnotatorBase();
@@ -85,6 +89,15 @@ public class AnnotatorBase extends EntityBase<AnnotatorEntity> {
         return new AnnotatorBase(getStorage().duplicate(targetFile, new AnnotatorBase()));
     }
 
+    /**
+     * Gets an index over the names of all annotators, for case and diacritic insensitive
+     * prefix and substring searches. The index is rebuilt if the database has changed.
+     * @return a name index
+     */
+    public EntityNameIndex getNameIndex() {
+        return getNameIndex(AnnotatorEntity::getName);
+    }
+
     public ByteBuffer serialize(@NonNull AnnotatorEntity annotator) {
         ByteBuffer buf = ByteBuffer.allocate(SERIALIZED_ANNOTATOR_SIZE);
         ByteBufferUtil.putFixedSizeByteString(buf, annotator.getName(), 45);
@@ -9,14 +9,20 @@ import se.yarin.cbhlib.storage.EntityStorageDuplicateKeyException;
 import se.yarin.cbhlib.storage.EntityStorageException;
 import se.yarin.cbhlib.storage.transaction.EntityStorage;
 import se.yarin.cbhlib.storage.transaction.EntityStorageImpl;
+import se.yarin.cbhlib.storage.transaction.EntityStorageTransaction;
+import se.yarin.cbhlib.util.Cache;
+import se.yarin.cbhlib.util.CacheStats;
+import se.yarin.cbhlib.util.SegmentedLRUCache;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public abstract class EntityBase<T extends Entity & Comparable<T>> implements EntitySerializer<T> {
     private static final Logger log = LoggerFactory.getLogger(EntityBase.class);
@@ -24,10 +30,20 @@ public abstract class EntityBase<T extends Entity & Comparable<T>> implements En
     private final EntityStorage<T> storage;
     private final List<EntityBaseOnCloseHandler<T>> onCloseHandlers = new ArrayList<>();
 
+    // The default memory budget of the entity cache, in bytes
+    public static final long DEFAULT_CACHE_SIZE = 4 * 1024 * 1024;
+    // The approximate heap size of a cached entity, in addition to its serialized size
+    private static final int CACHED_ENTITY_OVERHEAD = 64;
+
     // Cache entities by id to avoid having to deserialize the same entity again and again.
     // Only used when doing direct lookups, not when iterating over ranges.
-    // TODO: Proper LRU cache to save memory
-    private final Map<Integer, T> cacheById = new HashMap<>();
+    private Cache<Integer, T> cacheById;
+
+    // Index over the entity names, built on demand and rebuilt if the storage has changed
+    private EntityNameIndex nameIndex;
+    private int nameIndexVersion = -1;
+    // If set, the name index may be kept in the name index cache directory between sessions
+    private File entityFile;
 
     /**
      * Gets the underlying storage of the database.
@@ -39,6 +55,34 @@ public abstract class EntityBase<T extends Entity & Comparable<T>> implements En
 
     protected EntityBase(@NonNull EntityStorage<T> storage) {
         this.storage = storage;
+        this.cacheById = createCache(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a cache suitable for this entity base, with the weight of each entity
+     * being its approximate size in memory.
+     * @param maxSize the memory budget of the cache, in bytes
+     * @return a new, empty cache
+     */
+    public Cache<Integer, T> createCache(long maxSize) {
+        return new SegmentedLRUCache<>(maxSize, entity -> getSerializedEntityLength() + CACHED_ENTITY_OVERHEAD);
+    }
+
+    /**
+     * Replaces the cache used for looking up entities by id
+     * @param cache the new cache, for instance one created by {@link #createCache(long)}
+     *              or {@link Cache#disabled()}
+     */
+    public void setCache(@NonNull Cache<Integer, T> cache) {
+        this.cacheById = cache;
+    }
+
+    /**
+     * Gets statistics about the cache used for looking up entities by id
+     * @return the cache statistics
+     */
+    public CacheStats getCacheStats() {
+        return cacheById.stats();
     }
 
     /**
@@ -78,14 +122,50 @@ public abstract class EntityBase<T extends Entity & Comparable<T>> implements En
      * @throws ChessBaseIOException if there was an IO error reading the entity
      */
     public T get(int id) {
-        if (cacheById.containsKey(id)) {
-            return cacheById.get(id);
+        T entity = cacheById.get(id);
+        if (entity == null) {
+            entity = storage.getEntity(id);
+            if (entity != null) {
+                cacheById.put(id, entity);
+            }
         }
-        T entity = storage.getEntity(id);
-        cacheById.put(id, entity);
         return entity;
     }
 
+    /**
+     * Gets multiple entities by id. Entities not already in the cache are read in id order,
+     * with nearby entities read together, which is much faster than getting them one by one.
+     * @param ids the ids of the entities (0-indexed), in any order and possibly with duplicates
+     * @return the entities in the same order as the ids, with null for ids with no entity
+     * @throws ChessBaseIOException if there was an IO error reading the entities
+     */
+    public List<T> getAll(@NonNull Collection<Integer> ids) {
+        ArrayList<Integer> idList = new ArrayList<>(ids);
+        ArrayList<T> result = new ArrayList<>(idList.size());
+        int[] missingIds = new int[idList.size()];
+        int numMissing = 0;
+        for (int id : idList) {
+            T entity = cacheById.get(id);
+            result.add(entity);
+            if (entity == null) {
+                missingIds[numMissing++] = id;
+            }
+        }
+        if (numMissing > 0) {
+            List<T> entities = storage.getEntities(Arrays.copyOf(missingIds, numMissing));
+            for (int i = 0, j = 0; i < result.size(); i++) {
+                if (result.get(i) == null) {
+                    T entity = entities.get(j++);
+                    if (entity != null) {
+                        result.set(i, entity);
+                        cacheById.put(idList.get(i), entity);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Gets an entity by key
      * @param entityKey the key of the entity
@@ -140,10 +220,47 @@ public abstract class EntityBase<T extends Entity & Comparable<T>> implements En
         if (entity.getId() == -1) {
             throw new IllegalArgumentException("The id of the entity to update must be set");
         }
-        cacheById.remove(id);
+        cacheById.invalidate(id);
         storage.putEntityById(id, entity);
     }
 
+    /**
+     * Updates multiple existing entities in the database in a single transaction
+     * @param entities the new entity data; the id of each entity determines which entity to update
+     * @throws EntityStorageException if some entity couldn't be updated, in which case none of them are
+     * @throws ChessBaseIOException if some IO error occurred
+     */
+    public void putAll(@NonNull List<T> entities) throws EntityStorageException {
+        putAndDeleteAll(entities, List.of());
+    }
+
+    /**
+     * Updates and deletes multiple existing entities in the database in a single transaction
+     * @param entities the new entity data; the id of each entity determines which entity to update
+     * @param deletedIds the ids of the entities to delete
+     * @throws EntityStorageException if some entity couldn't be updated or deleted, in which case none of them are
+     * @throws ChessBaseIOException if some IO error occurred
+     */
+    public void putAndDeleteAll(@NonNull List<T> entities, @NonNull List<Integer> deletedIds) throws EntityStorageException {
+        EntityStorageTransaction<T> txn = storage.beginTransaction();
+        for (T entity : entities) {
+            if (entity.getId() == -1) {
+                throw new IllegalArgumentException("The id of the entity to update must be set");
+            }
+            txn.putEntityById(entity.getId(), entity);
+        }
+        for (int id : deletedIds) {
+            txn.deleteEntity(id);
+        }
+        txn.commit();
+        for (T entity : entities) {
+            cacheById.invalidate(entity.getId());
+        }
+        for (int id : deletedIds) {
+            cacheById.invalidate(id);
+        }
+    }
+
     /**
      * Deletes an entity from the database
      * @param entityId the id of the entity to delete
@@ -152,7 +269,7 @@ public abstract class EntityBase<T extends Entity & Comparable<T>> implements En
      * @throws ChessBaseIOException if some IO error occurred
      */
     public boolean delete(int entityId) throws EntityStorageException {
-        cacheById.remove(entityId);
+        cacheById.invalidate(entityId);
         return storage.deleteEntity(entityId);
     }
 
@@ -164,7 +281,7 @@ public abstract class EntityBase<T extends Entity & Comparable<T>> implements En
      * @throws ChessBaseIOException if some IO error occurred
      */
     public boolean delete(T entity) throws EntityStorageException {
-        cacheById.remove(entity.getId());
+        cacheById.invalidate(entity.getId());
         return storage.deleteEntity(entity);
     }
 
@@ -206,6 +323,17 @@ public abstract class EntityBase<T extends Entity & Comparable<T>> implements En
         return storage.stream(startId);
     }
 
+    /**
+     * Returns a stream of the entities with the given ids, in the given order.
+     * Ids without an entity are skipped.
+     * If an error occurs while processing the stream, a {@link ChessBaseIOException} is thrown.
+     * @param ids the ids of the entities
+     * @return a stream of entities
+     */
+    public Stream<T> stream(@NonNull int[] ids) {
+        return Arrays.stream(ids).mapToObj(storage::getEntity).filter(entity -> entity != null);
+    }
+
     /**
      * Gets a list of all entities in the database
      * @return a list of all entities
@@ -328,6 +456,27 @@ public abstract class EntityBase<T extends Entity & Comparable<T>> implements En
      */
     public Iterable<T> iterableOrderedAscending(T start) { return storage.iterableOrderedAscending(start); }
 
+    /**
+     * Gets an iterable of all entities in the database sorted by the default sorting order.
+     * All entities are first scanned sequentially to determine the order, which makes this much faster
+     * than {@link #iterableOrderedAscending()} when iterating over all entities in a large database.
+     * If an error occurs while iterating, a {@link ChessBaseIOException} is thrown.
+     * @return an iterable of entities
+     * @throws ChessBaseIOException if an IO error occurs
+     */
+    public Iterable<T> iterableOrderedAscendingReadAhead() { return storage.iterableOrderedAscendingReadAhead(); }
+
+    /**
+     * Gets a stream of all entities in the database, sorted by the default sorting order.
+     * See {@link #iterableOrderedAscendingReadAhead()}.
+     * If an error occurs while processing the stream, a {@link ChessBaseIOException} is thrown.
+     * @return a stream of all entities
+     * @throws ChessBaseIOException if an IO error occurs
+     */
+    public Stream<T> streamOrderedAscendingReadAhead() {
+        return StreamSupport.stream(iterableOrderedAscendingReadAhead().spliterator(), false);
+    }
+
     /**
      * Gets an iterable of all entities in the database
      * in reverse default sorting order.
@@ -355,11 +504,90 @@ public abstract class EntityBase<T extends Entity & Comparable<T>> implements En
         for (EntityBaseOnCloseHandler<T> onCloseHandler : onCloseHandlers) {
             onCloseHandler.closing(this);
         }
+        if (log.isDebugEnabled()) {
+            log.debug("Entity cache of {}: {}", getClass().getSimpleName(), cacheById.stats());
+        }
+        int version = storage.getVersion();
+        int count = storage.getNumEntities();
         storage.close();
+        File nameIndexFile = getNameIndexFile();
+        if (nameIndexFile != null && nameIndex != null && nameIndexVersion == version && version > 0) {
+            // The index was built after the last change, so it's still valid for the file as written now
+            saveNameIndex(nameIndexFile, nameIndex.withStamp(getEntityFileStamp(count)));
+        }
     }
 
     public abstract EntityBase<T> duplicate(@NonNull File targetFile) throws IOException;
 
+    /**
+     * Allows the name index to be persisted in the cache directory set by
+     * {@link EntityNameIndex#setCacheDirectory(File)}, so it doesn't have to be rebuilt
+     * every time the database is opened. The persisted index is ignored if the entity file has changed.
+     * If no cache directory is set, the index is only kept in memory.
+     * @param entityFile the file of the entity storage
+     */
+    protected void persistNameIndex(@NonNull File entityFile) {
+        this.entityFile = entityFile;
+    }
+
+    private File getNameIndexFile() {
+        return entityFile == null ? null : EntityNameIndex.getCacheFile(entityFile);
+    }
+
+    /**
+     * Gets an index over the names of all entities in the database,
+     * supporting case and diacritic insensitive prefix and substring searches.
+     * The index is built the first time it's requested, and rebuilt if the database has changed since.
+     * @param nameFunction a function returning the name of an entity
+     * @return a name index that is up to date with the database
+     * @throws ChessBaseIOException if some IO error occurred reading the entities
+     */
+    protected synchronized EntityNameIndex getNameIndex(@NonNull Function<T, String> nameFunction) {
+        int version = storage.getVersion();
+        if (nameIndex != null && nameIndexVersion == version) {
+            return nameIndex;
+        }
+
+        // A persisted index can only be used if nothing has been changed since the database was opened
+        File nameIndexFile = getNameIndexFile();
+        boolean persisted = nameIndexFile != null && version == 0;
+        long stamp = persisted ? getEntityFileStamp(storage.getNumEntities()) : version;
+        EntityNameIndex index = persisted ? EntityNameIndex.load(nameIndexFile, stamp) : null;
+        if (index == null) {
+            long start = System.currentTimeMillis();
+            List<Integer> ids = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            for (T entity : storage.iterable()) {
+                ids.add(entity.getId());
+                names.add(nameFunction.apply(entity));
+            }
+            index = EntityNameIndex.build(stamp, ids.stream().mapToInt(Integer::intValue).toArray(),
+                    names.toArray(new String[0]));
+            log.debug(String.format("Built name index with %d entities in %d ms",
+                    index.size(), System.currentTimeMillis() - start));
+            if (persisted) {
+                saveNameIndex(nameIndexFile, index);
+            }
+        }
+        nameIndex = index;
+        nameIndexVersion = version;
+        return index;
+    }
+
+    private long getEntityFileStamp(int count) {
+        return (entityFile.length() * 31 + entityFile.lastModified()) * 31 + count;
+    }
+
+    private void saveNameIndex(File nameIndexFile, EntityNameIndex index) {
+        try {
+            nameIndexFile.getParentFile().mkdirs();
+            index.save(nameIndexFile);
+        } catch (IOException e) {
+            // The index will be rebuilt the next time instead
+            log.warn("Failed to save name index " + nameIndexFile, e);
+        }
+    }
+
     protected void addOnCloseHandler(@NonNull EntityBaseOnCloseHandler<T> handler) {
         this.onCloseHandlers.add(handler);
     }
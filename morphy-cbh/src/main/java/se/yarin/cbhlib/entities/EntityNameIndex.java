@@ -0,0 +1,361 @@
+package se.yarin.cbhlib.entities;
+
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.*;
+
+/**
+ * An in-memory index over the names of the entities in an {@link EntityBase},
+ * supporting case and diacritic insensitive prefix and substring searches.
+ *
+ * All names are folded to lower case with diacritics removed (see {@link #fold(String)}).
+ * Prefix searches are done using binary search over the folded names, and substring searches
+ * by intersecting the lists of entities containing each trigram of the search string.
+ *
+ * The search results are candidates; since the folding is lossy the caller should
+ * apply its own matching on the returned entities.
+ *
+ * The index can be saved to and loaded from a file. A stamp identifying the state of the
+ * entity base it was built from is stored in the file, and an index with a different stamp isn't loaded.
+ * Entity bases only persist their indexes if a cache directory has been set with {@link #setCacheDirectory(File)};
+ * nothing is ever written next to the database files.
+ */
+public final class EntityNameIndex {
+    private static final Logger log = LoggerFactory.getLogger(EntityNameIndex.class);
+
+    private static final int MAGIC = 0x4E414D45; // "NAME"
+    private static final int FORMAT_VERSION = 1;
+    private static final int[] NO_HITS = new int[0];
+    private static final String CACHE_FILE_EXTENSION = ".names";
+
+    // If set, file based entity bases keep their name indexes in this directory between sessions
+    private static volatile File cacheDirectory;
+
+    private final long stamp;
+    // The entity ids in ascending order, and their folded names
+    private final int[] ids;
+    private final String[] names;
+    // Positions in ids, sorted by folded name
+    private final int[] sortedByName;
+    // Trigram to the ascending positions in ids of all names containing the trigram
+    private final Map<Long, int[]> trigrams;
+
+    private EntityNameIndex(long stamp, int[] ids, String[] names, int[] sortedByName, Map<Long, int[]> trigrams) {
+        this.stamp = stamp;
+        this.ids = ids;
+        this.names = names;
+        this.sortedByName = sortedByName;
+        this.trigrams = trigrams;
+    }
+
+    /**
+     * Folds a name for case and diacritic insensitive comparison,
+     * by removing all diacritical marks and converting it to lower case.
+     * @param name the name to fold
+     * @return the folded name
+     */
+    public static String fold(@NonNull String name) {
+        String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Sets the directory where file based entity bases persist their name indexes,
+     * so they don't have to be rebuilt every time a database is opened.
+     * By default no directory is set, and the indexes are only kept in memory.
+     * @param directory the cache directory, or null to not persist any name indexes
+     */
+    public static void setCacheDirectory(File directory) {
+        cacheDirectory = directory;
+    }
+
+    /**
+     * @return the directory where name indexes are persisted, or null if they're only kept in memory
+     */
+    public static File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * Gets the file in the cache directory where the name index of an entity file is persisted.
+     * The file name is derived from the absolute path of the entity file, so entity files
+     * with the same name in different databases don't share the cache file.
+     * @param entityFile the entity file
+     * @return the cache file, or null if no cache directory has been set
+     */
+    public static File getCacheFile(@NonNull File entityFile) {
+        File directory = cacheDirectory;
+        if (directory == null) {
+            return null;
+        }
+        String path = entityFile.getAbsolutePath();
+        UUID key = UUID.nameUUIDFromBytes(path.getBytes(StandardCharsets.UTF_8));
+        return new File(directory, entityFile.getName() + "-" + key + CACHE_FILE_EXTENSION);
+    }
+
+    /**
+     * Builds a name index
+     * @param stamp a value identifying the state of the entities
+     * @param ids the ids of the entities, in ascending order
+     * @param names the names of the entities, in the same order as the ids
+     * @return a name index
+     */
+    public static EntityNameIndex build(long stamp, @NonNull int[] ids, @NonNull String[] names) {
+        if (ids.length != names.length) {
+            throw new IllegalArgumentException("The number of ids and names must be the same");
+        }
+        String[] folded = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0 && ids[i] <= ids[i - 1]) {
+                throw new IllegalArgumentException("The ids must be in ascending order");
+            }
+            folded[i] = fold(names[i]);
+        }
+
+        int[] sortedByName = sortByName(folded);
+
+        // Count the number of names containing each trigram first to avoid growing the lists
+        HashMap<Long, int[]> trigrams = new HashMap<>();
+        HashMap<Long, Integer> counts = new HashMap<>();
+        HashMap<Long, Integer> lastSeen = new HashMap<>();
+        for (int i = 0; i < folded.length; i++) {
+            String name = folded[i];
+            for (int j = 0; j + 3 <= name.length(); j++) {
+                Long trigram = trigram(name, j);
+                Integer previous = lastSeen.put(trigram, i);
+                if (previous == null || previous != i) {
+                    counts.merge(trigram, 1, Integer::sum);
+                }
+            }
+        }
+        lastSeen.clear();
+        HashMap<Long, Integer> sizes = new HashMap<>();
+        for (int i = 0; i < folded.length; i++) {
+            String name = folded[i];
+            for (int j = 0; j + 3 <= name.length(); j++) {
+                Long trigram = trigram(name, j);
+                Integer previous = lastSeen.put(trigram, i);
+                if (previous == null || previous != i) {
+                    int size = sizes.getOrDefault(trigram, 0);
+                    trigrams.computeIfAbsent(trigram, t -> new int[counts.get(t)])[size] = i;
+                    sizes.put(trigram, size + 1);
+                }
+            }
+        }
+
+        return new EntityNameIndex(stamp, ids.clone(), folded, sortedByName, trigrams);
+    }
+
+    /**
+     * Loads a name index from a file
+     * @param file the file to load the index from
+     * @param stamp the expected stamp of the index
+     * @return the loaded index, or null if the file didn't exist, was damaged or had a different stamp
+     */
+    public static EntityNameIndex load(@NonNull File file, long stamp) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readLong() != stamp) {
+                return null;
+            }
+            int count = in.readInt();
+            int[] ids = new int[count];
+            String[] names = new String[count];
+            int[] sortedByName = new int[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = in.readInt();
+                names[i] = in.readUTF();
+            }
+            for (int i = 0; i < count; i++) {
+                sortedByName[i] = in.readInt();
+            }
+            int numTrigrams = in.readInt();
+            HashMap<Long, int[]> trigrams = new HashMap<>(numTrigrams * 2);
+            for (int i = 0; i < numTrigrams; i++) {
+                long trigram = in.readLong();
+                int[] positions = new int[in.readInt()];
+                for (int j = 0; j < positions.length; j++) {
+                    positions[j] = in.readInt();
+                }
+                trigrams.put(trigram, positions);
+            }
+            return new EntityNameIndex(stamp, ids, names, sortedByName, trigrams);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to load name index " + file + "; it will be rebuilt", e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves the name index to a file
+     * @param file the file to save the index to; any existing file is overwritten
+     * @throws IOException if an IO error occurs
+     */
+    public void save(@NonNull File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(stamp);
+            out.writeInt(ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                out.writeInt(ids[i]);
+                out.writeUTF(names[i]);
+            }
+            for (int position : sortedByName) {
+                out.writeInt(position);
+            }
+            out.writeInt(trigrams.size());
+            for (Map.Entry<Long, int[]> entry : trigrams.entrySet()) {
+                out.writeLong(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                for (int position : entry.getValue()) {
+                    out.writeInt(position);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a copy of this index with a different stamp
+     * @param stamp the new stamp
+     * @return a name index with the same contents as this one
+     */
+    public EntityNameIndex withStamp(long stamp) {
+        return new EntityNameIndex(stamp, ids, names, sortedByName, trigrams);
+    }
+
+    /**
+     * @return the stamp identifying the state of the entities the index was built from
+     */
+    public long getStamp() {
+        return stamp;
+    }
+
+    /**
+     * @return the number of entities in the index
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Finds all entities with a name starting with the given prefix, ignoring case and diacritics
+     * @param prefix the prefix to search for
+     * @return the ids of the matching entities, in ascending order
+     */
+    public int[] prefixSearch(@NonNull String prefix) {
+        String key = fold(prefix);
+        int lo = 0, hi = sortedByName.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (names[sortedByName[mid]].compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int end = lo;
+        while (end < sortedByName.length && names[sortedByName[end]].startsWith(key)) {
+            end++;
+        }
+        int[] positions = Arrays.copyOfRange(sortedByName, lo, end);
+        Arrays.sort(positions);
+        return toIds(positions, positions.length);
+    }
+
+    /**
+     * Finds all entities with a name containing the given string, ignoring case and diacritics
+     * @param text the string to search for
+     * @return the ids of the matching entities, in ascending order
+     */
+    public int[] substringSearch(@NonNull String text) {
+        String key = fold(text);
+        int[] candidates;
+        if (key.length() < 3) {
+            // Too short to use the trigrams
+            candidates = null;
+        } else {
+            List<int[]> lists = new ArrayList<>();
+            for (int j = 0; j + 3 <= key.length(); j++) {
+                int[] positions = trigrams.get(trigram(key, j));
+                if (positions == null) {
+                    return NO_HITS;
+                }
+                lists.add(positions);
+            }
+            lists.sort(Comparator.comparingInt(list -> list.length));
+            candidates = lists.get(0);
+            for (int i = 1; i < lists.size() && candidates.length > 0; i++) {
+                candidates = intersect(candidates, lists.get(i));
+            }
+        }
+
+        int numCandidates = candidates == null ? names.length : candidates.length;
+        int[] hits = new int[numCandidates];
+        int numHits = 0;
+        for (int i = 0; i < numCandidates; i++) {
+            int position = candidates == null ? i : candidates[i];
+            // The trigrams may occur anywhere in the name, so it must be verified
+            if (names[position].contains(key)) {
+                hits[numHits++] = position;
+            }
+        }
+        return toIds(hits, numHits);
+    }
+
+    private int[] toIds(int[] positions, int count) {
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = ids[positions[i]];
+        }
+        return result;
+    }
+
+    private static int[] sortByName(String[] names) {
+        Integer[] order = new Integer[names.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing((Integer i) -> names[i]));
+        int[] result = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    private static Long trigram(String s, int start) {
+        return ((long) s.charAt(start) << 32) | ((long) s.charAt(start + 1) << 16) | s.charAt(start + 2);
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
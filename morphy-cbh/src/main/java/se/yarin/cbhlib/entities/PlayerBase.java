@@ -42,7 +42,9 @@ public class PlayerBase extends EntityBase<PlayerEntity> {
      * @throws IOException if something went wrong when opening the database
      */
     public static PlayerBase open(@NonNull File file) throws IOException {
-        return new PlayerBase(EntityStorageImpl.open(file, new PlayerBase()));
+        PlayerBase base = new PlayerBase(EntityStorageImpl.open(file, new PlayerBase()));
+        base.persistNameIndex(file);
+        return base;
     }
 
     /**
@@ -67,7 +69,9 @@ public class PlayerBase extends EntityBase<PlayerEntity> {
      */
     public static PlayerBase create(@NonNull File file, boolean createOnClose) throws IOException {
         if (!createOnClose) {
-            return new PlayerBase(EntityStorageImpl.create(file, new PlayerBase()));
+            PlayerBase base = new PlayerBase(EntityStorageImpl.create(file, new PlayerBase()));
+            base.persistNameIndex(file);
+            return base;
         } else {
             if (file.exists()) throw new IllegalArgumentException("The file " + file + " already exists");
             PlayerBase playerBase = new PlayerBase();
@@ -118,6 +122,15 @@ public class PlayerBase extends EntityBase<PlayerEntity> {
         return getStorage().streamOrderedAscending(start, end);
     }
 
+    /**
+     * Gets an index over the full names of all players, for case and diacritic insensitive
+     * prefix and substring searches. The index is rebuilt if the database has changed.
+     * @return a name index
+     */
+    public EntityNameIndex getNameIndex() {
+        return getNameIndex(PlayerEntity::getFullName);
+    }
+
     public ByteBuffer serialize(@NonNull PlayerEntity player) {
         ByteBuffer buf = ByteBuffer.allocate(SERIALIZED_PLAYER_SIZE);
         ByteBufferUtil.putFixedSizeByteString(buf, player.getLastName(), 30);
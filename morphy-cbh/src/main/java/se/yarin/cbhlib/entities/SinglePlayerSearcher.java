@@ -24,6 +24,10 @@ public class SinglePlayerSearcher implements PlayerSearcher {
     @Getter private final String lastName;
     private final boolean caseSensitive;
     private final boolean exactMatch;
+    private final boolean substringMatch;
+    // The search names folded by EntityNameIndex, for case insensitive matching
+    private final String foldedFirstName;
+    private final String foldedLastName;
     private final String searchString;  // Logging purposes
 
     private static String resolveFirstName(String name) {
@@ -47,24 +51,50 @@ public class SinglePlayerSearcher implements PlayerSearcher {
     }
 
     public SinglePlayerSearcher(PlayerBase playerBase, String name, boolean caseSensitive, boolean exactMatch) {
-        this(playerBase, resolveLastName(name), resolveFirstName(name), caseSensitive, exactMatch);
+        this(playerBase, name, caseSensitive, exactMatch, false);
+    }
+
+    public SinglePlayerSearcher(PlayerBase playerBase, String name, boolean caseSensitive, boolean exactMatch, boolean substringMatch) {
+        this(playerBase, resolveLastName(name), resolveFirstName(name), caseSensitive, exactMatch, substringMatch);
     }
 
     public SinglePlayerSearcher(PlayerBase playerBase, String lastName, String firstName, boolean caseSensitive, boolean exactMatch) {
+        this(playerBase, lastName, firstName, caseSensitive, exactMatch, false);
+    }
+
+    /**
+     * Creates a player searcher
+     * @param playerBase the player base to search in
+     * @param lastName the last name, or part of the last name, to search for
+     * @param firstName the first name, or part of the first name, to search for
+     * @param caseSensitive if false, case and diacritics are ignored when matching the names
+     * @param exactMatch if true, the names must match exactly
+     * @param substringMatch if true (and not an exact match), the names may match anywhere in the player names;
+     *                       otherwise the player names must start with them
+     */
+    public SinglePlayerSearcher(PlayerBase playerBase, String lastName, String firstName,
+                                boolean caseSensitive, boolean exactMatch, boolean substringMatch) {
         this.playerBase = playerBase;
         this.firstName = firstName;
         this.lastName = lastName;
         this.caseSensitive = caseSensitive;
         this.exactMatch = exactMatch;
+        this.substringMatch = substringMatch && !exactMatch;
+        this.foldedFirstName = EntityNameIndex.fold(firstName);
+        this.foldedLastName = EntityNameIndex.fold(lastName);
         this.searchString = firstName.isEmpty() ? lastName : String.format("%s, %s", lastName, firstName);
     }
 
     private Stream<PlayerEntity> getBaseStream() {
-        Stream<PlayerEntity> baseStream = playerBase.stream();
+        // The name index returns a superset of the matching players (in id order), so they still need to be matched
+        if (this.substringMatch) {
+            // The index is over the full names, which contain the last name
+            return this.playerBase.stream(this.playerBase.getNameIndex().substringSearch(this.lastName));
+        }
         if (this.caseSensitive) {
-            baseStream = this.playerBase.prefixSearch(this.lastName);
+            return this.playerBase.prefixSearch(this.lastName);
         }
-        return baseStream;
+        return this.playerBase.stream(this.playerBase.getNameIndex().prefixSearch(this.lastName));
     }
 
     public Stream<Hit> search() {
@@ -103,13 +133,17 @@ public class SinglePlayerSearcher implements PlayerSearcher {
     }
 
     public boolean matches(PlayerEntity player) {
-        return matches(player.getLastName(), lastName) && matches(player.getFirstName(), firstName);
+        if (caseSensitive) {
+            return matches(player.getLastName(), lastName) && matches(player.getFirstName(), firstName);
+        }
+        return matches(EntityNameIndex.fold(player.getLastName()), foldedLastName) &&
+                matches(EntityNameIndex.fold(player.getFirstName()), foldedFirstName);
     }
 
     private boolean matches(String playerName, String searchName) {
         if (exactMatch) {
-            return caseSensitive ? playerName.equals(searchName) : playerName.equalsIgnoreCase(searchName);
+            return playerName.equals(searchName);
         }
-        return caseSensitive ? playerName.startsWith(searchName) : playerName.toLowerCase().startsWith(searchName.toLowerCase());
+        return substringMatch ? playerName.contains(searchName) : playerName.startsWith(searchName);
     }
 }
@@ -40,7 +40,9 @@ public class SourceBase extends EntityBase<SourceEntity> {
      * @throws IOException if something went wrong when opening the database
      */
     public static SourceBase open(@NonNull File file) throws IOException {
-        return new SourceBase(EntityStorageImpl.open(file, new SourceBase()));
+        SourceBase base = new SourceBase(EntityStorageImpl.open(file, new SourceBase()));
+        base.persistNameIndex(file);
+        return base;
     }
 
     /**
@@ -65,7 +67,9 @@ public class SourceBase extends EntityBase<SourceEntity> {
      */
     public static SourceBase create(@NonNull File file, boolean createOnClose) throws IOException {
         if (!createOnClose) {
-            return new SourceBase(EntityStorageImpl.create(file, new SourceBase()));
+            SourceBase base = new SourceBase(EntityStorageImpl.create(file, new SourceBase()));
+            base.persistNameIndex(file);
+            return base;
         } else {
             if (file.exists()) throw new IllegalArgumentException("The file " + file + " already exists");
             SourceBase sourceBase = new SourceBase();
@@ -85,6 +89,15 @@ public class SourceBase extends EntityBase<SourceEntity> {
         return new SourceBase(getStorage().duplicate(targetFile, new SourceBase()));
     }
 
+    /**
+     * Gets an index over the titles of all sources, for case and diacritic insensitive
+     * prefix and substring searches. The index is rebuilt if the database has changed.
+     * @return a name index
+     */
+    public EntityNameIndex getNameIndex() {
+        return getNameIndex(SourceEntity::getTitle);
+    }
+
     public ByteBuffer serialize(@NonNull SourceEntity source) {
         ByteBuffer buf = ByteBuffer.allocate(SERIALIZED_SOURCE_SIZE);
         ByteBufferUtil.putFixedSizeByteString(buf, source.getTitle(), 25);
@@ -50,7 +50,9 @@ public class TournamentBase extends EntityBase<TournamentEntity> {
      * @throws IOException if something went wrong when opening the database
      */
     public static TournamentBase open(@NonNull File file) throws IOException {
-        return new TournamentBase(EntityStorageImpl.open(file, new TournamentBase()));
+        TournamentBase base = new TournamentBase(EntityStorageImpl.open(file, new TournamentBase()));
+        base.persistNameIndex(file);
+        return base;
     }
 
     /**
@@ -75,7 +77,9 @@ public class TournamentBase extends EntityBase<TournamentEntity> {
      */
     public static TournamentBase create(@NonNull File file, boolean createOnClose) throws IOException {
         if (!createOnClose) {
-            return new TournamentBase(EntityStorageImpl.create(file, new TournamentBase()));
+            TournamentBase base = new TournamentBase(EntityStorageImpl.create(file, new TournamentBase()));
+            base.persistNameIndex(file);
+            return base;
         } else {
             if (file.exists()) throw new IllegalArgumentException("The file " + file + " already exists");
             TournamentBase tournamentBase = new TournamentBase();
@@ -142,6 +146,15 @@ public class TournamentBase extends EntityBase<TournamentEntity> {
         return ((PersistentEntityNodeStorage<TournamentEntity>) nodeStorage).getRaw(tournamentId);
     }
 
+    /**
+     * Gets an index over the titles of all tournaments, for case and diacritic insensitive
+     * prefix and substring searches. The index is rebuilt if the database has changed.
+     * @return a name index
+     */
+    public EntityNameIndex getNameIndex() {
+        return getNameIndex(TournamentEntity::getTitle);
+    }
+
     public ByteBuffer serialize(@NonNull TournamentEntity tournament) {
         int typeByte = CBUtil.encodeTournamentType(tournament.getType(), tournament.getTimeControl());
 
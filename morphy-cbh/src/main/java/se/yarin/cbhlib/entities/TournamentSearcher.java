@@ -33,6 +33,8 @@ public class TournamentSearcher {
 
     private boolean caseSensitive = true;
     private boolean exactMatch = false;
+    private boolean substringMatch = false;
+    private String foldedName = "";  // The name folded by EntityNameIndex, for case insensitive matching
     private String searchString = "";  // Logging purposes
     @Setter
     private Set<TournamentTimeControl> timeControls;
@@ -82,6 +84,19 @@ public class TournamentSearcher {
     }
 
     public void setSearchString(String name, boolean caseSensitive, boolean exactMatch) {
+        setSearchString(name, caseSensitive, exactMatch, false);
+    }
+
+    /**
+     * Sets the title of the tournaments to search for. A year at the start or the end of the
+     * search string is matched against the year of the tournament rather than the title.
+     * @param name the search string
+     * @param caseSensitive if false, case and diacritics are ignored when matching the title
+     * @param exactMatch if true, the title must match exactly
+     * @param substringMatch if true (and not an exact match), the title may contain the search string anywhere;
+     *                       otherwise the title must start with it
+     */
+    public void setSearchString(String name, boolean caseSensitive, boolean exactMatch, boolean substringMatch) {
         this.searchString = name;
 
         if (Pattern.matches("^[0-9]{4}.*", name)) {
@@ -95,8 +110,10 @@ public class TournamentSearcher {
             this.name = name;
         }
 
+        this.foldedName = EntityNameIndex.fold(this.name);
         this.caseSensitive = caseSensitive;
         this.exactMatch = exactMatch;
+        this.substringMatch = substringMatch && !exactMatch;
     }
 
     private Stream<TournamentEntity> getBaseStream(boolean sortByYearTitle) {
@@ -107,7 +124,16 @@ public class TournamentSearcher {
         Stream<TournamentEntity> baseStream = sortByYearTitle
                 ? tournamentBase.streamOrderedAscending()
                 : tournamentBase.stream();
-        if (this.caseSensitive) {
+        if (!sortByYearTitle && !this.name.isEmpty()) {
+            // The name index returns a superset of the tournaments matching the title (in id order)
+            if (this.substringMatch) {
+                return this.tournamentBase.stream(this.tournamentBase.getNameIndex().substringSearch(this.name));
+            }
+            if (!this.caseSensitive) {
+                return this.tournamentBase.stream(this.tournamentBase.getNameIndex().prefixSearch(this.name));
+            }
+        }
+        if (this.caseSensitive && !this.substringMatch) {
             if (this.year > 0) {
                 baseStream = this.tournamentBase.prefixSearch(this.year, this.name);
             } else if (this.fromDate.year() > 0) {
@@ -200,7 +226,7 @@ public class TournamentSearcher {
             }
         }
 
-        return matches(tournament.getTitle(), name) &&
+        return matchesTitle(tournament.getTitle()) &&
                 (manual == null || manual.contains(tournament)) &&
                 (tournament.getCategory() >= minCategory) &&
                 (year == 0 || tournament.getDate().year() == year) &&
@@ -215,11 +241,18 @@ public class TournamentSearcher {
                 (places == null || places.stream().anyMatch(tournament.getPlace()::startsWith));
     }
 
+    private boolean matchesTitle(String title) {
+        if (!caseSensitive) {
+            return matches(EntityNameIndex.fold(title), foldedName);
+        }
+        return matches(title, name);
+    }
+
     private boolean matches(String tournamentName, String searchName) {
         if (exactMatch) {
-            return caseSensitive ? tournamentName.equals(searchName) : tournamentName.equalsIgnoreCase(searchName);
+            return tournamentName.equals(searchName);
         }
-        return caseSensitive ? tournamentName.startsWith(searchName) : tournamentName.toLowerCase().startsWith(searchName.toLowerCase());
+        return substringMatch ? tournamentName.contains(searchName) : tournamentName.startsWith(searchName);
     }
 
 
@@ -0,0 +1,11 @@
+package se.yarin.cbhlib.exceptions;
+
+/**
+ * Unchecked exception thrown by a long running operation, such as a search or a validation,
+ * when it stops because it has been cancelled.
+ */
+public class OperationCancelledException extends RuntimeException {
+    public OperationCancelledException() {
+        super("The operation was cancelled");
+    }
+}
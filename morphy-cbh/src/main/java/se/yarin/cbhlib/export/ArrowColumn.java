@@ -0,0 +1,351 @@
+package se.yarin.cbhlib.export;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A column in an {@link ArrowFileWriter}. Values are added to the current batch, one per row,
+ * and the batch is then encoded into Arrow buffers by {@link #encode(Batch)}, possibly on another thread.
+ */
+public abstract class ArrowColumn {
+    @Getter
+    private final String name;
+
+    @Getter
+    private final boolean nullable;
+
+    // The validity of the values in the current batch; null until the first null value
+    private boolean[] valid;
+    protected int count;
+    private int nullCount;
+
+    protected ArrowColumn(@NonNull String name, boolean nullable) {
+        this.name = name;
+        this.nullable = nullable;
+    }
+
+    /**
+     * The values of a column in a batch, detached from the column so they can be encoded
+     * while the next batch is being filled
+     */
+    static final class Batch {
+        private final int count;
+        private final int nullCount;
+        private final boolean[] valid;
+        private final Object values;
+
+        private Batch(int count, int nullCount, boolean[] valid, Object values) {
+            this.count = count;
+            this.nullCount = nullCount;
+            this.valid = valid;
+            this.values = values;
+        }
+    }
+
+    /**
+     * A column encoded as Arrow buffers
+     */
+    static final class Encoded {
+        final int length;
+        final int nullCount;
+        final ByteBuffer[] buffers;
+
+        private Encoded(int length, int nullCount, ByteBuffer... buffers) {
+            this.length = length;
+            this.nullCount = nullCount;
+            this.buffers = buffers;
+        }
+    }
+
+    public void addNull() {
+        if (!nullable) {
+            throw new IllegalStateException("Column " + name + " is not nullable");
+        }
+        if (valid == null) {
+            valid = new boolean[Math.max(16, count * 2)];
+            Arrays.fill(valid, 0, count, true);
+        }
+        addNullValue();
+        nullCount++;
+    }
+
+    protected void added() {
+        if (valid != null) {
+            if (count == valid.length) {
+                valid = Arrays.copyOf(valid, count * 2);
+            }
+            valid[count] = true;
+        }
+        count++;
+    }
+
+    private void addNullValue() {
+        ensureCapacity(count + 1);
+        if (count == valid.length) {
+            valid = Arrays.copyOf(valid, count * 2);
+        }
+        valid[count] = false;
+        count++;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Detaches the values added since the last batch and starts a new batch
+     */
+    Batch takeBatch() {
+        Batch batch = new Batch(count, nullCount, valid, takeValues());
+        count = 0;
+        nullCount = 0;
+        valid = null;
+        return batch;
+    }
+
+    /**
+     * Encodes a detached batch. Thread safe.
+     */
+    Encoded encode(Batch batch) {
+        ByteBuffer validity = allocate(0);
+        if (batch.nullCount > 0) {
+            validity = allocate((batch.count + 7) / 8);
+            for (int i = 0; i < batch.count; i++) {
+                if (batch.valid[i]) {
+                    validity.put(i / 8, (byte) (validity.get(i / 8) | (1 << (i % 8))));
+                }
+            }
+        }
+        return new Encoded(batch.count, batch.nullCount, encodeValues(validity, batch.values, batch.count));
+    }
+
+    static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    protected abstract void ensureCapacity(int capacity);
+
+    protected abstract Object takeValues();
+
+    protected abstract ByteBuffer[] encodeValues(ByteBuffer validity, Object values, int count);
+
+    /**
+     * Creates the flatbuffer table describing the type of the column
+     */
+    abstract FlatBufferWriter.Table typeTable();
+
+    /**
+     * The type of the column in the Arrow Type union
+     */
+    abstract int typeId();
+
+    public static final class IntColumn extends ArrowColumn {
+        private int[] values = new int[16];
+
+        public IntColumn(String name, boolean nullable) {
+            super(name, nullable);
+        }
+
+        public void add(int value) {
+            ensureCapacity(count + 1);
+            values[count] = value;
+            added();
+        }
+
+        @Override
+        protected void ensureCapacity(int capacity) {
+            if (capacity > values.length) {
+                values = Arrays.copyOf(values, Math.max(capacity, values.length * 2));
+            }
+        }
+
+        @Override
+        protected Object takeValues() {
+            int[] taken = values;
+            values = new int[Math.max(16, count)];
+            return taken;
+        }
+
+        @Override
+        protected ByteBuffer[] encodeValues(ByteBuffer validity, Object values, int count) {
+            ByteBuffer data = allocate(count * 4);
+            data.asIntBuffer().put((int[]) values, 0, count);
+            return new ByteBuffer[] { validity, data };
+        }
+
+        @Override
+        FlatBufferWriter.Table typeTable() {
+            return new FlatBufferWriter.Table().addInt(0, 32).addBoolean(1, true);
+        }
+
+        @Override
+        int typeId() {
+            return 2;
+        }
+    }
+
+    public static final class LongColumn extends ArrowColumn {
+        private long[] values = new long[16];
+
+        public LongColumn(String name, boolean nullable) {
+            super(name, nullable);
+        }
+
+        public void add(long value) {
+            ensureCapacity(count + 1);
+            values[count] = value;
+            added();
+        }
+
+        @Override
+        protected void ensureCapacity(int capacity) {
+            if (capacity > values.length) {
+                values = Arrays.copyOf(values, Math.max(capacity, values.length * 2));
+            }
+        }
+
+        @Override
+        protected Object takeValues() {
+            long[] taken = values;
+            values = new long[Math.max(16, count)];
+            return taken;
+        }
+
+        @Override
+        protected ByteBuffer[] encodeValues(ByteBuffer validity, Object values, int count) {
+            ByteBuffer data = allocate(count * 8);
+            data.asLongBuffer().put((long[]) values, 0, count);
+            return new ByteBuffer[] { validity, data };
+        }
+
+        @Override
+        FlatBufferWriter.Table typeTable() {
+            return new FlatBufferWriter.Table().addInt(0, 64).addBoolean(1, true);
+        }
+
+        @Override
+        int typeId() {
+            return 2;
+        }
+    }
+
+    public static final class BooleanColumn extends ArrowColumn {
+        private boolean[] values = new boolean[16];
+
+        public BooleanColumn(String name, boolean nullable) {
+            super(name, nullable);
+        }
+
+        public void add(boolean value) {
+            ensureCapacity(count + 1);
+            values[count] = value;
+            added();
+        }
+
+        @Override
+        protected void ensureCapacity(int capacity) {
+            if (capacity > values.length) {
+                values = Arrays.copyOf(values, Math.max(capacity, values.length * 2));
+            }
+        }
+
+        @Override
+        protected Object takeValues() {
+            boolean[] taken = values;
+            values = new boolean[Math.max(16, count)];
+            return taken;
+        }
+
+        @Override
+        protected ByteBuffer[] encodeValues(ByteBuffer validity, Object values, int count) {
+            boolean[] bits = (boolean[]) values;
+            ByteBuffer data = allocate((count + 7) / 8);
+            for (int i = 0; i < count; i++) {
+                if (bits[i]) {
+                    data.put(i / 8, (byte) (data.get(i / 8) | (1 << (i % 8))));
+                }
+            }
+            return new ByteBuffer[] { validity, data };
+        }
+
+        @Override
+        FlatBufferWriter.Table typeTable() {
+            return new FlatBufferWriter.Table();
+        }
+
+        @Override
+        int typeId() {
+            return 6;
+        }
+    }
+
+    public static final class StringColumn extends ArrowColumn {
+        private String[] values = new String[16];
+
+        public StringColumn(String name, boolean nullable) {
+            super(name, nullable);
+        }
+
+        /**
+         * Adds a string value; null adds a null value
+         */
+        public void add(String value) {
+            if (value == null) {
+                addNull();
+                return;
+            }
+            ensureCapacity(count + 1);
+            values[count] = value;
+            added();
+        }
+
+        @Override
+        protected void ensureCapacity(int capacity) {
+            if (capacity > values.length) {
+                values = Arrays.copyOf(values, Math.max(capacity, values.length * 2));
+            }
+        }
+
+        @Override
+        protected Object takeValues() {
+            String[] taken = values;
+            values = new String[Math.max(16, count)];
+            return taken;
+        }
+
+        @Override
+        protected ByteBuffer[] encodeValues(ByteBuffer validity, Object values, int count) {
+            String[] strings = (String[]) values;
+            ByteBuffer offsets = allocate((count + 1) * 4);
+            byte[][] encoded = new byte[count][];
+            int offset = 0;
+            offsets.putInt(0, 0);
+            for (int i = 0; i < count; i++) {
+                encoded[i] = strings[i] == null ? new byte[0] : strings[i].getBytes(StandardCharsets.UTF_8);
+                offset += encoded[i].length;
+                offsets.putInt((i + 1) * 4, offset);
+            }
+            ByteBuffer data = allocate(offset);
+            for (byte[] bytes : encoded) {
+                data.put(bytes);
+            }
+            data.flip();
+            return new ByteBuffer[] { validity, offsets, data };
+        }
+
+        @Override
+        FlatBufferWriter.Table typeTable() {
+            return new FlatBufferWriter.Table();
+        }
+
+        @Override
+        int typeId() {
+            return 5;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package se.yarin.cbhlib.export;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Writes a table to a file in the Arrow IPC file format (version 5), which can be read by
+ * pyarrow, pandas, polars, DuckDB, R etc.
+ *
+ * Values are added to the columns row by row. When a batch of rows is full, every column in the batch
+ * is encoded in parallel by the given executor, while the caller continues adding rows to the next batch.
+ * Each batch is then written to the file with a single gathering write.
+ *
+ * Only non-nested types are supported (32 and 64 bit signed integers, booleans and UTF-8 strings),
+ * and nothing is dictionary encoded or compressed.
+ */
+public class ArrowFileWriter implements AutoCloseable {
+    private static final byte[] MAGIC = "ARROW1".getBytes(StandardCharsets.US_ASCII);
+    private static final int CONTINUATION = 0xFFFFFFFF;
+
+    private static final int METADATA_VERSION_V5 = 4;
+    private static final int MESSAGE_HEADER_SCHEMA = 1;
+    private static final int MESSAGE_HEADER_RECORD_BATCH = 3;
+
+    private final File file;
+    private final FileChannel channel;
+    private final List<ArrowColumn> columns;
+    private final ExecutorService encoders;
+    private final int batchSize;
+
+    // Position, metadata length and body length of the record batches written
+    private final List<long[]> blocks = new ArrayList<>();
+    private List<Future<ArrowColumn.Encoded>> pendingBatch;
+
+    @Getter
+    private long rowCount;
+    private int batchRowCount;
+
+    /**
+     * Creates a new Arrow file and writes the schema
+     * @param file the file to create
+     * @param columns the columns of the table
+     * @param encoders the executor encoding the columns
+     * @param batchSize the number of rows in each record batch
+     * @throws IOException if the file couldn't be created
+     */
+    public ArrowFileWriter(@NonNull File file, @NonNull List<ArrowColumn> columns,
+                           @NonNull ExecutorService encoders, int batchSize) throws IOException {
+        this.file = file;
+        this.columns = columns;
+        this.encoders = encoders;
+        this.batchSize = batchSize;
+        this.channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        ByteBuffer header = ArrowColumn.allocate(8);
+        header.put(MAGIC);
+        header.flip().limit(8);
+        write(header);
+        writeMessage(MESSAGE_HEADER_SCHEMA, schema(), new ByteBuffer[0], 0);
+    }
+
+    /**
+     * Ends the current row. A value must have been added to every column.
+     * @throws IOException if an IO error occurred when writing a batch
+     */
+    public void endRow() throws IOException {
+        batchRowCount++;
+        rowCount++;
+        for (ArrowColumn column : columns) {
+            if (column.size() != batchRowCount) {
+                throw new IllegalStateException("Column " + column.getName() + " has " + column.size() +
+                        " values in a batch with " + batchRowCount + " rows");
+            }
+        }
+        if (batchRowCount == batchSize) {
+            flushBatch();
+        }
+    }
+
+    private void flushBatch() throws IOException {
+        // The encoding of the previous batch has been running while this batch was filled
+        writePendingBatch();
+        List<Future<ArrowColumn.Encoded>> encoded = new ArrayList<>();
+        for (ArrowColumn column : columns) {
+            ArrowColumn.Batch batch = column.takeBatch();
+            encoded.add(encoders.submit(() -> column.encode(batch)));
+        }
+        pendingBatch = encoded;
+        batchRowCount = 0;
+    }
+
+    private void writePendingBatch() throws IOException {
+        if (pendingBatch == null) {
+            return;
+        }
+        List<ArrowColumn.Encoded> encoded = new ArrayList<>();
+        try {
+            for (Future<ArrowColumn.Encoded> future : pendingBatch) {
+                encoded.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while encoding columns", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to encode columns", e.getCause());
+        }
+        pendingBatch = null;
+        writeRecordBatch(encoded);
+    }
+
+    private void writeRecordBatch(List<ArrowColumn.Encoded> encoded) throws IOException {
+        int length = encoded.get(0).length;
+        ByteBuffer nodes = ArrowColumn.allocate(16 * encoded.size());
+        List<ByteBuffer> bodyBuffers = new ArrayList<>();
+        List<long[]> bufferLocations = new ArrayList<>();
+        long bodyLength = 0;
+        for (ArrowColumn.Encoded column : encoded) {
+            nodes.putLong(column.length);
+            nodes.putLong(column.nullCount);
+            for (ByteBuffer buffer : column.buffers) {
+                int size = buffer.remaining();
+                bufferLocations.add(new long[] { bodyLength, size });
+                bodyBuffers.add(buffer);
+                int padding = padding(size);
+                if (padding > 0) {
+                    bodyBuffers.add(ArrowColumn.allocate(padding));
+                }
+                bodyLength += size + padding;
+            }
+        }
+        nodes.flip();
+        ByteBuffer buffers = ArrowColumn.allocate(16 * bufferLocations.size());
+        for (long[] location : bufferLocations) {
+            buffers.putLong(location[0]);
+            buffers.putLong(location[1]);
+        }
+        buffers.flip();
+
+        FlatBufferWriter.Table recordBatch = new FlatBufferWriter.Table()
+                .addLong(0, length)
+                .addOffset(1, new FlatBufferWriter.StructVector(encoded.size(), nodes))
+                .addOffset(2, new FlatBufferWriter.StructVector(bufferLocations.size(), buffers));
+        writeMessage(MESSAGE_HEADER_RECORD_BATCH, recordBatch, bodyBuffers.toArray(new ByteBuffer[0]), bodyLength);
+    }
+
+    private FlatBufferWriter.Table schema() {
+        List<FlatBufferWriter.Table> fields = new ArrayList<>();
+        for (ArrowColumn column : columns) {
+            fields.add(new FlatBufferWriter.Table()
+                    .addOffset(0, new FlatBufferWriter.StringNode(column.getName()))
+                    .addBoolean(1, column.isNullable())
+                    .addByte(2, column.typeId())
+                    .addOffset(3, column.typeTable())
+                    .addOffset(5, new FlatBufferWriter.TableVector(List.of())));
+        }
+        return new FlatBufferWriter.Table()
+                .addShort(0, 0) // Little endian
+                .addOffset(1, new FlatBufferWriter.TableVector(fields));
+    }
+
+    /**
+     * Writes an encapsulated message: a continuation marker, the metadata length,
+     * the Message flatbuffer padded to 8 bytes and the message body
+     */
+    private void writeMessage(int headerType, FlatBufferWriter.Table header, ByteBuffer[] body, long bodyLength)
+            throws IOException {
+        FlatBufferWriter.Table message = new FlatBufferWriter.Table()
+                .addShort(0, METADATA_VERSION_V5)
+                .addByte(1, headerType)
+                .addOffset(2, header)
+                .addLong(3, bodyLength);
+        ByteBuffer metadata = FlatBufferWriter.serialize(message);
+        int metadataLength = metadata.remaining() + padding(metadata.remaining());
+
+        ByteBuffer prefix = ArrowColumn.allocate(8);
+        prefix.putInt(CONTINUATION);
+        prefix.putInt(metadataLength);
+        prefix.flip();
+
+        ByteBuffer[] buffers = new ByteBuffer[3 + body.length];
+        buffers[0] = prefix;
+        buffers[1] = metadata;
+        buffers[2] = ArrowColumn.allocate(padding(metadata.remaining()));
+        System.arraycopy(body, 0, buffers, 3, body.length);
+
+        long position = channel.position();
+        write(buffers);
+        if (headerType == MESSAGE_HEADER_RECORD_BATCH) {
+            blocks.add(new long[] { position, 8 + metadataLength, bodyLength });
+        }
+    }
+
+    private static int padding(int size) {
+        return (8 - size % 8) % 8;
+    }
+
+    private void write(ByteBuffer... buffers) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+    }
+
+    /**
+     * Writes the remaining rows, the end of stream marker and the file footer, and closes the file
+     * @throws IOException if an IO error occurred
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (batchRowCount > 0) {
+                flushBatch();
+            }
+            writePendingBatch();
+
+            ByteBuffer endOfStream = ArrowColumn.allocate(8);
+            endOfStream.putInt(CONTINUATION);
+            endOfStream.putInt(0);
+            endOfStream.flip();
+            write(endOfStream);
+
+            ByteBuffer blockData = ArrowColumn.allocate(24 * blocks.size());
+            for (long[] block : blocks) {
+                blockData.putLong(block[0]);
+                blockData.putInt((int) block[1]);
+                blockData.putInt(0); // Padding
+                blockData.putLong(block[2]);
+            }
+            blockData.flip();
+            FlatBufferWriter.Table footer = new FlatBufferWriter.Table()
+                    .addShort(0, METADATA_VERSION_V5)
+                    .addOffset(1, schema())
+                    .addOffset(2, new FlatBufferWriter.StructVector(0, ArrowColumn.allocate(0)))
+                    .addOffset(3, new FlatBufferWriter.StructVector(blocks.size(), blockData));
+            ByteBuffer footerData = FlatBufferWriter.serialize(footer);
+
+            ByteBuffer trailer = ArrowColumn.allocate(4 + MAGIC.length);
+            trailer.putInt(footerData.remaining());
+            trailer.put(MAGIC);
+            trailer.flip();
+            write(footerData, trailer);
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+}
@@ -0,0 +1,368 @@
+package se.yarin.cbhlib.export;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.yarin.cbhlib.Database;
+import se.yarin.cbhlib.Game;
+import se.yarin.cbhlib.entities.Nation;
+import se.yarin.cbhlib.entities.PlayerEntity;
+import se.yarin.cbhlib.entities.TournamentEntity;
+import se.yarin.cbhlib.entities.TournamentType;
+import se.yarin.cbhlib.exceptions.ChessBaseException;
+import se.yarin.cbhlib.games.GameHeaderFlags;
+import se.yarin.cbhlib.games.Medal;
+import se.yarin.cbhlib.games.search.GameSearcher;
+import se.yarin.cbhlib.operations.CancellationToken;
+import se.yarin.chess.Fen;
+import se.yarin.chess.GameMovesModel;
+import se.yarin.chess.NAG;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Exports the games, players, tournaments and the main line moves of a database
+ * to a directory with one Arrow IPC file per table; see {@link ArrowFileWriter}.
+ *
+ * The entities are referred to by their id, so the tables can be joined.
+ * The moves of the games are decoded by a pool of worker threads, which is also used to encode the columns.
+ * The export can be cancelled with a {@link CancellationToken}, in which case the table being written is incomplete.
+ */
+public class ColumnarExporter implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ColumnarExporter.class);
+
+    private static final int BATCH_SIZE = 65536;
+    private static final int MAX_PENDING_GAMES_PER_THREAD = 64;
+
+    private final Database database;
+    private final File directory;
+    private final int numThreads;
+    private final int maxPly;
+    private final ExecutorService workers;
+    @Setter
+    @NonNull
+    private CancellationToken cancellationToken = CancellationToken.NONE;
+
+    @Getter
+    private long gamesExported;
+
+    @Getter
+    private long movesExported;
+
+    /**
+     * Creates a new exporter
+     * @param database the database to export
+     * @param directory the directory to write the tables to; created if it doesn't exist
+     * @param numThreads the number of worker threads
+     * @param maxPly the max number of plies in the moves table for each game, or 0 for all
+     */
+    public ColumnarExporter(@NonNull Database database, @NonNull File directory, int numThreads, int maxPly) {
+        this.database = database;
+        this.directory = directory;
+        this.numThreads = numThreads;
+        this.maxPly = maxPly;
+        this.workers = Executors.newFixedThreadPool(numThreads, runnable -> {
+            Thread thread = new Thread(runnable, "columnar-exporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private ArrowFileWriter createWriter(String table, List<ArrowColumn> columns) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create directory " + directory);
+        }
+        return new ArrowFileWriter(new File(directory, table + ".arrow"), columns, workers, BATCH_SIZE);
+    }
+
+    /**
+     * Exports all tables
+     * @param progressUpdater called with the id of the last exported game
+     * @throws IOException if an IO error occurred when writing the tables
+     */
+    public void exportAll(Consumer<Integer> progressUpdater) throws IOException {
+        exportPlayers();
+        exportTournaments();
+        exportGames(progressUpdater);
+    }
+
+    public void exportPlayers() throws IOException {
+        ArrowColumn.IntColumn id = new ArrowColumn.IntColumn("id", false);
+        ArrowColumn.StringColumn lastName = new ArrowColumn.StringColumn("last_name", false);
+        ArrowColumn.StringColumn firstName = new ArrowColumn.StringColumn("first_name", false);
+        ArrowColumn.IntColumn count = new ArrowColumn.IntColumn("count", false);
+        ArrowColumn.IntColumn firstGameId = new ArrowColumn.IntColumn("first_game_id", false);
+
+        try (ArrowFileWriter writer = createWriter("players", List.of(id, lastName, firstName, count, firstGameId))) {
+            for (PlayerEntity player : database.getPlayerBase().iterable()) {
+                cancellationToken.throwIfCancelled();
+                id.add(player.getId());
+                lastName.add(player.getLastName());
+                firstName.add(player.getFirstName());
+                count.add(player.getCount());
+                firstGameId.add(player.getFirstGameId());
+                writer.endRow();
+            }
+            log.info("Exported " + writer.getRowCount() + " players");
+        }
+    }
+
+    public void exportTournaments() throws IOException {
+        ArrowColumn.IntColumn id = new ArrowColumn.IntColumn("id", false);
+        ArrowColumn.StringColumn title = new ArrowColumn.StringColumn("title", false);
+        ArrowColumn.StringColumn date = new ArrowColumn.StringColumn("date", true);
+        ArrowColumn.IntColumn category = new ArrowColumn.IntColumn("category", true);
+        ArrowColumn.IntColumn rounds = new ArrowColumn.IntColumn("rounds", true);
+        ArrowColumn.StringColumn type = new ArrowColumn.StringColumn("type", true);
+        ArrowColumn.BooleanColumn complete = new ArrowColumn.BooleanColumn("complete", false);
+        ArrowColumn.BooleanColumn threePointsWin = new ArrowColumn.BooleanColumn("three_points_win", false);
+        ArrowColumn.BooleanColumn team = new ArrowColumn.BooleanColumn("team", false);
+        ArrowColumn.BooleanColumn boardPoints = new ArrowColumn.BooleanColumn("board_points", false);
+        ArrowColumn.StringColumn timeControl = new ArrowColumn.StringColumn("time_control", false);
+        ArrowColumn.StringColumn place = new ArrowColumn.StringColumn("place", false);
+        ArrowColumn.StringColumn nation = new ArrowColumn.StringColumn("nation", true);
+        ArrowColumn.IntColumn count = new ArrowColumn.IntColumn("count", false);
+        ArrowColumn.IntColumn firstGameId = new ArrowColumn.IntColumn("first_game_id", false);
+
+        try (ArrowFileWriter writer = createWriter("tournaments", List.of(id, title, date, category, rounds, type,
+                complete, threePointsWin, team, boardPoints, timeControl, place, nation, count, firstGameId))) {
+            for (TournamentEntity tournament : database.getTournamentBase().iterable()) {
+                cancellationToken.throwIfCancelled();
+                id.add(tournament.getId());
+                title.add(tournament.getTitle());
+                date.add(tournament.getDate().isUnset() ? null : tournament.getDate().toPrettyString());
+                addPositiveOrNull(category, tournament.getCategory());
+                addPositiveOrNull(rounds, tournament.getRounds());
+                type.add(tournament.getType() == TournamentType.NONE ? null : tournament.getType().getName());
+                complete.add(tournament.isComplete());
+                threePointsWin.add(tournament.isThreePointsWin());
+                team.add(tournament.isTeamTournament());
+                boardPoints.add(tournament.isBoardPoints());
+                timeControl.add(tournament.getTimeControl().getName());
+                place.add(tournament.getPlace());
+                nation.add(tournament.getNation() == Nation.NONE ? null : tournament.getNation().getIocCode());
+                count.add(tournament.getCount());
+                firstGameId.add(tournament.getFirstGameId());
+                writer.endRow();
+            }
+            log.info("Exported " + writer.getRowCount() + " tournaments");
+        }
+    }
+
+    /**
+     * The main line of a game, as rows in the moves table
+     */
+    private static final class MovesRows {
+        private final int gameId;
+        private final int count;
+        private final int[] plies;
+        private final long[] hashLo, hashHi;
+        private final String[] moves, fens;
+
+        private MovesRows(int gameId, int capacity) {
+            this.gameId = gameId;
+            this.count = 0;
+            this.plies = new int[capacity];
+            this.hashLo = new long[capacity];
+            this.hashHi = new long[capacity];
+            this.moves = new String[capacity];
+            this.fens = new String[capacity];
+        }
+
+        private MovesRows(MovesRows rows, int count) {
+            this.gameId = rows.gameId;
+            this.count = count;
+            this.plies = rows.plies;
+            this.hashLo = rows.hashLo;
+            this.hashHi = rows.hashHi;
+            this.moves = rows.moves;
+            this.fens = rows.fens;
+        }
+    }
+
+    private MovesRows decodeMainLine(int gameId, ByteBuffer movesBlob) {
+        GameMovesModel model;
+        try {
+            model = database.getMovesBase().decodeMoves(movesBlob, gameId);
+        } catch (ChessBaseException e) {
+            log.warn("Failed to decode the moves of game " + gameId, e);
+            return null;
+        }
+        GameMovesModel.Node root = model.root();
+        int numPlies = 1;
+        for (GameMovesModel.Node node = root; node.hasMoves() && (maxPly == 0 || numPlies <= maxPly); node = node.mainNode()) {
+            numPlies++;
+        }
+        MovesRows rows = new MovesRows(gameId, numPlies);
+        int count = 0;
+        for (GameMovesModel.Node node = root; node != null && count < numPlies; node = node.mainNode()) {
+            rows.plies[count] = node.ply();
+            rows.hashLo[count] = node.position().getZobristHashLo();
+            rows.hashHi[count] = node.position().getZobristHashHi();
+            rows.moves[count] = node.hasMoves() ? node.mainMove().toSAN() : null;
+            rows.fens[count] = Fen.format(node.position(), node.ply());
+            count++;
+        }
+        return new MovesRows(rows, count);
+    }
+
+    /**
+     * Exports the games and the moves tables
+     * @param progressUpdater called with the id of the last exported game
+     * @throws IOException if an IO error occurred when writing the tables
+     */
+    public void exportGames(Consumer<Integer> progressUpdater) throws IOException {
+        ArrowColumn.IntColumn id = new ArrowColumn.IntColumn("id", false);
+        ArrowColumn.BooleanColumn deleted = new ArrowColumn.BooleanColumn("deleted", false);
+        ArrowColumn.BooleanColumn guidingText = new ArrowColumn.BooleanColumn("guiding_text", false);
+        ArrowColumn.IntColumn whiteId = new ArrowColumn.IntColumn("white_id", false);
+        ArrowColumn.IntColumn blackId = new ArrowColumn.IntColumn("black_id", false);
+        ArrowColumn.IntColumn tournamentId = new ArrowColumn.IntColumn("tournament_id", false);
+        ArrowColumn.IntColumn annotatorId = new ArrowColumn.IntColumn("annotator_id", false);
+        ArrowColumn.IntColumn sourceId = new ArrowColumn.IntColumn("source_id", false);
+        ArrowColumn.IntColumn whiteTeamId = new ArrowColumn.IntColumn("white_team_id", true);
+        ArrowColumn.IntColumn blackTeamId = new ArrowColumn.IntColumn("black_team_id", true);
+        ArrowColumn.StringColumn playedDate = new ArrowColumn.StringColumn("played_date", true);
+        ArrowColumn.StringColumn result = new ArrowColumn.StringColumn("result", false);
+        ArrowColumn.IntColumn round = new ArrowColumn.IntColumn("round", true);
+        ArrowColumn.IntColumn subRound = new ArrowColumn.IntColumn("sub_round", true);
+        ArrowColumn.IntColumn whiteElo = new ArrowColumn.IntColumn("white_elo", true);
+        ArrowColumn.IntColumn blackElo = new ArrowColumn.IntColumn("black_elo", true);
+        ArrowColumn.IntColumn chess960 = new ArrowColumn.IntColumn("chess960", true);
+        ArrowColumn.StringColumn eco = new ArrowColumn.StringColumn("eco", true);
+        ArrowColumn.StringColumn lineEvaluation = new ArrowColumn.StringColumn("line_evaluation", true);
+        ArrowColumn.IntColumn medalMask = new ArrowColumn.IntColumn("medal_mask", false);
+        ArrowColumn.IntColumn flags = new ArrowColumn.IntColumn("flags", false);
+        ArrowColumn.IntColumn numMoves = new ArrowColumn.IntColumn("num_moves", false);
+        ArrowColumn.IntColumn gameVersion = new ArrowColumn.IntColumn("game_version", false);
+        ArrowColumn.LongColumn creationTimestamp = new ArrowColumn.LongColumn("creation_timestamp", false);
+        ArrowColumn.LongColumn lastChangedTimestamp = new ArrowColumn.LongColumn("last_changed_timestamp", false);
+        ArrowColumn.IntColumn gameTagId = new ArrowColumn.IntColumn("game_tag_id", true);
+
+        ArrowColumn.IntColumn moveGameId = new ArrowColumn.IntColumn("game_id", false);
+        ArrowColumn.IntColumn ply = new ArrowColumn.IntColumn("ply", false);
+        ArrowColumn.LongColumn hashLo = new ArrowColumn.LongColumn("hash_lo", false);
+        ArrowColumn.LongColumn hashHi = new ArrowColumn.LongColumn("hash_hi", false);
+        ArrowColumn.StringColumn move = new ArrowColumn.StringColumn("move", true);
+        ArrowColumn.StringColumn fen = new ArrowColumn.StringColumn("fen", false);
+
+        Deque<Future<MovesRows>> pendingMoves = new ArrayDeque<>();
+        try (ArrowFileWriter gamesWriter = createWriter("games", List.of(id, deleted, guidingText, whiteId, blackId,
+                tournamentId, annotatorId, sourceId, whiteTeamId, blackTeamId, playedDate, result, round, subRound,
+                whiteElo, blackElo, chess960, eco, lineEvaluation, medalMask, flags, numMoves, gameVersion,
+                creationTimestamp, lastChangedTimestamp, gameTagId));
+             ArrowFileWriter movesWriter = createWriter("moves", List.of(moveGameId, ply, hashLo, hashHi, move, fen))) {
+
+            GameSearcher searcher = new GameSearcher(database);
+            searcher.setCancellationToken(cancellationToken);
+            for (Game game : searcher.iterableSearch(progressUpdater)) {
+                id.add(game.getId());
+                deleted.add(game.isDeleted());
+                guidingText.add(game.isGuidingText());
+                whiteId.add(game.getWhitePlayerId());
+                blackId.add(game.getBlackPlayerId());
+                tournamentId.add(game.getTournamentId());
+                annotatorId.add(game.getAnnotatorId());
+                sourceId.add(game.getSourceId());
+                addNonNegativeOrNull(whiteTeamId, game.getWhiteTeamId());
+                addNonNegativeOrNull(blackTeamId, game.getBlackTeamId());
+                playedDate.add(game.getPlayedDate().isUnset() ? null : game.getPlayedDate().toPrettyString());
+                result.add(game.getResult().toString());
+                addPositiveOrNull(round, game.getRound());
+                addPositiveOrNull(subRound, game.getSubRound());
+                addPositiveOrNull(whiteElo, game.getWhiteElo());
+                addPositiveOrNull(blackElo, game.getBlackElo());
+                addNonNegativeOrNull(chess960, game.getHeader().getChess960StartPosition());
+                eco.add(game.getEco().isSet() ? game.getEco().toString() : null);
+                lineEvaluation.add(game.getLineEvaluation() == NAG.NONE ? null : game.getLineEvaluation().toUnicodeString());
+                medalMask.add(Medal.encode(game.getHeader().getMedals()));
+                flags.add(GameHeaderFlags.encodeFlags(game.getHeader().getFlags()));
+                numMoves.add(game.getNoMoves());
+                gameVersion.add(game.getGameVersion());
+                creationTimestamp.add(game.getCreationTimestamp());
+                lastChangedTimestamp.add(game.getLastChangedTimestamp());
+                addNonNegativeOrNull(gameTagId, game.getGameTagId());
+                gamesWriter.endRow();
+                gamesExported++;
+
+                if (!game.isGuidingText()) {
+                    int gameId = game.getId();
+                    ByteBuffer movesBlob;
+                    try {
+                        movesBlob = game.getMovesBlob();
+                    } catch (RuntimeException e) {
+                        log.warn("Failed to get the moves of game " + gameId, e);
+                        continue;
+                    }
+                    pendingMoves.addLast(workers.submit(() -> decodeMainLine(gameId, movesBlob)));
+                    if (pendingMoves.size() >= numThreads * MAX_PENDING_GAMES_PER_THREAD) {
+                        writeMoves(pendingMoves.removeFirst(), movesWriter, moveGameId, ply, hashLo, hashHi, move, fen);
+                    }
+                }
+            }
+            while (!pendingMoves.isEmpty()) {
+                writeMoves(pendingMoves.removeFirst(), movesWriter, moveGameId, ply, hashLo, hashHi, move, fen);
+            }
+            log.info("Exported " + gamesExported + " games and " + movesExported + " positions");
+        }
+    }
+
+    private void writeMoves(Future<MovesRows> future, ArrowFileWriter writer,
+                            ArrowColumn.IntColumn gameId, ArrowColumn.IntColumn ply,
+                            ArrowColumn.LongColumn hashLo, ArrowColumn.LongColumn hashHi,
+                            ArrowColumn.StringColumn move, ArrowColumn.StringColumn fen) throws IOException {
+        MovesRows rows;
+        try {
+            rows = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding moves", e);
+        } catch (ExecutionException e) {
+            log.warn("Failed to decode moves", e.getCause());
+            return;
+        }
+        if (rows == null) {
+            return;
+        }
+        for (int i = 0; i < rows.count; i++) {
+            gameId.add(rows.gameId);
+            ply.add(rows.plies[i]);
+            hashLo.add(rows.hashLo[i]);
+            hashHi.add(rows.hashHi[i]);
+            move.add(rows.moves[i]);
+            fen.add(rows.fens[i]);
+            writer.endRow();
+            movesExported++;
+        }
+    }
+
+    private static void addPositiveOrNull(ArrowColumn.IntColumn column, int value) {
+        if (value > 0) {
+            column.add(value);
+        } else {
+            column.addNull();
+        }
+    }
+
+    private static void addNonNegativeOrNull(ArrowColumn.IntColumn column, int value) {
+        if (value >= 0) {
+            column.add(value);
+        } else {
+            column.addNull();
+        }
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+}
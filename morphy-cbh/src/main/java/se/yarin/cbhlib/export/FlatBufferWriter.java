@@ -0,0 +1,257 @@
+package se.yarin.cbhlib.export;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A minimal FlatBuffers serializer, supporting just what's needed for the Arrow IPC metadata:
+ * tables with scalar and offset fields, strings, vectors of tables and vectors of structs.
+ *
+ * Unlike the official builder, the buffer is written front to back. An object is written
+ * after all objects referring to it, since offsets to tables, strings and vectors must point forward.
+ * The vtable of a table is written just before the table itself.
+ */
+final class FlatBufferWriter {
+    private FlatBufferWriter() { }
+
+    interface Node { }
+
+    static final class Table implements Node {
+        private final List<TableField> fields = new ArrayList<>();
+
+        Table addByte(int id, int value) {
+            return add(id, 1, value, null);
+        }
+
+        Table addBoolean(int id, boolean value) {
+            return add(id, 1, value ? 1 : 0, null);
+        }
+
+        Table addShort(int id, int value) {
+            return add(id, 2, value, null);
+        }
+
+        Table addInt(int id, int value) {
+            return add(id, 4, value, null);
+        }
+
+        Table addLong(int id, long value) {
+            return add(id, 8, value, null);
+        }
+
+        Table addOffset(int id, Node node) {
+            return add(id, 4, 0, node);
+        }
+
+        private Table add(int id, int size, long value, Node node) {
+            fields.add(new TableField(id, size, value, node));
+            return this;
+        }
+    }
+
+    private static final class TableField {
+        private final int id;
+        private final int size;
+        private final long value;
+        private final Node node;
+
+        private TableField(int id, int size, long value, Node node) {
+            this.id = id;
+            this.size = size;
+            this.value = value;
+            this.node = node;
+        }
+    }
+
+    static final class StringNode implements Node {
+        private final byte[] bytes;
+
+        StringNode(String value) {
+            this.bytes = value.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    static final class TableVector implements Node {
+        private final List<Table> tables;
+
+        TableVector(List<Table> tables) {
+            this.tables = tables;
+        }
+    }
+
+    /**
+     * A vector of structs. All structs used in the Arrow metadata only contain 8 byte aligned fields.
+     */
+    static final class StructVector implements Node {
+        private final int count;
+        private final ByteBuffer data;
+
+        /**
+         * @param count the number of structs
+         * @param data the serialized structs, in little endian order
+         */
+        StructVector(int count, ByteBuffer data) {
+            this.count = count;
+            this.data = data;
+        }
+    }
+
+    private static final class Reference {
+        private final int position;
+        private final Node node;
+
+        private Reference(int position, Node node) {
+            this.position = position;
+            this.node = node;
+        }
+    }
+
+    /**
+     * Serializes a flatbuffer
+     * @param root the root table
+     * @return the buffer, positioned at the start and with the limit at the end of the serialized data
+     */
+    static ByteBuffer serialize(Table root) {
+        Serializer serializer = new Serializer();
+        return serializer.serialize(root);
+    }
+
+    private static final class Serializer {
+        private ByteBuffer buf = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+        private final Deque<Reference> pending = new ArrayDeque<>();
+
+        ByteBuffer serialize(Table root) {
+            ensureCapacity(4);
+            buf.putInt(0);
+            pending.add(new Reference(0, root));
+            while (!pending.isEmpty()) {
+                Reference reference = pending.removeFirst();
+                int position = write(reference.node);
+                buf.putInt(reference.position, position - reference.position);
+            }
+            buf.flip();
+            return buf;
+        }
+
+        private int write(Node node) {
+            if (node instanceof Table) {
+                return writeTable((Table) node);
+            }
+            if (node instanceof StringNode) {
+                byte[] bytes = ((StringNode) node).bytes;
+                align(4, 0);
+                ensureCapacity(4 + bytes.length + 1);
+                int position = buf.position();
+                buf.putInt(bytes.length);
+                buf.put(bytes);
+                buf.put((byte) 0);
+                return position;
+            }
+            if (node instanceof TableVector) {
+                List<Table> tables = ((TableVector) node).tables;
+                align(4, 0);
+                ensureCapacity(4 + 4 * tables.size());
+                int position = buf.position();
+                buf.putInt(tables.size());
+                for (Table table : tables) {
+                    pending.add(new Reference(buf.position(), table));
+                    buf.putInt(0);
+                }
+                return position;
+            }
+            if (node instanceof StructVector) {
+                StructVector vector = (StructVector) node;
+                // The structs themselves must be 8 byte aligned, not the length prefix
+                align(8, 4);
+                ensureCapacity(4 + vector.data.remaining());
+                int position = buf.position();
+                buf.putInt(vector.count);
+                buf.put(vector.data.duplicate());
+                return position;
+            }
+            throw new IllegalArgumentException("Unknown node type: " + node.getClass());
+        }
+
+        private int writeTable(Table table) {
+            int numFields = 0, alignment = 4;
+            for (TableField field : table.fields) {
+                numFields = Math.max(numFields, field.id + 1);
+                alignment = Math.max(alignment, field.size);
+            }
+
+            // Lay out the fields by decreasing size, after the vtable offset
+            int[] offsets = new int[table.fields.size()];
+            int tableSize = 4;
+            for (int size = 8; size >= 1; size /= 2) {
+                for (int i = 0; i < table.fields.size(); i++) {
+                    if (table.fields.get(i).size == size) {
+                        tableSize = (tableSize + size - 1) / size * size;
+                        offsets[i] = tableSize;
+                        tableSize += size;
+                    }
+                }
+            }
+
+            int vtableSize = 4 + 2 * numFields;
+            align(2, 0);
+            ensureCapacity(vtableSize + alignment + tableSize);
+            int vtablePosition = buf.position();
+            buf.putShort((short) vtableSize);
+            buf.putShort((short) tableSize);
+            for (int id = 0; id < numFields; id++) {
+                buf.putShort((short) 0);
+            }
+            for (int i = 0; i < table.fields.size(); i++) {
+                buf.putShort(vtablePosition + 4 + 2 * table.fields.get(i).id, (short) offsets[i]);
+            }
+
+            align(alignment, 0);
+            int tablePosition = buf.position();
+            buf.putInt(tablePosition - vtablePosition);
+            for (int i = tablePosition + 4; i < tablePosition + tableSize; i++) {
+                buf.put((byte) 0);
+            }
+            for (int i = 0; i < table.fields.size(); i++) {
+                TableField field = table.fields.get(i);
+                int position = tablePosition + offsets[i];
+                if (field.node != null) {
+                    pending.add(new Reference(position, field.node));
+                    continue;
+                }
+                switch (field.size) {
+                    case 1 -> buf.put(position, (byte) field.value);
+                    case 2 -> buf.putShort(position, (short) field.value);
+                    case 4 -> buf.putInt(position, (int) field.value);
+                    case 8 -> buf.putLong(position, field.value);
+                    default -> throw new IllegalStateException("Invalid field size: " + field.size);
+                }
+            }
+            return tablePosition;
+        }
+
+        /**
+         * Pads the buffer so that the current position plus the given offset is aligned
+         */
+        private void align(int alignment, int offset) {
+            ensureCapacity(alignment);
+            while ((buf.position() + offset) % alignment != 0) {
+                buf.put((byte) 0);
+            }
+        }
+
+        private void ensureCapacity(int bytes) {
+            if (buf.remaining() < bytes) {
+                ByteBuffer newBuf = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + bytes))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                buf.flip();
+                newBuf.put(buf);
+                buf = newBuf;
+            }
+        }
+    }
+}
@@ -111,6 +111,19 @@ public class ExtendedGameHeaderBase implements ExtendedGameHeaderSerializer {
         return storage.get(gameId);
     }
 
+    /**
+     * Gets a range of extended game headers from the base.
+     * The headers are read together, which is much faster than getting them one by one.
+     * This method may be called from multiple threads at the same time.
+     * @param startId the id of the first extended game header to get (inclusive)
+     * @param endId the id of the last extended game header to get (exclusive)
+     * @return the extended game headers in the range; fewer than requested if the end of the base was reached
+     */
+    public List<ExtendedGameHeader> getRange(int startId, int endId) {
+        int end = Math.min(endId, size() + 1);
+        return startId < end ? storage.getRange(startId, end) : new ArrayList<>();
+    }
+
     /**
      * Updates an existing game header
      * @param gameId the id of the extended game header to update
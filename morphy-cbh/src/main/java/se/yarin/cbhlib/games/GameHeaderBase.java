@@ -5,6 +5,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.yarin.cbhlib.util.ByteBufferUtil;
 import se.yarin.cbhlib.util.CBUtil;
+import se.yarin.cbhlib.util.SerializationBuffer;
 import se.yarin.chess.*;
 import se.yarin.chess.Date;
 
@@ -114,6 +115,19 @@ public class GameHeaderBase implements GameHeaderSerializer {
         return storage.get(gameHeaderId);
     }
 
+    /**
+     * Gets a range of game headers from the base.
+     * The headers are read together, which is much faster than getting them one by one.
+     * This method may be called from multiple threads at the same time.
+     * @param startId the id of the first game header to get (inclusive)
+     * @param endId the id of the last game header to get (exclusive)
+     * @return the game headers in the range; fewer than requested if the end of the base was reached
+     */
+    public List<GameHeader> getRange(int startId, int endId) {
+        int end = Math.min(endId, getNextGameId());
+        return startId < end ? storage.getRange(startId, end) : new ArrayList<>();
+    }
+
 
     /**
      * Returns an Iterable over all game headers in the database
@@ -407,8 +421,18 @@ public class GameHeaderBase implements GameHeaderSerializer {
         storage.close();
     }
 
+    /**
+     * Serializes a game header into the current thread's {@link SerializationBuffer}.
+     * The returned buffer must be consumed before anything else is serialized on the same thread.
+     * @param header the game header to serialize
+     * @return a shared buffer containing the serialized game header
+     */
     public ByteBuffer serialize(GameHeader header) {
-            ByteBuffer buf = ByteBuffer.allocate(getSerializedGameHeaderLength());
+        return SerializationBuffer.serializeShared(buf -> serialize(header, buf));
+    }
+
+    private void serialize(GameHeader header, ByteBuffer buf) {
+        int end = buf.position() + getSerializedGameHeaderLength();
         int type = 0;
         if (header.isGame()) type += 1;
         if (header.isGuidingText()) type += 2;
@@ -425,7 +449,10 @@ public class GameHeaderBase implements GameHeaderSerializer {
             ByteBufferUtil.putByte(buf, header.getRound());
             ByteBufferUtil.putByte(buf, header.getSubRound());
             ByteBufferUtil.putIntB(buf, GameHeaderFlags.encodeFlags(header.getFlags()));
-            buf.position(buf.limit());
+            // The buffer is reused, so the padding must be cleared
+            while (buf.position() < end) {
+                buf.put((byte) 0);
+            }
         } else {
             ByteBufferUtil.putIntB(buf, header.getAnnotationOffset());
             ByteBufferUtil.put24BitB(buf, header.getWhitePlayerId());
@@ -487,9 +514,7 @@ public class GameHeaderBase implements GameHeaderSerializer {
             ByteBufferUtil.putByte(buf, header.getNoMoves());
         }
 
-        assert buf.position() == buf.limit();
-        buf.flip();
-        return buf;
+        assert buf.position() == end;
     }
 
     /**
@@ -3,6 +3,12 @@ package se.yarin.cbhlib.games;
 import java.nio.ByteBuffer;
 
 public interface GameHeaderSerializer {
+    /**
+     * Serializes a game header. The returned buffer may be reused by the serializer,
+     * so it must be consumed before the next game header is serialized.
+     * @param gameHeader the game header to serialize
+     * @return a buffer containing the serialized game header
+     */
     ByteBuffer serialize(GameHeader gameHeader);
     GameHeader deserialize(int gameId, ByteBuffer buffer);
     int getSerializedGameHeaderLength();
@@ -14,7 +14,14 @@ import se.yarin.cbhlib.storage.EntityStorageException;
 import se.yarin.chess.*;
 import se.yarin.chess.annotations.Annotation;
 
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 /**
  * Contains methods for converting game data from the format as stored in {@link se.yarin.cbhlib.Database}
@@ -39,6 +46,66 @@ public class GameLoader {
         this.database = database;
     }
 
+    /**
+     * Creates mutable models of the game headers of multiple games.
+     * All entities referenced by the games are first fetched together from each entity base,
+     * which is much faster than resolving them game by game when there are many games.
+     * @param games the games to get the header models for
+     * @return mutable game header models, in the same order as the games
+     * @throws ChessBaseInvalidDataException if an entity couldn't be resolved
+     */
+    public List<GameHeaderModel> getGameHeaderModels(@NonNull List<Game> games) throws ChessBaseInvalidDataException {
+        BatchEntities entities = new BatchEntities();
+        entities.players = getEntities(database.getPlayerBase(), games, game -> List.of(
+                game.getHeader().getWhitePlayerId(), game.getHeader().getBlackPlayerId()));
+        entities.annotators = getEntities(database.getAnnotatorBase(), games, game -> List.of(game.getHeader().getAnnotatorId()));
+        entities.sources = getEntities(database.getSourceBase(), games, game -> List.of(game.getHeader().getSourceId()));
+        entities.tournaments = getEntities(database.getTournamentBase(), games, game -> List.of(game.getHeader().getTournamentId()));
+        entities.teams = getEntities(database.getTeamBase(), games, game -> List.of(
+                game.getExtendedHeader().getWhiteTeamId(), game.getExtendedHeader().getBlackTeamId()));
+        entities.gameTags = getEntities(database.getGameTagBase(), games, game -> List.of(game.getExtendedHeader().getGameTagId()));
+
+        ArrayList<GameHeaderModel> models = new ArrayList<>(games.size());
+        for (Game game : games) {
+            models.add(getGameHeaderModel(game, entities));
+        }
+        return models;
+    }
+
+    /**
+     * The entities referenced by a batch of games, by id
+     */
+    private static class BatchEntities {
+        private Map<Integer, PlayerEntity> players;
+        private Map<Integer, AnnotatorEntity> annotators;
+        private Map<Integer, SourceEntity> sources;
+        private Map<Integer, TournamentEntity> tournaments;
+        private Map<Integer, TeamEntity> teams;
+        private Map<Integer, GameTagEntity> gameTags;
+    }
+
+    private <T extends Entity & Comparable<T>> Map<Integer, T> getEntities(
+            EntityBase<T> base, List<Game> games, Function<Game, List<Integer>> idsInGame) {
+        Set<Integer> ids = new HashSet<>();
+        for (Game game : games) {
+            if (!game.getHeader().isGuidingText()) {
+                for (int id : idsInGame.apply(game)) {
+                    if (id >= 0) {
+                        ids.add(id);
+                    }
+                }
+            }
+        }
+        // The entities are kept here since they may not all fit in the entity cache
+        Map<Integer, T> entities = new HashMap<>();
+        for (T entity : base.getAll(ids)) {
+            if (entity != null) {
+                entities.put(entity.getId(), entity);
+            }
+        }
+        return entities;
+    }
+
     /**
      * Creates a mutable model of the game header
      * @param game the game to get the header model for
@@ -46,6 +113,10 @@ public class GameLoader {
      * @throws ChessBaseInvalidDataException if an entity couldn't be resolved
      */
     public GameHeaderModel getGameHeaderModel(@NonNull Game game) throws ChessBaseInvalidDataException {
+        return getGameHeaderModel(game, null);
+    }
+
+    private GameHeaderModel getGameHeaderModel(Game game, BatchEntities entities) throws ChessBaseInvalidDataException {
         GameHeader header = game.getHeader();
         ExtendedGameHeader extendedHeader = game.getExtendedHeader();
 
@@ -55,14 +126,22 @@ public class GameLoader {
             throw new IllegalArgumentException("Can't get game header model for a guiding text (id " + header.getId() + ")");
         }
 
-        PlayerEntity whitePlayer = resolveEntity(database.getPlayerBase(), "white player", header.getWhitePlayerId(), game, false);
-        PlayerEntity blackPlayer = resolveEntity(database.getPlayerBase(), "black player", header.getBlackPlayerId(), game, false);
-        AnnotatorEntity annotator = resolveEntity(database.getAnnotatorBase(), "annotator", header.getAnnotatorId(), game, false);
-        SourceEntity source = resolveEntity(database.getSourceBase(), "source", header.getSourceId(), game, false);
-        TournamentEntity tournament = resolveEntity(database.getTournamentBase(), "tournament", header.getTournamentId(), game, false);
-        TeamEntity whiteTeam = resolveEntity(database.getTeamBase(), "white team", extendedHeader.getWhiteTeamId(), game, true);
-        TeamEntity blackTeam = resolveEntity(database.getTeamBase(), "black team", extendedHeader.getBlackTeamId(), game, true);
-        GameTagEntity gameTag = resolveEntity(database.getGameTagBase(), "game tag", extendedHeader.getGameTagId(), game, true);
+        PlayerEntity whitePlayer = resolveEntity(database.getPlayerBase(), entities == null ? null : entities.players,
+                "white player", header.getWhitePlayerId(), game, false);
+        PlayerEntity blackPlayer = resolveEntity(database.getPlayerBase(), entities == null ? null : entities.players,
+                "black player", header.getBlackPlayerId(), game, false);
+        AnnotatorEntity annotator = resolveEntity(database.getAnnotatorBase(), entities == null ? null : entities.annotators,
+                "annotator", header.getAnnotatorId(), game, false);
+        SourceEntity source = resolveEntity(database.getSourceBase(), entities == null ? null : entities.sources,
+                "source", header.getSourceId(), game, false);
+        TournamentEntity tournament = resolveEntity(database.getTournamentBase(), entities == null ? null : entities.tournaments,
+                "tournament", header.getTournamentId(), game, false);
+        TeamEntity whiteTeam = resolveEntity(database.getTeamBase(), entities == null ? null : entities.teams,
+                "white team", extendedHeader.getWhiteTeamId(), game, true);
+        TeamEntity blackTeam = resolveEntity(database.getTeamBase(), entities == null ? null : entities.teams,
+                "black team", extendedHeader.getBlackTeamId(), game, true);
+        GameTagEntity gameTag = resolveEntity(database.getGameTagBase(), entities == null ? null : entities.gameTags,
+                "game tag", extendedHeader.getGameTagId(), game, true);
 
         assert whitePlayer != null;
         assert blackPlayer != null;
@@ -222,11 +301,11 @@ public class GameLoader {
                 TeamEntity oldBlackTeam = game.getBlackTeam();
                 GameTagEntity oldGameTag = game.getGameTag();
 
-                TeamEntity whiteTeam = oldWhiteTeam != null ? resolveOrCreateEntity(0,
+                TeamEntity whiteTeam = oldWhiteTeam != null ? resolveOrCreateEntity(null,
                         oldWhiteTeam.withNewId(0), database.getTeamBase()) : null;
-                TeamEntity blackTeam = oldBlackTeam != null ? resolveOrCreateEntity(0,
+                TeamEntity blackTeam = oldBlackTeam != null ? resolveOrCreateEntity(null,
                         oldBlackTeam.withNewId(0), database.getTeamBase()) : null;
-                GameTagEntity gameTag = oldGameTag != null ? resolveOrCreateEntity(0,
+                GameTagEntity gameTag = oldGameTag != null ? resolveOrCreateEntity(null,
                         oldGameTag.withNewId(0), database.getGameTagBase()) : null;
 
                 builder.whiteTeamId(whiteTeam == null ? -1 : whiteTeam.getId());
@@ -273,11 +352,11 @@ public class GameLoader {
         // If the id field is set, use that one. Otherwise use the string field.
         // If no entity exists with the same name, create a new one.
         try {
-            whiteTeam = resolveOrCreateEntity(sameDb ? (Integer) header.getField(WHITE_TEAM_ID) : 0,
+            whiteTeam = resolveOrCreateEntity(sameDb ? (Integer) header.getField(WHITE_TEAM_ID) : null,
                     new TeamEntity(defaultName(header.getWhiteTeam())), database.getTeamBase());
-            blackTeam = resolveOrCreateEntity(sameDb ? (Integer) header.getField(BLACK_TEAM_ID) : 0,
+            blackTeam = resolveOrCreateEntity(sameDb ? (Integer) header.getField(BLACK_TEAM_ID) : null,
                     new TeamEntity(defaultName(header.getBlackTeam())), database.getTeamBase());
-            gameTag = resolveOrCreateEntity(sameDb ? (Integer) header.getField(GAME_TAG_ID) : 0,
+            gameTag = resolveOrCreateEntity(sameDb ? (Integer) header.getField(GAME_TAG_ID) : null,
                     new GameTagEntity(defaultName(header.getGameTag())), database.getGameTagBase());
         } catch (IllegalArgumentException e) {
             throw new ChessBaseInvalidDataException("Failed to create ExtendedGameHeader entry due to invalid entity data reference", e);
@@ -312,20 +391,20 @@ public class GameLoader {
             // If no entity exists with the same name, create a new one.
             try {
                 if (!game.isGuidingText()) {
-                    PlayerEntity white = resolveOrCreateEntity(0,
+                    PlayerEntity white = resolveOrCreateEntity(null,
                             PlayerEntity.fromFullName(game.getWhite().getFullName()), database.getPlayerBase());
-                    PlayerEntity black = resolveOrCreateEntity(0,
+                    PlayerEntity black = resolveOrCreateEntity(null,
                             PlayerEntity.fromFullName(game.getBlack().getFullName()), database.getPlayerBase());
 
                     builder.whitePlayerId(white.getId());
                     builder.blackPlayerId(black.getId());
                 }
 
-                TournamentEntity tournament = resolveOrCreateEntity(0,
+                TournamentEntity tournament = resolveOrCreateEntity(null,
                         new TournamentEntity(game.getTournament().getTitle(), game.getTournament().getDate()), database.getTournamentBase());
-                AnnotatorEntity annotator = resolveOrCreateEntity(0,
+                AnnotatorEntity annotator = resolveOrCreateEntity(null,
                         new AnnotatorEntity(game.getAnnotator().getName()), database.getAnnotatorBase());
-                SourceEntity source = resolveOrCreateEntity(0,
+                SourceEntity source = resolveOrCreateEntity(null,
                         new SourceEntity(game.getSource().getTitle()), database.getSourceBase());
 
                 builder.tournamentId(tournament.getId());
@@ -353,11 +432,11 @@ public class GameLoader {
         SourceEntity source;
 
         try {
-            tournament = resolveOrCreateEntity(0,
+            tournament = resolveOrCreateEntity(null,
                     new TournamentEntity(defaultName(header.getTournament()), new Date(header.getTournamentYear())), database.getTournamentBase());
-            annotator = resolveOrCreateEntity(0,
+            annotator = resolveOrCreateEntity(null,
                     new AnnotatorEntity(defaultName(header.getAnnotator())), database.getAnnotatorBase());
-            source = resolveOrCreateEntity(0,
+            source = resolveOrCreateEntity(null,
                     new SourceEntity(defaultName(header.getSource())), database.getSourceBase());
         } catch (IllegalArgumentException e) {
             throw new ChessBaseInvalidDataException("Failed to create GameHeader entry due to invalid entity data reference", e);
@@ -401,15 +480,15 @@ public class GameLoader {
         // If the id field is set, use that one. Otherwise use the string field.
         // If no entity exists with the same name, create a new one.
         try {
-            white = resolveOrCreateEntity(sameDb ? (Integer) header.getField(WHITE_ID) : 0,
+            white = resolveOrCreateEntity(sameDb ? (Integer) header.getField(WHITE_ID) : null,
                     PlayerEntity.fromFullName(defaultName(header.getWhite())), database.getPlayerBase());
-            black = resolveOrCreateEntity(sameDb ? (Integer) header.getField(BLACK_ID) : 0,
+            black = resolveOrCreateEntity(sameDb ? (Integer) header.getField(BLACK_ID) : null,
                     PlayerEntity.fromFullName(defaultName(header.getBlack())), database.getPlayerBase());
-            tournament = resolveOrCreateEntity(sameDb ? (Integer) header.getField(EVENT_ID) : 0,
+            tournament = resolveOrCreateEntity(sameDb ? (Integer) header.getField(EVENT_ID) : null,
                     new TournamentEntity(defaultName(header.getEvent()), Date.today()), database.getTournamentBase());
-            annotator = resolveOrCreateEntity(sameDb ? (Integer) header.getField(ANNOTATOR_ID) : 0,
+            annotator = resolveOrCreateEntity(sameDb ? (Integer) header.getField(ANNOTATOR_ID) : null,
                     new AnnotatorEntity(defaultName(header.getAnnotator())), database.getAnnotatorBase());
-            source = resolveOrCreateEntity(sameDb ? (Integer) header.getField(SOURCE_ID) : 0,
+            source = resolveOrCreateEntity(sameDb ? (Integer) header.getField(SOURCE_ID) : null,
                     new SourceEntity(defaultName(header.getSourceTitle())), database.getSourceBase());
         } catch (IllegalArgumentException e) {
            throw new ChessBaseInvalidDataException("Failed to create GameHeader entry due to invalid entity data reference", e);
@@ -502,11 +581,16 @@ public class GameLoader {
         return name == null ? "" : name;
     }
 
-    private <T extends Entity & Comparable<T>> T resolveEntity(EntityBase<T> base, String entityType, int id, Game game, boolean allowNone) throws ChessBaseInvalidDataException {
+    /**
+     * Resolves an entity referenced by a game
+     * @param entities if not null, the entities to resolve from instead of the entity base
+     */
+    private <T extends Entity & Comparable<T>> T resolveEntity(EntityBase<T> base, Map<Integer, T> entities,
+                                                             String entityType, int id, Game game, boolean allowNone) throws ChessBaseInvalidDataException {
         if (id == -1 && allowNone) {
             return null;
         }
-        T entity = base.get(id);
+        T entity = entities != null ? entities.get(id) : base.get(id);
         if (entity == null) {
             throw new ChessBaseInvalidDataException(String.format("Invalid %s in game %d (id %d does not exist)", entityType, game.getId(), id));
         }
@@ -515,7 +599,7 @@ public class GameLoader {
 
     <T extends Entity & Comparable<T>> T resolveOrCreateEntity(Integer id, T key, EntityBase<T> base) {
         T entity;
-        if (id != null && id > 0) {
+        if (id != null && id >= 0) {
             entity = base.get(id);
             if (entity == null) {
                 throw new IllegalArgumentException("No entity with id " + id + " in " + base.getClass().getSimpleName());
@@ -2,7 +2,9 @@ package se.yarin.cbhlib.games.search;
 
 import se.yarin.cbhlib.Database;
 import se.yarin.cbhlib.Game;
+import se.yarin.cbhlib.entities.AnnotatorBase;
 import se.yarin.cbhlib.entities.AnnotatorEntity;
+import se.yarin.cbhlib.entities.EntityNameIndex;
 import se.yarin.cbhlib.games.SerializedGameHeaderFilter;
 import se.yarin.cbhlib.util.ByteBufferUtil;
 
@@ -13,16 +15,58 @@ import java.util.stream.Collectors;
 
 public class AnnotatorFilter extends SearchFilterBase implements SerializedGameHeaderFilter {
 
-    private final List<AnnotatorEntity> annotators;
-    private final HashSet<Integer> annotatorIds;
+    private final String searchString;
+    private List<AnnotatorEntity> annotators;
+    private HashSet<Integer> annotatorIds;
 
     public AnnotatorFilter(Database database, AnnotatorEntity annotator) {
         super(database);
 
+        this.searchString = "";
         this.annotators = Arrays.asList(annotator);
         this.annotatorIds = annotators.stream().map(AnnotatorEntity::getId).collect(Collectors.toCollection(HashSet::new));
     }
 
+    /**
+     * Creates a filter matching games by annotators with a name containing the search string, ignoring case and diacritics
+     * @param database the database to search in
+     * @param searchString the string to search for
+     */
+    public AnnotatorFilter(Database database, String searchString) {
+        super(database);
+
+        this.searchString = searchString;
+    }
+
+    @Override
+    public void initSearch() {
+        if (this.annotators == null) {
+            // The name index returns a superset of the matching annotators
+            String folded = EntityNameIndex.fold(searchString);
+            AnnotatorBase annotatorBase = getDatabase().getAnnotatorBase();
+            this.annotators = annotatorBase.stream(annotatorBase.getNameIndex().substringSearch(searchString))
+                    .filter(annotator -> EntityNameIndex.fold(annotator.getName()).contains(folded))
+                    .collect(Collectors.toList());
+            this.annotatorIds = annotators.stream().map(AnnotatorEntity::getId).collect(Collectors.toCollection(HashSet::new));
+        }
+    }
+
+    @Override
+    public int countEstimate() {
+        if (annotators == null) {
+            return SearchFilter.UNKNOWN_COUNT_ESTIMATE;
+        }
+        return annotators.stream().mapToInt(AnnotatorEntity::getCount).sum();
+    }
+
+    @Override
+    public int firstGameId() {
+        if (annotators == null) {
+            return 1;
+        }
+        return annotators.stream().mapToInt(AnnotatorEntity::getFirstGameId).min().orElse(1);
+    }
+
     @Override
     public boolean matches(Game game) {
         return annotators.contains(game.getAnnotator());
@@ -8,7 +8,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.yarin.cbhlib.Database;
 import se.yarin.cbhlib.Game;
+import se.yarin.cbhlib.exceptions.OperationCancelledException;
 import se.yarin.cbhlib.games.*;
+import se.yarin.cbhlib.operations.CancellationToken;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -30,12 +32,23 @@ public class GameSearcher {
     private final Database database;
     private final ArrayList<SearchFilter> filters;
     private boolean hasSearched = false;
+    private boolean filtersInitialized = false;
+    private CancellationToken cancellationToken = CancellationToken.NONE;
 
     public GameSearcher(Database database) {
         this.database = database;
         this.filters = new ArrayList<>();
     }
 
+    /**
+     * Sets the token used to cancel the search. When the search has been cancelled, iterating over the hits
+     * throws {@link OperationCancelledException}, even if the remaining games in the database don't match.
+     * @param cancellationToken the token
+     */
+    public void setCancellationToken(@NonNull CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
     /**
      * Performs the actual search. The search is done lazily.
      * This function can only be called once per instance.
@@ -74,8 +87,8 @@ public class GameSearcher {
         // Combine the filters and extract the raw filters that are used in the iterators
         ArrayList<SerializedGameHeaderFilter> serializedFilters = new ArrayList<>();
         ArrayList<SerializedExtendedGameHeaderFilter> serializedExtendedFilters = new ArrayList<>();
+        initFilters();
         for (SearchFilter filter : filters) {
-            filter.initSearch();
             if (filter instanceof SerializedGameHeaderFilter) {
                 serializedFilters.add((SerializedGameHeaderFilter) filter);
             }
@@ -118,6 +131,32 @@ public class GameSearcher {
         return () -> new SearchIterator(headerIterator, extendedHeaderIterator, progressUpdater);
     }
 
+    private void initFilters() {
+        if (!filtersInitialized) {
+            for (SearchFilter filter : filters) {
+                filter.initSearch();
+            }
+            filtersInitialized = true;
+        }
+    }
+
+    /**
+     * Determines, without searching, if it's known that there can't be any hits.
+     * This is the case if one of the filters can't match any game in the database,
+     * for instance if the quick search of an entity filter found no matching entities.
+     * After calling this method, no more filters can be added.
+     * @return true if the search can't return any hits
+     */
+    public boolean hasNoPossibleHits() {
+        initFilters();
+        for (SearchFilter filter : filters) {
+            if (filter.countEstimate() == 0 || filter.firstGameId() > getTotal()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public class SearchIterator implements Iterator<Game> {
         private final Iterator<GameHeader> leftIterator;
         private final Iterator<ExtendedGameHeader> rightIterator;
@@ -169,6 +208,7 @@ public class GameSearcher {
                 return;
             }
             while (!iteratorDone) {
+                cancellationToken.throwIfCancelled();
                 int diff = currentRight == null ? 0 : currentLeft.getId() - currentRight.getId();
                 if (diff < 0) {
                     stepLeft();
@@ -259,7 +299,7 @@ public class GameSearcher {
      * @param filter the filter to add
      */
     public void addFilter(SearchFilter filter) {
-        if (hasSearched) {
+        if (hasSearched || filtersInitialized) {
             throw new IllegalStateException("A search has already started");
         }
         if (filter.getDatabase() != database) {
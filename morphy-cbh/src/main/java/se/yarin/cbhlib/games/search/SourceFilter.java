@@ -2,6 +2,8 @@ package se.yarin.cbhlib.games.search;
 
 import se.yarin.cbhlib.Database;
 import se.yarin.cbhlib.Game;
+import se.yarin.cbhlib.entities.EntityNameIndex;
+import se.yarin.cbhlib.entities.SourceBase;
 import se.yarin.cbhlib.entities.SourceEntity;
 import se.yarin.cbhlib.games.SerializedGameHeaderFilter;
 import se.yarin.cbhlib.util.ByteBufferUtil;
@@ -13,16 +15,58 @@ import java.util.stream.Collectors;
 
 public class SourceFilter extends SearchFilterBase implements SerializedGameHeaderFilter {
 
-    private final List<SourceEntity> sources;
-    private final HashSet<Integer> sourceIds;
+    private final String searchString;
+    private List<SourceEntity> sources;
+    private HashSet<Integer> sourceIds;
 
     public SourceFilter(Database database, SourceEntity source) {
         super(database);
 
+        this.searchString = "";
         this.sources = Arrays.asList(source);
         this.sourceIds = sources.stream().map(SourceEntity::getId).collect(Collectors.toCollection(HashSet::new));
     }
 
+    /**
+     * Creates a filter matching games by sources with a name containing the search string, ignoring case and diacritics
+     * @param database the database to search in
+     * @param searchString the string to search for
+     */
+    public SourceFilter(Database database, String searchString) {
+        super(database);
+
+        this.searchString = searchString;
+    }
+
+    @Override
+    public void initSearch() {
+        if (this.sources == null) {
+            // The name index returns a superset of the matching sources
+            String folded = EntityNameIndex.fold(searchString);
+            SourceBase sourceBase = getDatabase().getSourceBase();
+            this.sources = sourceBase.stream(sourceBase.getNameIndex().substringSearch(searchString))
+                    .filter(source -> EntityNameIndex.fold(source.getTitle()).contains(folded))
+                    .collect(Collectors.toList());
+            this.sourceIds = sources.stream().map(SourceEntity::getId).collect(Collectors.toCollection(HashSet::new));
+        }
+    }
+
+    @Override
+    public int countEstimate() {
+        if (sources == null) {
+            return SearchFilter.UNKNOWN_COUNT_ESTIMATE;
+        }
+        return sources.stream().mapToInt(SourceEntity::getCount).sum();
+    }
+
+    @Override
+    public int firstGameId() {
+        if (sources == null) {
+            return 1;
+        }
+        return sources.stream().mapToInt(SourceEntity::getFirstGameId).min().orElse(1);
+    }
+
     @Override
     public boolean matches(Game game) {
         return sources.contains(game.getSource());
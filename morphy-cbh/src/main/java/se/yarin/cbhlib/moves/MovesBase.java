@@ -122,7 +122,17 @@ public class MovesBase implements BlobSizeRetriever {
      * @throws ChessBaseIOException if there was some IO errors when reading the moves
      */
     public GameMovesModel getMoves(long ofs, int gameId) throws ChessBaseInvalidDataException {
-        ByteBuffer blob = storage.readBlob(ofs);
+        return decodeMoves(storage.readBlob(ofs), gameId);
+    }
+
+    /**
+     * Decodes the moves of a game from a blob, as returned by {@link #getMovesBlob(long)}.
+     * This doesn't access the storage, so it's safe to call from multiple threads.
+     * @param blob the serialized moves of the game
+     * @param gameId the id of the game to decode; only used in logging statements
+     * @return a model of the game
+     */
+    public GameMovesModel decodeMoves(ByteBuffer blob, int gameId) throws ChessBaseInvalidDataException {
         try {
             return movesSerializer.deserializeMoves(blob, validateDecodedMoves, gameId);
         } catch (ChessBaseMoveDecodingException e) {
@@ -152,7 +162,7 @@ public class MovesBase implements BlobSizeRetriever {
      * @throws ChessBaseIOException if there was some IO errors when storing the moves
      */
     public long putMoves(long ofs, GameMovesModel model) {
-        ByteBuffer buf = movesSerializer.serializeMoves(model, resolveEncodingMode(model));
+        ByteBuffer buf = movesSerializer.serializeMovesShared(model, resolveEncodingMode(model));
         return putMovesBlob(ofs, buf);
     }
 
@@ -185,7 +195,7 @@ public class MovesBase implements BlobSizeRetriever {
     }
 
     public int preparePutBlob(long ofs, GameMovesModel model) {
-        ByteBuffer buf = movesSerializer.serializeMoves(model, resolveEncodingMode(model));
+        ByteBuffer buf = movesSerializer.serializeMovesShared(model, resolveEncodingMode(model));
         int oldGameSize = getBlobSize(storage.readBlob(ofs));
         int newGameSize = getBlobSize(buf);
         if (newGameSize <= oldGameSize) {
@@ -200,10 +210,7 @@ public class MovesBase implements BlobSizeRetriever {
         if (overrideEncodingMode >= 0) {
             return overrideEncodingMode;
         }
-        if (model.root().position().isRegularChess()) {
-            return 0;
-        }
-        return 10;
+        return MovesSerializer.defaultEncodingMode(model);
     }
 
     public void close() throws IOException {
@@ -8,6 +8,7 @@ import org.slf4j.LoggerFactory;
 import se.yarin.cbhlib.util.ByteBufferBitReader;
 import se.yarin.cbhlib.util.ByteBufferBitWriter;
 import se.yarin.cbhlib.util.ByteBufferUtil;
+import se.yarin.cbhlib.util.SerializationBuffer;
 import se.yarin.chess.*;
 
 import java.nio.BufferUnderflowException;
@@ -45,21 +46,38 @@ public final class MovesSerializer {
         this.logDetailedErrors = logDetailedErrors;
     }
 
+    /**
+     * Serializes the moves of a game
+     * @param model the moves to serialize
+     * @return a new buffer containing the serialized moves
+     */
     public ByteBuffer serializeMoves(@NonNull GameMovesModel model) {
-        // TODO: All serialize method should probably not return a ByteBuffer but write to an existing one
-        if (model.root().position().isRegularChess()) {
-            return serializeMoves(model, 0);
-        } else {
-            // Chess960 requires a special encoding
-            return serializeMoves(model, 10);
-        }
+        return serializeMoves(model, defaultEncodingMode(model));
     }
 
     ByteBuffer serializeMoves(@NonNull GameMovesModel model, int encodingMode) {
         validateEncodingMode(encodingMode);
+        return SerializationBuffer.serialize(buf -> serializeMoves(model, encodingMode, buf));
+    }
 
-        ByteBuffer buf = ByteBuffer.allocate(16384);
+    /**
+     * Serializes the moves of a game into the current thread's {@link SerializationBuffer}.
+     * The returned buffer must be consumed before anything else is serialized on the same thread.
+     * @param model the moves to serialize
+     * @param encodingMode the encoding mode to use
+     * @return a shared buffer containing the serialized moves
+     */
+    ByteBuffer serializeMovesShared(@NonNull GameMovesModel model, int encodingMode) {
+        validateEncodingMode(encodingMode);
+        return SerializationBuffer.serializeShared(buf -> serializeMoves(model, encodingMode, buf));
+    }
+
+    static int defaultEncodingMode(@NonNull GameMovesModel model) {
+        // Chess960 requires a special encoding
+        return model.root().position().isRegularChess() ? 0 : 10;
+    }
 
+    private void serializeMoves(GameMovesModel model, int encodingMode, ByteBuffer buf) {
         int flags = encodingMode;
 
         if (model.isSetupPosition()) {
@@ -72,9 +90,10 @@ public final class MovesSerializer {
             throw new IllegalArgumentException("Chess 960 requires encoding mode 10 or 11");
         }
 
+        int start = buf.position();
         buf.put((byte) flags);
         // We don't know the size yet so skip ahead 3 bytes
-        buf.position(4);
+        buf.position(start + 4);
 
         if (model.isSetupPosition()) {
             serializeInitialPosition(model, buf, isChess960);
@@ -88,12 +107,10 @@ public final class MovesSerializer {
             log.warn("Game contained illegal move that couldn't be encoded", e);
         }
 
-        int size = buf.position();
-        buf.position(1);
-        ByteBufferUtil.put24BitB(buf, size);
-        buf.position(size);
-        buf.flip();
-        return buf;
+        int end = buf.position();
+        buf.position(start + 1);
+        ByteBufferUtil.put24BitB(buf, end - start);
+        buf.position(end);
     }
 
     /**
@@ -408,7 +425,10 @@ public final class MovesSerializer {
             // Can only happen if there are more than 32 pieces on the board which we don't support
             throw new IllegalArgumentException("The initial position contains too many pieces");
         }
-        buf.position(mark);
+        // The buffer may be reused, so the unused bytes must be cleared
+        while (buf.position() < mark) {
+            buf.put((byte) 0);
+        }
         if (addExtraInfo) {
             serializeChess960StartingPosition(buf, position.chess960StartPosition());
         }
@@ -127,7 +127,7 @@ public class SimpleMoveEncoder implements MoveEncoder {
                 log.debug(String.format("Decoded move %s with flags %d", move, value >> 14));
             }
             try {
-                current = checkLegalMoves ? current.addMoveUnsafe(move) : current.addMove(move);
+                current = checkLegalMoves ? current.addMove(move) : current.addMoveUnsafe(move);
             } catch (IllegalMoveException e) {
                 throw new ChessBaseMoveDecodingException("Decoded illegal move: " + move);
             }
@@ -0,0 +1,45 @@
+package se.yarin.cbhlib.operations;
+
+import se.yarin.cbhlib.exceptions.OperationCancelledException;
+
+/**
+ * A token used to cancel a long running operation, such as a search or a validation.
+ *
+ * The operation checks the token regularly in its scan loops and stops by throwing
+ * {@link OperationCancelledException} once it has been cancelled. The token may be cancelled from any thread,
+ * and the same token may be shared by multiple operations that should be cancelled together.
+ */
+public class CancellationToken {
+    /**
+     * A token that is never cancelled
+     */
+    public static final CancellationToken NONE = new CancellationToken() {
+        @Override
+        public void cancel() {
+            throw new UnsupportedOperationException("This token can't be cancelled");
+        }
+    };
+
+    private volatile boolean cancelled;
+
+    /**
+     * Cancels the operations using this token
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Checks if the operation should stop
+     * @throws OperationCancelledException if the token has been cancelled
+     */
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new OperationCancelledException();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package se.yarin.cbhlib.operations;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A file where a long running operation periodically saves its state, so that the operation
+ * can be resumed from the latest checkpoint after it's been cancelled or the process crashed.
+ *
+ * The state is first written to a temporary file, which then replaces the checkpoint file,
+ * so a checkpoint is never partially written. Each checkpoint has a key that identifies the operation,
+ * its options and the database; a checkpoint with a different key is ignored when resuming.
+ *
+ * Failing to save or load a checkpoint doesn't fail the operation. The problem is logged,
+ * and the operation continues without the checkpoint.
+ */
+public class CheckpointFile {
+    private static final Logger log = LoggerFactory.getLogger(CheckpointFile.class);
+
+    private static final int MAGIC = 0x4D43504B; // MCPK
+    private static final int VERSION = 1;
+
+    // The default minimum time between two checkpoints
+    public static final long DEFAULT_INTERVAL = 30000;
+
+    public interface StateWriter {
+        void write(DataOutput out) throws IOException;
+    }
+
+    public interface StateReader<T> {
+        T read(DataInput in) throws IOException;
+    }
+
+    @Getter
+    private final File file;
+    private final long interval;
+    private long lastSaveTime;
+
+    public CheckpointFile(@NonNull File file) {
+        this(file, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Creates a checkpoint file
+     * @param file the file to save the checkpoints in
+     * @param interval the minimum time between two checkpoints, in milliseconds
+     */
+    public CheckpointFile(@NonNull File file, long interval) {
+        this.file = file;
+        this.interval = interval;
+        this.lastSaveTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Determines if it's time for a new checkpoint
+     * @return true if at least the checkpoint interval has passed since the last checkpoint was saved
+     */
+    public boolean isDue() {
+        return System.currentTimeMillis() - lastSaveTime >= interval;
+    }
+
+    /**
+     * Saves a checkpoint, replacing the previous checkpoint
+     * @param key identifies the operation and the database
+     * @param writer writes the state of the operation
+     * @return true if the checkpoint was saved
+     */
+    public boolean save(@NonNull String key, @NonNull StateWriter writer) {
+        Path path = file.toPath().toAbsolutePath();
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath), 65536))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(key);
+                writer.write(out);
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lastSaveTime = System.currentTimeMillis();
+            log.debug("Saved checkpoint " + file);
+            return true;
+        } catch (IOException e) {
+            log.warn("Failed to save checkpoint " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Loads the latest checkpoint
+     * @param key identifies the operation and the database; must match the key the checkpoint was saved with
+     * @param reader reads the state of the operation
+     * @return the state of the operation, or null if there is no checkpoint to resume from
+     */
+    public <T> T load(@NonNull String key, @NonNull StateReader<T> reader) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()), 65536))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.warn("Ignoring checkpoint " + file + " since it's not a valid checkpoint file");
+                return null;
+            }
+            String savedKey = in.readUTF();
+            if (!savedKey.equals(key)) {
+                log.warn("Ignoring checkpoint " + file + " since it was saved by a different operation (" + savedKey + ")");
+                return null;
+            }
+            T state = reader.read(in);
+            log.info("Resuming from checkpoint " + file);
+            return state;
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring checkpoint " + file + " since it couldn't be read: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the checkpoint, typically when the operation has completed
+     */
+    public void delete() {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            log.warn("Failed to delete checkpoint " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package se.yarin.cbhlib.pgn;
+
+import se.yarin.cbhlib.exceptions.ChessBaseInvalidDataException;
+
+/**
+ * Thrown when a game in a PGN file can't be parsed
+ */
+public class PgnFormatException extends ChessBaseInvalidDataException {
+    public PgnFormatException(String message) {
+        super(message);
+    }
+
+    public PgnFormatException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,257 @@
+package se.yarin.cbhlib.pgn;
+
+import lombok.NonNull;
+import se.yarin.cbhlib.annotations.SymbolAnnotation;
+import se.yarin.chess.*;
+import se.yarin.chess.annotations.Annotation;
+import se.yarin.chess.annotations.Annotations;
+import se.yarin.chess.annotations.CommentaryAfterMoveAnnotation;
+import se.yarin.chess.annotations.CommentaryBeforeMoveAnnotation;
+import se.yarin.chess.annotations.NAGAnnotation;
+
+import java.util.List;
+
+/**
+ * Formats games as PGN text in export format.
+ *
+ * The text is appended to a {@link StringBuilder} owned by the formatter, which is reused between games
+ * to avoid growing a new buffer for every game. A formatter is therefore not thread safe;
+ * use one formatter per thread when formatting games in parallel.
+ *
+ * Variations, NAGs and commentaries are included. Other annotations (graphical annotations,
+ * clock times etc) have no standard PGN representation and are left out.
+ */
+public class PgnFormatter {
+    // The export format recommends lines no longer than 80 characters
+    private static final int MAX_LINE_LENGTH = 79;
+
+    private final StringBuilder sb = new StringBuilder(4096);
+    // The position in sb where the current line starts
+    private int lineStart;
+    // If true, the next token should not be preceded by a space
+    private boolean noSpace;
+
+    /**
+     * Formats a game as PGN, replacing the text of the previously formatted game
+     * @param game the game to format
+     * @return the PGN text of the game, including the empty line separating it from the next game.
+     * The returned builder is reused when formatting the next game.
+     */
+    public StringBuilder format(@NonNull GameModel game) {
+        sb.setLength(0);
+        formatHeader(game.header(), game.moves());
+        sb.append('\n');
+
+        lineStart = sb.length();
+        noSpace = true;
+        GameMovesModel.Node root = game.moves().root();
+        appendComment(findAnnotation(root.getAnnotations(), CommentaryAfterMoveAnnotation.class));
+        formatLine(root, true);
+        appendToken(resultToken(game.header().getResult()));
+        sb.append("\n\n");
+        return sb;
+    }
+
+    private void formatHeader(GameHeaderModel header, GameMovesModel moves) {
+        Date date = header.getDate();
+        appendTag("Event", header.getEvent(), "?");
+        appendTag("Site", header.getEventSite(), "?");
+        appendTag("Date", date == null ? null : date.toString(), "????.??.??");
+        appendTag("Round", roundText(header.getRound(), header.getSubRound()), "?");
+        appendTag("White", header.getWhite(), "?");
+        appendTag("Black", header.getBlack(), "?");
+        appendTag("Result", resultToken(header.getResult()), null);
+
+        if (header.getWhiteElo() != null && header.getWhiteElo() > 0) {
+            appendTag("WhiteElo", header.getWhiteElo().toString(), null);
+        }
+        if (header.getBlackElo() != null && header.getBlackElo() > 0) {
+            appendTag("BlackElo", header.getBlackElo().toString(), null);
+        }
+        if (header.getEco() != null && header.getEco().isSet()) {
+            // Sub ECO codes are ChessBase specific
+            appendTag("ECO", header.getEco().toString().substring(0, 3), null);
+        }
+        appendTag("WhiteTeam", header.getWhiteTeam(), null);
+        appendTag("BlackTeam", header.getBlackTeam(), null);
+        appendTag("Annotator", header.getAnnotator(), null);
+        if (header.getEventDate() != null && !header.getEventDate().isUnset()) {
+            appendTag("EventDate", header.getEventDate().toString(), null);
+        }
+        if (moves.isSetupPosition()) {
+            appendTag("SetUp", "1", null);
+            appendTag("FEN", Fen.format(moves.root().position(), moves.root().ply()), null);
+        }
+    }
+
+    private void appendTag(String name, String value, String defaultValue) {
+        if (value == null || value.isEmpty()) {
+            if (defaultValue == null) {
+                return;
+            }
+            value = defaultValue;
+        }
+        sb.append('[').append(name).append(" \"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        sb.append("\"]\n");
+    }
+
+    private static String roundText(Integer round, Integer subRound) {
+        if (round == null || round <= 0) {
+            return null;
+        }
+        if (subRound == null || subRound <= 0) {
+            return round.toString();
+        }
+        return round + "." + subRound;
+    }
+
+    private static String resultToken(GameResult result) {
+        if (result == null) {
+            return "*";
+        }
+        switch (result) {
+            case WHITE_WINS:
+            case WHITE_WINS_ON_FORFEIT:
+                return "1-0";
+            case BLACK_WINS:
+            case BLACK_WINS_ON_FORFEIT:
+                return "0-1";
+            case DRAW:
+            case DRAW_ON_FORFEIT:
+                return "1/2-1/2";
+            default:
+                // Includes games lost by both players, which can't be represented in PGN
+                return "*";
+        }
+    }
+
+    /**
+     * Formats the main line starting at a node, including all variations
+     * @param showMoveNumber if true, the move number is shown even if the first move is by black
+     */
+    private void formatLine(GameMovesModel.Node node, boolean showMoveNumber) {
+        while (node.hasMoves()) {
+            List<GameMovesModel.Node> children = node.children();
+            GameMovesModel.Node mainNode = children.get(0);
+            showMoveNumber = formatMove(mainNode, showMoveNumber);
+            if (children.size() > 1) {
+                for (int i = 1; i < children.size(); i++) {
+                    appendToken("(");
+                    noSpace = true;
+                    GameMovesModel.Node variation = children.get(i);
+                    formatLine(variation, formatMove(variation, true));
+                    sb.append(')');
+                }
+                showMoveNumber = true;
+            }
+            node = mainNode;
+        }
+    }
+
+    /**
+     * Formats the move leading up to a node, together with its annotations
+     * @return true if the move number must be shown before the next move
+     */
+    private boolean formatMove(GameMovesModel.Node node, boolean showMoveNumber) {
+        Annotations annotations = node.getAnnotations();
+        if (appendComment(findAnnotation(annotations, CommentaryBeforeMoveAnnotation.class))) {
+            showMoveNumber = true;
+        }
+
+        int ply = node.parent().ply();
+        if (Chess.isWhitePly(ply)) {
+            appendToken(Chess.plyToMoveNumber(ply) + ".");
+        } else if (showMoveNumber) {
+            appendToken(Chess.plyToMoveNumber(ply) + "...");
+        }
+        appendToken(node.lastMove().toSAN());
+
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof NAGAnnotation) {
+                appendNAG(((NAGAnnotation) annotation).getNag());
+            } else if (annotation instanceof SymbolAnnotation) {
+                SymbolAnnotation symbols = (SymbolAnnotation) annotation;
+                appendNAG(symbols.getMoveComment());
+                appendNAG(symbols.getLineEvaluation());
+                appendNAG(symbols.getMovePrefix());
+            }
+        }
+
+        return appendComment(findAnnotation(annotations, CommentaryAfterMoveAnnotation.class));
+    }
+
+    // Unlike Annotations.getByClass, this also finds subclasses such as the ChessBase text annotations
+    private static Annotation findAnnotation(Annotations annotations, Class<? extends Annotation> clazz) {
+        for (Annotation annotation : annotations) {
+            if (clazz.isInstance(annotation)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    private void appendNAG(NAG nag) {
+        if (nag != null && nag != NAG.NONE) {
+            appendToken("$" + nag.ordinal());
+        }
+    }
+
+    private boolean appendComment(Annotation annotation) {
+        String commentary = null;
+        if (annotation instanceof CommentaryBeforeMoveAnnotation) {
+            commentary = ((CommentaryBeforeMoveAnnotation) annotation).getCommentary();
+        } else if (annotation instanceof CommentaryAfterMoveAnnotation) {
+            commentary = ((CommentaryAfterMoveAnnotation) annotation).getCommentary();
+        }
+        if (commentary == null || commentary.isEmpty()) {
+            return false;
+        }
+        appendToken("{");
+        // Add the commentary word by word so it can be wrapped
+        int wordStart = -1;
+        for (int i = 0; i <= commentary.length(); i++) {
+            if (i == commentary.length() || Character.isWhitespace(commentary.charAt(i))) {
+                if (wordStart >= 0) {
+                    appendToken(commentary, wordStart, i, true);
+                    wordStart = -1;
+                }
+            } else if (wordStart < 0) {
+                wordStart = i;
+            }
+        }
+        appendToken("}");
+        return true;
+    }
+
+    private void appendToken(String token) {
+        appendToken(token, 0, token.length(), false);
+    }
+
+    private void appendToken(String token, int start, int end, boolean inComment) {
+        if (!noSpace) {
+            if (sb.length() - lineStart + 1 + end - start > MAX_LINE_LENGTH) {
+                sb.append('\n');
+                lineStart = sb.length();
+            } else {
+                sb.append(' ');
+            }
+        }
+        if (inComment) {
+            for (int i = start; i < end; i++) {
+                char c = token.charAt(i);
+                // A } would end the comment
+                sb.append(c == '}' ? ')' : c);
+            }
+        } else {
+            sb.append(token, start, end);
+        }
+        noSpace = false;
+    }
+}
@@ -0,0 +1,136 @@
+package se.yarin.cbhlib.pgn;
+
+import lombok.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Splits a PGN file into the raw text of the games, without parsing them.
+ *
+ * The file is memory mapped in large windows and scanned byte by byte. A new game starts at a tag line
+ * (a line starting with [) that follows the movetext of the previous game. Brace comments, rest of line
+ * comments and escaped lines are skipped, so they may contain anything. Since all the characters that matter
+ * are ASCII, the scanning works for any ASCII compatible encoding; decoding the text is left to the caller.
+ */
+public class PgnGameSplitter implements AutoCloseable {
+    private static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int windowSize;
+
+    private MappedByteBuffer window;
+    private long windowStart, windowEnd;
+    private long position;
+
+    // The scanner state
+    private boolean atLineStart = true;
+    private boolean inTagLine, inLineComment, inBraceComment;
+
+    public PgnGameSplitter(@NonNull File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    PgnGameSplitter(@NonNull File file, int windowSize) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Gets the number of bytes of the file that have been scanned
+     * @return the position in the file
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Gets the raw text of the next game in the file
+     * @return the bytes of the next game, or null if there are no more games
+     * @throws IOException if the file couldn't be read
+     */
+    public byte[] next() throws IOException {
+        long gameStart = position;
+        boolean hasMovetext = false, hasContent = false;
+
+        while (position < fileSize) {
+            if (position >= windowEnd) {
+                mapWindow(gameStart);
+            }
+            byte b = window.get((int) (position - windowStart));
+
+            if (b == '\n') {
+                atLineStart = true;
+                inTagLine = false;
+                inLineComment = false;
+                position++;
+                continue;
+            }
+            boolean lineStart = atLineStart;
+            atLineStart = false;
+
+            if (inBraceComment) {
+                if (b == '}') {
+                    inBraceComment = false;
+                }
+            } else if (!inTagLine && !inLineComment) {
+                if (lineStart && b == '%') {
+                    inLineComment = true;
+                } else if (lineStart && b == '[') {
+                    if (hasMovetext) {
+                        // This is the first tag of the next game
+                        atLineStart = true;
+                        return read(gameStart, position);
+                    }
+                    inTagLine = true;
+                    hasContent = true;
+                } else if (b == '{') {
+                    inBraceComment = true;
+                    hasMovetext = true;
+                } else if (b == ';') {
+                    inLineComment = true;
+                } else if (b > ' ') {
+                    hasMovetext = true;
+                    hasContent = true;
+                }
+            }
+            position++;
+        }
+
+        if (!hasContent) {
+            return null;
+        }
+        return read(gameStart, position);
+    }
+
+    private void mapWindow(long start) throws IOException {
+        long size = Math.min(fileSize - start, Math.max(windowSize, 2 * (position - start)));
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Game at offset " + start + " is too large");
+        }
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        windowStart = start;
+        windowEnd = start + size;
+    }
+
+    private byte[] read(long start, long end) {
+        byte[] bytes = new byte[(int) (end - start)];
+        window.get((int) (start - windowStart), bytes);
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,185 @@
+package se.yarin.cbhlib.pgn;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.yarin.cbhlib.BulkGameWriter;
+import se.yarin.cbhlib.Database;
+import se.yarin.cbhlib.exceptions.ChessBaseInvalidDataException;
+import se.yarin.chess.GameModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+
+/**
+ * Imports the games in PGN files into a database.
+ *
+ * The import is done in three stages connected by a bounded queue:
+ * a reader thread splits the memory mapped PGN file into games, a pool of worker threads parses the games,
+ * and the calling thread adds the parsed games to the database in the same order as they appear in the file.
+ * Since the queue is bounded, the reader is throttled if the parsing or the writing can't keep up.
+ *
+ * Games that can't be parsed are skipped and logged.
+ */
+public class PgnImporter implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(PgnImporter.class);
+
+    private static final int MAX_PENDING_GAMES_PER_THREAD = 64;
+
+    // Marks the end of the games in the queue
+    private static final Future<GameModel> END_OF_GAMES = CompletableFuture.completedFuture(null);
+
+    private final Database database;
+    private final int numThreads;
+    private final ExecutorService workers;
+    private final ThreadLocal<PgnParser> parsers = ThreadLocal.withInitial(PgnParser::new);
+
+    @Getter private int gamesImported;
+    @Getter private int gamesFailed;
+
+    public PgnImporter(@NonNull Database database, int numThreads) {
+        this.database = database;
+        this.numThreads = numThreads;
+        this.workers = Executors.newFixedThreadPool(numThreads, runnable -> {
+            Thread thread = new Thread(runnable, "pgn-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Imports all games in a PGN file encoded in UTF-8
+     * @param file the PGN file
+     * @throws IOException if the file couldn't be read
+     */
+    public void importFile(@NonNull File file) throws IOException {
+        importFile(file, StandardCharsets.UTF_8, null);
+    }
+
+    /**
+     * Imports all games in a PGN file
+     * @param file the PGN file
+     * @param charset the encoding of the file
+     * @param progress if not null, called after every imported game with the number of bytes of the file read so far
+     * @throws IOException if the file couldn't be read
+     */
+    public void importFile(@NonNull File file, @NonNull Charset charset, LongConsumer progress) throws IOException {
+        BlockingQueue<Future<GameModel>> queue = new ArrayBlockingQueue<>(numThreads * MAX_PENDING_GAMES_PER_THREAD);
+
+        try (PgnGameSplitter splitter = new PgnGameSplitter(file);
+             BulkGameWriter writer = new BulkGameWriter(database)) {
+            AtomicBoolean cancelled = new AtomicBoolean();
+            CompletableFuture<Void> reader = CompletableFuture.runAsync(() -> splitGames(splitter, charset, queue, cancelled),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "pgn-reader");
+                        thread.setDaemon(true);
+                        thread.start();
+                    });
+
+            try {
+                int gameNo = 0;
+                while (true) {
+                    Future<GameModel> next = queue.take();
+                    if (next == END_OF_GAMES) {
+                        break;
+                    }
+                    gameNo++;
+                    GameModel model;
+                    try {
+                        model = next.get();
+                    } catch (ExecutionException e) {
+                        log.warn(String.format("Failed to parse game %d in %s: %s", gameNo, file, e.getCause().getMessage()));
+                        gamesFailed++;
+                        continue;
+                    }
+                    try {
+                        writer.add(model);
+                        gamesImported++;
+                    } catch (ChessBaseInvalidDataException e) {
+                        log.warn(String.format("Failed to add game %d in %s: %s", gameNo, file, e.getMessage()));
+                        gamesFailed++;
+                    }
+                    if (progress != null) {
+                        progress.accept(splitter.getPosition());
+                    }
+                }
+
+                reader.join();
+            } finally {
+                // If the import failed, the reader may be blocked on the full queue
+                // and must be stopped before the splitter is closed
+                if (!reader.isDone()) {
+                    cancelled.set(true);
+                    stopReader(reader, queue);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing " + file, e);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Drains the queue until the reader has stopped, cancelling the games that haven't been parsed yet
+     */
+    private void stopReader(CompletableFuture<Void> reader, BlockingQueue<Future<GameModel>> queue) {
+        boolean interrupted = false;
+        while (true) {
+            Future<GameModel> pending;
+            while ((pending = queue.poll()) != null) {
+                pending.cancel(false);
+            }
+            if (reader.isDone()) {
+                break;
+            }
+            try {
+                reader.get(10, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException | TimeoutException e) {
+                // The reader is either done or still waiting to put a game in the queue
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void splitGames(PgnGameSplitter splitter, Charset charset, BlockingQueue<Future<GameModel>> queue,
+                            AtomicBoolean cancelled) {
+        try {
+            byte[] bytes;
+            while (!cancelled.get() && (bytes = splitter.next()) != null) {
+                byte[] gameBytes = bytes;
+                queue.put(workers.submit(() -> parsers.get().parseGame(new String(gameBytes, charset))));
+            }
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Always signal the end, otherwise the writer would wait forever
+            try {
+                queue.put(END_OF_GAMES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        workers.shutdown();
+    }
+}
@@ -0,0 +1,308 @@
+package se.yarin.cbhlib.pgn;
+
+import lombok.NonNull;
+import se.yarin.cbhlib.annotations.SymbolAnnotation;
+import se.yarin.cbhlib.annotations.TextAfterMoveAnnotation;
+import se.yarin.cbhlib.annotations.TextBeforeMoveAnnotation;
+import se.yarin.chess.*;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Parses the text of a single PGN game, as returned by {@link PgnGameSplitter}, into a {@link GameModel}.
+ *
+ * Variations, NAGs and comments are kept. Comments and NAGs are converted to the ChessBase annotations
+ * so the game can be stored as is. A comment following a move is stored as a comment after that move;
+ * a comment at the start of a variation or after a variation is stored as a comment before the next move.
+ *
+ * A parser is not thread safe; use one parser per thread when parsing games in parallel.
+ */
+public class PgnParser {
+    private String text;
+    private int pos;
+
+    /**
+     * Parses a game
+     * @param text the PGN text of the game
+     * @return a model of the game
+     * @throws PgnFormatException if the game couldn't be parsed
+     */
+    public GameModel parseGame(@NonNull String text) throws PgnFormatException {
+        this.text = text;
+        this.pos = 0;
+        try {
+            GameHeaderModel header = new GameHeaderModel();
+            String fen = parseTags(header);
+            GameMovesModel moves;
+            try {
+                moves = fen == null ? new GameMovesModel() : Fen.parse(fen);
+            } catch (IllegalArgumentException e) {
+                throw new PgnFormatException(e.getMessage());
+            }
+            parseMovetext(moves);
+            return new GameModel(header, moves);
+        } finally {
+            this.text = null;
+        }
+    }
+
+    private String parseTags(GameHeaderModel header) throws PgnFormatException {
+        String fen = null;
+        skipWhitespace();
+        while (pos < text.length() && text.charAt(pos) == '[') {
+            pos++;
+            int nameStart = pos;
+            while (pos < text.length() && (Character.isLetterOrDigit(text.charAt(pos)) || text.charAt(pos) == '_')) {
+                pos++;
+            }
+            String name = text.substring(nameStart, pos);
+            skipWhitespace();
+            if (pos >= text.length() || text.charAt(pos) != '"') {
+                throw new PgnFormatException("Invalid tag " + name);
+            }
+            pos++;
+            StringBuilder value = new StringBuilder();
+            while (pos < text.length() && text.charAt(pos) != '"') {
+                char c = text.charAt(pos++);
+                if (c == '\\' && pos < text.length()) {
+                    c = text.charAt(pos++);
+                }
+                value.append(c);
+            }
+            int end = text.indexOf(']', pos);
+            if (end < 0) {
+                throw new PgnFormatException("Unterminated tag " + name);
+            }
+            pos = end + 1;
+
+            if (name.equals("FEN")) {
+                fen = value.toString();
+            } else {
+                setTag(header, name, value.toString().trim());
+            }
+            skipWhitespace();
+        }
+        return fen;
+    }
+
+    private void setTag(GameHeaderModel header, String name, String value) {
+        if (value.isEmpty() || value.equals("?") || value.equals("-")) {
+            return;
+        }
+        switch (name) {
+            case "Event" -> header.setEvent(value);
+            case "Site" -> header.setEventSite(value);
+            case "Date" -> header.setDate(parseDate(value));
+            case "EventDate" -> header.setEventDate(parseDate(value));
+            case "Round" -> {
+                int dot = value.indexOf('.');
+                Integer round = parseInt(dot < 0 ? value : value.substring(0, dot));
+                if (round != null) {
+                    header.setRound(round);
+                    if (dot >= 0) {
+                        header.setSubRound(parseInt(value.substring(dot + 1)));
+                    }
+                }
+            }
+            case "White" -> header.setWhite(value);
+            case "Black" -> header.setBlack(value);
+            case "Result" -> header.setResult(parseResult(value));
+            case "WhiteElo" -> header.setWhiteElo(parseInt(value));
+            case "BlackElo" -> header.setBlackElo(parseInt(value));
+            case "ECO" -> {
+                try {
+                    header.setEco(new Eco(value));
+                } catch (IllegalArgumentException e) {
+                    // Ignore invalid ECO codes
+                }
+            }
+            case "Annotator" -> header.setAnnotator(value);
+            case "WhiteTeam" -> header.setWhiteTeam(value);
+            case "BlackTeam" -> header.setBlackTeam(value);
+            default -> { }
+        }
+    }
+
+    private static Date parseDate(String value) {
+        String[] parts = value.split("\\.");
+        Integer year = parts.length > 0 ? parseInt(parts[0]) : null;
+        Integer month = parts.length > 1 ? parseInt(parts[1]) : null;
+        Integer day = parts.length > 2 ? parseInt(parts[2]) : null;
+        if (year == null) {
+            return Date.unset();
+        }
+        return new Date(year, month == null ? 0 : month, day == null ? 0 : day);
+    }
+
+    private static GameResult parseResult(String value) {
+        return switch (value) {
+            case "1-0" -> GameResult.WHITE_WINS;
+            case "0-1" -> GameResult.BLACK_WINS;
+            case "1/2-1/2" -> GameResult.DRAW;
+            default -> GameResult.NOT_FINISHED;
+        };
+    }
+
+    private static Integer parseInt(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void parseMovetext(GameMovesModel moves) throws PgnFormatException {
+        GameMovesModel.Node node = moves.root();
+        // The nodes to return to when the current variations end
+        Deque<GameMovesModel.Node> variationStack = new ArrayDeque<>();
+        // True if the last token was a move, in which case comments belong to that move
+        boolean afterMove = false;
+        String pendingComment = null;
+
+        while (true) {
+            skipWhitespace();
+            if (pos >= text.length()) {
+                break;
+            }
+            char c = text.charAt(pos);
+            if (c == '{') {
+                int end = text.indexOf('}', pos);
+                if (end < 0) {
+                    throw new PgnFormatException("Unterminated comment");
+                }
+                String comment = text.substring(pos + 1, end).trim().replaceAll("\\s+", " ");
+                pos = end + 1;
+                if (comment.isEmpty()) {
+                    continue;
+                }
+                if (afterMove || node.isRoot() && variationStack.isEmpty() && !node.hasMoves()) {
+                    addCommentAfter(node, comment);
+                } else {
+                    pendingComment = pendingComment == null ? comment : pendingComment + " " + comment;
+                }
+            } else if (c == ';' || (c == '%' && (pos == 0 || text.charAt(pos - 1) == '\n'))) {
+                int end = text.indexOf('\n', pos);
+                pos = end < 0 ? text.length() : end + 1;
+            } else if (c == '(') {
+                pos++;
+                if (node.isRoot()) {
+                    throw new PgnFormatException("Variation before the first move");
+                }
+                variationStack.push(node);
+                node = node.parent();
+                afterMove = false;
+            } else if (c == ')') {
+                pos++;
+                if (variationStack.isEmpty()) {
+                    throw new PgnFormatException("Unmatched end of variation");
+                }
+                node = variationStack.pop();
+                afterMove = false;
+            } else if (c == '$') {
+                int start = ++pos;
+                while (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+                    pos++;
+                }
+                Integer nag = parseInt(text.substring(start, pos));
+                if (nag != null) {
+                    addNAG(node, nag);
+                }
+            } else if (c == '!' || c == '?') {
+                int start = pos;
+                while (pos < text.length() && (text.charAt(pos) == '!' || text.charAt(pos) == '?')) {
+                    pos++;
+                }
+                addNAG(node, symbolToNAG(text.substring(start, pos)));
+            } else if (c == '*' || c == '.') {
+                pos++;
+            } else {
+                int start = pos;
+                if (Character.isDigit(c)) {
+                    while (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+                        pos++;
+                    }
+                    if (pos < text.length() && text.charAt(pos) == '.') {
+                        // A move number
+                        continue;
+                    }
+                }
+                while (pos < text.length() && !isTokenEnd(text.charAt(pos))) {
+                    pos++;
+                }
+                if (pos == start) {
+                    throw new PgnFormatException("Unexpected character '" + c + "'");
+                }
+                if (Character.isDigit(c) && !(c == '0' && pos - start >= 3 && text.charAt(start + 1) == '-'
+                        && text.charAt(start + 2) == '0')) {
+                    // A game termination marker
+                    continue;
+                }
+                int move = MoveParser.parse(node.position(), text, start, pos);
+                if (move == PackedMove.NO_MOVE) {
+                    throw new PgnFormatException("Illegal move " + text.substring(start, pos));
+                }
+                if (move == PackedMove.AMBIGUOUS_MOVE) {
+                    throw new PgnFormatException("Ambiguous move " + text.substring(start, pos));
+                }
+                node = node.addMoveUnsafe(new Move(node.position(), move));
+                if (pendingComment != null) {
+                    node.addAnnotation(new TextBeforeMoveAnnotation(pendingComment));
+                    pendingComment = null;
+                }
+                afterMove = true;
+            }
+        }
+
+        if (!variationStack.isEmpty()) {
+            throw new PgnFormatException("Unterminated variation");
+        }
+    }
+
+    private static boolean isTokenEnd(char c) {
+        return Character.isWhitespace(c) || c == '{' || c == '}' || c == '(' || c == ')' || c == ';'
+                || c == '$' || c == '!' || c == '?';
+    }
+
+    private static void addCommentAfter(GameMovesModel.Node node, String comment) {
+        TextAfterMoveAnnotation existing = node.getAnnotation(TextAfterMoveAnnotation.class);
+        if (existing != null) {
+            node.getAnnotations().remove(existing);
+            comment = existing.getText() + " " + comment;
+        }
+        node.addAnnotation(new TextAfterMoveAnnotation(comment));
+    }
+
+    private static void addNAG(GameMovesModel.Node node, int nagValue) {
+        if (node.isRoot() || nagValue <= 0 || nagValue >= NAG.values().length) {
+            return;
+        }
+        NAG nag = NAG.values()[nagValue];
+        SymbolAnnotation existing = node.getAnnotation(SymbolAnnotation.class);
+        if (existing != null) {
+            node.getAnnotations().remove(existing);
+            node.addAnnotation(new SymbolAnnotation(
+                    existing.getMoveComment(), existing.getLineEvaluation(), existing.getMovePrefix(), nag));
+        } else {
+            node.addAnnotation(new SymbolAnnotation(nag));
+        }
+    }
+
+    private static int symbolToNAG(String symbol) {
+        return switch (symbol) {
+            case "!" -> 1;
+            case "?" -> 2;
+            case "!!" -> 3;
+            case "??" -> 4;
+            case "!?" -> 5;
+            case "?!" -> 6;
+            default -> 0;
+        };
+    }
+
+    private void skipWhitespace() {
+        while (pos < text.length() && (Character.isWhitespace(text.charAt(pos)) || text.charAt(pos) == '\uFEFF')) {
+            pos++;
+        }
+    }
+}
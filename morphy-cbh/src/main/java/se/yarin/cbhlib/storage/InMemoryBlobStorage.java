@@ -35,9 +35,11 @@ public class InMemoryBlobStorage implements BlobStorage {
 
     @Override
     public ByteBuffer readBlob(long offset) {
-        data.position((int) offset);
-        byte[] result = new byte[blobSizeRetriever.getBlobSize(data)];
-        data.get(result);
+        // Read through a view so that concurrent reads don't affect each other's position
+        ByteBuffer view = data.duplicate();
+        view.position((int) offset);
+        byte[] result = new byte[blobSizeRetriever.getBlobSize(view)];
+        view.get(result);
         return ByteBuffer.wrap(result);
     }
 
@@ -33,6 +33,14 @@ public interface EntityStorage<T extends Entity & Comparable<T>> {
      */
     T getEntity(int entityId);
 
+    /**
+     * Gets the entities with the given ids. The entities are read in id order, with nearby
+     * entities read together, which is much faster than getting the entities one by one.
+     * @param entityIds the ids of the entities to get, in any order and possibly with duplicates
+     * @return the entities in the same order as the ids, with null for ids with no entity
+     */
+    List<T> getEntities(int[] entityIds);
+
     /**
      * Gets an entity by its key. If there are multiple matching the key, one of them will be returned.
      * @param entity an entity populated with the key fields
@@ -198,6 +206,16 @@ public interface EntityStorage<T extends Entity & Comparable<T>> {
      */
     Iterable<T> iterableOrderedAscending(T startEntity);
 
+    /**
+     * Returns an iterable over all entities in ascending primary key sorting order.
+     * All entity nodes are first read sequentially to determine the order, after which the entities
+     * are read in batches. This is much faster than {@link #iterableOrderedAscending(Entity)} when
+     * iterating over all entities in a large storage, but slower if only the first few are needed.
+     * @return an iterable
+     * @throws ChessBaseIOException if an IO error occurs
+     */
+    Iterable<T> iterableOrderedAscendingReadAhead();
+
     /**
      * Returns an iterable over the entities in descending primary key sorting order
      * @param startEntity the first entity (inclusive), or null to start from the last entity
@@ -6,12 +6,14 @@ import lombok.NonNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.yarin.cbhlib.entities.Entity;
+import se.yarin.cbhlib.exceptions.ChessBaseIOException;
 import se.yarin.cbhlib.storage.*;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -19,6 +21,8 @@ public class EntityStorageImpl<T extends Entity & Comparable<T>> implements Enti
     private static final Logger log = LoggerFactory.getLogger(EntityStorageImpl.class);
 
     private static final int DEFAULT_HEADER_SIZE = 32;
+    // When getting multiple entities, nodes this close to each other are read together, including the ones in between
+    private static final int MAX_READ_GAP = 8;
 
     @Getter
     private final EntityNodeStorageBase<T> nodeStorage;
@@ -133,6 +137,33 @@ public class EntityStorageImpl<T extends Entity & Comparable<T>> implements Enti
         return nodeStorage.getEntityNode(entityId).getEntity();
     }
 
+    @Override
+    public List<T> getEntities(int[] entityIds) {
+        int capacity = nodeStorage.getCapacity();
+        int[] sortedIds = IntStream.of(entityIds).filter(id -> id >= 0 && id < capacity).sorted().distinct().toArray();
+
+        Map<Integer, T> entities = new HashMap<>(sortedIds.length * 2);
+        int start = 0;
+        while (start < sortedIds.length) {
+            int end = start + 1;
+            while (end < sortedIds.length && sortedIds[end] - sortedIds[end - 1] <= MAX_READ_GAP) {
+                end++;
+            }
+            for (EntityNode<T> node : nodeStorage.getEntityNodes(sortedIds[start], sortedIds[end - 1] + 1)) {
+                if (Arrays.binarySearch(sortedIds, start, end, node.getEntityId()) >= 0) {
+                    entities.put(node.getEntityId(), node.getEntity());
+                }
+            }
+            start = end;
+        }
+
+        ArrayList<T> result = new ArrayList<>(entityIds.length);
+        for (int entityId : entityIds) {
+            result.add(entities.get(entityId));
+        }
+        return result;
+    }
+
     @Override
     public T getAnyEntity(@NonNull T entity) {
         TreePath<T> treePath = lowerBound(entity);
@@ -435,6 +466,93 @@ public class EntityStorageImpl<T extends Entity & Comparable<T>> implements Enti
         }
     }
 
+    /**
+     * Iterates over all entities in key order without walking the tree one node at a time.
+     * The order of the entity ids is first determined by reading all nodes in one sequential pass,
+     * after which the entities are read in batches, each batch in id order.
+     */
+    private class ReadAheadOrderedIterator implements Iterator<T> {
+        private static final int SCAN_BATCH_SIZE = 1000;
+        private static final int READ_BATCH_SIZE = 1000;
+        private static final int MAX_TREE_HEIGHT = 64;
+
+        private final int version;
+        private final int[] orderedIds;
+        private int nextPos;
+        private final List<T> batch = new ArrayList<>(READ_BATCH_SIZE);
+        private int batchPos;
+
+        ReadAheadOrderedIterator() {
+            this.version = getVersion();
+            this.orderedIds = orderedIds();
+        }
+
+        private int[] orderedIds() {
+            int capacity = nodeStorage.getCapacity();
+            int[] leftIds = new int[capacity];
+            int[] rightIds = new int[capacity];
+            for (int start = 0; start < capacity; start += SCAN_BATCH_SIZE) {
+                for (EntityNode<T> node : nodeStorage.getEntityNodes(start, Math.min(capacity, start + SCAN_BATCH_SIZE))) {
+                    leftIds[node.getEntityId()] = node.getLeftEntityId();
+                    rightIds[node.getEntityId()] = node.getRightEntityId();
+                }
+            }
+
+            int[] result = new int[capacity];
+            int count = 0;
+            int[] stack = new int[MAX_TREE_HEIGHT];
+            int stackSize = 0;
+            int current = nodeStorage.getRootEntityId();
+            while (current >= 0 || stackSize > 0) {
+                while (current >= 0) {
+                    if (current >= capacity || stackSize == MAX_TREE_HEIGHT) {
+                        throw new ChessBaseIOException("The entity tree is damaged at node " + current);
+                    }
+                    stack[stackSize++] = current;
+                    current = leftIds[current];
+                }
+                current = stack[--stackSize];
+                if (count == capacity) {
+                    throw new ChessBaseIOException("The entity tree contains a cycle at node " + current);
+                }
+                result[count++] = current;
+                current = rightIds[current];
+            }
+            return Arrays.copyOf(result, count);
+        }
+
+        private void readNextBatch() {
+            int batchSize = Math.min(READ_BATCH_SIZE, orderedIds.length - nextPos);
+            batch.clear();
+            batch.addAll(getEntities(Arrays.copyOfRange(orderedIds, nextPos, nextPos + batchSize)));
+            nextPos += batchSize;
+            batchPos = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.version != getVersion()) {
+                throw new IllegalStateException("The storage has changed since the iterator was created");
+            }
+            return batchPos < batch.size() || nextPos < orderedIds.length;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("End of entity iteration reached");
+            }
+            if (batchPos == batch.size()) {
+                readNextBatch();
+            }
+            return batch.get(batchPos++);
+        }
+    }
+
+    public Iterable<T> iterableOrderedAscendingReadAhead() {
+        return ReadAheadOrderedIterator::new;
+    }
+
     public Stream<T> streamOrderedAscending() {
         return streamOrderedAscending(TreePath.begin(nodeStorage), TreePath.end(nodeStorage));
     }
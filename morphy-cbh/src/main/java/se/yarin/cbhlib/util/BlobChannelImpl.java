@@ -27,7 +27,7 @@ public class BlobChannelImpl implements BlobChannel {
     }
 
     @Override
-    public ByteBuffer read(long offset, int length) throws IOException {
+    public synchronized ByteBuffer read(long offset, int length) throws IOException {
         channel.position(offset);
         ByteBuffer buf = ByteBuffer.allocate(length);
         channel.read(buf);
@@ -36,12 +36,12 @@ public class BlobChannelImpl implements BlobChannel {
     }
 
     @Override
-    public int append(ByteBuffer buf) throws IOException {
+    public synchronized int append(ByteBuffer buf) throws IOException {
         return write(size, buf);
     }
 
     @Override
-    public int write(long offset, ByteBuffer buf) throws IOException {
+    public synchronized int write(long offset, ByteBuffer buf) throws IOException {
         channel.position(offset);
         int written = channel.write(buf);
         size = Math.max(size, offset + written);
@@ -49,7 +49,7 @@ public class BlobChannelImpl implements BlobChannel {
     }
 
     @Override
-    public void insert(long offset, long noBytes) throws IOException {
+    public synchronized void insert(long offset, long noBytes) throws IOException {
         if (noBytes < 0) {
             throw new IllegalArgumentException("Number of bytes to insert must be non-negative");
         }
@@ -78,12 +78,12 @@ public class BlobChannelImpl implements BlobChannel {
     }
 
     @Override
-    public void close() throws IOException {
+    public synchronized void close() throws IOException {
         channel.close();
     }
 
     @Override
-    public long size() {
+    public synchronized long size() {
         return size;
     }
 }
@@ -8,6 +8,10 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * A {@link BlobChannel} that caches the most recently read pages.
+ * All operations are synchronized, so the channel may be shared between threads.
+ */
 public class BufferedBlobChannel implements BlobChannel {
     private static final int PAGE_SIZE = 16384;
     private static final int DEFAULT_INSERT_CHUNK_SIZE = 1024*1024;
@@ -27,11 +31,11 @@ public class BufferedBlobChannel implements BlobChannel {
         return new BufferedBlobChannel(FileChannel.open(path, openOptions));
     }
 
-    public void setChunkSize(int chunkSize) {
+    public synchronized void setChunkSize(int chunkSize) {
         this.chunkSize = chunkSize;
     }
 
-    public long size() {
+    public synchronized long size() {
         return size;
     }
 
@@ -58,7 +62,7 @@ public class BufferedBlobChannel implements BlobChannel {
         return pages;
     }
 
-    public ByteBuffer read(long offset, int length) throws IOException {
+    public synchronized ByteBuffer read(long offset, int length) throws IOException {
         if (length == 0) {
             return ByteBuffer.allocate(0);
         }
@@ -90,12 +94,12 @@ public class BufferedBlobChannel implements BlobChannel {
         return buf;
     }
 
-    public int append(ByteBuffer buf) throws IOException {
+    public synchronized int append(ByteBuffer buf) throws IOException {
         pageCache.evict((int) (size / PAGE_SIZE));
         return write(size, buf);
     }
 
-    public int write(long offset, ByteBuffer buf) throws IOException {
+    public synchronized int write(long offset, ByteBuffer buf) throws IOException {
         channel.position(offset);
         int written = channel.write(buf);
         size = Math.max(size, offset + written);
@@ -107,7 +111,7 @@ public class BufferedBlobChannel implements BlobChannel {
         return written;
     }
 
-    public void insert(long offset, long noBytes) throws IOException {
+    public synchronized void insert(long offset, long noBytes) throws IOException {
         if (noBytes < 0) {
             throw new IllegalArgumentException("Number of bytes to insert must be non-negative");
         }
@@ -136,7 +140,7 @@ public class BufferedBlobChannel implements BlobChannel {
         pageCache.clear();
     }
 
-    public void close() throws IOException {
+    public synchronized void close() throws IOException {
         channel.close();
         pageCache.clear();
     }
@@ -55,6 +55,51 @@ public final class CBUtil {
         return 0;
     }
 
+    /**
+     * Compares two fixed size strings in their serialized form, as written by
+     * {@link ByteBufferUtil#putFixedSizeByteString(ByteBuffer, String, int)}.
+     * The result has the same sign as {@link #compareString(String, String)} on the deserialized strings.
+     * @param b1 the first buffer
+     * @param b2 the second buffer
+     * @param offset the offset of the string in both buffers
+     * @param length the size of the string field
+     * @return a negative number, zero or a positive number if the first string is less than,
+     * equal to or greater than the second string
+     */
+    public static int compareFixedSizeByteString(byte[] b1, byte[] b2, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (b1[i] != b2[i]) {
+                return Byte.compare(b1[i], b2[i]);
+            }
+            if (b1[i] == 0) {
+                break;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Compares two fixed size strings in their serialized form, treating each byte as unsigned.
+     * The result has the same sign as {@link #compareStringUnsigned(String, String)} on the deserialized strings.
+     * @param b1 the first buffer
+     * @param b2 the second buffer
+     * @param offset the offset of the string in both buffers
+     * @param length the size of the string field
+     * @return a negative number, zero or a positive number if the first string is less than,
+     * equal to or greater than the second string
+     */
+    public static int compareFixedSizeByteStringUnsigned(byte[] b1, byte[] b2, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (b1[i] != b2[i]) {
+                return Byte.compareUnsigned(b1[i], b2[i]);
+            }
+            if (b1[i] == 0) {
+                break;
+            }
+        }
+        return 0;
+    }
+
     /**
      * Decodes a 21 bit CBH encoded date to a {@link Date}.
      * @param dateValue an integer containing an encoded date value
@@ -0,0 +1,79 @@
+package se.yarin.cbhlib.util;
+
+/**
+ * A cache of values that are expensive to get, for instance because they have to be read
+ * from disk and deserialized. Implementations decide which values to keep, so a value that
+ * has been put in the cache may be missing when getting it later.
+ *
+ * Null values are not supported.
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public interface Cache<K, V> {
+    /**
+     * Gets a value from the cache
+     * @param key the key of the value
+     * @return the value, or null if it was not in the cache
+     */
+    V get(K key);
+
+    /**
+     * Puts a value in the cache, replacing any existing value with the same key.
+     * The cache may decide not to keep the value.
+     * @param key the key of the value
+     * @param value the value
+     */
+    void put(K key, V value);
+
+    /**
+     * Removes a value from the cache. Must be called whenever the source of the value changes.
+     * @param key the key of the value
+     */
+    void invalidate(K key);
+
+    /**
+     * Removes all values from the cache
+     */
+    void invalidateAll();
+
+    /**
+     * Gets statistics about how well the cache has been performing
+     * @return a snapshot of the current statistics
+     */
+    CacheStats stats();
+
+    /**
+     * Gets a cache that doesn't keep any values
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     * @return a cache that is always empty
+     */
+    static <K, V> Cache<K, V> disabled() {
+        return new Cache<>() {
+            private long misses;
+
+            @Override
+            public synchronized V get(K key) {
+                misses += 1;
+                return null;
+            }
+
+            @Override
+            public void put(K key, V value) {
+            }
+
+            @Override
+            public void invalidate(K key) {
+            }
+
+            @Override
+            public void invalidateAll() {
+            }
+
+            @Override
+            public synchronized CacheStats stats() {
+                return new CacheStats(0, misses, 0, 0, 0);
+            }
+        };
+    }
+}
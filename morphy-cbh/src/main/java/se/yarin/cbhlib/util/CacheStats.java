@@ -0,0 +1,36 @@
+package se.yarin.cbhlib.util;
+
+import lombok.Value;
+
+/**
+ * A snapshot of the statistics of a {@link Cache}
+ */
+@Value
+public class CacheStats {
+    long hitCount;
+    long missCount;
+    long evictionCount;
+    // The number of values currently in the cache
+    int size;
+    // The total weight of the values currently in the cache
+    long weight;
+
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * Gets the ratio of requests that were found in the cache
+     * @return the hit ratio, or 1.0 if there have been no requests
+     */
+    public double getHitRatio() {
+        long requests = getRequestCount();
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d requests, %.1f%% hits, %d evictions, %d values with weight %d",
+                getRequestCount(), getHitRatio() * 100, evictionCount, size, weight);
+    }
+}
@@ -185,13 +185,14 @@ public class GameGenerator {
     }
 
     private Move getRandomMove(Position position) {
-        List<Move> moves = position.generateAllPseudoLegalMoves();
-        if (moves.size() == 0) return null;
-        Move move = moves.get(random.nextInt(moves.size()));
+        int[] moves = new int[Position.MAX_MOVES];
+        int count = position.generateAllPseudoLegalMoves(moves);
+        if (count == 0) return null;
+        Move move = new Move(position, moves[random.nextInt(count)]);
         if (!position.isMoveLegal(move)) {
-            moves = position.generateAllLegalMoves();
-            if (moves.size() == 0) return null;
-            move = moves.get(random.nextInt(moves.size()));
+            count = position.generateAllLegalMoves(moves);
+            if (count == 0) return null;
+            move = new Move(position, moves[random.nextInt(count)]);
         }
         return move;
     }
@@ -0,0 +1,152 @@
+package se.yarin.cbhlib.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * A {@link Cache} bounded by the total weight of its values, using segmented LRU eviction.
+ *
+ * New values enter a probation segment. A value that is requested again while on probation is
+ * moved to the protected segment, which gets most of the weight budget. When the protected
+ * segment is full, its least recently used value is moved back to probation, and when the cache
+ * is full, the least recently used value on probation is evicted. Values that are only requested
+ * once, like those seen when scanning through a large storage, therefore can't push out the values
+ * that are requested frequently.
+ *
+ * All methods are synchronized, so the cache may be shared between threads.
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class SegmentedLRUCache<K, V> implements Cache<K, V> {
+    private static final double PROTECTED_RATIO = 0.8;
+
+    private final long maxWeight;
+    private final long maxProtectedWeight;
+    private final ToIntFunction<V> weigher;
+
+    // Both maps are in access order, so the first entry is the least recently used
+    private final LinkedHashMap<K, Entry<V>> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Entry<V>> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long probationWeight, protectedWeight;
+
+    private long hitCount, missCount, evictionCount;
+
+    private static class Entry<V> {
+        private final V value;
+        private final int weight;
+
+        Entry(V value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Creates a new cache
+     * @param maxWeight the maximum total weight of the values in the cache
+     * @param weigher a function returning the weight of a value, for instance its approximate size in bytes
+     */
+    public SegmentedLRUCache(long maxWeight, ToIntFunction<V> weigher) {
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("The maximum weight can't be negative");
+        }
+        this.maxWeight = maxWeight;
+        this.maxProtectedWeight = (long) (maxWeight * PROTECTED_RATIO);
+        this.weigher = weigher;
+    }
+
+    @Override
+    public synchronized V get(K key) {
+        Entry<V> entry = protectedSegment.get(key);
+        if (entry == null) {
+            entry = probation.remove(key);
+            if (entry == null) {
+                missCount += 1;
+                return null;
+            }
+            probationWeight -= entry.weight;
+            protectedSegment.put(key, entry);
+            protectedWeight += entry.weight;
+            demoteProtected();
+        }
+        hitCount += 1;
+        return entry.value;
+    }
+
+    @Override
+    public synchronized void put(K key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Can't cache null values");
+        }
+        Entry<V> entry = new Entry<>(value, weigher.applyAsInt(value));
+        Entry<V> old = protectedSegment.get(key);
+        if (old != null) {
+            // Replacing a frequently used value, so keep it protected
+            protectedSegment.put(key, entry);
+            protectedWeight += entry.weight - old.weight;
+            demoteProtected();
+        } else {
+            remove(key);
+            if (entry.weight > maxWeight) {
+                return;
+            }
+            probation.put(key, entry);
+            probationWeight += entry.weight;
+        }
+        evict();
+    }
+
+    @Override
+    public synchronized void invalidate(K key) {
+        remove(key);
+    }
+
+    @Override
+    public synchronized void invalidateAll() {
+        probation.clear();
+        protectedSegment.clear();
+        probationWeight = 0;
+        protectedWeight = 0;
+    }
+
+    @Override
+    public synchronized CacheStats stats() {
+        return new CacheStats(hitCount, missCount, evictionCount,
+                probation.size() + protectedSegment.size(), probationWeight + protectedWeight);
+    }
+
+    private void remove(K key) {
+        Entry<V> entry = probation.remove(key);
+        if (entry != null) {
+            probationWeight -= entry.weight;
+        }
+        entry = protectedSegment.remove(key);
+        if (entry != null) {
+            protectedWeight -= entry.weight;
+        }
+    }
+
+    private void demoteProtected() {
+        Iterator<Map.Entry<K, Entry<V>>> iterator = protectedSegment.entrySet().iterator();
+        while (protectedWeight > maxProtectedWeight && iterator.hasNext()) {
+            Map.Entry<K, Entry<V>> lru = iterator.next();
+            iterator.remove();
+            protectedWeight -= lru.getValue().weight;
+            // The demoted value becomes the most recently used one on probation
+            probation.put(lru.getKey(), lru.getValue());
+            probationWeight += lru.getValue().weight;
+        }
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<K, Entry<V>>> iterator = probation.entrySet().iterator();
+        while (probationWeight + protectedWeight > maxWeight && iterator.hasNext()) {
+            probationWeight -= iterator.next().getValue().weight;
+            iterator.remove();
+            evictionCount += 1;
+        }
+    }
+}
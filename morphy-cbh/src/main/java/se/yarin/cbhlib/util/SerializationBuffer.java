@@ -0,0 +1,89 @@
+package se.yarin.cbhlib.util;
+
+import lombok.NonNull;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable output buffer for serializing data of unknown size.
+ *
+ * Every thread has its own buffer that is reused between calls, so serializing a large number
+ * of items creates next to no garbage. If the data doesn't fit, the buffer is doubled in size
+ * and the serialization is retried, so a {@link Writer} may be invoked more than once.
+ */
+public final class SerializationBuffer {
+    private static final int INITIAL_CAPACITY = 16384;
+    // Don't hold on to the memory after serializing an unusually large item
+    private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+    private static final int MAX_CAPACITY = 256 * 1024 * 1024;
+
+    private static final ThreadLocal<SerializationBuffer> threadBuffer =
+            ThreadLocal.withInitial(SerializationBuffer::new);
+
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+    private boolean inUse;
+
+    private SerializationBuffer() { }
+
+    /**
+     * Writes data to a {@link ByteBuffer}. The writer should start at the buffer's current position
+     * and must not have any side effects, since it's invoked again if the buffer is too small.
+     */
+    public interface Writer {
+        void write(ByteBuffer buf);
+    }
+
+    /**
+     * Serializes data using the current thread's buffer.
+     * The returned buffer is only valid until the next call to this method from the same thread,
+     * so it must be consumed (e.g. written to a channel) before that.
+     * @param writer the writer of the data
+     * @return a buffer positioned at the start of the serialized data and with the limit at the end of it
+     */
+    public static ByteBuffer serializeShared(@NonNull Writer writer) {
+        SerializationBuffer serializationBuffer = threadBuffer.get();
+        if (serializationBuffer.inUse) {
+            // The writer is itself serializing something using the shared buffer
+            serializationBuffer = new SerializationBuffer();
+        }
+        return serializationBuffer.write(writer);
+    }
+
+    /**
+     * Serializes data into a new buffer of the exact size of the data
+     * @param writer the writer of the data
+     * @return a buffer containing only the serialized data, positioned at the start
+     */
+    public static ByteBuffer serialize(@NonNull Writer writer) {
+        ByteBuffer shared = serializeShared(writer);
+        ByteBuffer result = ByteBuffer.allocate(shared.remaining());
+        result.put(shared);
+        result.flip();
+        return result;
+    }
+
+    private ByteBuffer write(Writer writer) {
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+        }
+        inUse = true;
+        try {
+            while (true) {
+                buffer.clear();
+                try {
+                    writer.write(buffer);
+                    buffer.flip();
+                    return buffer;
+                } catch (BufferOverflowException e) {
+                    if (buffer.capacity() >= MAX_CAPACITY) {
+                        throw new IllegalArgumentException("Serialized data exceeds the maximum size of " + MAX_CAPACITY + " bytes");
+                    }
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                }
+            }
+        } finally {
+            inUse = false;
+        }
+    }
+}
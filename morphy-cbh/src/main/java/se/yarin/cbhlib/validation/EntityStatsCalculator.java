@@ -0,0 +1,313 @@
+package se.yarin.cbhlib.validation;
+
+import lombok.NonNull;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.yarin.cbhlib.Database;
+import se.yarin.cbhlib.entities.Entity;
+import se.yarin.cbhlib.entities.EntityBase;
+import se.yarin.cbhlib.games.ExtendedGameHeader;
+import se.yarin.cbhlib.games.GameHeader;
+import se.yarin.cbhlib.operations.CancellationToken;
+import se.yarin.cbhlib.operations.CheckpointFile;
+import se.yarin.cbhlib.storage.EntityStorageException;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Calculates the statistics (number of games and first game) of all entities in a database
+ * by scanning the game headers on multiple threads.
+ *
+ * The games are scanned in ranges by {@link GamesValidator}. Each thread reads the headers in batches
+ * and counts the references in primitive arrays indexed by entity id. The arrays of all threads are then
+ * merged, which is much faster and uses much less memory than keeping a map of stats objects per entity.
+ *
+ * The calculation can be cancelled with a {@link CancellationToken}, and if a {@link CheckpointFile} is given,
+ * the counts are saved periodically so that an interrupted calculation can be resumed.
+ */
+public class EntityStatsCalculator {
+    private static final Logger log = LoggerFactory.getLogger(EntityStatsCalculator.class);
+
+    private static final int PLAYERS = 0, TOURNAMENTS = 1, ANNOTATORS = 2, SOURCES = 3, TEAMS = 4, GAME_TAGS = 5;
+    private static final int NUM_TYPES = 6;
+
+    private final Database db;
+    private final int numThreads;
+    @Setter
+    @NonNull
+    private CancellationToken cancellationToken = CancellationToken.NONE;
+    @Setter
+    private CheckpointFile checkpointFile;
+
+    public EntityStatsCalculator(@NonNull Database db, int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1");
+        }
+        this.db = db;
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * The references to the entities of all types in a set of games.
+     * Also used by {@link GamesValidator} to calculate the statistics while checking the games.
+     */
+    static class Counters {
+        private final int[][] counts = new int[NUM_TYPES][];
+        private final int[][] firstGameIds = new int[NUM_TYPES][];
+        // References to ids outside the capacity of the entity base. These are invalid,
+        // but are included in the stats so the validation can detect them.
+        private final List<Map<Integer, EntityStats.Stats>> invalid = new ArrayList<>(NUM_TYPES);
+
+        Counters(int[] capacities) {
+            for (int type = 0; type < NUM_TYPES; type++) {
+                counts[type] = new int[capacities[type]];
+                firstGameIds[type] = new int[capacities[type]];
+                invalid.add(new HashMap<>());
+            }
+        }
+
+        /**
+         * Adds the references of a game
+         * @param header the game header
+         * @param extendedHeader the extended game header, or null if the database has none for this game
+         */
+        void addGame(GameHeader header, ExtendedGameHeader extendedHeader) {
+            int gameId = header.getId();
+            if (!header.isGuidingText()) {
+                add(PLAYERS, header.getWhitePlayerId(), gameId);
+                add(PLAYERS, header.getBlackPlayerId(), gameId);
+                if (extendedHeader != null) {
+                    add(TEAMS, extendedHeader.getWhiteTeamId(), gameId);
+                    add(TEAMS, extendedHeader.getBlackTeamId(), gameId);
+                }
+            }
+            add(TOURNAMENTS, header.getTournamentId(), gameId);
+            add(ANNOTATORS, header.getAnnotatorId(), gameId);
+            add(SOURCES, header.getSourceId(), gameId);
+            if (extendedHeader != null) {
+                add(GAME_TAGS, extendedHeader.getGameTagId(), gameId);
+            }
+        }
+
+        void add(int type, int entityId, int gameId) {
+            if (entityId == -1) {
+                // For Teams, -1 is a valid reference meaning "no team"
+                return;
+            }
+            int[] typeCounts = counts[type];
+            if (entityId >= 0 && entityId < typeCounts.length) {
+                // The games are not necessarily added in id order, so keep the lowest game id
+                if (typeCounts[entityId]++ == 0 || gameId < firstGameIds[type][entityId]) {
+                    firstGameIds[type][entityId] = gameId;
+                }
+            } else {
+                EntityStats.Stats stats = invalid.get(type).get(entityId);
+                if (stats == null) {
+                    invalid.get(type).put(entityId, new EntityStats.Stats(1, gameId));
+                } else {
+                    stats.setCount(stats.getCount() + 1);
+                    stats.setFirstGameId(Math.min(stats.getFirstGameId(), gameId));
+                }
+            }
+        }
+
+        /**
+         * Adds the counts of another set of games to these counts
+         */
+        void merge(Counters other) {
+            for (int type = 0; type < NUM_TYPES; type++) {
+                int[] typeCounts = counts[type], otherCounts = other.counts[type];
+                for (int id = 0; id < typeCounts.length; id++) {
+                    if (otherCounts[id] > 0) {
+                        if (typeCounts[id] == 0 || other.firstGameIds[type][id] < firstGameIds[type][id]) {
+                            firstGameIds[type][id] = other.firstGameIds[type][id];
+                        }
+                        typeCounts[id] += otherCounts[id];
+                    }
+                }
+                Map<Integer, EntityStats.Stats> typeInvalid = invalid.get(type);
+                other.invalid.get(type).forEach((id, stats) -> {
+                    EntityStats.Stats existing = typeInvalid.get(id);
+                    if (existing == null) {
+                        typeInvalid.put(id, stats);
+                    } else {
+                        existing.setCount(existing.getCount() + stats.getCount());
+                        existing.setFirstGameId(Math.min(existing.getFirstGameId(), stats.getFirstGameId()));
+                    }
+                });
+            }
+        }
+
+        /**
+         * Resets all counts
+         */
+        void clear() {
+            for (int type = 0; type < NUM_TYPES; type++) {
+                Arrays.fill(counts[type], 0);
+                Arrays.fill(firstGameIds[type], 0);
+                invalid.get(type).clear();
+            }
+        }
+
+        /**
+         * Writes the counts to a checkpoint. Only the referenced entities are written.
+         */
+        void write(DataOutput out) throws IOException {
+            for (int type = 0; type < NUM_TYPES; type++) {
+                int[] typeCounts = counts[type];
+                int numReferenced = 0;
+                for (int count : typeCounts) {
+                    if (count > 0) {
+                        numReferenced += 1;
+                    }
+                }
+                out.writeInt(typeCounts.length);
+                out.writeInt(numReferenced);
+                for (int id = 0; id < typeCounts.length; id++) {
+                    if (typeCounts[id] > 0) {
+                        out.writeInt(id);
+                        out.writeInt(typeCounts[id]);
+                        out.writeInt(firstGameIds[type][id]);
+                    }
+                }
+                out.writeInt(invalid.get(type).size());
+                for (Map.Entry<Integer, EntityStats.Stats> entry : invalid.get(type).entrySet()) {
+                    out.writeInt(entry.getKey());
+                    out.writeInt(entry.getValue().getCount());
+                    out.writeInt(entry.getValue().getFirstGameId());
+                }
+            }
+        }
+
+        /**
+         * Reads counts written by {@link #write(DataOutput)}
+         * @throws IOException if the counts couldn't be read, or if the capacities of the entity bases have changed
+         */
+        static Counters read(DataInput in, int[] capacities) throws IOException {
+            Counters counters = new Counters(capacities);
+            for (int type = 0; type < NUM_TYPES; type++) {
+                if (in.readInt() != capacities[type]) {
+                    throw new IOException("The number of entities has changed");
+                }
+                int numReferenced = in.readInt();
+                for (int i = 0; i < numReferenced; i++) {
+                    int id = in.readInt();
+                    counters.counts[type][id] = in.readInt();
+                    counters.firstGameIds[type][id] = in.readInt();
+                }
+                int numInvalid = in.readInt();
+                for (int i = 0; i < numInvalid; i++) {
+                    int id = in.readInt();
+                    counters.invalid.get(type).put(id, new EntityStats.Stats(in.readInt(), in.readInt()));
+                }
+            }
+            return counters;
+        }
+
+        /**
+         * Converts the counts to entity statistics
+         */
+        EntityStats toStats() {
+            EntityStats stats = new EntityStats();
+            addTo(PLAYERS, stats.players);
+            addTo(TOURNAMENTS, stats.tournaments);
+            addTo(ANNOTATORS, stats.annotators);
+            addTo(SOURCES, stats.sources);
+            addTo(TEAMS, stats.teams);
+            addTo(GAME_TAGS, stats.gameTags);
+            return stats;
+        }
+
+        private void addTo(int type, Map<Integer, EntityStats.Stats> map) {
+            int[] typeCounts = counts[type];
+            for (int id = 0; id < typeCounts.length; id++) {
+                if (typeCounts[id] > 0) {
+                    map.put(id, new EntityStats.Stats(typeCounts[id], firstGameIds[type][id]));
+                }
+            }
+            map.putAll(invalid.get(type));
+        }
+    }
+
+    /**
+     * Calculates the statistics of all entities referenced by the games in the database
+     * @param progressCallback called once for every processed game; never called concurrently
+     * @return the calculated statistics
+     */
+    public EntityStats calculate(@NonNull Runnable progressCallback) {
+        GamesValidator scanner = new GamesValidator(db, numThreads);
+        scanner.setCancellationToken(cancellationToken);
+        scanner.setCheckpointFile(checkpointFile);
+        EntityStats stats = new EntityStats();
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            scanner.scanGames(pool, false, false, stats, progressCallback);
+        } finally {
+            pool.shutdownNow();
+        }
+        return stats;
+    }
+
+    /**
+     * Gets the capacities of the entity bases, which are the sizes of the arrays in {@link Counters}
+     */
+    static int[] capacities(Database db) {
+        int[] capacities = new int[NUM_TYPES];
+        capacities[PLAYERS] = db.getPlayerBase().getCapacity();
+        capacities[TOURNAMENTS] = db.getTournamentBase().getCapacity();
+        capacities[ANNOTATORS] = db.getAnnotatorBase().getCapacity();
+        capacities[SOURCES] = db.getSourceBase().getCapacity();
+        capacities[TEAMS] = db.getTeamBase().getCapacity();
+        capacities[GAME_TAGS] = db.getGameTagBase().getCapacity();
+        return capacities;
+    }
+
+    /**
+     * Rewrites the statistics of the entities whose stored statistics differ from the calculated ones.
+     * Entities that are not referenced by any game are deleted, as when the last game referencing
+     * an entity is replaced. The changes to each entity type are written in a single transaction.
+     * @param stats the calculated statistics, as returned by {@link #calculate(Runnable)}
+     * @return the number of entities that were updated or deleted
+     * @throws EntityStorageException if the entities couldn't be updated
+     */
+    public int repair(@NonNull EntityStats stats) throws EntityStorageException {
+        int numRepaired = 0;
+        numRepaired += repair("players", db.getPlayerBase(), stats.players);
+        numRepaired += repair("tournaments", db.getTournamentBase(), stats.tournaments);
+        numRepaired += repair("annotators", db.getAnnotatorBase(), stats.annotators);
+        numRepaired += repair("sources", db.getSourceBase(), stats.sources);
+        numRepaired += repair("teams", db.getTeamBase(), stats.teams);
+        numRepaired += repair("game tags", db.getGameTagBase(), stats.gameTags);
+        return numRepaired;
+    }
+
+    private <T extends Entity & Comparable<T>> int repair(
+            String entityType, EntityBase<T> entities, Map<Integer, EntityStats.Stats> expectedStats)
+            throws EntityStorageException {
+        List<T> repaired = new ArrayList<>();
+        List<Integer> orphaned = new ArrayList<>();
+        for (T entity : entities.iterable()) {
+            EntityStats.Stats stats = expectedStats.get(entity.getId());
+            if (stats == null) {
+                orphaned.add(entity.getId());
+            } else if (stats.getCount() != entity.getCount() || stats.getFirstGameId() != entity.getFirstGameId()) {
+                repaired.add(entity.withNewStats(stats.getCount(), stats.getFirstGameId()));
+            }
+        }
+        if (repaired.size() > 0 || orphaned.size() > 0) {
+            entities.putAndDeleteAll(repaired, orphaned);
+        }
+        if (repaired.size() > 0) {
+            log.info(String.format("Repaired the statistics of %d %s", repaired.size(), entityType));
+        }
+        if (orphaned.size() > 0) {
+            log.info(String.format("Deleted %d %s that are not referenced by any game", orphaned.size(), entityType));
+        }
+        return repaired.size() + orphaned.size();
+    }
+}
@@ -2,6 +2,7 @@ package se.yarin.cbhlib.validation;
 
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.yarin.cbhlib.Database;
@@ -9,6 +10,7 @@ import se.yarin.cbhlib.Game;
 import se.yarin.cbhlib.entities.Entity;
 import se.yarin.cbhlib.entities.EntityBase;
 import se.yarin.cbhlib.games.search.GameSearcher;
+import se.yarin.cbhlib.operations.CancellationToken;
 import se.yarin.cbhlib.storage.EntityStorageException;
 
 import java.util.EnumSet;
@@ -21,6 +23,9 @@ public class EntityStatsValidator {
     private final Database db;
     @Getter
     private final EntityStats stats;
+    @Setter
+    @NonNull
+    private CancellationToken cancellationToken = CancellationToken.NONE;
 
     public EntityStatsValidator(@NonNull Database db) {
         this.db = db;
@@ -29,6 +34,7 @@ public class EntityStatsValidator {
 
     public void calculateEntityStats(Runnable progressCallback) {
         GameSearcher searcher = new GameSearcher(db);
+        searcher.setCancellationToken(cancellationToken);
         for (Game game : searcher.iterableSearch()) {
             int gameId = game.getId();
 
@@ -47,6 +53,23 @@ public class EntityStatsValidator {
         }
     }
 
+    /**
+     * Calculates the entity statistics on multiple threads using {@link EntityStatsCalculator}
+     * @param numThreads the number of threads to use
+     * @param progressCallback called once for every processed game
+     */
+    public void calculateEntityStats(int numThreads, Runnable progressCallback) {
+        EntityStatsCalculator calculator = new EntityStatsCalculator(db, numThreads);
+        calculator.setCancellationToken(cancellationToken);
+        EntityStats calculated = calculator.calculate(progressCallback);
+        stats.players.putAll(calculated.players);
+        stats.tournaments.putAll(calculated.tournaments);
+        stats.annotators.putAll(calculated.annotators);
+        stats.sources.putAll(calculated.sources);
+        stats.teams.putAll(calculated.teams);
+        stats.gameTags.putAll(calculated.gameTags);
+    }
+
     private void updateEntityStats(Map<Integer, EntityStats.Stats> map, int entityId, int gameId) {
         if (entityId == -1) {
             // For Teams, -1 is a valid reference meaning "no team"
@@ -84,8 +107,9 @@ public class EntityStatsValidator {
         int numInvalid = 0;
         T last = null;
 
-        for (T current : entities.iterableOrderedAscending()) {
+        for (T current : entities.iterableOrderedAscendingReadAhead()) {
             if (numInvalid >= maxInvalid) break;
+            cancellationToken.throwIfCancelled();
             existingIds.add(current.getId());
 
             entities.get(current.getId()); // Sanity check that we can do this lookup as well
@@ -1,32 +1,73 @@
 package se.yarin.cbhlib.validation;
 
+import lombok.AccessLevel;
+import lombok.NonNull;
+import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.yarin.cbhlib.*;
+import se.yarin.cbhlib.annotations.AnnotationsSerializer;
 import se.yarin.cbhlib.exceptions.ChessBaseException;
 import se.yarin.cbhlib.exceptions.ChessBaseIOException;
 import se.yarin.cbhlib.exceptions.ChessBaseInvalidDataException;
+import se.yarin.cbhlib.exceptions.OperationCancelledException;
 import se.yarin.cbhlib.games.*;
 import se.yarin.cbhlib.games.search.GameSearcher;
 import se.yarin.cbhlib.moves.ChessBaseMoveDecodingException;
 import se.yarin.cbhlib.moves.MovesSerializer;
+import se.yarin.cbhlib.operations.CancellationToken;
+import se.yarin.cbhlib.operations.CheckpointFile;
 import se.yarin.chess.GameMovesModel;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class GamesValidator {
     private static final Logger log = LoggerFactory.getLogger(GamesValidator.class);
 
+    // The number of games in the smallest range that is processed as a separate task
+    private static final int RANGE_SIZE = 2000;
+    // The number of game headers to read at a time
+    private static final int BATCH_SIZE = 500;
+    // The number of games processed between two possible checkpoints
+    private static final int CHECKPOINT_CHUNK_SIZE = 100000;
+
     private final Database db;
     private final GameLoader loader;
+    private final int numThreads;
+    @Setter
+    @NonNull
+    private CancellationToken cancellationToken = CancellationToken.NONE;
+    @Setter
+    private CheckpointFile checkpointFile;
+    @Setter(AccessLevel.PACKAGE)
+    private int checkpointChunkSize = CHECKPOINT_CHUNK_SIZE;
 
     public GamesValidator(Database db) {
+        this(db, 1);
+    }
+
+    public GamesValidator(@NonNull Database db, int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1");
+        }
         this.db = db;
         this.loader = new GameLoader(db);
+        this.numThreads = numThreads;
     }
 
     public void readAllGames() throws ChessBaseException {
         GameSearcher gameSearcher = new GameSearcher(db);
+        gameSearcher.setCancellationToken(cancellationToken);
 
         for (Game game : gameSearcher.iterableSearch()) {
             game.getModel();
@@ -70,138 +111,583 @@ public class GamesValidator {
         }
     }
 
+    /**
+     * Checks the headers and data of all games, and optionally loads the moves and annotations of all games.
+     * Problems are logged in game id order, even though the games are checked on multiple threads.
+     * @param loadMoves if true, also deserialize the moves and annotations of all games
+     * @param progressCallback called once for every processed game; never called concurrently
+     * @return the number of errors found
+     * @throws OperationCancelledException if the processing was cancelled
+     */
     public int processGames(boolean loadMoves, Runnable progressCallback) {
-        int numGames = 0, numDeleted = 0, numAnnotated = 0, numText = 0, numErrors = 0, numChess960 = 0;
-        long lastMovesOfs = this.db.getMovesBase().getStorage().getHeaderSize();
-        long lastAnnotationOfs = this.db.getAnnotationBase().getStorage().getHeaderSize();
-        int numOverlappingAnnotations = 0, numOverlappingMoves = 0;
-        int numAnnotationGaps = 0, numMoveGaps = 0;
-        int annotationFreeSpace = 0, moveFreeSpace = 0;
-        int numMoveDecodingErrors = 0, numInvalidEntityReferences = 0;
-        boolean moveOffsetDiffers = false, annotationOffsetDiffers = false;
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            return scanGames(pool, true, loadMoves, null, progressCallback).report();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 
-        MovesSerializer movesSerializer = new MovesSerializer(true);
+    /**
+     * Makes a single pass over all games in the database, reading the game headers, extended game headers,
+     * moves and annotations once. The games are split into ranges that are processed by the tasks in the pool,
+     * so other independent checks may run in the same pool at the same time.
+     *
+     * If a checkpoint file has been set, the games are processed in chunks and the results so far are saved
+     * periodically after a chunk, and when the scan is cancelled. The scan is then resumed from the latest checkpoint
+     * if it's run again with the same options. The checkpoint is deleted when the scan completes.
+     * @param pool the pool to process the games in
+     * @param checkGames if true, check the game headers and game data
+     * @param loadMoves if true, also deserialize the moves and annotations of all games
+     * @param entityStats if not null, the statistics of all referenced entities are added to this
+     * @param progressCallback called once for every processed game; never called concurrently
+     * @return the result of the game checks, which is logged by {@link RangeResult#report()}
+     * @throws OperationCancelledException if the scan was cancelled
+     */
+    RangeResult scanGames(ForkJoinPool pool, boolean checkGames, boolean loadMoves,
+                          EntityStats entityStats, Runnable progressCallback) {
+        int numGames = db.getHeaderBase().size();
+        int[] capacities = EntityStatsCalculator.capacities(db);
+        ConcurrentLinkedQueue<EntityStatsCalculator.Counters> threadCounters = new ConcurrentLinkedQueue<>();
+        ThreadLocal<Worker> workers = ThreadLocal.withInitial(() -> {
+            EntityStatsCalculator.Counters counters = null;
+            if (entityStats != null) {
+                counters = new EntityStatsCalculator.Counters(capacities);
+                threadCounters.add(counters);
+            }
+            return new Worker(counters);
+        });
 
-        GameSearcher gameSearcher = new GameSearcher(db);
-        for (Game game : gameSearcher.iterableSearch()) {
-            GameHeader header = game.getHeader();
-            ExtendedGameHeader extendedHeader = game.getExtendedHeader();
+        // The size of the moves file makes it unlikely that a checkpoint is used after the games have been changed
+        String checkpointKey = checkpointFile == null ? null : String.format(
+                "games check=%b load=%b stats=%b numGames=%d movesSize=%d",
+                checkGames, loadMoves, entityStats != null, numGames, db.getMovesBase().getStorage().getSize());
+        ScanState state = checkpointFile == null ? null : checkpointFile.load(checkpointKey,
+                in -> ScanState.read(in, entityStats != null ? capacities : null));
+        if (state == null) {
+            RangeResult result = new RangeResult();
+            if (checkGames) {
+                result.lastMovesEnd = this.db.getMovesBase().getStorage().getHeaderSize();
+                result.lastAnnotationEnd = this.db.getAnnotationBase().getStorage().getHeaderSize();
+            }
+            state = new ScanState(1, result, entityStats != null ? new EntityStatsCalculator.Counters(capacities) : null);
+        } else {
+            for (int i = 1; i < state.nextGameId; i++) {
+                progressCallback.run();
+            }
+        }
 
-            if (extendedHeader.getId() != header.getId()) {
-                log.warn(String.format("Game %d: Extended game header has wrong id %d",
-                        header.getId(), extendedHeader.getId()));
+        // Without checkpoints, all games are processed as one chunk
+        int chunkSize = checkpointFile == null ? Math.max(numGames, 1) : checkpointChunkSize;
+        int savedGameId = state.nextGameId;
+        try {
+            while (state.nextGameId <= numGames) {
+                cancellationToken.throwIfCancelled();
+                int chunkEnd = Math.min(numGames + 1, state.nextGameId + chunkSize);
+                state.result.merge(pool.invoke(new RangeTask(state.nextGameId, chunkEnd, checkGames, loadMoves, workers, progressCallback)));
+                if (state.counters != null) {
+                    // The counts of a chunk are only added when the whole chunk is done, so they're consistent with nextGameId
+                    for (EntityStatsCalculator.Counters counters : threadCounters) {
+                        state.counters.merge(counters);
+                        if (checkpointFile != null) {
+                            counters.clear();
+                        }
+                    }
+                }
+                state.nextGameId = chunkEnd;
+                if (checkpointFile != null && state.nextGameId <= numGames && checkpointFile.isDue()) {
+                    checkpointFile.save(checkpointKey, state::write);
+                    savedGameId = state.nextGameId;
+                }
+            }
+        } catch (OperationCancelledException e) {
+            if (checkpointFile != null && state.nextGameId > savedGameId) {
+                checkpointFile.save(checkpointKey, state::write);
             }
+            throw e;
+        }
+
+        if (entityStats != null) {
+            EntityStats calculated = state.counters.toStats();
+            entityStats.players.putAll(calculated.players);
+            entityStats.tournaments.putAll(calculated.tournaments);
+            entityStats.annotators.putAll(calculated.annotators);
+            entityStats.sources.putAll(calculated.sources);
+            entityStats.teams.putAll(calculated.teams);
+            entityStats.gameTags.putAll(calculated.gameTags);
+        }
+        if (checkpointFile != null) {
+            checkpointFile.delete();
+        }
+        return state.result;
+    }
 
-            if (extendedHeader.getMovesOffset() != 0 && extendedHeader.getMovesOffset() != header.getMovesOffset() && !moveOffsetDiffers) {
-                log.warn(String.format("Game %d: Move offset differs between header files (%d != %d) [ignoring similar errors]",
-                        header.getId(), header.getMovesOffset(), extendedHeader.getMovesOffset()));
-                moveOffsetDiffers = true; // If this happens in one game, it usually happens in many games
+    /**
+     * The state of a scan after all games before nextGameId have been processed
+     */
+    private static class ScanState {
+        private int nextGameId;
+        private final RangeResult result;
+        private final EntityStatsCalculator.Counters counters;
+
+        ScanState(int nextGameId, RangeResult result, EntityStatsCalculator.Counters counters) {
+            this.nextGameId = nextGameId;
+            this.result = result;
+            this.counters = counters;
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeInt(nextGameId);
+            result.write(out);
+            if (counters != null) {
+                counters.write(out);
             }
+        }
 
-            if (extendedHeader.getAnnotationOffset() != 0 && extendedHeader.getAnnotationOffset() != header.getAnnotationOffset() && !annotationOffsetDiffers) {
-                log.warn(String.format("Game %d: Annotation offset differs between header files (%d != %d) [ignoring similar errors]",
-                        header.getId(), header.getAnnotationOffset(), extendedHeader.getAnnotationOffset()));
-                annotationOffsetDiffers = true; // If this happens in one game, it usually happens in many games
+        static ScanState read(DataInput in, int[] capacities) throws IOException {
+            int nextGameId = in.readInt();
+            RangeResult result = RangeResult.read(in);
+            EntityStatsCalculator.Counters counters = capacities == null ? null : EntityStatsCalculator.Counters.read(in, capacities);
+            return new ScanState(nextGameId, result, counters);
+        }
+    }
+
+    /**
+     * The kinds of problems that can be found in a game. Only the first few problems of each kind are logged.
+     * The problems are declared in the order they're checked, which is also the order they're logged in.
+     */
+    enum Problem {
+        EXTENDED_HEADER_ID(0),
+        MOVES_OFFSET_DIFFERS(1),
+        ANNOTATION_OFFSET_DIFFERS(1),
+        OVERLAPPING_MOVES(1),
+        OVERLAPPING_ANNOTATIONS(1),
+        MOVE_DECODING_ERROR(5),
+        INVALID_DATA(5),
+        CRITICAL_ERROR(0);
+
+        // The maximum number of problems to log, or 0 to log all of them
+        private final int maxLogged;
+
+        Problem(int maxLogged) {
+            this.maxLogged = maxLogged;
+        }
+
+        int getMaxLogged() {
+            return maxLogged;
+        }
+    }
+
+    static class Report {
+        private final int gameId;
+        private final Problem problem;
+        private final boolean error;
+        private final String message;
+
+        Report(int gameId, Problem problem, boolean error, String message) {
+            this.gameId = gameId;
+            this.problem = problem;
+            this.error = error;
+            this.message = message;
+        }
+
+        int getGameId() {
+            return gameId;
+        }
+
+        Problem getProblem() {
+            return problem;
+        }
+    }
+
+    /**
+     * The state of a thread in the pool, reused by all the ranges it processes
+     */
+    private static class Worker {
+        private final EntityStatsCalculator.Counters counters;
+        private final MovesSerializer movesSerializer = new MovesSerializer(true);
+
+        Worker(EntityStatsCalculator.Counters counters) {
+            this.counters = counters;
+        }
+    }
+
+    /**
+     * The result of checking a range of consecutive games. The results of adjacent ranges are merged,
+     * and since the reports are kept in game id order, they can be logged as if the games had been checked sequentially.
+     * The offsets of the first game in a range can only be checked against the previous game when the ranges are merged.
+     */
+    static class RangeResult {
+        private int numGames, numDeleted, numAnnotated, numText, numChess960;
+        private int numAnnotationGaps, numMoveGaps;
+        private long annotationFreeSpace, moveFreeSpace;
+        private final int[] numProblems = new int[Problem.values().length];
+        private final List<Report> reports = new ArrayList<>();
+
+        // The offsets of the first game in the range that has moves (and annotations); the game id is 0 if none
+        private int firstMovesGameId, firstAnnotationGameId;
+        private long firstMovesOffset, firstAnnotationOffset;
+        // The end of the data of the last game in the range, or -1 if none
+        private long lastMovesEnd = -1, lastAnnotationEnd = -1;
+
+        void report(int gameId, Problem problem, boolean error, String message) {
+            addReport(new Report(gameId, problem, error, message));
+        }
+
+        /**
+         * Gets the reports that will be logged, in game id order and capped per problem
+         */
+        List<Report> getReports() {
+            return Collections.unmodifiableList(reports);
+        }
+
+        /**
+         * Gets the total number of problems of the given type, including those that won't be logged
+         */
+        int getNumProblems(Problem problem) {
+            return numProblems[problem.ordinal()];
+        }
+
+        private void addReport(Report report) {
+            int count = numProblems[report.problem.ordinal()]++;
+            if (report.problem.maxLogged == 0 || count < report.problem.maxLogged) {
+                reports.add(report);
             }
+        }
 
-            if (header.getAnnotationOffset() > 0) {
-                int annotationSize = db.getAnnotationBase().getStorage().readBlob(header.getAnnotationOffset()).limit();
-                int annotationEnd = header.getAnnotationOffset() + annotationSize;
-                if (log.isDebugEnabled()) {
-                    log.debug(String.format("Game %d: Annotation [%d, %d)", header.getId(), header.getAnnotationOffset(), annotationEnd));
-                }
-                if (header.getAnnotationOffset() < lastAnnotationOfs) {
-                    if (numOverlappingAnnotations == 0) {
-                        log.warn(String.format("Game %d has annotation data at offset %d but previous game annotation data ended at %d",
-                                game.getId(), header.getAnnotationOffset(), lastAnnotationOfs));
-                    }
-                    numOverlappingAnnotations += 1;
-                } else if (header.getAnnotationOffset() > lastAnnotationOfs) {
-                    numAnnotationGaps += 1;
-                    annotationFreeSpace += header.getAnnotationOffset() - lastAnnotationOfs;
-                }
-                lastAnnotationOfs = annotationEnd;
+        void addMoves(int gameId, long offset, long end) {
+            Report overlap = checkMoves(gameId, offset, end);
+            if (overlap != null) {
+                addReport(overlap);
             }
+        }
 
-            int movesSize = db.getMovesBase().getStorage().readBlob(header.getMovesOffset()).limit();
-            int movesEnd = header.getMovesOffset() + movesSize;
-            if (log.isDebugEnabled()) {
-                log.debug(String.format("Game %d: Moves [%d, %d)", header.getId(), header.getMovesOffset(), movesEnd));
+        void addAnnotations(int gameId, long offset, long end) {
+            Report overlap = checkAnnotations(gameId, offset, end);
+            if (overlap != null) {
+                addReport(overlap);
             }
-            if (header.getMovesOffset() < lastMovesOfs) {
-                if (numOverlappingMoves == 0) {
-                    log.warn(String.format("Game %d has move data at offset %d but previous game move data ended at %d",
-                            game.getId(), header.getMovesOffset(), lastMovesOfs));
-                }
-                numOverlappingMoves += 1;
-            } else if (header.getMovesOffset() > lastMovesOfs) {
+        }
+
+        private Report checkMoves(int gameId, long offset, long end) {
+            Report overlap = null;
+            if (lastMovesEnd < 0) {
+                firstMovesGameId = gameId;
+                firstMovesOffset = offset;
+            } else if (offset < lastMovesEnd) {
+                overlap = new Report(gameId, Problem.OVERLAPPING_MOVES, false, String.format(
+                        "Game %d has move data at offset %d but previous game move data ended at %d", gameId, offset, lastMovesEnd));
+            } else if (offset > lastMovesEnd) {
                 numMoveGaps += 1;
-                moveFreeSpace += header.getMovesOffset() - lastMovesOfs;
+                moveFreeSpace += offset - lastMovesEnd;
             }
-            lastMovesOfs = movesEnd;
+            lastMovesEnd = end;
+            return overlap;
+        }
+
+        private Report checkAnnotations(int gameId, long offset, long end) {
+            Report overlap = null;
+            if (lastAnnotationEnd < 0) {
+                firstAnnotationGameId = gameId;
+                firstAnnotationOffset = offset;
+            } else if (offset < lastAnnotationEnd) {
+                overlap = new Report(gameId, Problem.OVERLAPPING_ANNOTATIONS, false, String.format(
+                        "Game %d has annotation data at offset %d but previous game annotation data ended at %d", gameId, offset, lastAnnotationEnd));
+            } else if (offset > lastAnnotationEnd) {
+                numAnnotationGaps += 1;
+                annotationFreeSpace += offset - lastAnnotationEnd;
+            }
+            lastAnnotationEnd = end;
+            return overlap;
+        }
+
+        /**
+         * Merges the result of the range directly following this range into this result
+         */
+        void merge(RangeResult next) {
+            numGames += next.numGames;
+            numDeleted += next.numDeleted;
+            numAnnotated += next.numAnnotated;
+            numText += next.numText;
+            numChess960 += next.numChess960;
+            numMoveGaps += next.numMoveGaps;
+            moveFreeSpace += next.moveFreeSpace;
+            numAnnotationGaps += next.numAnnotationGaps;
+            annotationFreeSpace += next.annotationFreeSpace;
 
-            try {
-                if (header.getChess960StartPosition() >= 0) {
-                    numChess960 += 1;
+            int[] numLogged = numProblems.clone();
+
+            // The first game with moves (or annotations) in the next range is checked against the last one in this range
+            List<Report> nextReports = new ArrayList<>();
+            if (next.firstMovesGameId > 0) {
+                Report overlap = checkMoves(next.firstMovesGameId, next.firstMovesOffset, next.lastMovesEnd);
+                if (overlap != null) {
+                    nextReports.add(overlap);
+                    numProblems[overlap.problem.ordinal()] += 1;
                 }
-                if (header.getAnnotationOffset() > 0) {
-                    numAnnotated += 1;
+            }
+            if (next.firstAnnotationGameId > 0) {
+                Report overlap = checkAnnotations(next.firstAnnotationGameId, next.firstAnnotationOffset, next.lastAnnotationEnd);
+                if (overlap != null) {
+                    nextReports.add(overlap);
+                    numProblems[overlap.problem.ordinal()] += 1;
                 }
-                if (header.isDeleted()) {
-                    numDeleted += 1;
+            }
+            // The problems of a game are declared in the order they're found by checkGame
+            nextReports.addAll(next.reports);
+            nextReports.sort(Comparator.<Report>comparingInt(report -> report.gameId)
+                    .thenComparingInt(report -> report.problem.ordinal()));
+
+            // The next range only kept the first few reports of each problem,
+            // which may be too many when combined with the problems in this range
+            for (Report report : nextReports) {
+                if (report.problem.maxLogged == 0 || numLogged[report.problem.ordinal()] < report.problem.maxLogged) {
+                    reports.add(report);
                 }
-                if (header.isGuidingText()) {
-                    numText += 1;
+                numLogged[report.problem.ordinal()] += 1;
+            }
+            for (Problem problem : Problem.values()) {
+                numProblems[problem.ordinal()] += next.numProblems[problem.ordinal()];
+            }
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeInt(numGames);
+            out.writeInt(numDeleted);
+            out.writeInt(numAnnotated);
+            out.writeInt(numText);
+            out.writeInt(numChess960);
+            out.writeInt(numAnnotationGaps);
+            out.writeInt(numMoveGaps);
+            out.writeLong(annotationFreeSpace);
+            out.writeLong(moveFreeSpace);
+            out.writeInt(firstMovesGameId);
+            out.writeLong(firstMovesOffset);
+            out.writeLong(lastMovesEnd);
+            out.writeInt(firstAnnotationGameId);
+            out.writeLong(firstAnnotationOffset);
+            out.writeLong(lastAnnotationEnd);
+            out.writeInt(numProblems.length);
+            for (int count : numProblems) {
+                out.writeInt(count);
+            }
+            out.writeInt(reports.size());
+            for (Report report : reports) {
+                out.writeInt(report.gameId);
+                out.writeInt(report.problem.ordinal());
+                out.writeBoolean(report.error);
+                out.writeUTF(report.message);
+            }
+        }
+
+        static RangeResult read(DataInput in) throws IOException {
+            RangeResult result = new RangeResult();
+            result.numGames = in.readInt();
+            result.numDeleted = in.readInt();
+            result.numAnnotated = in.readInt();
+            result.numText = in.readInt();
+            result.numChess960 = in.readInt();
+            result.numAnnotationGaps = in.readInt();
+            result.numMoveGaps = in.readInt();
+            result.annotationFreeSpace = in.readLong();
+            result.moveFreeSpace = in.readLong();
+            result.firstMovesGameId = in.readInt();
+            result.firstMovesOffset = in.readLong();
+            result.lastMovesEnd = in.readLong();
+            result.firstAnnotationGameId = in.readInt();
+            result.firstAnnotationOffset = in.readLong();
+            result.lastAnnotationEnd = in.readLong();
+            Problem[] problems = Problem.values();
+            if (in.readInt() != problems.length) {
+                throw new IOException("Unexpected number of problem types");
+            }
+            for (int i = 0; i < problems.length; i++) {
+                result.numProblems[i] = in.readInt();
+            }
+            int numReports = in.readInt();
+            for (int i = 0; i < numReports; i++) {
+                int gameId = in.readInt();
+                Problem problem = problems[in.readInt()];
+                boolean error = in.readBoolean();
+                result.reports.add(new Report(gameId, problem, error, in.readUTF()));
+            }
+            return result;
+        }
+
+        /**
+         * Logs all the problems and statistics
+         * @return the number of errors
+         */
+        int report() {
+            for (Report report : reports) {
+                if (report.error) {
+                    log.error(report.message);
+                } else {
+                    log.warn(report.message);
                 }
-                if (!header.isGuidingText()) {
-                    // Deserialize the game header (and lookup player, team, source, commentator)
-                    loader.getGameHeaderModel(game);
-
-                    if (loadMoves) {
-                        // Deserialize explicitly to be able to catch the exceptions
-                        ByteBuffer movesBlob = this.db.getMovesBase().getMovesBlob(game.getMovesOffset());
-                        GameMovesModel moves = movesSerializer.deserializeMoves(movesBlob, true, game.getId());
-                        this.db.getAnnotationBase().getAnnotations(moves, game.getAnnotationOffset());
-                    }
-                    numGames += 1;
+            }
+
+            int numMoveDecodingErrors = numProblems[Problem.MOVE_DECODING_ERROR.ordinal()];
+            int numInvalidEntityReferences = numProblems[Problem.INVALID_DATA.ordinal()];
+            int numErrors = numMoveDecodingErrors + numInvalidEntityReferences + numProblems[Problem.CRITICAL_ERROR.ordinal()];
+            int numOverlappingMoves = numProblems[Problem.OVERLAPPING_MOVES.ordinal()];
+            int numOverlappingAnnotations = numProblems[Problem.OVERLAPPING_ANNOTATIONS.ordinal()];
+
+            log.info(String.format("%d games loaded (%d deleted, %d annotated, %d guiding texts, %d Chess960)", numGames, numDeleted, numAnnotated, numText, numChess960));
+            if (numErrors > 0) {
+                log.warn(String.format("%d errors in the game data encountered (%d move decoding errors, %d entity references errors)", numErrors, numMoveDecodingErrors, numInvalidEntityReferences));
+            }
+            if (numOverlappingMoves > 0) {
+                log.warn(String.format("%d games had overlapping move data", numOverlappingMoves));
+            }
+            if (numOverlappingAnnotations > 0) {
+                log.warn(String.format("%d games had overlapping annotation data", numOverlappingAnnotations));
+            }
+            if (numAnnotationGaps > 0) {
+                log.info(String.format("There were %d gaps in the annotation data (total %d bytes)", numAnnotationGaps, annotationFreeSpace));
+            }
+            if (numMoveGaps > 0) {
+                log.info(String.format("There were %d gaps in the moves data (total %d bytes)", numMoveGaps, moveFreeSpace));
+            }
+            return numErrors;
+        }
+    }
+
+    /**
+     * Processes a range of games, splitting it into smaller ranges that can be stolen by idle threads
+     */
+    private class RangeTask extends RecursiveTask<RangeResult> {
+        private final int startId, endId;
+        private final boolean checkGames, loadMoves;
+        private final ThreadLocal<Worker> workers;
+        private final Runnable progressCallback;
+
+        RangeTask(int startId, int endId, boolean checkGames, boolean loadMoves,
+                  ThreadLocal<Worker> workers, Runnable progressCallback) {
+            this.startId = startId;
+            this.endId = endId;
+            this.checkGames = checkGames;
+            this.loadMoves = loadMoves;
+            this.workers = workers;
+            this.progressCallback = progressCallback;
+        }
+
+        @Override
+        protected RangeResult compute() {
+            if (endId - startId <= RANGE_SIZE) {
+                return processRange(startId, endId, checkGames, loadMoves, workers.get(), progressCallback);
+            }
+            int midId = startId + (endId - startId) / 2;
+            RangeTask first = new RangeTask(startId, midId, checkGames, loadMoves, workers, progressCallback);
+            RangeTask second = new RangeTask(midId, endId, checkGames, loadMoves, workers, progressCallback);
+            first.fork();
+            RangeResult secondResult = second.compute();
+            RangeResult result = first.join();
+            result.merge(secondResult);
+            return result;
+        }
+    }
+
+    private RangeResult processRange(int startId, int endId, boolean checkGames, boolean loadMoves,
+                                     Worker worker, Runnable progressCallback) {
+        RangeResult result = new RangeResult();
+        for (int batchStart = startId; batchStart < endId; batchStart += BATCH_SIZE) {
+            cancellationToken.throwIfCancelled();
+            int batchEnd = Math.min(endId, batchStart + BATCH_SIZE);
+            List<GameHeader> headers = db.getHeaderBase().getRange(batchStart, batchEnd);
+            // Old databases may have fewer (or no) extended headers
+            List<ExtendedGameHeader> extendedHeaders = db.getExtendedHeaderBase().getRange(batchStart, batchEnd);
+
+            for (int i = 0; i < headers.size(); i++) {
+                GameHeader header = headers.get(i);
+                ExtendedGameHeader extendedHeader = i < extendedHeaders.size() ? extendedHeaders.get(i) : null;
+                if (worker.counters != null) {
+                    worker.counters.addGame(header, extendedHeader);
                 }
-            } catch (ChessBaseMoveDecodingException e) {
-                if (numMoveDecodingErrors < 5) {
-                    log.error("Move decoding error in game " + game.getId() + ": " + e.getMessage());
+                if (checkGames) {
+                    checkGame(result, worker, header, extendedHeader == null ? ExtendedGameHeader.empty(header) : extendedHeader, loadMoves);
                 }
-                numMoveDecodingErrors += 1;
-                numErrors += 1;
-            } catch (ChessBaseInvalidDataException e) {
-                if (numInvalidEntityReferences < 5) {
-                    log.error("Invalid data in game " + game.getId() + ": " + e.getMessage());
+            }
+
+            synchronized (this) {
+                for (int i = 0; i < headers.size(); i++) {
+                    progressCallback.run();
                 }
-                numInvalidEntityReferences += 1;
-                numErrors += 1;
-            } catch (ChessBaseIOException | AssertionError e) {
-                log.error("Critical error in game " + game.getId() + ": " + e.getMessage());
-                numErrors += 1;
-            } finally {
-                progressCallback.run();
             }
         }
+        return result;
+    }
 
-        log.info(String.format("%d games loaded (%d deleted, %d annotated, %d guiding texts, %d Chess960)", numGames, numDeleted, numAnnotated, numText, numChess960));
-        if (numErrors > 0) {
-            log.warn(String.format("%d errors in the game data encountered (%d move decoding errors, %d entity references errors)", numErrors, numMoveDecodingErrors, numInvalidEntityReferences));
+    private void checkGame(RangeResult result, Worker worker, GameHeader header, ExtendedGameHeader extendedHeader, boolean loadMoves) {
+        int gameId = header.getId();
+        if (header.isDeleted()) {
+            // Deleted games are not checked
+            result.numDeleted += 1;
+            return;
         }
-        if (numOverlappingMoves > 0) {
-            log.warn(String.format("%d games had overlapping move data", numOverlappingMoves));
-        }
-        if (numOverlappingAnnotations > 0) {
-            log.warn(String.format("%d games had overlapping annotation data", numOverlappingAnnotations));
+
+        if (extendedHeader.getId() != gameId) {
+            result.report(gameId, Problem.EXTENDED_HEADER_ID, false, String.format("Game %d: Extended game header has wrong id %d",
+                    gameId, extendedHeader.getId()));
         }
-        if (numAnnotationGaps > 0) {
-            log.info(String.format("There were %d gaps in the annotation data (total %d bytes)", numAnnotationGaps, annotationFreeSpace));
+
+        if (extendedHeader.getMovesOffset() != 0 && extendedHeader.getMovesOffset() != header.getMovesOffset()) {
+            // If this happens in one game, it usually happens in many games
+            result.report(gameId, Problem.MOVES_OFFSET_DIFFERS, false, String.format("Game %d: Move offset differs between header files (%d != %d) [ignoring similar errors]",
+                    gameId, header.getMovesOffset(), extendedHeader.getMovesOffset()));
         }
-        if (numMoveGaps > 0) {
-            log.info(String.format("There were %d gaps in the moves data (total %d bytes)", numMoveGaps, moveFreeSpace));
+
+        if (extendedHeader.getAnnotationOffset() != 0 && extendedHeader.getAnnotationOffset() != header.getAnnotationOffset()) {
+            result.report(gameId, Problem.ANNOTATION_OFFSET_DIFFERS, false, String.format("Game %d: Annotation offset differs between header files (%d != %d) [ignoring similar errors]",
+                    gameId, header.getAnnotationOffset(), extendedHeader.getAnnotationOffset()));
         }
 
-        return numErrors;
+        try {
+            // The blobs are only read once, both to check the offsets and to deserialize the game
+            ByteBuffer movesBlob = db.getMovesBase().getMovesBlob(header.getMovesOffset());
+            long movesEnd = header.getMovesOffset() + movesBlob.limit();
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Game %d: Moves [%d, %d)", gameId, header.getMovesOffset(), movesEnd));
+            }
+            result.addMoves(gameId, header.getMovesOffset(), movesEnd);
+
+            ByteBuffer annotationsBlob = null;
+            if (header.getAnnotationOffset() > 0) {
+                annotationsBlob = db.getAnnotationBase().getAnnotationsBlob(header.getAnnotationOffset());
+                long annotationEnd = header.getAnnotationOffset() + annotationsBlob.limit();
+                if (log.isDebugEnabled()) {
+                    log.debug(String.format("Game %d: Annotation [%d, %d)", gameId, header.getAnnotationOffset(), annotationEnd));
+                }
+                result.addAnnotations(gameId, header.getAnnotationOffset(), annotationEnd);
+            }
+
+            if (header.getChess960StartPosition() >= 0) {
+                result.numChess960 += 1;
+            }
+            if (header.getAnnotationOffset() > 0) {
+                result.numAnnotated += 1;
+            }
+            if (header.isGuidingText()) {
+                result.numText += 1;
+            } else {
+                // Deserialize the game header (and lookup player, team, source, commentator)
+                loader.getGameHeaderModel(new Game(db, header, extendedHeader));
+
+                if (loadMoves) {
+                    // Deserialize explicitly to be able to catch the exceptions
+                    GameMovesModel moves = worker.movesSerializer.deserializeMoves(movesBlob, true, gameId);
+                    if (annotationsBlob != null) {
+                        AnnotationsSerializer.deserializeAnnotations(annotationsBlob, moves);
+                    }
+                }
+                result.numGames += 1;
+            }
+        } catch (ChessBaseMoveDecodingException e) {
+            result.report(gameId, Problem.MOVE_DECODING_ERROR, true, "Move decoding error in game " + gameId + ": " + e.getMessage());
+        } catch (ChessBaseInvalidDataException e) {
+            result.report(gameId, Problem.INVALID_DATA, true, "Invalid data in game " + gameId + ": " + e.getMessage());
+        } catch (ChessBaseIOException | AssertionError e) {
+            result.report(gameId, Problem.CRITICAL_ERROR, true, "Critical error in game " + gameId + ": " + e.getMessage());
+        }
     }
 }
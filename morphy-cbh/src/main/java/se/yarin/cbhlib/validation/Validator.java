@@ -2,17 +2,24 @@ package se.yarin.cbhlib.validation;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NonNull;
+import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.yarin.cbhlib.Database;
 import se.yarin.cbhlib.entities.EntityBase;
 import se.yarin.cbhlib.exceptions.ChessBaseException;
+import se.yarin.cbhlib.exceptions.OperationCancelledException;
+import se.yarin.cbhlib.operations.CancellationToken;
+import se.yarin.cbhlib.operations.CheckpointFile;
 import se.yarin.cbhlib.storage.EntityStorageException;
 
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Class responsible for performing a series of validation/integrity checks against a database
@@ -23,6 +30,28 @@ public class Validator {
     // If more than this number of invalid entities are found, stop checking for more
     private static final int MAX_INVALID_ENTITIES = 20;
 
+    private final int numThreads;
+    @Setter
+    @NonNull
+    private CancellationToken cancellationToken = CancellationToken.NONE;
+    @Setter
+    private CheckpointFile checkpointFile;
+
+    public Validator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a validator
+     * @param numThreads the number of threads to run the checks on
+     */
+    public Validator(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1");
+        }
+        this.numThreads = numThreads;
+    }
+
     public enum Checks {
         // Checks the integrity of the index tree
         ENTITY_DB_INTEGRITY,
@@ -64,6 +93,8 @@ public class Validator {
      * @param checks The types of checks to perform
      * @param throwOnError If true, throws an exception if a critical error is found
      * @param showProgressBar If true, show a progress bar
+     * @throws OperationCancelledException if the validation was cancelled; if a checkpoint file has been set,
+     * the scan of the games is resumed from the latest checkpoint the next time
      */
     public void validate(Database db, EnumSet<Checks> checks, boolean throwOnError, boolean showProgressBar)
             throws ChessBaseException {
@@ -74,6 +105,7 @@ public class Validator {
 
         // Validate entities (statistics, sort order)
         EntityStatsValidator entityStatsValidator = new EntityStatsValidator(db);
+        entityStatsValidator.setCancellationToken(cancellationToken);
         EntityStats entityStats = entityStatsValidator.getStats();
 
         if (checks.contains(Checks.ENTITY_PLAYERS)) {
@@ -99,24 +131,49 @@ public class Validator {
                 ? new TrackerFactory.ProgressBarTrackerFactory()
                 : new TrackerFactory.DummyTrackerFactory();
 
-        if (entityTypeCheck.size() > 0) {
+        // All games are processed in a single pass, which both calculates the entity statistics and checks the games.
+        // The file structure of the entity bases is checked in the same pool at the same time.
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            List<ForkJoinTask<String>> structureChecks = new ArrayList<>();
             if (checks.contains(Checks.ENTITY_DB_INTEGRITY)) {
-                try (ProgressTracker progressTracker = trackerFactory.create("File structure", entityTypeCheck.size())) {
-                    for (EntityTypeCheck typeCheck : entityTypeCheck) {
+                for (EntityTypeCheck typeCheck : entityTypeCheck) {
+                    structureChecks.add(pool.submit(() -> {
+                        cancellationToken.throwIfCancelled();
                         try {
                             typeCheck.getBase().getStorage().validateStructure();
+                            return null;
                         } catch (EntityStorageException e) {
-                            log.error("Error validating entity integrity for " + typeCheck.entityType + ": " + e.getMessage());
-                            hasCritialErrors = true;
+                            return e.getMessage();
                         }
-                        progressTracker.step();
-                    }
+                    }));
                 }
             }
 
-            if (checks.contains(Checks.ENTITY_STATISTICS)) {
-                try (ProgressTracker progressTracker = trackerFactory.create("Entity stats", db.getHeaderBase().size())) {
-                    entityStatsValidator.calculateEntityStats(progressTracker::step);
+            boolean calculateStats = entityTypeCheck.size() > 0 && checks.contains(Checks.ENTITY_STATISTICS);
+            boolean checkGames = checks.contains(Checks.GAMES);
+            GamesValidator.RangeResult gamesResult = null;
+            if (calculateStats || checkGames) {
+                GamesValidator gamesValidator = new GamesValidator(db, numThreads);
+                gamesValidator.setCancellationToken(cancellationToken);
+                gamesValidator.setCheckpointFile(checkpointFile);
+                try (ProgressTracker progressTracker = trackerFactory.create("Games", db.getHeaderBase().size())) {
+                    gamesResult = gamesValidator.scanGames(pool, checkGames, checks.contains(Checks.GAMES_LOAD),
+                            calculateStats ? entityStats : null, progressTracker::step);
+                } catch (OperationCancelledException e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    // This shouldn't really happen
+                    log.error("Critical error processing games: " + e.getMessage());
+                    hasCritialErrors = true;
+                }
+            }
+
+            for (int i = 0; i < structureChecks.size(); i++) {
+                String error = structureChecks.get(i).join();
+                if (error != null) {
+                    log.error("Error validating entity integrity for " + entityTypeCheck.get(i).entityType + ": " + error);
+                    hasCritialErrors = true;
                 }
             }
 
@@ -129,28 +186,21 @@ public class Validator {
                         entityStatsValidator.processEntities(
                                 typeName, typeCheck.getBase(), typeCheck.getStatMap(),
                                 progressTracker::step, checks, MAX_INVALID_ENTITIES, false);
+                    } catch (OperationCancelledException e) {
+                        throw e;
                     } catch (Exception e) {
                         log.error("Error processing entities for " + typeCheck.entityType + ": " + e.getMessage());
                         hasCritialErrors = true;
                     }
                 }
             }
-        }
 
-        if (checks.contains(Checks.GAMES)) {
-            GamesValidator gamesValidator = new GamesValidator(db);
-            try (ProgressTracker progressTracker = trackerFactory.create("Games", db.getHeaderBase().size())) {
-                try {
-                    int numErrors = gamesValidator.processGames(checks.contains(Checks.GAMES_LOAD), progressTracker::step);
-                    if (numErrors > 0) {
-                        hasCritialErrors = true;
-                    }
-                } catch (Exception e) {
-                    // This shouldn't really happen
-                    log.error("Critical error processing games: " + e.getMessage());
-                    hasCritialErrors = true;
-                }
+            // The problems in the games are logged last, in game id order
+            if (checkGames && gamesResult != null && gamesResult.report() > 0) {
+                hasCritialErrors = true;
             }
+        } finally {
+            pool.shutdownNow();
         }
 
         if (hasCritialErrors && throwOnError) {
@@ -0,0 +1,146 @@
+package se.yarin.chess;
+
+import lombok.NonNull;
+
+import java.util.EnumSet;
+
+/**
+ * Converts positions to and from Forsyth-Edwards Notation.
+ *
+ * The half move clock is not tracked by {@link Position}, so it's always 0 when formatting and ignored when parsing.
+ */
+public final class Fen {
+    private Fen() { }
+
+    /**
+     * Formats a position in FEN
+     * @param position the position
+     * @param ply the ply of the position, used for the move number
+     * @return the position in FEN
+     */
+    public static String format(@NonNull Position position, int ply) {
+        StringBuilder fen = new StringBuilder();
+        for (int row = 7; row >= 0; row--) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                Stone stone = position.stoneAt(col, row);
+                if (stone.isNoStone()) {
+                    empty += 1;
+                } else {
+                    if (empty > 0) {
+                        fen.append(empty);
+                        empty = 0;
+                    }
+                    fen.append(stone.toChar());
+                }
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (row > 0) {
+                fen.append('/');
+            }
+        }
+
+        fen.append(position.playerToMove() == Player.WHITE ? " w " : " b ");
+
+        int castlesStart = fen.length();
+        if (position.isCastles(Castles.WHITE_SHORT_CASTLE)) fen.append('K');
+        if (position.isCastles(Castles.WHITE_LONG_CASTLE)) fen.append('Q');
+        if (position.isCastles(Castles.BLACK_SHORT_CASTLE)) fen.append('k');
+        if (position.isCastles(Castles.BLACK_LONG_CASTLE)) fen.append('q');
+        if (fen.length() == castlesStart) {
+            fen.append('-');
+        }
+
+        int epCol = position.getEnPassantCol();
+        if (epCol >= 0) {
+            fen.append(' ').append(Chess.coorToStr(epCol, position.playerToMove() == Player.WHITE ? 5 : 2));
+        } else {
+            fen.append(" -");
+        }
+
+        fen.append(" 0 ").append(Chess.plyToMoveNumber(ply));
+        return fen.toString();
+    }
+
+    /**
+     * Parses a position in FEN into an empty moves model starting at that position
+     * @param fen the position in FEN; the clocks may be omitted
+     * @return a moves model with the position as setup position
+     * @throws IllegalArgumentException if the FEN is invalid
+     */
+    public static GameMovesModel parse(@NonNull String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length < 2) {
+            throw new IllegalArgumentException("Invalid FEN: " + fen);
+        }
+
+        Stone[] board = new Stone[64];
+        String[] rows = fields[0].split("/");
+        if (rows.length != 8) {
+            throw new IllegalArgumentException("Invalid FEN, expected 8 rows: " + fen);
+        }
+        for (int i = 0; i < 8; i++) {
+            int row = 7 - i, col = 0;
+            for (char c : rows[i].toCharArray()) {
+                if (c >= '1' && c <= '8') {
+                    for (int j = 0; j < c - '0' && col < 8; j++) {
+                        board[Chess.coorToSqi(col++, row)] = Stone.NO_STONE;
+                    }
+                } else {
+                    Stone stone = c < 128 ? Stone.fromChar(c) : null;
+                    if (stone == null || stone.isNoStone() || col >= 8) {
+                        throw new IllegalArgumentException("Invalid FEN, bad piece placement: " + fen);
+                    }
+                    board[Chess.coorToSqi(col++, row)] = stone;
+                }
+            }
+            if (col != 8) {
+                throw new IllegalArgumentException("Invalid FEN, bad row length: " + fen);
+            }
+        }
+
+        Player toMove;
+        if (fields[1].equals("w")) {
+            toMove = Player.WHITE;
+        } else if (fields[1].equals("b")) {
+            toMove = Player.BLACK;
+        } else {
+            throw new IllegalArgumentException("Invalid FEN, bad side to move: " + fen);
+        }
+
+        EnumSet<Castles> castles = EnumSet.noneOf(Castles.class);
+        if (fields.length > 2) {
+            for (char c : fields[2].toCharArray()) {
+                switch (c) {
+                    case 'K' -> castles.add(Castles.WHITE_SHORT_CASTLE);
+                    case 'Q' -> castles.add(Castles.WHITE_LONG_CASTLE);
+                    case 'k' -> castles.add(Castles.BLACK_SHORT_CASTLE);
+                    case 'q' -> castles.add(Castles.BLACK_LONG_CASTLE);
+                    case '-' -> { }
+                    default -> throw new IllegalArgumentException("Invalid FEN, bad castling rights: " + fen);
+                }
+            }
+        }
+
+        int epCol = Chess.NO_COL;
+        if (fields.length > 3 && !fields[3].equals("-")) {
+            epCol = Chess.charToCol(fields[3].charAt(0));
+            if (epCol < 0) {
+                throw new IllegalArgumentException("Invalid FEN, bad en passant square: " + fen);
+            }
+        }
+
+        int moveNumber = 1;
+        if (fields.length > 5) {
+            try {
+                moveNumber = Math.max(1, Integer.parseInt(fields[5]));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid FEN, bad move number: " + fen);
+            }
+        }
+
+        return new GameMovesModel(new Position(board, toMove, castles, epCol), moveNumber);
+    }
+}
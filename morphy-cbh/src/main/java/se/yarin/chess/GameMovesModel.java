@@ -233,7 +233,8 @@ public class GameMovesModel {
         }
 
         private void validateMove(Move move) {
-            if (!move.position().equals(position()) || !position.isMoveLegal(move)) {
+            // Positions are usually shared, so avoid calculating the hash codes if possible
+            if ((move.position() != position && !move.position().equals(position)) || !position.isMoveLegal(move)) {
                 throw new IllegalMoveException(position, move);
             }
         }
@@ -2,22 +2,19 @@ package se.yarin.chess;
 
 import lombok.NonNull;
 
-import java.util.EnumSet;
-
 import static se.yarin.chess.Piece.*;
 
 /**
  * A complete version of a chess move, containing information to
  * generate the SAN and LAN notation of the move.
+ * The move itself is stored as a packed int, see {@link PackedMove}.
  *
  * Move is immutable. It's possible to construct illegal moves.
  */
 public class Move {
     private final Position fromPosition; // Not used in equals or hashcode
-    private final int fromSqi, toSqi;
-    private final Stone promotionStone;
-    // Specifies if the move was castles. Must be set explicitly for Chess960 castles.
-    private final boolean castles;
+    // The packed move. Castles must be set explicitly for Chess960 castles.
+    private final int move;
 
     // These are caches
     private Boolean isCapture, isCheck, isMate;
@@ -36,28 +33,29 @@ public class Move {
     }
 
     public Move(@NonNull Position fromPosition, int fromSqi, int toSqi, Stone promotionStone) {
+        this.fromPosition = fromPosition;
         if (fromSqi < 0 || fromSqi >= 64 || toSqi < 0 || toSqi >= 64) {
             // Check if the null move
             if (!(fromSqi == Chess.NO_SQUARE && toSqi == Chess.NO_SQUARE && promotionStone == Stone.NO_STONE)) {
                 throw new IllegalArgumentException("Not a valid move");
             }
+            this.move = PackedMove.NULL_MOVE;
+        } else if (Math.abs(fromSqi - toSqi) == 16 && fromPosition.stoneAt(fromSqi).toPiece() == KING) {
+            this.move = PackedMove.castles(fromSqi, toSqi);
+        } else {
+            this.move = PackedMove.of(fromSqi, toSqi, promotionStone);
         }
-
-        this.fromSqi = fromSqi;
-        this.toSqi = toSqi;
-        this.promotionStone = promotionStone;
-
-        this.fromPosition = fromPosition;
-        this.castles = Math.abs(fromSqi - toSqi) == 16 && fromPosition.stoneAt(fromSqi).toPiece() == KING;
     }
 
-    private Move(@NonNull Position fromPosition, int fromSqi, int toSqi, boolean castles) {
-        this.fromSqi = fromSqi;
-        this.toSqi = toSqi;
-        this.promotionStone = Stone.NO_STONE;
-
+    /**
+     * Creates a move from its packed representation, as generated by
+     * {@link Position#generateAllLegalMoves(int[])}.
+     * @param fromPosition the position the move is made in
+     * @param packedMove the packed move
+     */
+    public Move(@NonNull Position fromPosition, int packedMove) {
         this.fromPosition = fromPosition;
-        this.castles = castles;
+        this.move = packedMove;
     }
 
     /**
@@ -68,8 +66,8 @@ public class Move {
     public static Move longCastles(@NonNull Position fromPosition) {
         int sp = fromPosition.chess960StartPosition();
         Player player = fromPosition.playerToMove();
-        return new Move(fromPosition, Chess960.getKingSqi(sp, player),
-                16 + (player == Player.WHITE ? 0 : 7), true);
+        return new Move(fromPosition, PackedMove.castles(Chess960.getKingSqi(sp, player),
+                16 + (player == Player.WHITE ? 0 : 7)));
     }
 
     /**
@@ -80,8 +78,8 @@ public class Move {
     public static Move shortCastles(@NonNull Position fromPosition) {
         int sp = fromPosition.chess960StartPosition();
         Player player = fromPosition.playerToMove();
-        return new Move(fromPosition, Chess960.getKingSqi(sp, player),
-                48 + (player == Player.WHITE ? 0 : 7), true);
+        return new Move(fromPosition, PackedMove.castles(Chess960.getKingSqi(sp, player),
+                48 + (player == Player.WHITE ? 0 : 7)));
     }
 
     /**
@@ -90,25 +88,32 @@ public class Move {
      * @return a null move
      */
     public static Move nullMove(@NonNull Position fromPosition) {
-        return new Move(fromPosition, Chess.NO_SQUARE, Chess.NO_SQUARE);
+        return new Move(fromPosition, PackedMove.NULL_MOVE);
     }
 
     public int fromSqi() {
-        return fromSqi;
+        return PackedMove.fromSqi(move);
     }
-    public int toSqi() { return toSqi; }
-    public int fromCol() { return Chess.sqiToCol(fromSqi); }
-    public int fromRow() { return Chess.sqiToRow(fromSqi); }
-    public int toCol() { return Chess.sqiToCol(toSqi); }
-    public int toRow() { return Chess.sqiToRow(toSqi); }
+    public int toSqi() { return PackedMove.toSqi(move); }
+    public int fromCol() { return Chess.sqiToCol(fromSqi()); }
+    public int fromRow() { return Chess.sqiToRow(fromSqi()); }
+    public int toCol() { return Chess.sqiToCol(toSqi()); }
+    public int toRow() { return Chess.sqiToRow(toSqi()); }
     public Stone promotionStone() {
-        return promotionStone;
+        return PackedMove.promotionStone(move);
+    }
+
+    /**
+     * @return the move packed into an int, see {@link PackedMove}
+     */
+    public int packed() {
+        return move;
     }
 
     public Position position() { return fromPosition; }
 
     public boolean isNullMove() {
-        return fromSqi == Chess.NO_SQUARE;
+        return PackedMove.isNullMove(move);
     }
 
     public boolean isCapture() {
@@ -143,15 +148,15 @@ public class Move {
     }
 
     public boolean isShortCastle() {
-        return castles && Chess.sqiToCol(toSqi) == 6;
+        return PackedMove.isShortCastles(move);
     }
 
     public boolean isLongCastle() {
-        return castles && Chess.sqiToCol(toSqi) == 2;
+        return PackedMove.isLongCastles(move);
     }
 
     public boolean isCastle() {
-        return castles;
+        return PackedMove.isCastles(move);
     }
 
     public boolean isEnPassant() {
@@ -212,8 +217,10 @@ public class Move {
                         // Start by checking if there's only one pseudo legal move to the square
                         // This is almost always good enough
                         boolean destUnique = true;
-                        for (Move move : fromPosition.generateAllPseudoLegalMoves(EnumSet.of(piece))) {
-                            if (!move.equals(this) &&  move.movingPiece() == piece && move.toSqi() == toSqi()) {
+                        int[] moves = new int[Position.MAX_MOVES];
+                        int numMoves = fromPosition.generateAllPseudoLegalMoves(piece, moves);
+                        for (int i = 0; i < numMoves; i++) {
+                            if (moves[i] != this.move && PackedMove.toSqi(moves[i]) == toSqi()) {
                                 destUnique = false;
                             }
                         }
@@ -224,14 +231,17 @@ public class Move {
                             boolean colUnique = true, rowUnique = true;
                             destUnique = true;
 
-                            for (Move move : fromPosition.generateAllLegalMoves()) {
-                                if (move.equals(this)) continue;
-                                if (move.movingPiece() == piece && move.toSqi() == toSqi()) {
+                            numMoves = fromPosition.generateAllLegalMoves(moves);
+                            for (int i = 0; i < numMoves; i++) {
+                                int otherMove = moves[i];
+                                if (otherMove == this.move) continue;
+                                int otherFromSqi = PackedMove.fromSqi(otherMove);
+                                if (fromPosition.stoneAt(otherFromSqi).toPiece() == piece && PackedMove.toSqi(otherMove) == toSqi()) {
                                     destUnique = false;
-                                    if (Chess.sqiToCol(move.fromSqi()) == Chess.sqiToCol(fromSqi())) {
+                                    if (Chess.sqiToCol(otherFromSqi) == Chess.sqiToCol(fromSqi())) {
                                         colUnique = false;
                                     }
-                                    if (Chess.sqiToRow(move.fromSqi()) == Chess.sqiToRow(fromSqi())) {
+                                    if (Chess.sqiToRow(otherFromSqi) == Chess.sqiToRow(fromSqi())) {
                                         rowUnique = false;
                                     }
                                 }
@@ -291,23 +301,12 @@ public class Move {
         if (this == o) return true;
         if (o == null || !(o instanceof Move)) return false;
 
-        Move move = (Move) o;
-
-        if (fromSqi != move.fromSqi) return false;
-        if (toSqi != move.toSqi) return false;
-        if (castles != move.castles) return false;
-        return promotionStone == move.promotionStone;
-
+        return this.move == ((Move) o).move;
     }
 
     @Override
     public int hashCode() {
-        int result = fromPosition.hashCode();
-        result = 31 * result + fromSqi;
-        result = 31 * result + toSqi;
-        result = 31 * result + promotionStone.hashCode();
-        result = 31 * result + (castles ? 1 : 0);
-        return result;
+        return 31 * fromPosition.hashCode() + move;
     }
 
     @Override
@@ -0,0 +1,151 @@
+package se.yarin.chess;
+
+import lombok.NonNull;
+
+/**
+ * Parses moves in Standard Algebraic Notation (SAN) or Long Algebraic Notation (LAN).
+ *
+ * The notation is decoded into the moving piece, the target square and any disambiguation or from square,
+ * and the move is then looked up directly on the board with {@link Position#findMove(Piece, int, int, int, Piece)}.
+ * No moves are generated, so this is much faster than matching against the legal moves.
+ *
+ * The parser is lenient: check and annotation suffixes (+, #, !, ?) are ignored, captures don't have to be marked,
+ * the = before a promotion piece is optional, and castles may be written with either O or 0.
+ * Coordinate notation as used by UCI (e.g. e2e4, e7e8q, e1g1) is also accepted.
+ */
+public final class MoveParser {
+    private MoveParser() { }
+
+    /**
+     * Parses a move
+     * @param position the position the move is made in
+     * @param text the move in SAN or LAN
+     * @return the parsed move
+     * @throws IllegalArgumentException if the move is invalid, illegal or ambiguous
+     */
+    public static Move parse(@NonNull Position position, @NonNull String text) {
+        int move = parse(position, text, 0, text.length());
+        if (move == PackedMove.NO_MOVE) {
+            throw new IllegalArgumentException("Illegal move: " + text);
+        }
+        if (move == PackedMove.AMBIGUOUS_MOVE) {
+            throw new IllegalArgumentException("Ambiguous move: " + text);
+        }
+        return new Move(position, move);
+    }
+
+    /**
+     * Parses a move in part of a character sequence. No objects are allocated,
+     * except when the move is an en passant capture or castles.
+     * @param position the position the move is made in
+     * @param text the text containing the move
+     * @param start the start index of the move in the text, inclusive
+     * @param end the end index of the move in the text, exclusive
+     * @return the packed move, {@link PackedMove#NO_MOVE} if the text is not a legal move in the position,
+     * or {@link PackedMove#AMBIGUOUS_MOVE} if it matches more than one legal move
+     */
+    public static int parse(@NonNull Position position, @NonNull CharSequence text, int start, int end) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && isSuffix(text.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end) {
+            return PackedMove.NO_MOVE;
+        }
+
+        char first = text.charAt(start);
+        if (first == 'O' || first == '0') {
+            return parseCastles(position, text, start, end);
+        }
+        if (end - start == 2 && (first == '-' && text.charAt(start + 1) == '-' || first == 'Z' && text.charAt(start + 1) == '0')) {
+            return PackedMove.NULL_MOVE;
+        }
+
+        Piece promotionPiece = Piece.NO_PIECE;
+        char last = text.charAt(end - 1);
+        if (Chess.charToRow(last) == Chess.NO_ROW) {
+            promotionPiece = pieceFromChar(Character.toUpperCase(last));
+            if (promotionPiece == Piece.NO_PIECE) {
+                return PackedMove.NO_MOVE;
+            }
+            end--;
+            if (end > start && (text.charAt(end - 1) == '=' || text.charAt(end - 1) == '/')) {
+                end--;
+            }
+        }
+        if (end - start < 2) {
+            return PackedMove.NO_MOVE;
+        }
+        int toCol = Chess.charToCol(text.charAt(end - 2)), toRow = Chess.charToRow(text.charAt(end - 1));
+        if (toCol == Chess.NO_COL || toRow == Chess.NO_ROW) {
+            return PackedMove.NO_MOVE;
+        }
+        end -= 2;
+
+        Piece piece = pieceFromChar(first);
+        if (piece == Piece.NO_PIECE) {
+            piece = Piece.PAWN;
+        } else {
+            start++;
+        }
+
+        int fromCol = Chess.NO_COL, fromRow = Chess.NO_ROW;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (Chess.charToCol(c) != Chess.NO_COL) {
+                fromCol = Chess.charToCol(c);
+            } else if (Chess.charToRow(c) != Chess.NO_ROW) {
+                fromRow = Chess.charToRow(c);
+            } else if (c != 'x' && c != '-' && c != ':') {
+                return PackedMove.NO_MOVE;
+            }
+        }
+
+        if (fromCol != Chess.NO_COL && fromRow != Chess.NO_ROW) {
+            // Long notation; the piece letter may be missing, in which case it's taken from the board
+            Stone stone = position.stoneAt(fromCol, fromRow);
+            if (piece == Piece.PAWN && stone.hasPlayer(position.playerToMove())) {
+                piece = stone.toPiece();
+            }
+            if (piece == Piece.KING && Math.abs(toCol - fromCol) == 2 && fromRow == toRow) {
+                return position.findCastlesMove(toCol > fromCol);
+            }
+        }
+
+        return position.findMove(piece, fromCol, fromRow, Chess.coorToSqi(toCol, toRow), promotionPiece);
+    }
+
+    private static int parseCastles(Position position, CharSequence text, int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == 'O' || c == '0') {
+                count++;
+            } else if (c != '-') {
+                return PackedMove.NO_MOVE;
+            }
+        }
+        return switch (count) {
+            case 2 -> position.findCastlesMove(true);
+            case 3 -> position.findCastlesMove(false);
+            default -> PackedMove.NO_MOVE;
+        };
+    }
+
+    private static boolean isSuffix(char c) {
+        return c == '+' || c == '#' || c == '!' || c == '?' || Character.isWhitespace(c);
+    }
+
+    private static Piece pieceFromChar(char c) {
+        return switch (c) {
+            case 'N' -> Piece.KNIGHT;
+            case 'B' -> Piece.BISHOP;
+            case 'R' -> Piece.ROOK;
+            case 'Q' -> Piece.QUEEN;
+            case 'K' -> Piece.KING;
+            default -> Piece.NO_PIECE;
+        };
+    }
+}
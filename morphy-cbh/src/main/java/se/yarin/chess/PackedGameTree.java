@@ -0,0 +1,340 @@
+package se.yarin.chess;
+
+import lombok.NonNull;
+import se.yarin.chess.annotations.Annotation;
+import se.yarin.chess.annotations.Annotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A compact, immutable representation of the moves in a game, including variations and annotations.
+ * This is intended for read-only use where the overhead of a {@link GameMovesModel},
+ * with a {@link Position} and an {@link Annotations} list in every node, is not needed.
+ *
+ * The moves are stored as shorts in the same order as they appear in a PGN,
+ * i.e. the main move from a node followed by the variations from the same node
+ * (each surrounded by a start and end marker) and then the continuation of the main move.
+ * Every move is identified by its node index; the root is node 0 and the moves are numbered
+ * from 1 in the order they are stored. Annotations are kept in a separate table keyed by node index.
+ *
+ * Positions are not stored but are recalculated when traversing the tree.
+ */
+public final class PackedGameTree {
+
+    // Bits 0-5 is the from square, bits 6-11 the to square and bits 12-15 the type of entry
+    private static final int SQUARE_MASK = 63;
+    private static final int TO_SHIFT = 6;
+    private static final int TYPE_SHIFT = 12;
+
+    private static final int TYPE_NORMAL = 0;
+    // Types 1-4 are promotions to the pieces in PROMOTION_PIECES
+    private static final int TYPE_CASTLES = 5;
+    private static final int TYPE_NULL_MOVE = 6;
+    private static final int TYPE_START_VARIATION = 14;
+    private static final int TYPE_END_VARIATION = 15;
+
+    private static final Piece[] PROMOTION_PIECES = { Piece.QUEEN, Piece.ROOK, Piece.BISHOP, Piece.KNIGHT };
+
+    private static final short START_VARIATION = (short) (TYPE_START_VARIATION << TYPE_SHIFT);
+    private static final short END_VARIATION = (short) (TYPE_END_VARIATION << TYPE_SHIFT);
+
+    private static final int[] NO_NODES = new int[0];
+    private static final Annotations[] NO_ANNOTATIONS = new Annotations[0];
+
+    private final Position startPosition;
+    private final int startPly;
+    private final short[] data;
+    private final int numMoves;
+    // Sorted by node index
+    private final int[] annotatedNodes;
+    private final Annotations[] annotations;
+
+    /**
+     * Callback interface for {@link #traverse(Visitor)}
+     */
+    public interface Visitor {
+        /**
+         * Called for every move in the tree
+         * @param nodeIndex the index of the node the move leads to
+         * @param move the move
+         * @param annotations the annotations of the node the move leads to; must not be modified
+         */
+        void move(int nodeIndex, @NonNull Move move, @NonNull List<Annotation> annotations);
+
+        /**
+         * Called before the first move in a variation. The variation is an alternative
+         * to the most recently visited move.
+         */
+        default void startVariation() { }
+
+        /**
+         * Called after the last move in a variation
+         */
+        default void endVariation() { }
+    }
+
+    private PackedGameTree(Position startPosition, int startPly, short[] data, int numMoves,
+                           int[] annotatedNodes, Annotations[] annotations) {
+        this.startPosition = startPosition;
+        this.startPly = startPly;
+        this.data = data;
+        this.numMoves = numMoves;
+        this.annotatedNodes = annotatedNodes;
+        this.annotations = annotations;
+    }
+
+    /**
+     * Creates a packed copy of a game tree
+     * @param model the moves model to pack
+     * @return a packed game tree with the same moves and annotations as the model
+     */
+    public static PackedGameTree fromModel(@NonNull GameMovesModel model) {
+        Builder builder = new Builder(model.countPly(true), model.countAnnotations());
+        builder.addAnnotations(model.root());
+        builder.addMoves(model.root());
+        return new PackedGameTree(model.root().position(), model.root().ply(),
+                Arrays.copyOf(builder.data, builder.dataSize), builder.numMoves,
+                Arrays.copyOf(builder.annotatedNodes, builder.numAnnotated),
+                Arrays.copyOf(builder.annotations, builder.numAnnotated));
+    }
+
+    /**
+     * Creates a new {@link GameMovesModel} with the moves and annotations in this tree
+     * @return a new moves model
+     */
+    public GameMovesModel toModel() {
+        GameMovesModel model = new GameMovesModel();
+        model.setupPosition(startPosition, startPly);
+        copyAnnotations(0, model.root());
+
+        ArrayList<GameMovesModel.Node> stack = new ArrayList<>();
+        GameMovesModel.Node cursor = model.root();
+        int nodeIndex = 0;
+        for (short entry : data) {
+            int type = (entry >> TYPE_SHIFT) & 15;
+            if (type == TYPE_START_VARIATION) {
+                stack.add(cursor);
+                cursor = cursor.parent();
+            } else if (type == TYPE_END_VARIATION) {
+                cursor = stack.remove(stack.size() - 1);
+            } else {
+                Move move = new Move(cursor.position(), unpack(entry, cursor.position()));
+                cursor = cursor.addMoveUnsafe(move);
+                copyAnnotations(++nodeIndex, cursor);
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Visits all moves in the tree in the order they are stored
+     * @param visitor the visitor to notify
+     */
+    public void traverse(@NonNull Visitor visitor) {
+        // For each variation level, the position before and after the most recent move
+        ArrayList<Position> stack = new ArrayList<>();
+        Position previous = null, current = startPosition;
+        int nodeIndex = 0;
+        for (short entry : data) {
+            int type = (entry >> TYPE_SHIFT) & 15;
+            if (type == TYPE_START_VARIATION) {
+                stack.add(previous);
+                stack.add(current);
+                current = previous;
+                visitor.startVariation();
+            } else if (type == TYPE_END_VARIATION) {
+                current = stack.remove(stack.size() - 1);
+                previous = stack.remove(stack.size() - 1);
+                visitor.endVariation();
+            } else {
+                Move move = new Move(current, unpack(entry, current));
+                nodeIndex += 1;
+                visitor.move(nodeIndex, move, getAnnotations(nodeIndex));
+                previous = current;
+                current = current.doMove(move.packed());
+            }
+        }
+    }
+
+    /**
+     * Gets the moves in the main line of the game
+     * @return a list of all moves in the main line
+     */
+    public List<Move> mainLine() {
+        ArrayList<Move> moves = new ArrayList<>();
+        Position position = startPosition;
+        int depth = 0;
+        for (short entry : data) {
+            int type = (entry >> TYPE_SHIFT) & 15;
+            if (type == TYPE_START_VARIATION) {
+                depth += 1;
+            } else if (type == TYPE_END_VARIATION) {
+                depth -= 1;
+            } else if (depth == 0) {
+                Move move = new Move(position, unpack(entry, position));
+                moves.add(move);
+                position = position.doMove(move.packed());
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * @return the position at the root of the game tree
+     */
+    public Position startPosition() {
+        return startPosition;
+    }
+
+    /**
+     * @return the ply of the position at the root of the game tree
+     */
+    public int startPly() {
+        return startPly;
+    }
+
+    /**
+     * Gets the number of half moves in the game
+     * @param includeVariations if true, count all moves in all variations;
+     *                          otherwise only the main line will be counted
+     * @return the total number of half moves in the game
+     */
+    public int countPly(boolean includeVariations) {
+        if (includeVariations) {
+            return numMoves;
+        }
+        int count = 0, depth = 0;
+        for (short entry : data) {
+            int type = (entry >> TYPE_SHIFT) & 15;
+            if (type == TYPE_START_VARIATION) {
+                depth += 1;
+            } else if (type == TYPE_END_VARIATION) {
+                depth -= 1;
+            } else if (depth == 0) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the total number of annotations in the game
+     * @return the total number of annotations
+     */
+    public int countAnnotations() {
+        int count = 0;
+        for (Annotations nodeAnnotations : annotations) {
+            count += nodeAnnotations.size();
+        }
+        return count;
+    }
+
+    /**
+     * Gets the annotations of a node
+     * @param nodeIndex the index of the node; 0 is the root
+     * @return an unmodifiable list of the annotations of the node
+     */
+    public List<Annotation> getAnnotations(int nodeIndex) {
+        int i = Arrays.binarySearch(annotatedNodes, nodeIndex);
+        return i < 0 ? Collections.emptyList() : Collections.unmodifiableList(annotations[i]);
+    }
+
+    private void copyAnnotations(int nodeIndex, GameMovesModel.Node node) {
+        int i = Arrays.binarySearch(annotatedNodes, nodeIndex);
+        if (i >= 0) {
+            for (Annotation annotation : annotations[i]) {
+                node.addAnnotation(annotation);
+            }
+        }
+    }
+
+    private static short pack(Move move) {
+        if (move.isNullMove()) {
+            return (short) (TYPE_NULL_MOVE << TYPE_SHIFT);
+        }
+        int packed = move.packed();
+        int type = TYPE_NORMAL;
+        if (PackedMove.isCastles(packed)) {
+            type = TYPE_CASTLES;
+        } else if (PackedMove.promotionStone(packed) != Stone.NO_STONE) {
+            type = Arrays.asList(PROMOTION_PIECES).indexOf(PackedMove.promotionStone(packed).toPiece()) + 1;
+        }
+        return (short) (PackedMove.fromSqi(packed) | (PackedMove.toSqi(packed) << TO_SHIFT) | (type << TYPE_SHIFT));
+    }
+
+    private static int unpack(short entry, Position position) {
+        int fromSqi = entry & SQUARE_MASK;
+        int toSqi = (entry >> TO_SHIFT) & SQUARE_MASK;
+        int type = (entry >> TYPE_SHIFT) & 15;
+        switch (type) {
+            case TYPE_NORMAL:
+                return PackedMove.of(fromSqi, toSqi);
+            case TYPE_CASTLES:
+                return PackedMove.castles(fromSqi, toSqi);
+            case TYPE_NULL_MOVE:
+                return PackedMove.NULL_MOVE;
+            default:
+                Stone promotionStone = PROMOTION_PIECES[type - 1].toStone(position.playerToMove());
+                return PackedMove.of(fromSqi, toSqi, promotionStone);
+        }
+    }
+
+    private static class Builder {
+        private short[] data;
+        private int dataSize;
+        private int numMoves;
+        private int[] annotatedNodes;
+        private Annotations[] annotations;
+        private int numAnnotated;
+
+        Builder(int numMoves, int numAnnotations) {
+            // Every move needs one entry, and variations two more for the markers
+            this.data = new short[numMoves * 3 / 2 + 8];
+            this.annotatedNodes = numAnnotations == 0 ? NO_NODES : new int[numAnnotations];
+            this.annotations = numAnnotations == 0 ? NO_ANNOTATIONS : new Annotations[numAnnotations];
+        }
+
+        private void add(short entry) {
+            if (dataSize == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[dataSize++] = entry;
+        }
+
+        private void addMove(GameMovesModel.Node node) {
+            add(pack(node.lastMove()));
+            numMoves += 1;
+            addAnnotations(node);
+        }
+
+        private void addAnnotations(GameMovesModel.Node node) {
+            if (!node.getAnnotations().isEmpty()) {
+                Annotations copy = new Annotations();
+                copy.addAll(node.getAnnotations());
+                annotatedNodes[numAnnotated] = numMoves;
+                annotations[numAnnotated++] = copy;
+            }
+        }
+
+        /**
+         * Adds all moves following a node, in the same order as in PGN
+         */
+        private void addMoves(GameMovesModel.Node node) {
+            List<GameMovesModel.Node> children = node.children();
+            if (children.isEmpty()) {
+                return;
+            }
+            addMove(children.get(0));
+            for (int i = 1; i < children.size(); i++) {
+                add(START_VARIATION);
+                addMove(children.get(i));
+                addMoves(children.get(i));
+                add(END_VARIATION);
+            }
+            addMoves(children.get(0));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package se.yarin.chess;
+
+/**
+ * Helper methods for working with moves packed into a single int.
+ * This is the representation used by the move generator in {@link Position},
+ * and both {@link Move} and {@link ShortMove} are views over it.
+ *
+ * Bits 0-5 contains the from square, bits 6-11 the to square, bits 12-15 the
+ * ordinal of the promotion stone, bit 16 is set if the move is castles
+ * and bit 17 if it's a null move.
+ *
+ * Castles are distinguished by the column of the to square, which is
+ * the c-file for long castles and the g-file for short castles also in Chess960.
+ */
+public final class PackedMove {
+
+    private PackedMove() { }
+
+    private static final int SQUARE_MASK = 63;
+    private static final int TO_SHIFT = 6;
+    private static final int PROMOTION_SHIFT = 12;
+    private static final int PROMOTION_MASK = 15;
+    private static final int CASTLES_FLAG = 1 << 16;
+
+    public static final int NULL_MOVE = 1 << 17;
+
+    // Not actual moves; returned when looking up a move fails
+    public static final int NO_MOVE = -1;
+    public static final int AMBIGUOUS_MOVE = -2;
+
+    private static final Stone[] stones = Stone.values();
+
+    /**
+     * Packs a regular move
+     * @param fromSqi the from square
+     * @param toSqi the to square
+     * @return the packed move
+     */
+    public static int of(int fromSqi, int toSqi) {
+        return fromSqi | (toSqi << TO_SHIFT);
+    }
+
+    /**
+     * Packs a pawn move with a promotion
+     * @param fromSqi the from square
+     * @param toSqi the to square
+     * @param promotionStone the stone the pawn is promoted to, or {@link Stone#NO_STONE}
+     * @return the packed move
+     */
+    public static int of(int fromSqi, int toSqi, Stone promotionStone) {
+        return fromSqi | (toSqi << TO_SHIFT) | (promotionStone.ordinal() << PROMOTION_SHIFT);
+    }
+
+    /**
+     * Packs a castles move
+     * @param kingFromSqi the square the king moves from
+     * @param kingToSqi the square the king ends up on; should be on the c- or g-file
+     * @return the packed move
+     */
+    public static int castles(int kingFromSqi, int kingToSqi) {
+        return kingFromSqi | (kingToSqi << TO_SHIFT) | CASTLES_FLAG;
+    }
+
+    public static int fromSqi(int move) {
+        return isNullMove(move) ? Chess.NO_SQUARE : move & SQUARE_MASK;
+    }
+
+    public static int toSqi(int move) {
+        return isNullMove(move) ? Chess.NO_SQUARE : (move >> TO_SHIFT) & SQUARE_MASK;
+    }
+
+    public static Stone promotionStone(int move) {
+        return stones[(move >> PROMOTION_SHIFT) & PROMOTION_MASK];
+    }
+
+    public static boolean isNullMove(int move) {
+        return (move & NULL_MOVE) != 0;
+    }
+
+    public static boolean isCastles(int move) {
+        return (move & CASTLES_FLAG) != 0;
+    }
+
+    public static boolean isShortCastles(int move) {
+        return isCastles(move) && Chess.sqiToCol(toSqi(move)) == 6;
+    }
+
+    public static boolean isLongCastles(int move) {
+        return isCastles(move) && Chess.sqiToCol(toSqi(move)) == 2;
+    }
+}
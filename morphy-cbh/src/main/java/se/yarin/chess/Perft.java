@@ -0,0 +1,62 @@
+package se.yarin.chess;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counts the number of leaf nodes in the legal move tree from a position to a given depth.
+ * The counts can be compared with known results to verify the move generator,
+ * and the time it takes is a good measure of its performance.
+ *
+ * See https://www.chessprogramming.org/Perft
+ */
+public final class Perft {
+
+    private Perft() { }
+
+    /**
+     * Counts the number of leaf nodes at the given depth from a position
+     * @param position the position to start from
+     * @param depth the number of plies to search
+     * @return the number of nodes at the given depth
+     */
+    public static long perft(Position position, int depth) {
+        if (depth <= 0) {
+            return 1;
+        }
+        return perft(position, depth, new int[depth][Position.MAX_MOVES]);
+    }
+
+    /**
+     * Counts the number of leaf nodes at the given depth after each legal move in a position.
+     * Useful to narrow down which move sequence a faulty node count comes from.
+     * @param position the position to start from
+     * @param depth the number of plies to search, including the first move
+     * @return a map from each move in LAN to the number of nodes after it
+     */
+    public static Map<String, Long> divide(Position position, int depth) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        int[][] moves = new int[Math.max(depth, 1)][Position.MAX_MOVES];
+        int count = position.generateAllLegalMoves(moves[0]);
+        for (int i = 0; i < count; i++) {
+            Position next = position.doMove(moves[0][i]);
+            long nodes = depth <= 1 ? 1 : perft(next, depth - 1, moves);
+            result.put(new Move(position, moves[0][i]).toLAN(), nodes);
+        }
+        return result;
+    }
+
+    private static long perft(Position position, int depth, int[][] moves) {
+        // Use a separate move buffer per level to avoid allocations
+        int[] buffer = moves[moves.length - depth];
+        int count = position.generateAllLegalMoves(buffer);
+        if (depth == 1) {
+            return count;
+        }
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            nodes += perft(position.doMove(buffer[i]), depth - 1, moves);
+        }
+        return nodes;
+    }
+}
@@ -1,7 +1,6 @@
 package se.yarin.chess;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 import static se.yarin.chess.Chess.*;
 import static se.yarin.chess.Piece.*;
@@ -41,6 +40,15 @@ public class Position {
 
     private static final Stone[] emptyBoard;
 
+    /**
+     * An upper bound of the number of pseudo legal moves in a position where each player has at most 16 stones.
+     * Arrays passed to the move generator should have at least this size.
+     */
+    public static final int MAX_MOVES = 512;
+
+    // An upper bound of the number of pseudo legal moves a single stone can have
+    private static final int MAX_STONE_MOVES = 32;
+
     static private long getNonzeroLong(Random r) {
         long v;
         do {
@@ -91,6 +99,9 @@ public class Position {
     private long hashHi; // Cached hash value of the position (upper 64 bits)
     private Boolean isCheck, canCaptureKing; // cached values
     private List<Move> allLegalMoves; // cached values
+    private boolean kingSafetyComputed; // true if checkingSquares and pinnedSquares have been calculated
+    private long checkingSquares; // bit mask of the squares with stones checking the king of the player to move
+    private long pinnedSquares; // bit mask of the squares with stones pinned to the king of the player to move
 
     public Stone stoneAt(int sqi) {
         if (sqi < 0 || sqi > 63)
@@ -299,6 +310,16 @@ public class Position {
      * @return true if the square is attacked
      */
     public boolean isAttacked(int sqi, Player attackColor) {
+        return isAttacked(sqi, attackColor, NO_SQUARE);
+    }
+
+    /**
+     * Checks if the specified square is attacked by any piece of the given color,
+     * treating one of the squares on the board as if it was empty.
+     * @param ignoreSqi a square to consider empty, or {@link Chess#NO_SQUARE}
+     * @return true if the square is attacked
+     */
+    private boolean isAttacked(int sqi, Player attackColor, int ignoreSqi) {
         // Check pawn attack
         int x = Chess.sqiToCol(sqi), y = Chess.sqiToRow(sqi);
         int dy = attackColor == WHITE ? 1 : -1;
@@ -316,9 +337,11 @@ public class Position {
                 cx += directionX[dir];
                 cy += directionY[dir];
                 if (cx < 0 || cy < 0 || cx >= 8 || cy >= 8) break;
-                if (stoneAt(cx, cy).hasPlayer(attackColor.otherPlayer())) break;
-                if (stoneAt(cx, cy).hasPlayer(attackColor)) {
-                    switch (stoneAt(cx, cy).toPiece()) {
+                int csqi = Chess.coorToSqi(cx, cy);
+                Stone stone = csqi == ignoreSqi ? NO_STONE : board[csqi];
+                if (stone.hasPlayer(attackColor.otherPlayer())) break;
+                if (stone.hasPlayer(attackColor)) {
+                    switch (stone.toPiece()) {
                         case BISHOP:
                             if (dir >= 4 && dir < 8) return true;
                             break;
@@ -343,99 +366,238 @@ public class Position {
         return false;
     }
 
-    private void addPawnMove(int x1, int y1, int x2, int y2, List<Move> moveList) {
-        if (y2 > 0 && y2 < 7)
-            moveList.add(new Move(this, x1, y1, x2, y2));
-        else {
-            Player player = y1 < y2 ? WHITE : BLACK;
-            moveList.add(new Move(this, x1, y1, x2, y2, QUEEN.toStone(player)));
-            moveList.add(new Move(this, x1, y1, x2, y2, KNIGHT.toStone(player)));
-            moveList.add(new Move(this, x1, y1, x2, y2, ROOK.toStone(player)));
-            moveList.add(new Move(this, x1, y1, x2, y2, BISHOP.toStone(player)));
+    /**
+     * Determines which stones are checking the king of the player to move, and which of
+     * the players own stones are pinned to the king. This is calculated once per position
+     * by scanning outwards from the king, and makes it possible to determine the legality
+     * of most moves without having to make them.
+     */
+    private void computeKingSafety() {
+        if (kingSafetyComputed) {
+            return;
+        }
+        int kingSqi = toMove == WHITE ? whiteKingSqi : blackKingSqi;
+        Player opponent = toMove.otherPlayer();
+        int x = Chess.sqiToCol(kingSqi), y = Chess.sqiToRow(kingSqi);
+        long checking = 0, pinned = 0;
+
+        for (int dir = 0; dir < 16; dir++) {
+            int cx = x + directionX[dir], cy = y + directionY[dir];
+            int blockerSqi = NO_SQUARE;
+            boolean adjacent = true;
+            while (cx >= 0 && cy >= 0 && cx < 8 && cy < 8) {
+                int sqi = Chess.coorToSqi(cx, cy);
+                Stone stone = board[sqi];
+                if (stone.hasPlayer(toMove)) {
+                    if (dir >= 8 || blockerSqi != NO_SQUARE) break;
+                    blockerSqi = sqi;
+                } else if (stone.hasPlayer(opponent)) {
+                    boolean attacks = switch (stone.toPiece()) {
+                        case ROOK -> dir < 4;
+                        case BISHOP -> dir >= 4 && dir < 8;
+                        case QUEEN -> dir < 8;
+                        case KNIGHT -> dir >= 8;
+                        case KING -> dir < 8 && adjacent;
+                        default -> false;
+                    };
+                    if (attacks) {
+                        if (blockerSqi == NO_SQUARE) {
+                            checking |= 1L << sqi;
+                        } else if (stone.toPiece() != KING) {
+                            pinned |= 1L << blockerSqi;
+                        }
+                    }
+                    break;
+                }
+                if (dir >= 8) break;
+                adjacent = false;
+                cx += directionX[dir];
+                cy += directionY[dir];
+            }
+        }
+
+        // Pawns attacking the king are one row ahead of it, as seen from the player to move
+        int py = y + (toMove == WHITE ? 1 : -1);
+        if (py >= 0 && py < 8) {
+            Stone opponentPawn = PAWN.toStone(opponent);
+            if (x > 0 && board[Chess.coorToSqi(x - 1, py)] == opponentPawn) {
+                checking |= 1L << Chess.coorToSqi(x - 1, py);
+            }
+            if (x < 7 && board[Chess.coorToSqi(x + 1, py)] == opponentPawn) {
+                checking |= 1L << Chess.coorToSqi(x + 1, py);
+            }
+        }
+
+        this.checkingSquares = checking;
+        this.pinnedSquares = pinned;
+        this.kingSafetyComputed = true;
+    }
+
+    /**
+     * Checks if a square lies strictly between two other squares on the same rank, file or diagonal.
+     */
+    private static boolean isBetween(int fromSqi, int toSqi, int sqi) {
+        int dx = Chess.deltaCol(fromSqi, toSqi), dy = Chess.deltaRow(fromSqi, toSqi);
+        if (dx != 0 && dy != 0 && Math.abs(dx) != Math.abs(dy)) {
+            return false;
+        }
+        int step = Integer.signum(dx) * 8 + Integer.signum(dy);
+        for (int i = fromSqi + step; i != toSqi; i += step) {
+            if (i == sqi) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if three squares are on the same rank, file or diagonal.
+     */
+    private static boolean isAligned(int sqi1, int sqi2, int sqi3) {
+        int dx1 = Chess.deltaCol(sqi1, sqi2), dy1 = Chess.deltaRow(sqi1, sqi2);
+        int dx2 = Chess.deltaCol(sqi1, sqi3), dy2 = Chess.deltaRow(sqi1, sqi3);
+        return dx1 * dy2 == dx2 * dy1;
+    }
+
+    /**
+     * Checks if all squares strictly between two squares on the same line are empty.
+     */
+    private boolean isPathClear(int fromSqi, int toSqi) {
+        int step = Integer.signum(Chess.deltaCol(fromSqi, toSqi)) * 8 + Integer.signum(Chess.deltaRow(fromSqi, toSqi));
+        for (int i = fromSqi + step; i != toSqi; i += step) {
+            if (!board[i].isNoStone()) return false;
+        }
+        return true;
+    }
+
+    private int addPawnMove(int fromSqi, int toSqi, int[] moves, int count) {
+        int toRow = Chess.sqiToRow(toSqi);
+        if (toRow > 0 && toRow < 7) {
+            moves[count++] = PackedMove.of(fromSqi, toSqi);
+        } else {
+            moves[count++] = PackedMove.of(fromSqi, toSqi, QUEEN.toStone(toMove));
+            moves[count++] = PackedMove.of(fromSqi, toSqi, KNIGHT.toStone(toMove));
+            moves[count++] = PackedMove.of(fromSqi, toSqi, ROOK.toStone(toMove));
+            moves[count++] = PackedMove.of(fromSqi, toSqi, BISHOP.toStone(toMove));
         }
+        return count;
     }
 
     private static final int[] directionX = new int[]{0, 1, 0, -1, 1, 1, -1, -1, 1, 2, 2, 1, -1, -2, -2, -1};
     private static final int[] directionY = new int[]{1, 0, -1, 0, 1, -1, -1, 1, 2, 1, -1, -2, -2, -1, 1, 2};
 
-    private List<Move> genericMoves(int sqi, int dirBegin, int dirEnd, boolean multi) {
-        if (!stoneAt(sqi).hasPlayer(toMove)) {
+    private int genericMoves(int sqi, int dirBegin, int dirEnd, boolean multi, int[] moves, int count) {
+        if (!board[sqi].hasPlayer(toMove)) {
             throw new IllegalArgumentException("No piece at " + Chess.sqiToStr(sqi) + " with color " + toMove);
         }
         int x = Chess.sqiToCol(sqi), y = Chess.sqiToRow(sqi);
-        ArrayList<Move> moveList = new ArrayList<>();
         for (int dir = dirBegin; dir < dirEnd; dir++) {
             int cx = x, cy = y;
             while (true) {
                 cx += directionX[dir];
                 cy += directionY[dir];
                 if (cx < 0 || cy < 0 || cx >= 8 || cy >= 8) break;
-                Player c = stoneAt(cx, cy).toPlayer();
+                Player c = board[Chess.coorToSqi(cx, cy)].toPlayer();
                 if (c == toMove) break;
-                moveList.add(new Move(this, x, y, cx, cy));
+                moves[count++] = PackedMove.of(sqi, Chess.coorToSqi(cx, cy));
                 if (!multi || c != NOBODY) break;
             }
         }
-        return moveList;
+        return count;
     }
 
-    /**
-     * Generates all pawn moves for the pawn at square x,y
-     */
-    public List<Move> generatePawnMoves(int sqi) {
-        if (stoneAt(sqi) != PAWN.toStone(toMove)) {
+    private int generatePawnMoves(int sqi, int[] moves, int count) {
+        if (board[sqi] != PAWN.toStone(toMove)) {
             throw new IllegalArgumentException("There is no pawn of color " + toMove + " at the square " + Chess.sqiToStr(sqi));
         }
-        ArrayList<Move> moveList = new ArrayList<>();
         int x = Chess.sqiToCol(sqi), y = Chess.sqiToRow(sqi);
         int dy = toMove == WHITE ? 1 : -1;
         if (x > 0 && stoneAt(x-1, y+dy).hasPlayer(toMove.otherPlayer())) {
-            addPawnMove(x, y, x - 1, y + dy, moveList);
+            count = addPawnMove(sqi, Chess.coorToSqi(x - 1, y + dy), moves, count);
         }
         if (x < 7 && stoneAt(x+1, y+dy).hasPlayer(toMove.otherPlayer())) {
-            addPawnMove(x, y, x + 1, y + dy, moveList);
+            count = addPawnMove(sqi, Chess.coorToSqi(x + 1, y + dy), moves, count);
         }
         if (enPassantCol >= 0 && Math.abs(enPassantCol - x) == 1 &&
                 ((y == 4 && dy == 1) || (y == 3 && dy == -1))) {
-            addPawnMove(x, y, enPassantCol, y + dy, moveList);
+            count = addPawnMove(sqi, Chess.coorToSqi(enPassantCol, y + dy), moves, count);
         }
         if (stoneAt(x, y+dy).isNoStone()) {
             if ((y - dy == 0 || y - dy == 7) && stoneAt(x, y + dy * 2).isNoStone()) {
-                addPawnMove(x, y, x, y + dy * 2, moveList);
+                count = addPawnMove(sqi, Chess.coorToSqi(x, y + dy * 2), moves, count);
             }
-            addPawnMove(x, y, x, y + dy, moveList);
+            count = addPawnMove(sqi, Chess.coorToSqi(x, y + dy), moves, count);
+        }
+        return count;
+    }
+
+    private int generateKingMoves(int sqi, int[] moves, int count) {
+        if (board[sqi] != KING.toStone(toMove)) {
+            throw new IllegalArgumentException("There is no king of color " + toMove + " at the square " + Chess.sqiToStr(sqi));
+        }
+        count = genericMoves(sqi, 0, 8, false, moves, count);
+        if (canCastleShort()) {
+            moves[count++] = PackedMove.castles(sqi, Chess.coorToSqi(6, Chess.sqiToRow(sqi)));
+        }
+        if (canCastleLong()) {
+            moves[count++] = PackedMove.castles(sqi, Chess.coorToSqi(2, Chess.sqiToRow(sqi)));
+        }
+        return count;
+    }
+
+    /**
+     * Generates all pseudo legal moves for the stone of the player to move at the given square
+     * @return the new number of moves in the moves array
+     */
+    private int generateStoneMoves(int sqi, int[] moves, int count) {
+        return switch (board[sqi].toPiece()) {
+            case PAWN -> generatePawnMoves(sqi, moves, count);
+            case KNIGHT -> genericMoves(sqi, 8, 16, false, moves, count);
+            case BISHOP -> genericMoves(sqi, 4, 8, true, moves, count);
+            case ROOK -> genericMoves(sqi, 0, 4, true, moves, count);
+            case QUEEN -> genericMoves(sqi, 0, 8, true, moves, count);
+            case KING -> generateKingMoves(sqi, moves, count);
+            default -> count;
+        };
+    }
+
+    private List<Move> toMoveList(int[] moves, int count) {
+        ArrayList<Move> moveList = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            moveList.add(new Move(this, moves[i]));
         }
         return moveList;
     }
 
+    /**
+     * Generates all pawn moves for the pawn at square x,y
+     */
+    public List<Move> generatePawnMoves(int sqi) {
+        int[] moves = new int[MAX_STONE_MOVES];
+        return toMoveList(moves, generatePawnMoves(sqi, moves, 0));
+    }
+
     List<Move> generateKnightMoves(int sqi) {
-        return genericMoves(sqi, 8, 16, false);
+        int[] moves = new int[MAX_STONE_MOVES];
+        return toMoveList(moves, genericMoves(sqi, 8, 16, false, moves, 0));
     }
 
     List<Move> generateBishopMoves(int sqi) {
-        return genericMoves(sqi, 4, 8, true);
+        int[] moves = new int[MAX_STONE_MOVES];
+        return toMoveList(moves, genericMoves(sqi, 4, 8, true, moves, 0));
     }
 
     List<Move> generateRookMoves(int sqi) {
-        return genericMoves(sqi, 0, 4, true);
+        int[] moves = new int[MAX_STONE_MOVES];
+        return toMoveList(moves, genericMoves(sqi, 0, 4, true, moves, 0));
     }
 
     List<Move> generateQueenMoves(int sqi) {
-        return genericMoves(sqi, 0, 8, true);
+        int[] moves = new int[MAX_STONE_MOVES];
+        return toMoveList(moves, genericMoves(sqi, 0, 8, true, moves, 0));
     }
 
     List<Move> generateKingMoves(int sqi) {
-        if (stoneAt(sqi) != KING.toStone(toMove)) {
-            throw new IllegalArgumentException("There is no king of color " + toMove + " at the square " + Chess.sqiToStr(sqi));
-        }
-        List<Move> moveList = genericMoves(sqi, 0, 8, false);
-        if (canCastleShort()) {
-            moveList.add(Move.shortCastles(this));
-        }
-        if (canCastleLong()) {
-            moveList.add(Move.longCastles(this));
-        }
-        return moveList;
+        int[] moves = new int[MAX_STONE_MOVES];
+        return toMoveList(moves, generateKingMoves(sqi, moves, 0));
     }
 
     private boolean canCastleShort() {
@@ -513,7 +675,18 @@ public class Position {
      * @return the position after the move has been made
      */
     public Position doMove(Move move) {
-        if (move.isNullMove()) {
+        return doMove(move.packed());
+    }
+
+    /**
+     * Performs a move and returns the new position. This assumes that the move is pseudolegal.
+     * The resulting position may thus be a board where the king can be captured in the next move.
+     *
+     * @param move the packed move, see {@link PackedMove}
+     * @return the position after the move has been made
+     */
+    public Position doMove(int move) {
+        if (PackedMove.isNullMove(move)) {
             return new Position(board, whiteKingSqi, blackKingSqi, playerToMove().otherPlayer(), castlesMask, NO_COL, chess960sp);
         }
 
@@ -523,12 +696,13 @@ public class Position {
         int newWhiteKingSqi = this.whiteKingSqi;
         int newBlackKingSqi = this.blackKingSqi;
 
-        Piece movingPiece = stoneAt(move.fromSqi()).toPiece();
+        int fromSqi = PackedMove.fromSqi(move), toSqi = PackedMove.toSqi(move);
+        Piece movingPiece = board[fromSqi].toPiece();
 
-        if (move.isCastle()) {
+        if (PackedMove.isCastles(move)) {
             // Castles; update the position of the rook
             int rookFromSqi, rookToSqi;
-            if (move.isLongCastle()) {
+            if (PackedMove.isLongCastles(move)) {
                 rookFromSqi = Chess960.getARookSqi(chess960sp, toMove);
                 rookToSqi = D1 + (toMove == WHITE ? 0 : 7);
             } else {
@@ -537,15 +711,15 @@ public class Position {
             }
 
             if (toMove == WHITE) {
-                newWhiteKingSqi = move.toSqi();
+                newWhiteKingSqi = toSqi;
             } else {
-                newBlackKingSqi = move.toSqi();
+                newBlackKingSqi = toSqi;
             }
 
             newBoard[rookFromSqi] = NO_STONE;
-            newBoard[move.fromSqi()] = NO_STONE;
+            newBoard[fromSqi] = NO_STONE;
             newBoard[rookToSqi] = Piece.ROOK.toStone(toMove);
-            newBoard[move.toSqi()] = Piece.KING.toStone(toMove);
+            newBoard[toSqi] = Piece.KING.toStone(toMove);
 
             if (toMove == WHITE) {
                 newCastlesMask &= ~1;
@@ -555,42 +729,42 @@ public class Position {
                 newCastlesMask &= ~8;
             }
         } else {
-            newBoard[move.toSqi()] = newBoard[move.fromSqi()];
-            if (move.toSqi() != move.fromSqi()) {
-                newBoard[move.fromSqi()] = NO_STONE;
+            newBoard[toSqi] = newBoard[fromSqi];
+            if (toSqi != fromSqi) {
+                newBoard[fromSqi] = NO_STONE;
             }
 
             switch (movingPiece) {
                 case PAWN -> {
-                    if (Chess.deltaCol(move.fromSqi(), move.toSqi()) != 0
-                            && board[move.toSqi()] == NO_STONE) {
+                    if (Chess.deltaCol(fromSqi, toSqi) != 0
+                            && board[toSqi] == NO_STONE) {
                         // En passant
-                        newBoard[coorToSqi(move.toCol(), move.fromRow())] = NO_STONE;
-                    } else if (move.toRow() == 0 || move.toRow() == 7) {
-                        Stone promotionStone = move.promotionStone();
+                        newBoard[coorToSqi(Chess.sqiToCol(toSqi), Chess.sqiToRow(fromSqi))] = NO_STONE;
+                    } else if (Chess.sqiToRow(toSqi) == 0 || Chess.sqiToRow(toSqi) == 7) {
+                        Stone promotionStone = PackedMove.promotionStone(move);
                         if (promotionStone == NO_STONE) {
                             promotionStone = toMove == WHITE ? WHITE_QUEEN : BLACK_QUEEN;
                         }
-                        newBoard[move.toSqi()] = promotionStone;
-                    } else if (Math.abs(Chess.deltaRow(move.fromSqi(), move.toSqi())) == 2) {
-                        enPassantFile = move.fromCol();
+                        newBoard[toSqi] = promotionStone;
+                    } else if (Math.abs(Chess.deltaRow(fromSqi, toSqi)) == 2) {
+                        enPassantFile = Chess.sqiToCol(fromSqi);
                     }
                 }
                 case ROOK -> {
-                    if (move.fromSqi() == Chess960.getARookSqi(chess960sp, WHITE)) newCastlesMask &= ~2;
-                    if (move.fromSqi() == Chess960.getHRookSqi(chess960sp, WHITE)) newCastlesMask &= ~1;
-                    if (move.fromSqi() == Chess960.getARookSqi(chess960sp, BLACK)) newCastlesMask &= ~8;
-                    if (move.fromSqi() == Chess960.getHRookSqi(chess960sp, BLACK)) newCastlesMask &= ~4;
+                    if (fromSqi == Chess960.getARookSqi(chess960sp, WHITE)) newCastlesMask &= ~2;
+                    if (fromSqi == Chess960.getHRookSqi(chess960sp, WHITE)) newCastlesMask &= ~1;
+                    if (fromSqi == Chess960.getARookSqi(chess960sp, BLACK)) newCastlesMask &= ~8;
+                    if (fromSqi == Chess960.getHRookSqi(chess960sp, BLACK)) newCastlesMask &= ~4;
                 }
                 case KING -> {
                     if (toMove == WHITE) {
                         newCastlesMask &= ~1;
                         newCastlesMask &= ~2;
-                        newWhiteKingSqi = move.toSqi();
+                        newWhiteKingSqi = toSqi;
                     } else {
                         newCastlesMask &= ~4;
                         newCastlesMask &= ~8;
-                        newBlackKingSqi = move.toSqi();
+                        newBlackKingSqi = toSqi;
                     }
                 }
             }
@@ -599,13 +773,62 @@ public class Position {
         return new Position(newBoard, newWhiteKingSqi, newBlackKingSqi, toMove.otherPlayer(), newCastlesMask, enPassantFile, chess960sp);
     }
 
+    /**
+     * Generates all "pseudo legal" moves in the position. A pseudo legal move is a legal
+     * move in all respects except that the king might be captured after the move has been made.
+     * @param moves an array of at least {@link #MAX_MOVES} elements where the packed moves are stored
+     * @return the number of generated moves
+     */
+    public int generateAllPseudoLegalMoves(int[] moves) {
+        int count = 0;
+        for (int i = 0; i < 64; i++) {
+            if (board[i].hasPlayer(toMove)) {
+                count = generateStoneMoves(i, moves, count);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Generates all "pseudo legal" moves in the position by a specific piece.
+     * @param piece the piece to generate moves for
+     * @param moves an array of at least {@link #MAX_MOVES} elements where the packed moves are stored
+     * @return the number of generated moves
+     */
+    public int generateAllPseudoLegalMoves(Piece piece, int[] moves) {
+        int count = 0;
+        Stone stone = piece.toStone(toMove);
+        for (int i = 0; i < 64; i++) {
+            if (board[i] == stone) {
+                count = generateStoneMoves(i, moves, count);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Generates all legal moves in the position.
+     * @param moves an array of at least {@link #MAX_MOVES} elements where the packed moves are stored
+     * @return the number of generated moves
+     */
+    public int generateAllLegalMoves(int[] moves) {
+        int count = generateAllPseudoLegalMoves(moves), legalCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (isPseudoLegalMoveLegal(moves[i])) {
+                moves[legalCount++] = moves[i];
+            }
+        }
+        return legalCount;
+    }
+
     /**
      * Generates all "pseudo legal" moves in the position. A pseudo legal move is a legal
      * move in all respects except that the king might be captured after the move has been made.
      * @return a list of all pseudo legal moves
      */
     public List<Move> generateAllPseudoLegalMoves() {
-        return generateAllPseudoLegalMoves(EnumSet.allOf(Piece.class));
+        int[] moves = new int[MAX_MOVES];
+        return toMoveList(moves, generateAllPseudoLegalMoves(moves));
     }
 
     /**
@@ -615,34 +838,38 @@ public class Position {
      * @return a list of all pseudo legal moves
      */
     public List<Move> generateAllPseudoLegalMoves(EnumSet<Piece> pieces) {
-        ArrayList<Move> moves = new ArrayList<>();
+        int[] moves = new int[MAX_MOVES];
+        int count = 0;
         for (int i = 0; i < 64; i++) {
-            if (board[i].hasPlayer(toMove)) {
-                if (pieces.contains(board[i].toPiece())) {
-                    switch (board[i].toPiece()) {
-                        case PAWN -> moves.addAll(generatePawnMoves(i));
-                        case KNIGHT -> moves.addAll(generateKnightMoves(i));
-                        case BISHOP -> moves.addAll(generateBishopMoves(i));
-                        case ROOK -> moves.addAll(generateRookMoves(i));
-                        case QUEEN -> moves.addAll(generateQueenMoves(i));
-                        case KING -> moves.addAll(generateKingMoves(i));
-                    }
-                }
+            if (board[i].hasPlayer(toMove) && pieces.contains(board[i].toPiece())) {
+                count = generateStoneMoves(i, moves, count);
             }
         }
-        return moves;
+        return toMoveList(moves, count);
     }
 
     public boolean canMove() {
-        return generateAllLegalMoves().size() > 0;
+        if (allLegalMoves != null) {
+            return allLegalMoves.size() > 0;
+        }
+        int[] moves = new int[MAX_STONE_MOVES];
+        for (int i = 0; i < 64; i++) {
+            if (board[i].hasPlayer(toMove)) {
+                int count = generateStoneMoves(i, moves, 0);
+                for (int j = 0; j < count; j++) {
+                    if (isPseudoLegalMoveLegal(moves[j])) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
     }
 
     public List<Move> generateAllLegalMoves() {
         if (allLegalMoves == null) {
-            allLegalMoves = generateAllPseudoLegalMoves()
-                    .stream()
-                    .filter(move -> !doMove(move).canCaptureKing())
-                    .collect(Collectors.toList());
+            int[] moves = new int[MAX_MOVES];
+            allLegalMoves = toMoveList(moves, generateAllLegalMoves(moves));
         }
         return Collections.unmodifiableList(allLegalMoves);
     }
@@ -651,27 +878,237 @@ public class Position {
         return isMoveLegal(new Move(this, fromSqi, toSqi));
     }
 
+    /**
+     * Checks if a move is legal in this position.
+     * The move is checked directly against the board and the pins and checks in the position,
+     * so neither the legal moves nor the resulting position have to be generated,
+     * except for castles and en passant.
+     * @param move the move to check
+     * @return true if the move is legal
+     */
     public boolean isMoveLegal(Move move) {
         if (move.isNullMove()) {
             return !isCheck();
         }
-        if (!board[move.fromSqi()].hasPlayer(toMove)) {
+        if (!isPseudoLegal(move)) {
+            return false;
+        }
+        return isPseudoLegalMoveLegal(move.packed());
+    }
+
+    /**
+     * Checks if a pseudo legal move is also legal, i.e. doesn't leave the king in check.
+     * @param move the packed move, see {@link PackedMove}
+     * @return true if the move is legal
+     */
+    private boolean isPseudoLegalMoveLegal(int move) {
+        int fromSqi = PackedMove.fromSqi(move), toSqi = PackedMove.toSqi(move);
+        Piece piece = board[fromSqi].toPiece();
+        int kingSqi = toMove == WHITE ? whiteKingSqi : blackKingSqi;
+        if (PackedMove.isCastles(move) || kingSqi < 0
+                || (piece == PAWN && Chess.deltaCol(fromSqi, toSqi) != 0 && board[toSqi].isNoStone())) {
+            // Rare enough that it's not worth the effort to do this efficiently
+            return !doMove(move).canCaptureKing();
+        }
+        if (piece == KING) {
+            // The king itself must not block an attack along the line it's moving
+            return !isAttacked(toSqi, toMove.otherPlayer(), fromSqi);
+        }
+
+        computeKingSafety();
+        if (checkingSquares != 0) {
+            if (Long.bitCount(checkingSquares) > 1) {
+                // Double check, only king moves are possible
+                return false;
+            }
+            int checkingSqi = Long.numberOfTrailingZeros(checkingSquares);
+            if (toSqi != checkingSqi && !isBetween(kingSqi, checkingSqi, toSqi)) {
+                return false;
+            }
+        }
+        return (pinnedSquares & (1L << fromSqi)) == 0 || isAligned(kingSqi, fromSqi, toSqi);
+    }
+
+    /**
+     * Checks if a move is pseudo legal in this position. This gives the same result as
+     * checking if the move is among the moves generated by {@link #generateAllPseudoLegalMoves()}.
+     * @param move the move to check
+     * @return true if the move is pseudo legal
+     */
+    private boolean isPseudoLegal(Move move) {
+        int fromSqi = move.fromSqi(), toSqi = move.toSqi();
+        Stone stone = board[fromSqi];
+        if (!stone.hasPlayer(toMove)) {
+            return false;
+        }
+        Piece piece = stone.toPiece();
+
+        if (move.isCastle()) {
+            if (piece != KING) return false;
+            if (move.isShortCastle()) return Move.shortCastles(this).equals(move) && canCastleShort();
+            if (move.isLongCastle()) return Move.longCastles(this).equals(move) && canCastleLong();
+            return false;
+        }
+
+        if (fromSqi == toSqi || board[toSqi].hasPlayer(toMove)) {
             return false;
         }
-        // This could be made more efficient
-        boolean pseudoLegal = switch (board[move.fromSqi()].toPiece()) {
-            case PAWN -> generatePawnMoves(move.fromSqi()).contains(move);
-            case KNIGHT -> generateKnightMoves(move.fromSqi()).contains(move);
-            case BISHOP -> generateBishopMoves(move.fromSqi()).contains(move);
-            case ROOK -> generateRookMoves(move.fromSqi()).contains(move);
-            case QUEEN -> generateQueenMoves(move.fromSqi()).contains(move);
-            case KING -> generateKingMoves(move.fromSqi()).contains(move);
+        Stone promotionStone = move.promotionStone();
+        if (piece != PAWN && promotionStone != NO_STONE) {
+            return false;
+        }
+
+        int dx = Chess.deltaCol(fromSqi, toSqi), dy = Chess.deltaRow(fromSqi, toSqi);
+        int adx = Math.abs(dx), ady = Math.abs(dy);
+        return switch (piece) {
+            case KNIGHT -> adx * ady == 2;
+            case BISHOP -> adx == ady && isPathClear(fromSqi, toSqi);
+            case ROOK -> (dx == 0 || dy == 0) && isPathClear(fromSqi, toSqi);
+            case QUEEN -> (dx == 0 || dy == 0 || adx == ady) && isPathClear(fromSqi, toSqi);
+            case KING -> adx <= 1 && ady <= 1;
+            case PAWN -> isPawnMovePseudoLegal(fromSqi, toSqi, promotionStone);
             default -> false;
         };
-        if (!pseudoLegal) {
+    }
+
+    private boolean isPawnMovePseudoLegal(int fromSqi, int toSqi, Stone promotionStone) {
+        int dx = Chess.deltaCol(fromSqi, toSqi), dy = Chess.deltaRow(fromSqi, toSqi);
+        int forward = toMove == WHITE ? 1 : -1;
+        int fromRow = Chess.sqiToRow(fromSqi), toRow = Chess.sqiToRow(toSqi);
+
+        boolean valid;
+        if (dx == 0) {
+            valid = board[toSqi].isNoStone() && (dy == forward || (dy == 2 * forward
+                    && fromRow == (toMove == WHITE ? 1 : 6) && board[fromSqi + forward].isNoStone()));
+        } else if (Math.abs(dx) == 1 && dy == forward) {
+            valid = board[toSqi].hasPlayer(toMove.otherPlayer()) || (board[toSqi].isNoStone()
+                    && Chess.sqiToCol(toSqi) == enPassantCol && fromRow == (toMove == WHITE ? 4 : 3));
+        } else {
+            valid = false;
+        }
+        if (!valid) {
             return false;
         }
-        return !doMove(move).canCaptureKing();
+
+        if (toRow == 0 || toRow == 7) {
+            Piece promotionPiece = promotionStone.toPiece();
+            return promotionStone.hasPlayer(toMove) && promotionPiece != PAWN && promotionPiece != KING;
+        }
+        return promotionStone == NO_STONE;
+    }
+
+    /**
+     * Finds the legal move by a piece of the player to move to a square.
+     * Instead of generating all moves in the position, the board is scanned outwards from the target square
+     * for stones that can reach it, so this is fast enough to be used when parsing moves in bulk.
+     * It doesn't allocate any memory, except for en passant captures.
+     * @param piece the moving piece
+     * @param fromCol the column the piece moves from, or {@link Chess#NO_COL} if unknown
+     * @param fromRow the row the piece moves from, or {@link Chess#NO_ROW} if unknown
+     * @param toSqi the square the piece moves to
+     * @param promotionPiece the piece a pawn is promoted to, or {@link Piece#NO_PIECE}
+     * @return the packed move, or {@link PackedMove#NO_MOVE} if there is no such legal move,
+     * or {@link PackedMove#AMBIGUOUS_MOVE} if more than one legal move matches
+     */
+    public int findMove(Piece piece, int fromCol, int fromRow, int toSqi, Piece promotionPiece) {
+        if (board[toSqi].hasPlayer(toMove)) {
+            return PackedMove.NO_MOVE;
+        }
+        if (piece != PAWN && promotionPiece != NO_PIECE) {
+            return PackedMove.NO_MOVE;
+        }
+        Stone stone = piece.toStone(toMove);
+        return switch (piece) {
+            case PAWN -> findPawnMove(fromCol, fromRow, toSqi, promotionPiece);
+            case KNIGHT -> findStoneMove(stone, 8, 16, false, fromCol, fromRow, toSqi);
+            case BISHOP -> findStoneMove(stone, 4, 8, true, fromCol, fromRow, toSqi);
+            case ROOK -> findStoneMove(stone, 0, 4, true, fromCol, fromRow, toSqi);
+            case QUEEN -> findStoneMove(stone, 0, 8, true, fromCol, fromRow, toSqi);
+            case KING -> findStoneMove(stone, 0, 8, false, fromCol, fromRow, toSqi);
+            default -> PackedMove.NO_MOVE;
+        };
+    }
+
+    /**
+     * Finds the castles move of the player to move, if it's legal
+     * @param shortCastles true for short (h-side) castles, false for long (a-side) castles
+     * @return the packed move, or {@link PackedMove#NO_MOVE} if castling is not legal
+     */
+    public int findCastlesMove(boolean shortCastles) {
+        if (shortCastles ? !canCastleShort() : !canCastleLong()) {
+            return PackedMove.NO_MOVE;
+        }
+        int kingSqi = toMove == WHITE ? whiteKingSqi : blackKingSqi;
+        int move = PackedMove.castles(kingSqi, Chess.coorToSqi(shortCastles ? 6 : 2, Chess.sqiToRow(kingSqi)));
+        return isPseudoLegalMoveLegal(move) ? move : PackedMove.NO_MOVE;
+    }
+
+    private int findStoneMove(Stone stone, int dirBegin, int dirEnd, boolean multi, int fromCol, int fromRow, int toSqi) {
+        // All pieces except pawns move symmetrically, so the stones that can reach the target square
+        // are found by moving outwards from it
+        int x = Chess.sqiToCol(toSqi), y = Chess.sqiToRow(toSqi);
+        int found = PackedMove.NO_MOVE;
+        for (int dir = dirBegin; dir < dirEnd; dir++) {
+            int cx = x, cy = y;
+            while (true) {
+                cx += directionX[dir];
+                cy += directionY[dir];
+                if (cx < 0 || cy < 0 || cx >= 8 || cy >= 8) break;
+                int sqi = Chess.coorToSqi(cx, cy);
+                if (board[sqi] == stone && (fromCol == NO_COL || fromCol == cx) && (fromRow == NO_ROW || fromRow == cy)) {
+                    found = addCandidateMove(found, PackedMove.of(sqi, toSqi));
+                }
+                if (!multi || !board[sqi].isNoStone()) break;
+            }
+        }
+        return found;
+    }
+
+    private int findPawnMove(int fromCol, int fromRow, int toSqi, Piece promotionPiece) {
+        int toCol = Chess.sqiToCol(toSqi), toRow = Chess.sqiToRow(toSqi);
+        int forward = toMove == WHITE ? 1 : -1;
+        int y = toRow - forward;
+        if (y <= 0 || y >= 7 || (fromRow != NO_ROW && fromRow != y && fromRow != y - forward)) {
+            return PackedMove.NO_MOVE;
+        }
+        boolean promotes = toRow == 0 || toRow == 7;
+        if (promotes != (promotionPiece != NO_PIECE) || promotionPiece == PAWN || promotionPiece == KING) {
+            return PackedMove.NO_MOVE;
+        }
+        Stone pawn = PAWN.toStone(toMove);
+        Stone promotionStone = promotionPiece.toStone(toMove);
+        int found = PackedMove.NO_MOVE;
+
+        if (board[toSqi].isNoStone() && (fromCol == NO_COL || fromCol == toCol)) {
+            int sqi = Chess.coorToSqi(toCol, y);
+            if (board[sqi] == pawn) {
+                if (fromRow == NO_ROW || fromRow == y) {
+                    found = addCandidateMove(found, PackedMove.of(sqi, toSqi, promotionStone));
+                }
+            } else if (board[sqi].isNoStone() && y - forward == (toMove == WHITE ? 1 : 6)
+                    && board[sqi - forward] == pawn && (fromRow == NO_ROW || fromRow == y - forward)) {
+                found = addCandidateMove(found, PackedMove.of(sqi - forward, toSqi));
+            }
+        }
+
+        boolean capture = board[toSqi].hasPlayer(toMove.otherPlayer())
+                || (toCol == enPassantCol && toRow == (toMove == WHITE ? 5 : 2) && board[toSqi].isNoStone());
+        if (capture && (fromRow == NO_ROW || fromRow == y)) {
+            for (int dx = -1; dx <= 1; dx += 2) {
+                int cx = toCol + dx;
+                if (cx >= 0 && cx < 8 && (fromCol == NO_COL || fromCol == cx) && board[Chess.coorToSqi(cx, y)] == pawn) {
+                    found = addCandidateMove(found, PackedMove.of(Chess.coorToSqi(cx, y), toSqi, promotionStone));
+                }
+            }
+        }
+        return found;
+    }
+
+    private int addCandidateMove(int found, int move) {
+        if (!isPseudoLegalMoveLegal(move)) {
+            return found;
+        }
+        return found == PackedMove.NO_MOVE ? move : PackedMove.AMBIGUOUS_MOVE;
     }
 
     public boolean equals(Object obj) {
@@ -12,10 +12,9 @@ import static se.yarin.chess.Piece.NO_PIECE;
  * Note: There may be different ways of representing castles, in which case equals/hashcode doesn't work
  */
 public class ShortMove {
-    private final int fromSqi, toSqi;
-    private final Stone promotionStone;
-    // Must be explicitly set to determine castling in a Chess960 game in some situations
-    private final boolean longCastling, shortCastling;
+    // The packed move, see PackedMove. Castling must be explicitly set to
+    // determine castling in a Chess960 game in some situations
+    private final int move;
 
     /**
      * Creates a new short move. To create a castling move, use {@link #shortCastles()}
@@ -39,20 +38,23 @@ public class ShortMove {
             if (!(fromSqi == Chess.NO_SQUARE && toSqi == Chess.NO_SQUARE && promotionStone == Stone.NO_STONE)) {
                 throw new IllegalArgumentException("Not a valid move");
             }
+            this.move = PackedMove.NULL_MOVE;
+        } else {
+            this.move = PackedMove.of(fromSqi, toSqi, promotionStone);
         }
-        this.fromSqi = fromSqi;
-        this.toSqi = toSqi;
-        this.promotionStone = promotionStone;
-        this.longCastling = false;
-        this.shortCastling = false;
     }
 
-    private ShortMove(boolean queenSideCastles, boolean kingSideCastles) {
-        this.fromSqi = 0;
-        this.toSqi = 0;
-        this.promotionStone = Stone.NO_STONE;
-        this.longCastling = queenSideCastles;
-        this.shortCastling = kingSideCastles;
+    private ShortMove(int packedMove) {
+        this.move = packedMove;
+    }
+
+    /**
+     * Creates a short move from its packed representation
+     * @param packedMove the packed move, see {@link PackedMove}
+     * @return a short move
+     */
+    public static ShortMove fromPacked(int packedMove) {
+        return new ShortMove(packedMove);
     }
 
     /**
@@ -60,7 +62,7 @@ public class ShortMove {
      * @return a long castle move
      */
     public static ShortMove longCastles() {
-        return new ShortMove(true, false);
+        return new ShortMove(PackedMove.castles(0, Chess.C1));
     }
 
     /**
@@ -68,7 +70,7 @@ public class ShortMove {
      * @return a short castle move
      */
     public static ShortMove shortCastles() {
-        return new ShortMove(false, true);
+        return new ShortMove(PackedMove.castles(0, Chess.G1));
     }
 
     /**
@@ -76,40 +78,47 @@ public class ShortMove {
      * @return a null move
      */
     public static ShortMove nullMove() {
-        return new ShortMove(Chess.NO_SQUARE, Chess.NO_SQUARE);
+        return new ShortMove(PackedMove.NULL_MOVE);
     }
 
     public int fromSqi() {
-        return fromSqi;
+        return PackedMove.fromSqi(move);
     }
-    public int toSqi() { return toSqi; }
-    public int fromCol() { return Chess.sqiToCol(fromSqi); }
-    public int fromRow() { return Chess.sqiToRow(fromSqi); }
-    public int toCol() { return Chess.sqiToCol(toSqi); }
-    public int toRow() { return Chess.sqiToRow(toSqi); }
+    public int toSqi() { return PackedMove.toSqi(move); }
+    public int fromCol() { return Chess.sqiToCol(fromSqi()); }
+    public int fromRow() { return Chess.sqiToRow(fromSqi()); }
+    public int toCol() { return Chess.sqiToCol(toSqi()); }
+    public int toRow() { return Chess.sqiToRow(toSqi()); }
     public Stone promotionStone() {
-        return promotionStone;
+        return PackedMove.promotionStone(move);
     }
     public boolean isLongCastle() {
-        return longCastling;
+        return PackedMove.isLongCastles(move);
     }
 
     public boolean isShortCastle() {
-        return shortCastling;
+        return PackedMove.isShortCastles(move);
+    }
+
+    /**
+     * @return the move packed into an int, see {@link PackedMove}
+     */
+    public int packed() {
+        return move;
     }
 
     public Move toMove(@NonNull Position fromPosition) {
-        if (shortCastling) {
+        if (isShortCastle()) {
             return Move.shortCastles(fromPosition);
         }
-        if (longCastling) {
+        if (isLongCastle()) {
             return Move.longCastles(fromPosition);
         }
         return new Move(fromPosition, fromSqi(), toSqi(), promotionStone());
     }
 
     public boolean isNullMove() {
-        return fromSqi == Chess.NO_SQUARE;
+        return PackedMove.isNullMove(move);
     }
 
     public boolean moveEquals(Move move) {
@@ -128,23 +137,12 @@ public class ShortMove {
         if (this == o) return true;
         if (o == null || !(o instanceof ShortMove)) return false;
 
-        ShortMove move = (ShortMove) o;
-
-        if (fromSqi != move.fromSqi) return false;
-        if (toSqi != move.toSqi) return false;
-        if (longCastling != move.longCastling) return false;
-        if (shortCastling != move.shortCastling) return false;
-        return promotionStone == move.promotionStone;
+        return this.move == ((ShortMove) o).move;
     }
 
     @Override
     public int hashCode() {
-        int result = fromSqi;
-        result = 31 * result + toSqi;
-        result = 31 * result + promotionStone.hashCode();
-        result = 2 * result + (longCastling ? 1 : 0);
-        result = 2 * result + (shortCastling ? 1 : 0);
-        return result;
+        return move;
     }
 
     @Override
@@ -152,15 +150,15 @@ public class ShortMove {
         StringBuilder sb = new StringBuilder(5);
         if (isNullMove()) {
             sb.append("----");
-        } else if (shortCastling) {
+        } else if (isShortCastle()) {
             sb.append("O-O");
-        } else if (longCastling) {
+        } else if (isLongCastle()) {
             sb.append("O-O-O");
         } else {
-            sb.append(Chess.sqiToStr(fromSqi));
-            sb.append(Chess.sqiToStr(toSqi));
-            if (promotionStone.toPiece() != NO_PIECE) {
-                sb.append('=').append(promotionStone.toPiece().toChar());
+            sb.append(Chess.sqiToStr(fromSqi()));
+            sb.append(Chess.sqiToStr(toSqi()));
+            if (promotionStone().toPiece() != NO_PIECE) {
+                sb.append('=').append(promotionStone().toPiece().toChar());
             }
         }
         return sb.toString();
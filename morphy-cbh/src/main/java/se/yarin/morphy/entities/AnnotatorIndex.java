@@ -1,6 +1,7 @@
 package se.yarin.morphy.entities;
 
 import se.yarin.cbhlib.util.ByteBufferUtil;
+import se.yarin.cbhlib.util.CBUtil;
 import se.yarin.morphy.exceptions.MorphyInvalidDataException;
 import se.yarin.morphy.storage.FileItemStorage;
 import se.yarin.morphy.storage.InMemoryItemStorage;
@@ -10,6 +11,7 @@ import se.yarin.morphy.storage.OpenOption;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Comparator;
 import java.util.Set;
 
 public class AnnotatorIndex extends EntityIndex<Annotator> {
@@ -46,4 +48,9 @@ public class AnnotatorIndex extends EntityIndex<Annotator> {
     protected void serialize(Annotator annotator, ByteBuffer buf) {
         ByteBufferUtil.putFixedSizeByteString(buf, annotator.name(), 45);
     }
+
+    @Override
+    protected Comparator<byte[]> serializedComparator() {
+        return (a1, a2) -> CBUtil.compareFixedSizeByteString(a1, a2, 0, 45);
+    }
 }
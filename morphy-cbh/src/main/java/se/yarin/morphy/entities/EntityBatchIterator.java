@@ -23,7 +23,7 @@ public class EntityBatchIterator<T extends Entity & Comparable<T>> implements It
         if (nextBatchStart >= endId) {
             batch = null;
         } else {
-            batch = index.storage.getItems(nextBatchStart, endId - nextBatchStart);
+            batch = index.getNodes(nextBatchStart, endId - nextBatchStart);
             nextBatchStart = endId;
         }
         batchPos = 0;
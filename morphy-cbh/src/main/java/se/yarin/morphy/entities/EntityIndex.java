@@ -3,14 +3,30 @@ package se.yarin.morphy.entities;
 import org.immutables.value.Value;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import se.yarin.cbhlib.util.Cache;
+import se.yarin.cbhlib.util.CacheStats;
+import se.yarin.cbhlib.util.SegmentedLRUCache;
 import se.yarin.morphy.exceptions.MorphyEntityIndexException;
 import se.yarin.morphy.exceptions.MorphyIOException;
 import se.yarin.morphy.storage.ItemStorage;
 
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -18,21 +34,149 @@ import java.util.stream.StreamSupport;
 public abstract class EntityIndex<T extends Entity & Comparable<T>>  {
     private static final Logger log = LoggerFactory.getLogger(EntityIndex.class);
 
+    // The default memory budget of the entity cache, in bytes
+    public static final long DEFAULT_CACHE_SIZE = 4 * 1024 * 1024;
+    // The approximate heap size of a cached entity, in addition to its serialized size
+    private static final int CACHED_ENTITY_OVERHEAD = 64;
+
     protected final ItemStorage<EntityIndexHeader, EntityNode> storage;
+    // Set if the storage can be read without creating a node for every visited item
+    private final PackedEntityIndexStorage packedStorage;
+    // Reused buffer for the serialized entities compared in the tree walks over a packed storage
+    private final ThreadLocal<byte[]> serializedEntityBuffers;
     private final String entityType;
-    private int numCommittedTxn;
+    // Entities looked up by id. Entries are invalidated by the commits changing the nodes.
+    private volatile Cache<Integer, T> cache;
+
+    // Serializes the writers. The write methods in this class hold it during the whole transaction,
+    // so concurrent writers wait for each other instead of failing the validation at commit.
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Held while a commit is written to the storage. Readers don't take it, but retry their read
+    // under a read lock if a commit was written at the same time.
+    private final StampedLock storageLock = new StampedLock();
+    private volatile Snapshot currentSnapshot;
+    // The nodes as they were before being changed by a commit, newest first.
+    // Only kept as long as there are transactions reading an older version of the index.
+    private final Map<Integer, NodeVersion> nodeHistory = new ConcurrentHashMap<>();
+    private final Deque<CommitRecord> commitLog = new ArrayDeque<>();
+    private final Set<SnapshotRegistration> activeSnapshots = ConcurrentHashMap.newKeySet();
+
+    /**
+     * A committed version of the index
+     */
+    static final class Snapshot {
+        private final int version;
+        private final EntityIndexHeader header;
+
+        Snapshot(int version, EntityIndexHeader header) {
+            this.version = version;
+            this.header = header;
+        }
+
+        int version() {
+            return version;
+        }
+
+        EntityIndexHeader header() {
+            return header;
+        }
+    }
+
+    /**
+     * Keeps track of which version a transaction reads from. The transaction is only weakly referenced,
+     * so transactions that are never committed or closed stop holding back the pruning of old node
+     * versions once they are garbage collected.
+     */
+    static final class SnapshotRegistration extends WeakReference<EntityIndexTransaction<?>> {
+        private volatile int version = -1;
+
+        SnapshotRegistration(EntityIndexTransaction<?> transaction) {
+            super(transaction);
+        }
+    }
+
+    private static final class NodeVersion {
+        // The version of the commit that replaced this node
+        private final int replacedInVersion;
+        private final EntityNode node;
+        private final NodeVersion older;
+
+        private NodeVersion(int replacedInVersion, EntityNode node, NodeVersion older) {
+            this.replacedInVersion = replacedInVersion;
+            this.node = node;
+            this.older = older;
+        }
+
+        private NodeVersion pruned(int oldestActiveVersion) {
+            if (replacedInVersion <= oldestActiveVersion) {
+                return null;
+            }
+            NodeVersion prunedOlder = older == null ? null : older.pruned(oldestActiveVersion);
+            return prunedOlder == older ? this : new NodeVersion(replacedInVersion, node, prunedOlder);
+        }
+    }
+
+    private static final class CommitRecord {
+        private final int version;
+        private final int[] changedIds;
+
+        private CommitRecord(int version, int[] changedIds) {
+            this.version = version;
+            this.changedIds = changedIds;
+        }
+    }
 
     EntityIndexHeader storageHeader() {
-        return storage.getHeader();
+        return currentSnapshot.header();
     }
 
     protected EntityIndex(ItemStorage<EntityIndexHeader, EntityNode> storage, String entityType) {
         this.storage = storage;
+        this.packedStorage = storage instanceof PackedEntityIndexStorage ? (PackedEntityIndexStorage) storage : null;
+        this.serializedEntityBuffers = packedStorage == null ? null
+                : ThreadLocal.withInitial(() -> new byte[packedStorage.getEntitySize()]);
         this.entityType = entityType;
+        this.currentSnapshot = new Snapshot(0, storage.getHeader());
+        this.cache = createCache(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a cache suitable for this index, with the weight of each entity
+     * being its approximate size in memory.
+     * @param maxSize the memory budget of the cache, in bytes
+     * @return a new, empty cache
+     */
+    public Cache<Integer, T> createCache(long maxSize) {
+        return new SegmentedLRUCache<>(maxSize, entity -> cachedEntityWeight());
+    }
+
+    /**
+     * Gets the approximate size in memory of a cached entity
+     * @return the size in bytes
+     */
+    protected int cachedEntityWeight() {
+        return storageHeader().entitySize() + CACHED_ENTITY_OVERHEAD;
+    }
+
+    /**
+     * Replaces the cache used for looking up entities by id
+     * @param cache the new cache, for instance one created by {@link #createCache(long)}
+     *              or {@link Cache#disabled()}
+     */
+    public void setCache(Cache<Integer, T> cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Gets statistics about the cache used for looking up entities by id
+     * @return the cache statistics
+     */
+    public CacheStats getCacheStats() {
+        return cache.stats();
     }
 
     public int getNumCommittedTxn() {
-        return numCommittedTxn;
+        return currentSnapshot.version();
     }
 
     /**
@@ -40,7 +184,7 @@ public abstract class EntityIndex<T extends Entity & Comparable<T>>  {
      * @return number of entities
      */
     public int count() {
-        return storage.getHeader().numEntities();
+        return storageHeader().numEntities();
     }
 
     /**
@@ -48,11 +192,149 @@ public abstract class EntityIndex<T extends Entity & Comparable<T>>  {
      * @return number of entity slots in the index
      */
     public int capacity() {
-        return storage.getHeader().capacity();
+        return storageHeader().capacity();
     }
 
     EntityNode getNode(int id) {
-        return storage.getItem(id);
+        return readStorage(() -> storage.getItem(id));
+    }
+
+    List<EntityNode> getNodes(int id, int count) {
+        return readStorage(() -> storage.getItems(id, count));
+    }
+
+    /**
+     * Gets a node as it was in a specific version of the index
+     */
+    EntityNode getNode(int id, int version) {
+        // The storage must be read before the history, since a commit adds to the history before writing the storage
+        EntityNode node = getNode(id);
+        for (NodeVersion old = nodeHistory.get(id); old != null && old.replacedInVersion > version; old = old.older) {
+            node = old.node;
+        }
+        return node;
+    }
+
+    /**
+     * Gets the nodes with the given ids as they were in a specific version of the index
+     */
+    List<EntityNode> getNodes(int[] ids, int version) {
+        List<EntityNode> nodes = readStorage(() -> storage.getItems(ids));
+        if (!nodeHistory.isEmpty()) {
+            for (int i = 0; i < nodes.size(); i++) {
+                for (NodeVersion old = nodeHistory.get(ids[i]); old != null && old.replacedInVersion > version; old = old.older) {
+                    nodes.set(i, old.node);
+                }
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Gets a range of nodes as they were in a specific version of the index
+     */
+    List<EntityNode> getNodes(int id, int count, int version) {
+        List<EntityNode> nodes = getNodes(id, count);
+        if (!nodeHistory.isEmpty()) {
+            for (int i = 0; i < nodes.size(); i++) {
+                for (NodeVersion old = nodeHistory.get(id + i); old != null && old.replacedInVersion > version; old = old.older) {
+                    nodes.set(i, old.node);
+                }
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Gets the id of the left or right child of a node as it was in a specific version of the index.
+     * If the storage is packed, the id is read without creating the node.
+     */
+    int getChildId(int id, int version, boolean left) {
+        if (packedStorage == null) {
+            EntityNode node = getNode(id, version);
+            return left ? node.getLeftChildId() : node.getRightChildId();
+        }
+        int childId;
+        long stamp = storageLock.tryOptimisticRead();
+        try {
+            childId = left ? packedStorage.getLeftChildId(id) : packedStorage.getRightChildId(id);
+        } catch (RuntimeException e) {
+            // The storage may have been read in an inconsistent state while a commit was being written
+            if (stamp != 0 && storageLock.validate(stamp)) {
+                throw e;
+            }
+            childId = -1;
+            stamp = 0;
+        }
+        if (stamp == 0 || !storageLock.validate(stamp)) {
+            stamp = storageLock.readLock();
+            try {
+                childId = left ? packedStorage.getLeftChildId(id) : packedStorage.getRightChildId(id);
+            } finally {
+                storageLock.unlockRead(stamp);
+            }
+        }
+        // As in getNode, the history must be checked after the storage has been read
+        if (!nodeHistory.isEmpty() && nodeHistory.containsKey(id)) {
+            EntityNode node = getNode(id, version);
+            return left ? node.getLeftChildId() : node.getRightChildId();
+        }
+        return childId;
+    }
+
+    /**
+     * Compares a serialized key against the serialized entity of a node as it was in a specific version of the index.
+     * If the storage is packed, the entity is read into a reused buffer without creating the node.
+     */
+    int compareSerializedEntity(int id, int version, byte[] serializedKey, Comparator<byte[]> comparator) {
+        if (packedStorage == null) {
+            return comparator.compare(serializedKey, getNode(id, version).getSerializedEntity());
+        }
+        byte[] buffer = serializedEntityBuffers.get();
+        long stamp = storageLock.tryOptimisticRead();
+        try {
+            packedStorage.getSerializedEntity(id, buffer);
+        } catch (RuntimeException e) {
+            if (stamp != 0 && storageLock.validate(stamp)) {
+                throw e;
+            }
+            stamp = 0;
+        }
+        if (stamp == 0 || !storageLock.validate(stamp)) {
+            stamp = storageLock.readLock();
+            try {
+                packedStorage.getSerializedEntity(id, buffer);
+            } finally {
+                storageLock.unlockRead(stamp);
+            }
+        }
+        if (!nodeHistory.isEmpty() && nodeHistory.containsKey(id)) {
+            return comparator.compare(serializedKey, getNode(id, version).getSerializedEntity());
+        }
+        return comparator.compare(serializedKey, buffer);
+    }
+
+    <R> R readStorage(Supplier<R> reader) {
+        long stamp = storageLock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                R result = reader.get();
+                if (storageLock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // The storage may have been read in an inconsistent state while a commit was being written
+                if (storageLock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        stamp = storageLock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            storageLock.unlockRead(stamp);
+        }
     }
 
     protected T resolveEntity(EntityNode node) {
@@ -62,16 +344,120 @@ public abstract class EntityIndex<T extends Entity & Comparable<T>>  {
         return deserialize(node.getId(), node.getGameCount(), node.getFirstGameId(), node.getSerializedEntity());
     }
 
+    /**
+     * Begins a new transaction. The transaction reads from a snapshot of the index as it was when
+     * the transaction began, unaffected by transactions committed after that, so it's safe to read
+     * from the index on multiple threads while another thread is writing to it.
+     *
+     * A transaction can only be committed if no other transaction has been committed since it began.
+     * Transactions that are not committed should be closed, so older versions of the index
+     * don't have to be kept around.
+     * @return a new transaction
+     */
     public EntityIndexTransaction<T> beginTransaction() {
-        // TODO: Acquire read lock
         return new EntityIndexTransaction<>(this);
     }
 
-    void transactionCommitted(EntityIndexTransaction<T> txn) {
-        if (!txn.isCommitted()) {
-            throw new IllegalStateException("Transaction hasn't been committed!");
+    Snapshot openSnapshot(SnapshotRegistration registration) {
+        activeSnapshots.add(registration);
+        Snapshot snapshot;
+        do {
+            // If a commit happened after the registration was made, the commit may not have seen which version
+            // the transaction is reading, so it may have pruned the history needed to read that version
+            snapshot = currentSnapshot;
+            registration.version = snapshot.version();
+        } while (snapshot != currentSnapshot);
+        return snapshot;
+    }
+
+    void closeSnapshot(SnapshotRegistration registration) {
+        activeSnapshots.remove(registration);
+    }
+
+    void commit(int baseVersion, EntityIndexHeader header, Map<Integer, EntityNode> changes) {
+        writeLock.lock();
+        try {
+            Snapshot current = currentSnapshot;
+            if (current.version() != baseVersion) {
+                throw new IllegalStateException("Entity index has changed since transaction started");
+            }
+            int version = current.version() + 1;
+            int oldCapacity = current.header().capacity();
+
+            // Write the nodes in id order, and consecutive nodes together, to avoid random writes
+            int[] changedIds = changes.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+            int numOldIds = 0;
+            while (numOldIds < changedIds.length && changedIds[numOldIds] < oldCapacity) {
+                numOldIds += 1;
+            }
+
+            long stamp = storageLock.writeLock();
+            try {
+                int start = 0;
+                while (start < changedIds.length) {
+                    int end = start + 1;
+                    while (end < changedIds.length && changedIds[end] == changedIds[end - 1] + 1) {
+                        end += 1;
+                    }
+                    int firstId = changedIds[start];
+                    // New nodes can't be reached by the readers of older versions, so they have no history
+                    int numOldNodes = Math.max(0, Math.min(end, numOldIds) - start);
+                    if (numOldNodes > 0) {
+                        List<EntityNode> oldNodes = storage.getItems(firstId, numOldNodes);
+                        for (EntityNode oldNode : oldNodes) {
+                            nodeHistory.put(oldNode.getId(), new NodeVersion(version, oldNode, nodeHistory.get(oldNode.getId())));
+                        }
+                    }
+                    List<EntityNode> nodes = new ArrayList<>(end - start);
+                    for (int i = start; i < end; i++) {
+                        nodes.add(changes.get(changedIds[i]));
+                    }
+                    storage.putItems(firstId, nodes);
+                    start = end;
+                }
+                storage.putHeader(header);
+                currentSnapshot = new Snapshot(version, header);
+            } finally {
+                storageLock.unlockWrite(stamp);
+            }
+
+            Cache<Integer, T> cache = this.cache;
+            for (int id : changedIds) {
+                cache.invalidate(id);
+            }
+            if (numOldIds > 0) {
+                commitLog.addLast(new CommitRecord(version, Arrays.copyOf(changedIds, numOldIds)));
+            }
+            pruneHistory();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void pruneHistory() {
+        if (commitLog.isEmpty()) {
+            return;
+        }
+        int oldestActiveVersion = Integer.MAX_VALUE;
+        Iterator<SnapshotRegistration> iterator = activeSnapshots.iterator();
+        while (iterator.hasNext()) {
+            SnapshotRegistration registration = iterator.next();
+            if (registration.get() == null) {
+                iterator.remove();
+            } else if (registration.version < 0) {
+                // The transaction is just starting and hasn't decided which version to read from yet
+                return;
+            } else {
+                oldestActiveVersion = Math.min(oldestActiveVersion, registration.version);
+            }
+        }
+
+        while (!commitLog.isEmpty() && commitLog.peekFirst().version <= oldestActiveVersion) {
+            for (int id : commitLog.removeFirst().changedIds) {
+                int finalOldestActiveVersion = oldestActiveVersion;
+                nodeHistory.computeIfPresent(id, (key, old) -> old.pruned(finalOldestActiveVersion));
+            }
         }
-        numCommittedTxn += 1;
     }
 
     /**
@@ -83,6 +469,28 @@ public abstract class EntityIndex<T extends Entity & Comparable<T>>  {
      * @return the entity
      */
     public T get(int id) {
+        Cache<Integer, T> cache = this.cache;
+        T entity = cache.get(id);
+        if (entity == null) {
+            int version = currentSnapshot.version();
+            entity = readEntity(id);
+            if (entity != null) {
+                cache.put(id, entity);
+                if (currentSnapshot.version() != version) {
+                    // A commit may have changed the entity after it was read
+                    cache.invalidate(id);
+                }
+            }
+        }
+        return entity;
+    }
+
+    /**
+     * Reads an entity by id from the storage, bypassing the cache
+     * @param id the id of the entity
+     * @return the entity, or null if it has been logically deleted
+     */
+    protected T readEntity(int id) {
         EntityNode node = getNode(id);
         if (node == null) {
             return null;
@@ -90,22 +498,74 @@ public abstract class EntityIndex<T extends Entity & Comparable<T>>  {
         return resolveEntity(node);
     }
 
+    /**
+     * Gets multiple entities by id. This is faster than getting them one by one,
+     * since the entities are read in id order with nearby entities read together.
+     * Ids of entities that have been logically deleted gives null in the result.
+     * @param ids the ids of the entities, in any order and possibly with duplicates
+     * @return the entities, in the same order as the ids
+     */
+    public List<T> getAll(Collection<Integer> ids) {
+        Cache<Integer, T> cache = this.cache;
+        ArrayList<Integer> idList = new ArrayList<>(ids);
+        ArrayList<T> result = new ArrayList<>(idList.size());
+        int[] missingIds = new int[idList.size()];
+        int numMissing = 0;
+        for (int id : idList) {
+            T entity = cache.get(id);
+            result.add(entity);
+            if (entity == null) {
+                missingIds[numMissing++] = id;
+            }
+        }
+        if (numMissing == 0) {
+            return result;
+        }
+
+        int version = currentSnapshot.version();
+        missingIds = Arrays.copyOf(missingIds, numMissing);
+        List<T> entities = readEntities(missingIds);
+        for (int i = 0, j = 0; i < result.size(); i++) {
+            if (result.get(i) == null) {
+                T entity = entities.get(j++);
+                if (entity != null) {
+                    result.set(i, entity);
+                    cache.put(idList.get(i), entity);
+                }
+            }
+        }
+        if (currentSnapshot.version() != version) {
+            // A commit may have changed some of the entities after they were read
+            for (int id : missingIds) {
+                cache.invalidate(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads multiple entities by id from the storage, bypassing the cache
+     * @param ids the ids of the entities, in any order
+     * @return the entities in the same order as the ids, with null for logically deleted entities
+     */
+    protected List<T> readEntities(int[] ids) {
+        List<EntityNode> nodes = readStorage(() -> storage.getItems(ids));
+        ArrayList<T> result = new ArrayList<>(nodes.size());
+        for (EntityNode node : nodes) {
+            result.add(resolveEntity(node));
+        }
+        return result;
+    }
+
     /**
      * Gets an entity by key. If there are multiple entities matching, returns one of them.
      * @param entityKey the key of the entity
      * @return the entity, or null if there was no entity with that key
      */
     public T get(T entityKey) {
-        EntityIndexTransaction<T> txn = beginTransaction();
-        EntityIndexTransaction<T>.NodePath treePath = txn.lowerBound(entityKey);
-        if (treePath.isEnd()) {
-            return null;
-        }
-        T foundEntity = treePath.getEntity();
-        if (foundEntity.compareTo(entityKey) == 0) {
-            return foundEntity;
+        try (EntityIndexTransaction<T> txn = beginTransaction()) {
+            return txn.get(entityKey);
         }
-        return null;
     }
 
     /**
@@ -135,7 +595,7 @@ public abstract class EntityIndex<T extends Entity & Comparable<T>>  {
      */
     public List<T> getAllOrdered() {
         ArrayList<T> result = new ArrayList<>();
-        iterableAscending().forEach(result::add);
+        iterableAscendingReadAhead().forEach(result::add);
         return result;
     }
 
@@ -224,6 +684,18 @@ public abstract class EntityIndex<T extends Entity & Comparable<T>>  {
         return () -> new OrderedEntityAscendingIterator<>(txn.lowerBound(start), -1);
     }
 
+    /**
+     * Gets an iterable of all entities in the index sorted by the default sorting order.
+     * Unlike {@link #iterableAscending()}, all nodes are first read sequentially to determine the order,
+     * after which the entities are read in batches. This is much faster when iterating over
+     * all entities in a large index, but slower if only the first few entities are needed.
+     * @return an iterable of entities
+     */
+    public Iterable<T> iterableAscendingReadAhead() {
+        EntityIndexTransaction<T> txn = beginTransaction();
+        return () -> new OrderedEntityReadAheadIterator<>(txn, false);
+    }
+
     /**
      * Gets an iterable of all entities in the index in reverse default sorting order.
      * @return an iterable of entities
@@ -233,6 +705,16 @@ public abstract class EntityIndex<T extends Entity & Comparable<T>>  {
         return () -> new OrderedEntityDescendingIterator<>(txn.end());
     }
 
+    /**
+     * Gets an iterable of all entities in the index in reverse default sorting order.
+     * See {@link #iterableAscendingReadAhead()} for when this is preferable to {@link #iterableDescending()}.
+     * @return an iterable of entities
+     */
+    public Iterable<T> iterableDescendingReadAhead() {
+        EntityIndexTransaction<T> txn = beginTransaction();
+        return () -> new OrderedEntityReadAheadIterator<>(txn, true);
+    }
+
     /**
      * Gets an iterable of all entities in the index starting at the given key (inclusive),
      * in reverse default sorting order.
@@ -279,6 +761,15 @@ public abstract class EntityIndex<T extends Entity & Comparable<T>>  {
         return StreamSupport.stream(iterableAscending(start).spliterator(), false);
     }
 
+    /**
+     * Gets a stream of all entities in the index, sorted by the default sorting order.
+     * See {@link #iterableAscendingReadAhead()} for when this is preferable to {@link #streamOrderedAscending()}.
+     * @return a stream of all entities
+     */
+    public Stream<T> streamOrderedAscendingReadAhead() {
+        return StreamSupport.stream(iterableAscendingReadAhead().spliterator(), false);
+    }
+
     /**
      * Gets a stream of all entities in the index in reverse default sorting order.
      * @return a stream of all entities
@@ -301,16 +792,24 @@ public abstract class EntityIndex<T extends Entity & Comparable<T>>  {
 
     protected abstract void serialize(T entity, ByteBuffer buf);
 
+    /**
+     * Gets a comparator over serialized entities, which makes it possible to search the index
+     * without deserializing every entity passed on the way. The order must be the same as
+     * {@link Comparable#compareTo(Object)} on the deserialized entities.
+     * @return a comparator over serialized entities, or null if the entities must be
+     * deserialized before being compared
+     */
+    protected Comparator<byte[]> serializedComparator() {
+        return null;
+    }
+
     /**
      * Adds a new entity to the index
      * @param entity the entity to add
      * @return the added entity with the id set
      */
     public T add(T entity) {
-        EntityIndexTransaction<T> txn = beginTransaction();
-        T addedEntity = txn.get(txn.addEntity(entity));
-        txn.commit();
-        return addedEntity;
+        return inWriteTransaction(txn -> txn.get(txn.addEntity(entity)));
     }
 
     /**
@@ -319,9 +818,10 @@ public abstract class EntityIndex<T extends Entity & Comparable<T>>  {
      * @param entity the new entity (the id field will be ignored)
      */
     public void put(int id, T entity) {
-        EntityIndexTransaction<T> txn = beginTransaction();
-        txn.putEntityById(id, entity);
-        txn.commit();
+        inWriteTransaction(txn -> {
+            txn.putEntityById(id, entity);
+            return null;
+        });
     }
 
     /**
@@ -331,9 +831,10 @@ public abstract class EntityIndex<T extends Entity & Comparable<T>>  {
      * @throws IllegalArgumentException if there is no matching entity, or if there are
      */
     public void put(T entity) {
-        EntityIndexTransaction<T> txn = beginTransaction();
-        txn.putEntityByKey(entity);
-        txn.commit();
+        inWriteTransaction(txn -> {
+            txn.putEntityByKey(entity);
+            return null;
+        });
     }
 
     /**
@@ -342,10 +843,7 @@ public abstract class EntityIndex<T extends Entity & Comparable<T>>  {
      * @return true if the entity was deleted; false if there was no entity with that id in the index
      */
     public boolean delete(int entityId) {
-        EntityIndexTransaction<T> txn = beginTransaction();
-        boolean deleted = txn.deleteEntity(entityId);
-        txn.commit();
-        return deleted;
+        return inWriteTransaction(txn -> txn.deleteEntity(entityId));
     }
 
     /**
@@ -355,13 +853,111 @@ public abstract class EntityIndex<T extends Entity & Comparable<T>>  {
      * @throws IllegalArgumentException if there are multiple entities with the given key
      */
     public boolean delete(T entity) {
-        EntityIndexTransaction<T> txn = beginTransaction();
-        boolean deleted = txn.deleteEntity(entity);
-        txn.commit();
-        return deleted;
+        return inWriteTransaction(txn -> txn.deleteEntity(entity));
+    }
+
+    private <R> R inWriteTransaction(Function<EntityIndexTransaction<T>, R> operation) {
+        writeLock.lock();
+        try (EntityIndexTransaction<T> txn = beginTransaction()) {
+            R result = operation.apply(txn);
+            txn.commit();
+            return result;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Populates an empty index with the given entities.
+     * This is much faster than adding the entities one by one, since the entities are sorted
+     * once in memory and a perfectly balanced tree is then written in a single sequential pass,
+     * without any rebalancing.
+     * @param entities the entities to add, in id order; the first entity gets id 0, the second id 1 etc.
+     *                 The id field of the entities is ignored.
+     * @throws IllegalStateException if the index is not empty
+     */
+    public void bulkLoad(List<T> entities) {
+        writeLock.lock();
+        try {
+            Snapshot current = currentSnapshot;
+            EntityIndexHeader header = current.header();
+            if (header.capacity() != 0 || header.numEntities() != 0) {
+                throw new IllegalStateException("Bulk loading can only be done into an empty index");
+            }
+
+            int numEntities = entities.size();
+            byte[][] serializedEntities = new byte[numEntities][];
+            Integer[] order = new Integer[numEntities];
+            for (int i = 0; i < numEntities; i++) {
+                ByteBuffer buf = ByteBuffer.allocate(header.entitySize() - 8);
+                serialize(entities.get(i), buf);
+                serializedEntities[i] = buf.array();
+                order[i] = i;
+            }
+            // The sort is stable, so entities with the same key stay in id order
+            Comparator<byte[]> comparator = serializedComparator();
+            if (comparator != null) {
+                Arrays.sort(order, (a, b) -> comparator.compare(serializedEntities[a], serializedEntities[b]));
+            } else {
+                Arrays.sort(order, (a, b) -> entities.get(a).compareTo(entities.get(b)));
+            }
+
+            int[] leftChildIds = new int[numEntities];
+            int[] rightChildIds = new int[numEntities];
+            int[] balances = new int[numEntities];
+            int rootId = buildBalancedTree(order, 0, numEntities, leftChildIds, rightChildIds, balances);
+
+            EntityIndexHeader newHeader = ImmutableEntityIndexHeader.copyOf(header)
+                    .withCapacity(numEntities)
+                    .withNumEntities(numEntities)
+                    .withRootNodeId(rootId)
+                    .withDeletedEntityId(-1);
+            long stamp = storageLock.writeLock();
+            try {
+                for (int id = 0; id < numEntities; id++) {
+                    T entity = entities.get(id);
+                    storage.putItem(id, new EntityNode(id, leftChildIds[id], rightChildIds[id], balances[id],
+                            entity.count(), entity.firstGameId(), serializedEntities[id]));
+                }
+                storage.putHeader(newHeader);
+                // Any open transactions can no longer be committed
+                currentSnapshot = new Snapshot(current.version() + 1, newHeader);
+            } finally {
+                storageLock.unlockWrite(stamp);
+            }
+            cache.invalidateAll();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Sets the children and balance of the nodes in a perfectly balanced tree over the given range
+     * @return the id of the root of the subtree, or -1 if the range is empty
+     */
+    private static int buildBalancedTree(Integer[] order, int start, int end,
+                                         int[] leftChildIds, int[] rightChildIds, int[] balances) {
+        if (start >= end) {
+            return -1;
+        }
+        // The right subtree gets the extra node if the size is even, so the balance is either 0 or 1
+        int mid = start + (end - start - 1) / 2;
+        int id = order[mid];
+        leftChildIds[id] = buildBalancedTree(order, start, mid, leftChildIds, rightChildIds, balances);
+        rightChildIds[id] = buildBalancedTree(order, mid + 1, end, leftChildIds, rightChildIds, balances);
+        balances[id] = treeHeight(end - mid - 1) - treeHeight(mid - start);
+        return id;
+    }
+
+    private static int treeHeight(int numNodes) {
+        // The height of a perfectly balanced tree with the given number of nodes
+        return 32 - Integer.numberOfLeadingZeros(numNodes);
     }
 
     public void close() throws MorphyIOException {
+        if (log.isDebugEnabled()) {
+            log.debug("Entity cache of {} index: {}", entityType, cache.stats());
+        }
         storage.close();
     }
 
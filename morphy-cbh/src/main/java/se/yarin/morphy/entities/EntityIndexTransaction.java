@@ -5,16 +5,25 @@ import org.slf4j.LoggerFactory;
 import se.yarin.morphy.exceptions.MorphyEntityIndexException;
 
 import java.nio.ByteBuffer;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-
-public class EntityIndexTransaction<T extends Entity & Comparable<T>> {
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A transaction in an {@link EntityIndex}. All reads in the transaction are made from a snapshot of
+ * the index as it was when the transaction began, together with the changes made in the transaction.
+ * A transaction may only be used by a single thread.
+ */
+public class EntityIndexTransaction<T extends Entity & Comparable<T>> implements AutoCloseable {
     private static final Logger log = LoggerFactory.getLogger(EntityIndexTransaction.class);
 
     private static final int ENTITY_DELETED = -999;
 
     private final EntityIndex<T> index;
-    private final int indexNumCommittedTxn;
+    private final EntityIndex.SnapshotRegistration registration;
+    private final EntityIndex.Snapshot snapshot;
 
     // The header reference may be updated
     private EntityIndexHeader header;
@@ -26,8 +35,9 @@ public class EntityIndexTransaction<T extends Entity & Comparable<T>> {
 
     public EntityIndexTransaction(EntityIndex<T> index) {
         this.index = index;
-        this.indexNumCommittedTxn = this.index.getNumCommittedTxn();
-        this.header = index.storage.getHeader();
+        this.registration = new EntityIndex.SnapshotRegistration(this);
+        this.snapshot = index.openSnapshot(registration);
+        this.header = snapshot.header();
     }
 
     public EntityIndexHeader header() {
@@ -65,12 +75,68 @@ public class EntityIndexTransaction<T extends Entity & Comparable<T>> {
         if (node != null) {
             return node;
         }
-        if (this.index.getNumCommittedTxn() != indexNumCommittedTxn) {
-            throw new IllegalStateException("Entity index has changed since transaction started");
+        return index.getNode(id, snapshot.version());
+    }
+
+    /**
+     * Gets a range of nodes with consecutive ids
+     * @param id the id of the first node
+     * @param count the number of nodes
+     * @return the nodes, including the changes made in this transaction
+     */
+    protected List<EntityNode> getNodes(int id, int count) {
+        List<EntityNode> nodes = index.getNodes(id, count, snapshot.version());
+        if (!changes.isEmpty()) {
+            for (int i = 0; i < nodes.size(); i++) {
+                EntityNode node = changes.get(id + i);
+                if (node != null) {
+                    nodes.set(i, node);
+                }
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Gets the nodes with the given ids
+     * @param ids the ids of the nodes, in any order
+     * @return the nodes in the same order as the ids, including the changes made in this transaction
+     */
+    protected List<EntityNode> getNodes(int[] ids) {
+        List<EntityNode> nodes = index.getNodes(ids, snapshot.version());
+        if (!changes.isEmpty()) {
+            for (int i = 0; i < nodes.size(); i++) {
+                EntityNode node = changes.get(ids[i]);
+                if (node != null) {
+                    nodes.set(i, node);
+                }
+            }
         }
-        // TODO: This needs to be made thread-safe
-        node = index.getNode(id);
-        return node;
+        return nodes;
+    }
+
+    /**
+     * Gets the id of the left child of a node, without creating the node if the index doesn't have to
+     */
+    private int getLeftChildId(int id) {
+        EntityNode node = changes.isEmpty() ? null : changes.get(id);
+        return node != null ? node.getLeftChildId() : index.getChildId(id, snapshot.version(), true);
+    }
+
+    /**
+     * Gets the id of the right child of a node, without creating the node if the index doesn't have to
+     */
+    private int getRightChildId(int id) {
+        EntityNode node = changes.isEmpty() ? null : changes.get(id);
+        return node != null ? node.getRightChildId() : index.getChildId(id, snapshot.version(), false);
+    }
+
+    private int compareSerializedEntity(int id, byte[] serializedKey, Comparator<byte[]> comparator) {
+        EntityNode node = changes.isEmpty() ? null : changes.get(id);
+        if (node != null) {
+            return comparator.compare(serializedKey, node.getSerializedEntity());
+        }
+        return index.compareSerializedEntity(id, snapshot.version(), serializedKey, comparator);
     }
 
     protected void putNode(EntityNode node) {
@@ -92,16 +158,7 @@ public class EntityIndexTransaction<T extends Entity & Comparable<T>> {
             throw new IllegalStateException("The transaction has already been committed");
         }
 
-        // TODO: Acquire write lock, then verify that version haven't changed, then write
-
-        if (this.index.getNumCommittedTxn() != indexNumCommittedTxn) {
-            throw new IllegalStateException("Entity index has changed since transaction started");
-        }
-
-        for (EntityNode node : changes.values()) {
-            index.storage.putItem(node.getId(), node);
-        }
-        index.storage.putHeader(header);
+        index.commit(snapshot.version(), header, changes);
 
         if (log.isDebugEnabled()) {
             log.debug(String.format("Committed transaction containing %d node changes",
@@ -109,8 +166,34 @@ public class EntityIndexTransaction<T extends Entity & Comparable<T>> {
         }
 
         committed = true;
+        close();
+    }
+
+    /**
+     * Closes the transaction, discarding any uncommitted changes.
+     * The transaction must not be used after it has been closed.
+     * Closing a committed transaction has no effect.
+     */
+    @Override
+    public void close() {
+        index.closeSnapshot(registration);
+    }
 
-        index.transactionCommitted(this);
+    /**
+     * Returns a function that compares the given entity against the entity in the node with the given id.
+     * If the index supports it, the comparison is done on the serialized entities
+     * so the nodes passed through don't have to be created or deserialized.
+     */
+    private IntUnaryOperator keyComparator(T entity) {
+        Comparator<byte[]> comparator = index.serializedComparator();
+        if (comparator != null) {
+            byte[] serializedKey = serializeEntity(entity);
+            // A key that can't be serialized exactly (e.g. a name that is too long) must be compared as an entity
+            if (entity.compareTo(index.deserialize(-1, 0, 0, serializedKey)) == 0) {
+                return id -> compareSerializedEntity(id, serializedKey, comparator);
+            }
+        }
+        return id -> entity.compareTo(deserializeEntity(getNode(id)));
     }
 
     /**
@@ -118,25 +201,22 @@ public class EntityIndexTransaction<T extends Entity & Comparable<T>> {
      * If nodes exists with that compares equally to entity, the first of those nodes will be returned.
      */
     public NodePath lowerBound(T entity) {
-        return lowerBound(entity, header.rootNodeId(), null);
+        return lowerBound(keyComparator(entity), header.rootNodeId(), null);
     }
 
-    private NodePath lowerBound(T entity, int currentId, NodePath path) {
+    private NodePath lowerBound(IntUnaryOperator keyComparator, int currentId, NodePath path) {
         if (currentId < 0) {
             return end();
         }
 
-        EntityNode node = getNode(currentId);
-        T current = deserializeEntity(node);
-        // IMPROVEMENT: Would be nice to be able to compare entities without having to deserialize them
-        int comp = entity.compareTo(current);
+        int comp = keyComparator.applyAsInt(currentId);
 
         path = new NodePath(currentId, path);
         if (comp <= 0) {
-            NodePath left = lowerBound(entity, node.getLeftChildId(), path);
+            NodePath left = lowerBound(keyComparator, getLeftChildId(currentId), path);
             return left.isEnd() ? path : left;
         } else {
-            return lowerBound(entity, node.getRightChildId(), path);
+            return lowerBound(keyComparator, getRightChildId(currentId), path);
         }
     }
 
@@ -144,24 +224,22 @@ public class EntityIndexTransaction<T extends Entity & Comparable<T>> {
      * Returns a NodePath to the first node which compares greater than entity, or NodePath.end if no such node exists.
      */
     public NodePath upperBound(T entity) {
-        return upperBound(entity, header.rootNodeId(), null);
+        return upperBound(keyComparator(entity), header.rootNodeId(), null);
     }
 
-    private NodePath upperBound(T entity, int currentId, NodePath path) {
+    private NodePath upperBound(IntUnaryOperator keyComparator, int currentId, NodePath path) {
         if (currentId < 0) {
             return end();
         }
 
-        EntityNode node = getNode(currentId);
-        T current = deserializeEntity(node);
-        int comp = entity.compareTo(current);
+        int comp = keyComparator.applyAsInt(currentId);
 
         path = new NodePath(currentId, path);
         if (comp < 0) {
-            NodePath left = upperBound(entity, node.getLeftChildId(), path);
+            NodePath left = upperBound(keyComparator, getLeftChildId(currentId), path);
             return left.isEnd() ? path : left;
         } else {
-            return upperBound(entity, node.getRightChildId(), path);
+            return upperBound(keyComparator, getRightChildId(currentId), path);
         }
     }
 
@@ -191,14 +269,14 @@ public class EntityIndexTransaction<T extends Entity & Comparable<T>> {
         if (currentId < 0) {
             return path;
         }
-        return traverseLeftMost(getNode(currentId).getLeftChildId(), new NodePath(currentId, path));
+        return traverseLeftMost(getLeftChildId(currentId), new NodePath(currentId, path));
     }
 
     private NodePath traverseRightMost(int currentId, NodePath path) {
         if (currentId < 0) {
             return path;
         }
-        return traverseRightMost(getNode(currentId).getRightChildId(), new NodePath(currentId, path));
+        return traverseRightMost(getRightChildId(currentId), new NodePath(currentId, path));
     }
 
     /**
@@ -260,7 +338,7 @@ public class EntityIndexTransaction<T extends Entity & Comparable<T>> {
             if (parent == null) {
                 return false;
             }
-            int parentLeftId = EntityIndexTransaction.this.getNode(parent.entityId).getLeftChildId();
+            int parentLeftId = getLeftChildId(parent.entityId);
             return entityId == parentLeftId;
         }
 
@@ -271,7 +349,7 @@ public class EntityIndexTransaction<T extends Entity & Comparable<T>> {
             if (parent == null) {
                 return false;
             }
-            int parentRightId = EntityIndexTransaction.this.getNode(parent.entityId).getRightChildId();
+            int parentRightId = getRightChildId(parent.entityId);
             return entityId == parentRightId;
         }
 
@@ -301,21 +379,21 @@ public class EntityIndexTransaction<T extends Entity & Comparable<T>> {
             if (isEnd()) {
                 throw new IllegalStateException("Tried to check left child at end of TreePath");
             }
-            return getNode().getLeftChildId() >= 0;
+            return getLeftChildId(entityId) >= 0;
         }
 
         public boolean hasRightChild() {
             if (isEnd()) {
                 throw new IllegalStateException("Tried to check right child at end of TreePath");
             }
-            return getNode().getRightChildId() >= 0;
+            return getRightChildId(entityId) >= 0;
         }
 
         public NodePath successor() {
             if (isEnd()) {
                 throw new IllegalStateException("Tried to get successor at end of TreePath");
             }
-            int rightEntityId = getNode().getRightChildId();
+            int rightEntityId = getRightChildId(entityId);
             NodePath successorPath;
             if (rightEntityId >= 0) {
                 // In ascending traversal, the next node is the leftmost child in the right subtree
@@ -342,7 +420,7 @@ public class EntityIndexTransaction<T extends Entity & Comparable<T>> {
             if (isEnd()) {
                 predecessorPath = last();
             } else {
-                int leftEntityId = getNode().getLeftChildId();
+                int leftEntityId = getLeftChildId(entityId);
                 if (leftEntityId >= 0) {
                     predecessorPath = traverseRightMost(leftEntityId, new NodePath(entityId, parent));
                 } else {
@@ -0,0 +1,105 @@
+package se.yarin.morphy.entities;
+
+import se.yarin.morphy.exceptions.MorphyEntityIndexException;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over all entities in an index in key order without walking the tree one node at a time,
+ * which on a file causes a random read for every entity.
+ *
+ * Instead the order of all entity ids is first determined by reading all nodes in one sequential pass.
+ * The entities are then read in batches using {@link EntityIndexTransaction#getNodes(int[])},
+ * where each batch is read in id order and with nearby nodes read together.
+ */
+class OrderedEntityReadAheadIterator<T extends Entity & Comparable<T>> implements Iterator<T> {
+    private static final int SCAN_BATCH_SIZE = 1000;
+    private static final int READ_BATCH_SIZE = 1000;
+    private static final int MAX_TREE_HEIGHT = 64;
+
+    private final EntityIndexTransaction<T> txn;
+    private final boolean descending;
+    private final int[] orderedIds;
+    private int nextPos;
+
+    private final EntityNode[] batchNodes = new EntityNode[READ_BATCH_SIZE];
+    private int batchSize, batchPos;
+
+    OrderedEntityReadAheadIterator(EntityIndexTransaction<T> txn, boolean descending) {
+        this.txn = txn;
+        this.descending = descending;
+        this.orderedIds = orderedIds(txn);
+    }
+
+    private static int[] orderedIds(EntityIndexTransaction<?> txn) {
+        EntityIndexHeader header = txn.header();
+        int capacity = header.capacity();
+        int[] leftChildIds = new int[capacity];
+        int[] rightChildIds = new int[capacity];
+        for (int start = 0; start < capacity; start += SCAN_BATCH_SIZE) {
+            List<EntityNode> nodes = txn.getNodes(start, Math.min(SCAN_BATCH_SIZE, capacity - start));
+            for (int i = 0; i < nodes.size(); i++) {
+                leftChildIds[start + i] = nodes.get(i).getLeftChildId();
+                rightChildIds[start + i] = nodes.get(i).getRightChildId();
+            }
+        }
+
+        int[] result = new int[capacity];
+        int count = 0;
+        int[] stack = new int[MAX_TREE_HEIGHT];
+        int stackSize = 0;
+        int current = header.rootNodeId();
+        while (current >= 0 || stackSize > 0) {
+            while (current >= 0) {
+                if (current >= capacity || stackSize == MAX_TREE_HEIGHT) {
+                    throw new MorphyEntityIndexException("The entity index tree is damaged at node " + current);
+                }
+                stack[stackSize++] = current;
+                current = leftChildIds[current];
+            }
+            current = stack[--stackSize];
+            if (count == capacity) {
+                throw new MorphyEntityIndexException("The entity index tree contains a cycle at node " + current);
+            }
+            result[count++] = current;
+            current = rightChildIds[current];
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private void readNextBatch() {
+        batchSize = Math.min(READ_BATCH_SIZE, orderedIds.length - nextPos);
+        int[] ids = new int[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            ids[i] = orderedIds[descending ? orderedIds.length - 1 - nextPos - i : nextPos + i];
+        }
+        nextPos += batchSize;
+
+        List<EntityNode> nodes = txn.getNodes(ids);
+        for (int i = 0; i < batchSize; i++) {
+            batchNodes[i] = nodes.get(i);
+        }
+        batchPos = 0;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return batchPos < batchSize || nextPos < orderedIds.length;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("End of entity iteration reached");
+        }
+        if (batchPos == batchSize) {
+            readNextBatch();
+        }
+        EntityNode node = batchNodes[batchPos];
+        batchNodes[batchPos++] = null;
+        return txn.deserializeEntity(node);
+    }
+}
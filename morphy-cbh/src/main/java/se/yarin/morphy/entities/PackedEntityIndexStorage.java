@@ -0,0 +1,226 @@
+package se.yarin.morphy.entities;
+
+import se.yarin.cbhlib.util.ByteBufferUtil;
+import se.yarin.morphy.exceptions.MorphyIOException;
+import se.yarin.morphy.exceptions.MorphyInvalidDataException;
+import se.yarin.morphy.storage.ItemStorage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * An in-memory storage of entity nodes that keeps all nodes in a few primitive arrays instead of
+ * one object per node. The tree fields, game count and first game id are stored in parallel arrays,
+ * and the serialized entities are packed after each other in a single byte array.
+ *
+ * Loading an entity index file into this storage is done with a single read of the entire file.
+ * Changes are not written back to the file.
+ *
+ * Besides the {@link ItemStorage} methods, which create an {@link EntityNode} for every item,
+ * the child ids and serialized entity of a node can be read directly from the arrays,
+ * which is what the tree walks in {@link EntityIndex} use.
+ */
+public class PackedEntityIndexStorage implements ItemStorage<EntityIndexHeader, EntityNode> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private EntityIndexHeader header;
+    private final int entitySize;
+    private int numItems;
+
+    private int[] leftChildIds;
+    private int[] rightChildIds;
+    private byte[] balances;
+    private int[] gameCounts;
+    private int[] firstGameIds;
+    private byte[] entities;
+
+    /**
+     * Creates a new empty storage
+     * @param header the header of the storage
+     */
+    public PackedEntityIndexStorage(EntityIndexHeader header) {
+        this(header, INITIAL_CAPACITY);
+    }
+
+    private PackedEntityIndexStorage(EntityIndexHeader header, int initialCapacity) {
+        this.header = header;
+        // The game count and first game id are stored separately
+        this.entitySize = header.entitySize() - 8;
+        this.leftChildIds = new int[initialCapacity];
+        this.rightChildIds = new int[initialCapacity];
+        this.balances = new byte[initialCapacity];
+        this.gameCounts = new int[initialCapacity];
+        this.firstGameIds = new int[initialCapacity];
+        this.entities = new byte[initialCapacity * entitySize];
+    }
+
+    /**
+     * Loads an entity index file into a new in-memory storage
+     * @param file the entity index file to load
+     * @param serializer the serializer of the entity index
+     * @return a storage with all nodes in the file
+     * @throws IOException if an IO error occurred reading the file
+     * @throws MorphyInvalidDataException if the header of the file is invalid
+     */
+    public static PackedEntityIndexStorage load(File file, EntityIndexSerializer serializer)
+            throws IOException, MorphyInvalidDataException {
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new MorphyInvalidDataException("The entity index file is too large to load into memory: " + file);
+            }
+            buf = ByteBuffer.allocate((int) channel.size());
+            while (buf.hasRemaining() && channel.read(buf) >= 0) { }
+        }
+        buf.flip();
+        if (buf.limit() < serializer.expectedHeaderSize()) {
+            throw new MorphyInvalidDataException("The entity index file is too short: " + file);
+        }
+
+        EntityIndexHeader header = serializer.deserializeHeader(buf.duplicate());
+        int itemSize = serializer.itemSize(header);
+        // Some files are truncated; the missing nodes are treated as empty nodes, as in FileItemStorage
+        int numItems = Math.min(header.capacity(), (buf.limit() - header.headerSize()) / itemSize);
+
+        PackedEntityIndexStorage storage = new PackedEntityIndexStorage(header, Math.max(header.capacity(), 1));
+        byte[] data = buf.array();
+        int entitySize = storage.entitySize;
+        for (int i = 0; i < numItems; i++) {
+            int offset = header.headerSize() + i * itemSize;
+            storage.leftChildIds[i] = ByteBufferUtil.getIntL(data, offset);
+            storage.rightChildIds[i] = ByteBufferUtil.getIntL(data, offset + 4);
+            storage.balances[i] = data[offset + 8];
+            System.arraycopy(data, offset + 9, storage.entities, i * entitySize, entitySize);
+            storage.gameCounts[i] = ByteBufferUtil.getIntL(data, offset + 9 + entitySize);
+            storage.firstGameIds[i] = ByteBufferUtil.getIntL(data, offset + 13 + entitySize);
+        }
+        storage.numItems = header.capacity();
+        return storage;
+    }
+
+    @Override
+    public EntityIndexHeader getHeader() {
+        return header;
+    }
+
+    @Override
+    public void putHeader(EntityIndexHeader header) {
+        this.header = header;
+    }
+
+    /**
+     * @return the size of the serialized entities, excluding the game count and first game id
+     */
+    public int getEntitySize() {
+        return entitySize;
+    }
+
+    /**
+     * Gets the id of the left child of a node, without creating the node
+     * @param index the id of the node
+     * @return the id of the left child, or -1 if there is no left child
+     */
+    public int getLeftChildId(int index) {
+        checkIndex(index);
+        return leftChildIds[index];
+    }
+
+    /**
+     * Gets the id of the right child of a node, without creating the node
+     * @param index the id of the node
+     * @return the id of the right child, or -1 if there is no right child
+     */
+    public int getRightChildId(int index) {
+        checkIndex(index);
+        return rightChildIds[index];
+    }
+
+    /**
+     * Copies the serialized entity of a node into a buffer, without creating the node
+     * @param index the id of the node
+     * @param target the buffer to copy the serialized entity to; must be at least {@link #getEntitySize()} bytes
+     */
+    public void getSerializedEntity(int index, byte[] target) {
+        checkIndex(index);
+        System.arraycopy(entities, index * entitySize, target, 0, entitySize);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= numItems) {
+            throw new IllegalArgumentException(String.format("Tried to get item with id %d but the storage only has %d items",
+                    index, numItems));
+        }
+    }
+
+    @Override
+    public EntityNode getItem(int index) {
+        checkIndex(index);
+        return new EntityNode(index, leftChildIds[index], rightChildIds[index], balances[index],
+                gameCounts[index], firstGameIds[index],
+                Arrays.copyOfRange(entities, index * entitySize, (index + 1) * entitySize));
+    }
+
+    @Override
+    public List<EntityNode> getItems(int index, int count) {
+        if (index < 0 || count < 0 || index + count > numItems) {
+            throw new IllegalArgumentException(String.format("Tried to get item with id %d but the storage only has %d items",
+                    index + count - 1, numItems));
+        }
+        ArrayList<EntityNode> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(getItem(index + i));
+        }
+        return result;
+    }
+
+    @Override
+    public List<EntityNode> getItems(int[] ids) {
+        ArrayList<EntityNode> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            result.add(getItem(id));
+        }
+        return result;
+    }
+
+    @Override
+    public void putItem(int index, EntityNode node) {
+        if (index < 0 || index > numItems) {
+            throw new IllegalArgumentException(String.format("Tried to put item with id %d but the storage only has %d items",
+                    index, numItems));
+        }
+        if (index == leftChildIds.length) {
+            grow();
+        }
+        leftChildIds[index] = node.getLeftChildId();
+        rightChildIds[index] = node.getRightChildId();
+        balances[index] = (byte) node.getBalance();
+        gameCounts[index] = node.getGameCount();
+        firstGameIds[index] = node.getFirstGameId();
+        byte[] serializedEntity = node.getSerializedEntity();
+        System.arraycopy(serializedEntity, 0, entities, index * entitySize, Math.min(entitySize, serializedEntity.length));
+        if (index == numItems) {
+            numItems += 1;
+        }
+    }
+
+    private void grow() {
+        int newCapacity = leftChildIds.length + leftChildIds.length / 2 + 1;
+        leftChildIds = Arrays.copyOf(leftChildIds, newCapacity);
+        rightChildIds = Arrays.copyOf(rightChildIds, newCapacity);
+        balances = Arrays.copyOf(balances, newCapacity);
+        gameCounts = Arrays.copyOf(gameCounts, newCapacity);
+        firstGameIds = Arrays.copyOf(firstGameIds, newCapacity);
+        entities = Arrays.copyOf(entities, newCapacity * entitySize);
+    }
+
+    @Override
+    public void close() throws MorphyIOException {
+    }
+}
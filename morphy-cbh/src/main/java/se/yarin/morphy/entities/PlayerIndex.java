@@ -4,14 +4,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.yarin.cbhlib.entities.PlayerEntity;
 import se.yarin.cbhlib.util.ByteBufferUtil;
+import se.yarin.cbhlib.util.CBUtil;
 import se.yarin.morphy.exceptions.MorphyInvalidDataException;
 import se.yarin.morphy.storage.FileItemStorage;
+import se.yarin.morphy.storage.InMemoryItemStorage;
 import se.yarin.morphy.storage.ItemStorage;
 import se.yarin.morphy.storage.OpenOption;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Comparator;
 import java.util.Set;
 
 public class PlayerIndex extends EntityIndex<Player> {
@@ -19,6 +22,10 @@ public class PlayerIndex extends EntityIndex<Player> {
 
     private static final int SERIALIZED_PLAYER_SIZE = 58;
 
+    public PlayerIndex() {
+        this(new InMemoryItemStorage<>(EntityIndexHeader.empty(SERIALIZED_PLAYER_SIZE)));
+    }
+
     protected PlayerIndex(ItemStorage<EntityIndexHeader, EntityNode> storage) {
         super(storage, "Player");
     }
@@ -30,6 +37,27 @@ public class PlayerIndex extends EntityIndex<Player> {
         return new PlayerIndex(new FileItemStorage<>(file, new EntityIndexSerializer(SERIALIZED_PLAYER_SIZE), optionSet));
     }
 
+    /**
+     * Loads an entire player index file into memory.
+     * Changes to the returned index are not written back to the file.
+     * @param file the file to load
+     * @return an in-memory player index with the same contents as the file
+     */
+    public static PlayerIndex openInMemory(File file) throws IOException, MorphyInvalidDataException {
+        return new PlayerIndex(PackedEntityIndexStorage.load(file, new EntityIndexSerializer(SERIALIZED_PLAYER_SIZE)));
+    }
+
+    /**
+     * Creates a new empty player index on disk, open for writing.
+     * If the file already exists, an {@link IOException} is thrown.
+     * @param file the file to create
+     * @return the created player index
+     */
+    public static PlayerIndex create(File file) throws IOException, MorphyInvalidDataException {
+        return new PlayerIndex(FileItemStorage.create(file, new EntityIndexSerializer(SERIALIZED_PLAYER_SIZE),
+                EntityIndexHeader.empty(SERIALIZED_PLAYER_SIZE)));
+    }
+
     @Override
     protected Player deserialize(int entityId, int count, int firstGameId, byte[] serializedData) {
         ByteBuffer buf = ByteBuffer.wrap(serializedData);
@@ -47,4 +75,13 @@ public class PlayerIndex extends EntityIndex<Player> {
         ByteBufferUtil.putFixedSizeByteString(buf, player.lastName(), 30);
         ByteBufferUtil.putFixedSizeByteString(buf, player.firstName(), 20);
     }
+
+    @Override
+    protected Comparator<byte[]> serializedComparator() {
+        return (p1, p2) -> {
+            int comp = CBUtil.compareFixedSizeByteStringUnsigned(p1, p2, 0, 30);
+            if (comp != 0) return comp;
+            return CBUtil.compareFixedSizeByteStringUnsigned(p1, p2, 30, 20);
+        };
+    }
 }
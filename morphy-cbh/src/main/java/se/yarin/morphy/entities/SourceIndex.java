@@ -12,6 +12,7 @@ import se.yarin.morphy.storage.OpenOption;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Comparator;
 import java.util.Set;
 
 public class SourceIndex extends EntityIndex<Source> {
@@ -57,4 +58,9 @@ public class SourceIndex extends EntityIndex<Source> {
         ByteBufferUtil.putByte(buf, source.version());
         ByteBufferUtil.putByte(buf, source.quality().ordinal());
     }
+
+    @Override
+    protected Comparator<byte[]> serializedComparator() {
+        return (s1, s2) -> CBUtil.compareFixedSizeByteString(s1, s2, 0, 25);
+    }
 }
@@ -2,6 +2,7 @@ package se.yarin.morphy.entities;
 
 import se.yarin.cbhlib.entities.Nation;
 import se.yarin.cbhlib.util.ByteBufferUtil;
+import se.yarin.cbhlib.util.CBUtil;
 import se.yarin.morphy.exceptions.MorphyInvalidDataException;
 import se.yarin.morphy.storage.FileItemStorage;
 import se.yarin.morphy.storage.InMemoryItemStorage;
@@ -11,6 +12,7 @@ import se.yarin.morphy.storage.OpenOption;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Comparator;
 import java.util.Set;
 
 public class TeamIndex extends EntityIndex<Team> {
@@ -55,4 +57,19 @@ public class TeamIndex extends EntityIndex<Team> {
         ByteBufferUtil.putIntL(buf, team.year());
         ByteBufferUtil.putByte(buf, team.nation().ordinal());
     }
+
+    @Override
+    protected Comparator<byte[]> serializedComparator() {
+        return (t1, t2) -> {
+            int dif = CBUtil.compareFixedSizeByteStringUnsigned(t1, t2, 0, 45);
+            if (dif != 0) return dif;
+            int teamNumber1 = ByteBufferUtil.getIntL(t1, 45), teamNumber2 = ByteBufferUtil.getIntL(t2, 45);
+            if (teamNumber1 != teamNumber2) return teamNumber1 - teamNumber2;
+            boolean season1 = (t1[49] & 1) > 0, season2 = (t2[49] & 1) > 0;
+            if (season1 != season2) return season1 ? -1 : 1;
+            int year1 = ByteBufferUtil.getIntL(t1, 50), year2 = ByteBufferUtil.getIntL(t2, 50);
+            if (year1 != year2) return year1 - year2;
+            return (t1[54] & 0xFF) - (t2[54] & 0xFF);
+        };
+    }
 }
@@ -14,6 +14,9 @@ import se.yarin.morphy.storage.OpenOption;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Set;
 
 public class TournamentIndex extends EntityIndex<Tournament> {
@@ -65,17 +68,37 @@ public class TournamentIndex extends EntityIndex<Tournament> {
         return new TournamentIndex(storage, extraStorage);
     }
 
-    public Tournament get(int id) {
+    @Override
+    protected int cachedEntityWeight() {
+        return super.cachedEntityWeight() + extraStorage.getHeader().recordSize();
+    }
+
+    @Override
+    protected Tournament readEntity(int id) {
         TournamentExtra extra = this.extraStorage.getItem(id);
         if (extra == null) {
             // Happens when opening the database in read mode and the extra tournament index file is missing
             extra = TournamentExtra.empty();
         }
 
-        EntityNode node = storage.getItem(id);
+        EntityNode node = getNode(id);
         return deserialize(id, node.getGameCount(), node.getFirstGameId(), node.getSerializedEntity(), extra);
     }
 
+    @Override
+    protected List<Tournament> readEntities(int[] ids) {
+        List<EntityNode> nodes = readStorage(() -> storage.getItems(ids));
+        List<TournamentExtra> extras = this.extraStorage.getItems(ids);
+        ArrayList<Tournament> result = new ArrayList<>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            EntityNode node = nodes.get(i);
+            TournamentExtra extra = extras.get(i) == null ? TournamentExtra.empty() : extras.get(i);
+            result.add(node.isDeleted() ? null :
+                    deserialize(node.getId(), node.getGameCount(), node.getFirstGameId(), node.getSerializedEntity(), extra));
+        }
+        return result;
+    }
+
     @Override
     protected Tournament deserialize(int entityId, int count, int firstGameId, byte[] serializedData) {
         return deserialize(entityId, count, firstGameId, serializedData, TournamentExtra.empty());
@@ -152,4 +175,19 @@ public class TournamentIndex extends EntityIndex<Tournament> {
         ByteBufferUtil.putByte(buf, tournament.rounds());
         ByteBufferUtil.putByte(buf, 0); // Or is rounds 2 bytes?
     }
+
+    @Override
+    protected Comparator<byte[]> serializedComparator() {
+        return (t1, t2) -> {
+            // Same arithmetic as in CBUtil.decodeDate; bit 0-4 is day, bit 5-8 is month, bit 9-20 is year
+            int date1 = ByteBufferUtil.getIntL(t1, 70) % (1 << 21), date2 = ByteBufferUtil.getIntL(t2, 70) % (1 << 21);
+            if (date1 / 512 != date2 / 512) return date2 / 512 - date1 / 512;
+            int dif = CBUtil.compareFixedSizeByteString(t1, t2, 0, 40);
+            if (dif != 0) return dif;
+            dif = CBUtil.compareFixedSizeByteString(t1, t2, 40, 30);
+            if (dif != 0) return dif;
+            if ((date1 / 32) % 16 != (date2 / 32) % 16) return (date2 / 32) % 16 - (date1 / 32) % 16;
+            return date2 % 32 - date1 % 32;
+        };
+    }
 }
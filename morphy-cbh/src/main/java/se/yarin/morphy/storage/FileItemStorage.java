@@ -13,6 +13,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
 import static java.nio.file.StandardOpenOption.READ;
 import static java.nio.file.StandardOpenOption.WRITE;
 
@@ -39,10 +40,29 @@ public class FileItemStorage<THeader, TItem> implements ItemStorage<THeader, TIt
         refreshHeader();
     }
 
+    /**
+     * Creates a new storage file containing only a header, and opens it for writing.
+     * If the file already exists, an {@link IOException} is thrown.
+     * @param file the file to create
+     * @param serializer the serializer of the storage
+     * @param header the header of the empty storage
+     * @return the opened storage
+     */
+    public static <THeader, TItem> FileItemStorage<THeader, TItem> create(
+            File file, ItemStorageSerializer<THeader, TItem> serializer, THeader header)
+            throws IOException, MorphyInvalidDataException {
+        ByteBuffer buf = ByteBuffer.allocate(serializer.expectedHeaderSize());
+        serializer.serializeHeader(header, buf);
+        buf.flip();
+        try (FileChannel channel = FileChannel.open(file.toPath(), CREATE_NEW, WRITE)) {
+            channel.write(buf);
+        }
+        return new FileItemStorage<>(file, serializer, Set.of(OpenOption.WRITE, OpenOption.STRICT));
+    }
+
     private void refreshHeader() throws IOException, MorphyInvalidDataException {
-        channel.position(0);
         ByteBuffer buf = ByteBuffer.allocate(serializer.expectedHeaderSize());
-        channel.read(buf);
+        channel.read(buf, 0);
         buf.position(0); // No flip since serializer expects buf to be of length prefetchHeaderSize()
         this.header = this.serializer.deserializeHeader(buf);
     }
@@ -58,8 +78,7 @@ public class FileItemStorage<THeader, TItem> implements ItemStorage<THeader, TIt
         this.serializer.serializeHeader(header, buf);
         buf.flip();
         try {
-            channel.position(0);
-            channel.write(buf);
+            channel.write(buf, 0);
         } catch (IOException e) {
             throw new MorphyIOException(e);
         }
@@ -81,8 +100,7 @@ public class FileItemStorage<THeader, TItem> implements ItemStorage<THeader, TIt
                             index, offset, this.fileSize));
                 }
             } else {
-                channel.position(offset);
-                channel.read(buf);
+                channel.read(buf, offset);
                 buf.rewind();
             }
         } catch (IOException e) {
@@ -107,8 +125,7 @@ public class FileItemStorage<THeader, TItem> implements ItemStorage<THeader, TIt
                             index, offset, this.fileSize));
                 }
             } else {
-                channel.position(offset);
-                channel.read(buf);
+                channel.read(buf, offset);
                 buf.rewind();
             }
         } catch (IOException e) {
@@ -134,14 +151,39 @@ public class FileItemStorage<THeader, TItem> implements ItemStorage<THeader, TIt
         serializer.serializeItem(item, buf);
         buf.flip();
         try {
-            channel.position(offset);
-            channel.write(buf);
+            channel.write(buf, offset);
         } catch (IOException e) {
             throw new MorphyIOException(e);
         }
         this.fileSize = Math.max(this.fileSize, offset + buf.position());
     }
 
+    @Override
+    public void putItems(int index, List<TItem> items) {
+        long offset = serializer.itemOffset(this.header, index);
+        if (offset > this.fileSize) {
+            throw new MorphyIOException(String.format("Tried to put item with id %d at offset %d but file size was %d",
+                    index, offset, this.fileSize));
+        }
+        // Write all items with a single write instead of one per item
+        int itemSize = serializer.itemSize(this.header);
+        ByteBuffer buf = ByteBuffer.allocate(itemSize * items.size());
+        for (int i = 0; i < items.size(); i++) {
+            buf.position(i * itemSize);
+            serializer.serializeItem(items.get(i), buf);
+        }
+        buf.rewind();
+        try {
+            long position = offset;
+            while (buf.hasRemaining()) {
+                position += channel.write(buf, position);
+            }
+        } catch (IOException e) {
+            throw new MorphyIOException(e);
+        }
+        this.fileSize = Math.max(this.fileSize, offset + buf.capacity());
+    }
+
     @Override
     public void close() throws MorphyException {
         try {
@@ -43,6 +43,15 @@ public class InMemoryItemStorage<THeader, TItem> implements ItemStorage<THeader,
         return new ArrayList<>(items.subList(index, index + count));
     }
 
+    @Override
+    public List<TItem> getItems(int[] ids) {
+        ArrayList<TItem> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            result.add(getItem(id));
+        }
+        return result;
+    }
+
     @Override
     public void putItem(int index, TItem item) {
         if (index > items.size()) {
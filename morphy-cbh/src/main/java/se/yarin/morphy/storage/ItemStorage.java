@@ -2,7 +2,10 @@ package se.yarin.morphy.storage;
 
 import se.yarin.morphy.exceptions.MorphyIOException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.IntStream;
 
 public interface ItemStorage<THeader, TItem> {
     THeader getHeader();
@@ -28,5 +31,51 @@ public interface ItemStorage<THeader, TItem> {
      */
     List<TItem> getItems(int index, int count);
 
+    /**
+     * Gets the items with the given ids.
+     * The items are read in id order, and items close to each other are read together
+     * using {@link #getItems(int, int)}, so this is faster than getting the items one by one.
+     * If any id is invalid, either an empty (non-null) item is returned,
+     * or {@link MorphyIOException} is thrown depending on the open option.
+     * @param ids the ids of the items, in any order and possibly with duplicates
+     * @return a list of items, in the same order as the ids
+     */
+    default List<TItem> getItems(int[] ids) {
+        // Reading a few unneeded items is cheaper than making another read
+        final int maxGap = 16;
+        int[] sortedIds = IntStream.of(ids).sorted().distinct().toArray();
+        ArrayList<TItem> sortedItems = new ArrayList<>(sortedIds.length);
+        int start = 0;
+        while (start < sortedIds.length) {
+            int end = start + 1;
+            while (end < sortedIds.length && sortedIds[end] - sortedIds[end - 1] <= maxGap) {
+                end += 1;
+            }
+            int firstId = sortedIds[start];
+            List<TItem> items = getItems(firstId, sortedIds[end - 1] - firstId + 1);
+            for (int i = start; i < end; i++) {
+                sortedItems.add(items.get(sortedIds[i] - firstId));
+            }
+            start = end;
+        }
+
+        ArrayList<TItem> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            result.add(sortedItems.get(Arrays.binarySearch(sortedIds, id)));
+        }
+        return result;
+    }
+
+    /**
+     * Puts a range of items with consecutive ids into the storage
+     * @param index the id of the first item
+     * @param items the items to put
+     */
+    default void putItems(int index, List<TItem> items) {
+        for (int i = 0; i < items.size(); i++) {
+            putItem(index + i, items.get(i));
+        }
+    }
+
     void close() throws MorphyIOException;
 }
@@ -4,6 +4,7 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.yarin.cbhlib.annotations.TextAfterMoveAnnotation;
+import se.yarin.cbhlib.entities.AnnotatorEntity;
 import se.yarin.cbhlib.entities.PlayerEntity;
 import se.yarin.cbhlib.entities.TournamentEntity;
 import se.yarin.cbhlib.exceptions.ChessBaseException;
@@ -13,6 +14,8 @@ import se.yarin.cbhlib.games.ExtendedGameHeaderBase;
 import se.yarin.cbhlib.games.GameHeader;
 import se.yarin.cbhlib.storage.EntityStorageException;
 import se.yarin.cbhlib.util.GameGenerator;
+import se.yarin.cbhlib.validation.EntityStats;
+import se.yarin.cbhlib.validation.EntityStatsCalculator;
 import se.yarin.cbhlib.validation.EntityStatsValidator;
 import se.yarin.cbhlib.validation.GamesValidator;
 import se.yarin.chess.*;
@@ -21,6 +24,8 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 import static org.junit.Assert.*;
@@ -121,6 +126,91 @@ public class DatabaseTest {
         db.close();
     }
 
+    @Test
+    public void getGameHeaderModelsMatchesSingleGames() throws IOException, EntityStorageException, ChessBaseException {
+        File file = Files.createTempDirectory("morphy").resolve("headers.cbh").toFile();
+        Database db = Database.create(file);
+        db.addGame(getSimpleGame("Mardell", "Carlsen", "t1", "my source", "myself"));
+        db.addGame(getSimpleGame("Kasparov", "Mardell", "t1", "", ""));
+        db.addGame(getSimpleGame("Karpov", "Fischer", "t2", null, ""));
+        db.addGame(getSimpleGame("Caruana", "Giri", "t2", "my source", "myself"));
+        db.addGame(getSimpleGame("Mardell", "Giri", "t3", null, ""));
+        db.close();
+
+        // Reopen so the entities aren't in the cache
+        db = Database.open(file);
+        List<Game> games = new ArrayList<>();
+        for (int id = 5; id >= 1; id--) {
+            games.add(db.getGame(id));
+        }
+        games.add(db.getGame(2));
+        List<GameHeaderModel> models = db.getGameHeaderModels(games);
+
+        assertEquals(games.size(), models.size());
+        for (int i = 0; i < games.size(); i++) {
+            assertEquals(db.getGameHeaderModel(games.get(i)), models.get(i));
+        }
+        assertEquals("Caruana", models.get(1).getWhite());
+        assertEquals("t2", models.get(1).getEvent());
+        assertEquals("myself", models.get(1).getAnnotator());
+        db.close();
+    }
+
+    @Test
+    public void bulkAddGames() throws IOException, EntityStorageException, ChessBaseException {
+        Database db = new Database();
+        db.addGame(getSimpleGame("Mardell", "Carlsen", "t1", "my source", "myself"));
+
+        GameGenerator gameGenerator = new GameGenerator(3);
+        try (BulkGameWriter writer = new BulkGameWriter(db, 7)) {
+            writer.add(getSimpleGame("Kasparov", "Mardell", "t1", "", ""));
+            for (int i = 0; i < 30; i++) {
+                writer.add(gameGenerator.getRandomGame());
+            }
+            writer.add(getSimpleGame("Mardell", "Giri", "t3", null, "myself"));
+        }
+
+        assertEquals(33, db.getHeaderBase().size());
+        assertEquals(3, db.getPlayerBase().getAny(new PlayerEntity("Mardell", "")).getCount());
+        assertEquals(1, db.getPlayerBase().getAny(new PlayerEntity("Mardell", "")).getFirstGameId());
+        new EntityStatsValidator(db).validateEntityStatistics(true);
+        new GamesValidator(db).readAllGames();
+
+        db.close();
+    }
+
+    @Test
+    public void bulkAddFailedGameIsNotCounted() throws IOException, EntityStorageException, ChessBaseException {
+        Database db = new Database();
+        try (BulkGameWriter writer = new BulkGameWriter(db)) {
+            writer.add(getSimpleGame("Kasparov", "Mardell", "t1", "", ""));
+            GameModel game = getSimpleGame("Mardell", "Carlsen", "t1", "my source", "myself");
+            GameModel broken = new GameModel(game.header(), game.moves()) {
+                @Override
+                public GameMovesModel moves() {
+                    throw new IllegalStateException("Broken moves");
+                }
+            };
+            try {
+                writer.add(broken);
+                fail("Expected the game to fail");
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+            writer.add(getSimpleGame("Mardell", "Giri", "t1", null, ""));
+        }
+
+        assertEquals(2, db.getHeaderBase().size());
+        assertEquals(2, db.getPlayerBase().getAny(new PlayerEntity("Mardell", "")).getCount());
+        assertEquals(2, db.getTournamentBase().get(db.getGame(1).getHeader().getTournamentId()).getCount());
+        // The entities that were only created for the failed game are removed
+        assertNull(db.getPlayerBase().getAny(new PlayerEntity("Carlsen", "")));
+        assertNull(db.getAnnotatorBase().getAny(new AnnotatorEntity("myself")));
+        new EntityStatsValidator(db).validateEntityStatistics(true);
+
+        db.close();
+    }
+
     @Test
     public void replaceGame() throws IOException, EntityStorageException, ChessBaseException {
         Database db = new Database();
@@ -162,6 +252,86 @@ public class DatabaseTest {
         db.close();
     }
 
+    @Test
+    public void parallelEntityStatsMatchSequentialStats() throws IOException, ChessBaseInvalidDataException {
+        GameGenerator gameGenerator = new GameGenerator();
+        Path directory = Files.createTempDirectory("entitystats");
+        Database db = Database.create(directory.resolve("stats.cbh").toFile());
+        for (int i = 0; i < 200; i++) {
+            db.addGame(gameGenerator.getRandomGame());
+        }
+        EntityStatsValidator validator = new EntityStatsValidator(db);
+        validator.calculateEntityStats(() -> {});
+        EntityStats expected = validator.getStats();
+
+        for (int numThreads : new int[] {1, 3, 8}) {
+            EntityStats actual = new EntityStatsCalculator(db, numThreads).calculate(() -> {});
+            assertEquals(expected.players, actual.players);
+            assertEquals(expected.tournaments, actual.tournaments);
+            assertEquals(expected.annotators, actual.annotators);
+            assertEquals(expected.sources, actual.sources);
+            assertEquals(expected.teams, actual.teams);
+            assertEquals(expected.gameTags, actual.gameTags);
+        }
+        db.close();
+    }
+
+    @Test
+    public void repairEntityStats() throws IOException, EntityStorageException, ChessBaseInvalidDataException {
+        Database db = new Database();
+        db.addGame(getSimpleGame("Mardell", "Carlsen", "t1", "my source", "myself"));
+        db.addGame(getSimpleGame("Kasparov", "Mardell", "t1", "", ""));
+        db.addGame(getSimpleGame("Carlsen", "Giri", "t2", "my source", ""));
+
+        PlayerEntity mardell = db.getPlayerBase().stream().filter(p -> p.getLastName().equals("Mardell")).findFirst().orElseThrow();
+        db.getPlayerBase().put(mardell.getId(), mardell.withNewStats(5, 3));
+        TournamentEntity t2 = db.getTournamentBase().stream().filter(t -> t.getTitle().equals("t2")).findFirst().orElseThrow();
+        db.getTournamentBase().put(t2.getId(), t2.withNewStats(1, 2));
+        try {
+            new EntityStatsValidator(db).validateEntityStatistics(true);
+            fail("Expected the entity stats to be wrong");
+        } catch (EntityStorageException e) {
+            // Expected
+        }
+
+        EntityStatsCalculator calculator = new EntityStatsCalculator(db, 2);
+        assertEquals(2, calculator.repair(calculator.calculate(() -> {})));
+        new EntityStatsValidator(db).validateEntityStatistics(true);
+        assertEquals(2, db.getPlayerBase().get(mardell.getId()).getCount());
+        assertEquals(1, db.getPlayerBase().get(mardell.getId()).getFirstGameId());
+        assertEquals(0, calculator.repair(calculator.calculate(() -> {})));
+
+        db.close();
+    }
+
+    @Test
+    public void repairEntityStatsDeletesOrphanedEntities() throws IOException, EntityStorageException, ChessBaseInvalidDataException {
+        Database db = new Database();
+        db.addGame(getSimpleGame("Mardell", "Carlsen", "t1", "my source", "myself"));
+        db.addGame(getSimpleGame("Kasparov", "Mardell", "t1", "", ""));
+
+        // Entities whose games have all been removed, but still have stats
+        PlayerEntity orphan = db.getPlayerBase().add(new PlayerEntity("Orphan", "Olle").withNewStats(4, 2));
+        TournamentEntity orphanTournament = db.getTournamentBase().add(new TournamentEntity("t3", Date.today()).withNewStats(1, 1));
+        int numPlayers = db.getPlayerBase().getCount();
+        try {
+            new EntityStatsValidator(db).validateEntityStatistics(true);
+            fail("Expected the entity stats to be wrong");
+        } catch (EntityStorageException e) {
+            // Expected
+        }
+
+        EntityStatsCalculator calculator = new EntityStatsCalculator(db, 2);
+        assertEquals(2, calculator.repair(calculator.calculate(() -> {})));
+        new EntityStatsValidator(db).validateEntityStatistics(true);
+        assertNull(db.getPlayerBase().get(orphan.getId()));
+        assertNull(db.getTournamentBase().get(orphanTournament.getId()));
+        assertEquals(numPlayers - 1, db.getPlayerBase().getCount());
+        assertEquals(0, calculator.repair(calculator.calculate(() -> {})));
+
+        db.close();
+    }
+
     @Test
     public void randomlyAddAndReplaceGames() throws EntityStorageException, ChessBaseException {
         Random random = new Random(0);
@@ -135,6 +135,22 @@ public class AnnotationsSerializerTest {
         }
     }
 
+    @Test
+    public void serializeDeserializeLargeAnnotations() {
+        // The serialized annotations are larger than the initial size of the serialization buffer
+        GameMovesModel inputMoves = new GameGenerator().getRandomGameMoves(100);
+        GameMovesModel compareMoves = new GameMovesModel(inputMoves);
+        String text = "A long commentary. ".repeat(50);
+        for (GameMovesModel.Node node : inputMoves.getAllNodes()) {
+            node.addAnnotation(new TextAfterMoveAnnotation(text + node.ply()));
+        }
+
+        ByteBuffer buf = AnnotationsSerializer.serializeAnnotations(1, inputMoves);
+        assertTrue(buf.limit() > 16384 * 2);
+        AnnotationsSerializer.deserializeAnnotations(buf, compareMoves);
+        assertTrue(annotationsEqual(inputMoves.root(), compareMoves.root()));
+    }
+
     private boolean annotationsEqual(GameMovesModel.Node node1, GameMovesModel.Node node2) {
         if (node1.getAnnotations().size() != node2.getAnnotations().size()) {
             return false;
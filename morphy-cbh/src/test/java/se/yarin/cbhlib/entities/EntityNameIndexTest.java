@@ -0,0 +1,267 @@
+package se.yarin.cbhlib.entities;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import se.yarin.chess.Date;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class EntityNameIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EntityNameIndex createIndex() {
+        return EntityNameIndex.build(7,
+                new int[] { 0, 2, 3, 5, 8 },
+                new String[] { "Müller, Hans", "Åkesson, Ralf", "Mueller, Anna", "Akopian, Vladimir", "MÜLLNER, Karl" });
+    }
+
+    @Test
+    public void testFold() {
+        assertEquals("muller", EntityNameIndex.fold("Müller"));
+        assertEquals("akesson", EntityNameIndex.fold("ÅKESSON"));
+        assertEquals("ljubojevic", EntityNameIndex.fold("Ljubojević"));
+        assertEquals("", EntityNameIndex.fold(""));
+    }
+
+    @Test
+    public void testPrefixSearch() {
+        EntityNameIndex index = createIndex();
+        assertArrayEquals(new int[] { 0, 8 }, index.prefixSearch("mull"));
+        assertArrayEquals(new int[] { 0 }, index.prefixSearch("MÜLLER"));
+        assertArrayEquals(new int[] { 2, 5 }, index.prefixSearch("ak"));
+        assertArrayEquals(new int[] { 0, 2, 3, 5, 8 }, index.prefixSearch(""));
+        assertArrayEquals(new int[0], index.prefixSearch("x"));
+        assertArrayEquals(new int[0], index.prefixSearch("zzz"));
+    }
+
+    @Test
+    public void testSubstringSearch() {
+        EntityNameIndex index = createIndex();
+        assertArrayEquals(new int[] { 0, 8 }, index.substringSearch("ULL"));
+        assertArrayEquals(new int[] { 2 }, index.substringSearch("son, r"));
+        assertArrayEquals(new int[] { 0, 3, 5 }, index.substringSearch("an"));
+        assertArrayEquals(new int[] { 5 }, index.substringSearch("vladimir"));
+        assertArrayEquals(new int[0], index.substringSearch("miry"));
+        assertArrayEquals(new int[0], index.substringSearch("qqq"));
+        // All trigrams occur in the name, but not in sequence
+        assertArrayEquals(new int[0], index.substringSearch("mulhan"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsortedIds() {
+        EntityNameIndex.build(0, new int[] { 3, 2 }, new String[] { "a", "b" });
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        EntityNameIndex index = createIndex();
+        File file = folder.newFile("test.names");
+        index.save(file);
+
+        assertNull(EntityNameIndex.load(file, 8));
+        EntityNameIndex loaded = EntityNameIndex.load(file, 7);
+        assertNotNull(loaded);
+        assertEquals(5, loaded.size());
+        assertArrayEquals(new int[] { 0, 8 }, loaded.prefixSearch("mull"));
+        assertArrayEquals(new int[] { 0, 3, 5 }, loaded.substringSearch("an"));
+    }
+
+    @Test
+    public void testLoadDamagedFile() throws IOException {
+        File file = folder.newFile("damaged.names");
+        createIndex().save(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() / 2);
+        }
+        assertNull(EntityNameIndex.load(file, 7));
+        assertNull(EntityNameIndex.load(new File(folder.getRoot(), "missing.names"), 7));
+    }
+
+    @Test
+    public void testPlayerBaseIndexIsUpdated() throws Exception {
+        PlayerBase playerBase = new PlayerBase();
+        playerBase.add(new PlayerEntity("Müller", "Hans"));
+        playerBase.add(new PlayerEntity("Karlsson", "Ulf"));
+        assertEquals(1, playerBase.getNameIndex().prefixSearch("muller").length);
+
+        playerBase.add(new PlayerEntity("Muller", "Karl"));
+        assertEquals(2, playerBase.getNameIndex().prefixSearch("muller").length);
+        assertEquals(2, playerBase.getNameIndex().substringSearch("rl").length);
+    }
+
+    @Test
+    public void testPlayerIndexNotPersistedByDefault() throws Exception {
+        File file = new File(folder.getRoot(), "players.cbp");
+        PlayerBase playerBase = PlayerBase.create(file);
+        playerBase.add(new PlayerEntity("Müller", "Hans"));
+        assertEquals(1, playerBase.getNameIndex().prefixSearch("muller").length);
+        playerBase.close();
+
+        playerBase = PlayerBase.open(file);
+        assertEquals(1, playerBase.getNameIndex().prefixSearch("muller").length);
+        playerBase.close();
+
+        // Nothing but the entity file itself should have been written
+        assertArrayEquals(new String[] { "players.cbp" }, folder.getRoot().list());
+    }
+
+    @Test
+    public void testPersistedPlayerIndex() throws Exception {
+        File file = new File(folder.newFolder("db"), "players.cbp");
+        File cacheDirectory = new File(folder.getRoot(), "cache");
+        EntityNameIndex.setCacheDirectory(cacheDirectory);
+        try {
+            File indexFile = EntityNameIndex.getCacheFile(file);
+            assertEquals(cacheDirectory, indexFile.getParentFile());
+
+            PlayerBase playerBase = PlayerBase.create(file);
+            playerBase.add(new PlayerEntity("Müller", "Hans"));
+            playerBase.add(new PlayerEntity("Karlsson", "Ulf"));
+            playerBase.getNameIndex();
+            playerBase.close();
+            assertTrue(indexFile.exists());
+
+            playerBase = PlayerBase.open(file);
+            indexFile.delete();
+            assertEquals(1, playerBase.getNameIndex().prefixSearch("MULLER").length);
+            // Rebuilt and saved since the file was missing
+            assertTrue(indexFile.exists());
+            playerBase.close();
+
+            playerBase = PlayerBase.open(file);
+            assertEquals(1, playerBase.getNameIndex().substringSearch("arls").length);
+            playerBase.add(new PlayerEntity("Carlsen", "Magnus"));
+            assertEquals(2, playerBase.getNameIndex().substringSearch("arls").length);
+            playerBase.close();
+
+            playerBase = PlayerBase.open(file);
+            assertEquals(2, playerBase.getNameIndex().substringSearch("arls").length);
+            playerBase.close();
+
+            // The database directory is left untouched
+            assertArrayEquals(new String[] { "players.cbp" }, file.getParentFile().list());
+        } finally {
+            EntityNameIndex.setCacheDirectory(null);
+        }
+    }
+
+    @Test
+    public void testCacheFileDependsOnPath() {
+        EntityNameIndex.setCacheDirectory(folder.getRoot());
+        try {
+            File first = EntityNameIndex.getCacheFile(new File("a/players.cbp"));
+            File second = EntityNameIndex.getCacheFile(new File("b/players.cbp"));
+            assertNotEquals(first, second);
+            assertEquals(first, EntityNameIndex.getCacheFile(new File("a/players.cbp")));
+        } finally {
+            EntityNameIndex.setCacheDirectory(null);
+        }
+        assertNull(EntityNameIndex.getCacheFile(new File("a/players.cbp")));
+    }
+
+    @Test
+    public void testCaseInsensitivePlayerSearch() throws Exception {
+        PlayerBase playerBase = new PlayerBase();
+        playerBase.add(new PlayerEntity("Carlsen", "Magnus"));
+        playerBase.add(new PlayerEntity("Carlsson", "Ulf"));
+        playerBase.add(new PlayerEntity("Anand", "Viswanathan"));
+
+        List<String> hits = new SinglePlayerSearcher(playerBase, "carls", false, false).search()
+                .map(hit -> hit.getPlayer().getFullName())
+                .collect(Collectors.toList());
+        assertEquals(List.of("Carlsen, Magnus", "Carlsson, Ulf"), hits);
+
+        hits = new SinglePlayerSearcher(playerBase, "CARLSEN, m", false, false).search()
+                .map(hit -> hit.getPlayer().getFullName())
+                .collect(Collectors.toList());
+        assertEquals(List.of("Carlsen, Magnus"), hits);
+    }
+
+    @Test
+    public void testCaseInsensitivePlayerSearchIgnoresDiacritics() throws Exception {
+        PlayerBase playerBase = new PlayerBase();
+        playerBase.add(new PlayerEntity("Müller", "Hans"));
+        playerBase.add(new PlayerEntity("Muller", "Karl"));
+        playerBase.add(new PlayerEntity("Ljubojević", "Ljubomir"));
+
+        List<String> hits = new SinglePlayerSearcher(playerBase, "MULLER", false, false).search()
+                .map(hit -> hit.getPlayer().getFullName())
+                .collect(Collectors.toList());
+        assertEquals(List.of("Müller, Hans", "Muller, Karl"), hits);
+
+        hits = new SinglePlayerSearcher(playerBase, "ljubojevic, ljubomir", false, true).search()
+                .map(hit -> hit.getPlayer().getFullName())
+                .collect(Collectors.toList());
+        assertEquals(List.of("Ljubojević, Ljubomir"), hits);
+
+        // Case sensitive searches still require the exact characters
+        assertEquals(1, new SinglePlayerSearcher(playerBase, "Muller", true, false).search().count());
+    }
+
+    @Test
+    public void testSubstringPlayerSearch() throws Exception {
+        PlayerBase playerBase = new PlayerBase();
+        playerBase.add(new PlayerEntity("Carlsen", "Magnus"));
+        playerBase.add(new PlayerEntity("Vachier-Lagrave", "Maxime"));
+        playerBase.add(new PlayerEntity("Lagrave", "Anna"));
+        playerBase.add(new PlayerEntity("Åkesson", "Ralf"));
+
+        List<String> hits = new SinglePlayerSearcher(playerBase, "lagrave", false, false, true).search()
+                .map(hit -> hit.getPlayer().getFullName())
+                .collect(Collectors.toList());
+        assertEquals(List.of("Vachier-Lagrave, Maxime", "Lagrave, Anna"), hits);
+
+        hits = new SinglePlayerSearcher(playerBase, "Lagrave", true, false, true).search()
+                .map(hit -> hit.getPlayer().getFullName())
+                .collect(Collectors.toList());
+        assertEquals(List.of("Vachier-Lagrave, Maxime", "Lagrave, Anna"), hits);
+
+        assertEquals(0, new SinglePlayerSearcher(playerBase, "lagrave", true, false, true).search().count());
+        assertEquals(1, new SinglePlayerSearcher(playerBase, "kess", false, false, true).search().count());
+        // The first name is also matched anywhere
+        assertEquals(1, new SinglePlayerSearcher(playerBase, "lagrave, xim", false, false, true).search().count());
+        // Substrings of the first name aren't matched against the last name
+        assertEquals(0, new SinglePlayerSearcher(playerBase, "agnu", false, false, true).search().count());
+    }
+
+    @Test
+    public void testSubstringTournamentSearch() throws Exception {
+        TournamentBase tournamentBase = new TournamentBase();
+        tournamentBase.add(new TournamentEntity("Tata Steel Masters", new Date(2020)));
+        tournamentBase.add(new TournamentEntity("Wijk aan Zee", new Date(2010)));
+        tournamentBase.add(new TournamentEntity("Biel Masters", new Date(2020)));
+        tournamentBase.add(new TournamentEntity("Masters of Zürich", new Date(2019)));
+
+        TournamentSearcher searcher = new TournamentSearcher(tournamentBase);
+        searcher.setSearchString("masters", false, false, true);
+        List<String> hits = searcher.search(0, true, false, null).getTournaments().stream()
+                .map(TournamentEntity::getTitle)
+                .collect(Collectors.toList());
+        assertEquals(List.of("Tata Steel Masters", "Biel Masters", "Masters of Zürich"), hits);
+
+        searcher.setSearchString("zurich", false, false, true);
+        assertEquals(1, searcher.search(0, true, false, null).getTotalTournaments());
+
+        searcher.setSearchString("Masters 2020", true, false, true);
+        hits = searcher.search(0, true, false, null).getTournaments().stream()
+                .map(TournamentEntity::getTitle)
+                .collect(Collectors.toList());
+        assertEquals(List.of("Tata Steel Masters", "Biel Masters"), hits);
+
+        searcher.setSearchString("masters", true, false, true);
+        assertEquals(0, searcher.search(0, true, false, null).getTotalTournaments());
+
+        searcher.setSearchString("zurich", false, false, false);
+        assertEquals(0, searcher.search(0, true, false, null).getTotalTournaments());
+        searcher.setSearchString("masters of zurich", false, false, false);
+        assertEquals(1, searcher.search(0, true, false, null).getTotalTournaments());
+    }
+}
@@ -0,0 +1,159 @@
+package se.yarin.cbhlib.export;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class ArrowFileWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService encoders;
+
+    @Before
+    public void setup() {
+        encoders = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        encoders.shutdownNow();
+    }
+
+    // Minimal flatbuffer navigation, enough to read back the Arrow metadata
+    private static int table(ByteBuffer buf, int offsetPosition) {
+        return offsetPosition + buf.getInt(offsetPosition);
+    }
+
+    private static int field(ByteBuffer buf, int table, int id) {
+        int vtable = table - buf.getInt(table);
+        int vtableSize = buf.getShort(vtable);
+        if (4 + 2 * id >= vtableSize) {
+            return 0;
+        }
+        int offset = buf.getShort(vtable + 4 + 2 * id);
+        return offset == 0 ? 0 : table + offset;
+    }
+
+    private static String string(ByteBuffer buf, int offsetPosition) {
+        int position = table(buf, offsetPosition);
+        byte[] bytes = new byte[buf.getInt(position)];
+        buf.get(position + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testWriteFile() throws IOException {
+        File file = folder.newFile("test.arrow");
+        ArrowColumn.IntColumn ids = new ArrowColumn.IntColumn("id", false);
+        ArrowColumn.StringColumn names = new ArrowColumn.StringColumn("name", true);
+        ArrowColumn.LongColumn longs = new ArrowColumn.LongColumn("long", false);
+        ArrowColumn.BooleanColumn bools = new ArrowColumn.BooleanColumn("bool", true);
+
+        try (ArrowFileWriter writer = new ArrowFileWriter(file, List.of(ids, names, longs, bools), encoders, 4)) {
+            for (int i = 0; i < 10; i++) {
+                ids.add(i);
+                names.add(i % 3 == 0 ? null : "name" + i);
+                longs.add(i * 1000000000000L);
+                if (i == 5) {
+                    bools.addNull();
+                } else {
+                    bools.add(i % 2 == 0);
+                }
+                writer.endRow();
+            }
+            assertEquals(10, writer.getRowCount());
+        }
+
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[6];
+        buf.get(0, magic);
+        assertEquals("ARROW1", new String(magic, StandardCharsets.US_ASCII));
+        buf.get(buf.limit() - 6, magic);
+        assertEquals("ARROW1", new String(magic, StandardCharsets.US_ASCII));
+
+        // The footer has the schema and the locations of the record batches
+        int footerLength = buf.getInt(buf.limit() - 10);
+        ByteBuffer footerBuf = buf.slice(buf.limit() - 10 - footerLength, footerLength).order(ByteOrder.LITTLE_ENDIAN);
+        int footer = table(footerBuf, 0);
+        int schema = table(footerBuf, field(footerBuf, footer, 1));
+        int fields = table(footerBuf, field(footerBuf, schema, 1));
+        assertEquals(4, footerBuf.getInt(fields));
+        int nameField = table(footerBuf, fields + 4 + 4);
+        assertEquals("name", string(footerBuf, field(footerBuf, nameField, 0)));
+        assertEquals(1, footerBuf.get(field(footerBuf, nameField, 1)));
+        assertEquals(5, footerBuf.get(field(footerBuf, nameField, 2)));
+
+        int blocks = table(footerBuf, field(footerBuf, footer, 3));
+        assertEquals(3, footerBuf.getInt(blocks));
+        assertEquals(0, (blocks + 4) % 8);
+
+        // Check the contents of the second batch (rows 4 to 7)
+        int block = blocks + 4 + 24;
+        int messagePosition = (int) footerBuf.getLong(block);
+        int metadataLength = footerBuf.getInt(block + 8);
+        assertEquals(0, messagePosition % 8);
+        assertEquals(-1, buf.getInt(messagePosition));
+        ByteBuffer metadata = buf.slice(messagePosition + 8, metadataLength - 8).order(ByteOrder.LITTLE_ENDIAN);
+        int message = table(metadata, 0);
+        assertEquals(3, metadata.get(field(metadata, message, 1)));
+        int recordBatch = table(metadata, field(metadata, message, 2));
+        assertEquals(4, metadata.getLong(field(metadata, recordBatch, 0)));
+        int nodes = table(metadata, field(metadata, recordBatch, 1));
+        assertEquals(4, metadata.getInt(nodes));
+        assertEquals(1, metadata.getLong(nodes + 4 + 16 + 8)); // name 6 is null
+        assertEquals(1, metadata.getLong(nodes + 4 + 48 + 8)); // bool 5 is null
+
+        int buffers = table(metadata, field(metadata, recordBatch, 2));
+        assertEquals(2 + 3 + 2 + 2, metadata.getInt(buffers));
+        int body = messagePosition + metadataLength;
+        // The id column values
+        long idOffset = metadata.getLong(buffers + 4 + 16);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(4 + i, buf.getInt(body + (int) idOffset + 4 * i));
+        }
+        // The name column data
+        long nameDataOffset = metadata.getLong(buffers + 4 + 16 * 4);
+        long nameDataLength = metadata.getLong(buffers + 4 + 16 * 4 + 8);
+        byte[] nameData = new byte[(int) nameDataLength];
+        buf.get(body + (int) nameDataOffset, nameData);
+        assertEquals("name4name5name7", new String(nameData, StandardCharsets.UTF_8));
+        for (int i = 0; i < 9; i++) {
+            assertEquals(0, metadata.getLong(buffers + 4 + 16 * i) % 8);
+        }
+    }
+
+    @Test
+    public void testEmptyTable() throws IOException {
+        File file = folder.newFile("empty.arrow");
+        new ArrowFileWriter(file, List.of(new ArrowColumn.IntColumn("id", false)), encoders, 100).close();
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        assertEquals(0, bytes.length % 2);
+        assertEquals("ARROW1", new String(bytes, bytes.length - 6, 6, StandardCharsets.US_ASCII));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMissingValue() throws IOException {
+        File file = folder.newFile("missing.arrow");
+        ArrowColumn.IntColumn ids = new ArrowColumn.IntColumn("id", false);
+        ArrowColumn.IntColumn values = new ArrowColumn.IntColumn("value", false);
+        try (ArrowFileWriter writer = new ArrowFileWriter(file, List.of(ids, values), encoders, 100)) {
+            ids.add(1);
+            writer.endRow();
+        }
+    }
+}
@@ -203,6 +203,19 @@ public class MovesSerializerTest {
         }
     }
 
+    @Test
+    public void serializeDeserializeLargeGame() throws ChessBaseMoveDecodingException {
+        // The serialized game is larger than the initial size of the serialization buffer
+        GameGenerator gameGenerator = new GameGenerator();
+        GameMovesModel inputMoves = gameGenerator.getRandomGameMoves(200);
+        gameGenerator.addRandomVariationMoves(inputMoves, 20000);
+
+        ByteBuffer buf = movesSerializer.serializeMoves(inputMoves);
+        assertTrue(buf.limit() > 16384);
+        GameMovesModel outputMoves = movesSerializer.deserializeMoves(buf);
+        assertEquals(inputMoves.toString(), outputMoves.toString());
+    }
+
     @Test
     public void deserializeBrokenChess960Game() throws IOException, ChessBaseMoveDecodingException {
         // Game 3730252 in Mega Database 2016
@@ -0,0 +1,96 @@
+package se.yarin.cbhlib.pgn;
+
+import org.junit.Test;
+import se.yarin.cbhlib.annotations.SymbolAnnotation;
+import se.yarin.cbhlib.annotations.TextAfterMoveAnnotation;
+import se.yarin.chess.*;
+import se.yarin.chess.annotations.CommentaryBeforeMoveAnnotation;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static se.yarin.chess.Chess.*;
+
+public class PgnFormatterTest {
+
+    private GameHeaderModel createHeader() {
+        GameHeaderModel header = new GameHeaderModel();
+        header.setWhite("Carlsen, Magnus");
+        header.setBlack("Caruana, \"Fabi\"");
+        header.setWhiteElo(2850);
+        header.setEvent("World Championship");
+        header.setEventSite("London");
+        header.setDate(new Date(2018, 11, 9));
+        header.setRound(1);
+        header.setResult(GameResult.DRAW);
+        header.setEco(new Eco("C42"));
+        return header;
+    }
+
+    @Test
+    public void testFormatGame() {
+        GameMovesModel moves = new GameMovesModel();
+        GameMovesModel.Node node = moves.root().addMove(E2, E4);
+        node = node.addMove(E7, E5);
+        node.addAnnotation(new TextAfterMoveAnnotation("The most common reply"));
+        GameMovesModel.Node afterNf3 = node.addMove(G1, F3);
+        afterNf3.addAnnotation(new SymbolAnnotation(NAG.GOOD_MOVE));
+        // Variation on white's second move
+        node.addMove(F2, F4).addMove(E5, F4);
+        afterNf3.addMove(G8, F6).addAnnotation(new CommentaryBeforeMoveAnnotation("Petroff"));
+
+        String pgn = new PgnFormatter().format(new GameModel(createHeader(), moves)).toString();
+
+        assertEquals("[Event \"World Championship\"]\n" +
+                "[Site \"London\"]\n" +
+                "[Date \"2018.11.09\"]\n" +
+                "[Round \"1\"]\n" +
+                "[White \"Carlsen, Magnus\"]\n" +
+                "[Black \"Caruana, \\\"Fabi\\\"\"]\n" +
+                "[Result \"1/2-1/2\"]\n" +
+                "[WhiteElo \"2850\"]\n" +
+                "[ECO \"C42\"]\n" +
+                "\n" +
+                "1. e4 e5 { The most common reply } 2. Nf3 $1 (2. f4 exf4) { Petroff } 2... Nf6\n" +
+                "1/2-1/2\n\n", pgn);
+    }
+
+    @Test
+    public void testFormatterIsReusable() {
+        PgnFormatter formatter = new PgnFormatter();
+        GameMovesModel moves = new GameMovesModel();
+        moves.root().addMove(D2, D4);
+        String first = formatter.format(new GameModel(createHeader(), moves)).toString();
+        formatter.format(new GameModel(new GameHeaderModel(), new GameMovesModel()));
+        String again = formatter.format(new GameModel(createHeader(), moves)).toString();
+        assertEquals(first, again);
+    }
+
+    @Test
+    public void testLongLinesAreWrapped() {
+        GameMovesModel moves = new GameMovesModel();
+        GameMovesModel.Node node = moves.root();
+        for (int i = 0; i < 20; i++) {
+            node = node.addMove(G1, F3).addMove(G8, F6).addMove(F3, G1).addMove(F6, G8);
+        }
+        String pgn = new PgnFormatter().format(new GameModel(new GameHeaderModel(), moves)).toString();
+        for (String line : pgn.split("\n")) {
+            assertTrue(line.length() < 80);
+        }
+        assertTrue(pgn.endsWith(" *\n\n"));
+    }
+
+    @Test
+    public void testSetupPosition() {
+        String position = "rnb.kbnr\nppp.pppp\n........\n...q....\n........\nP.......\n.PPP.PPP\nRNBQKBNR\n";
+        GameMovesModel moves = new GameMovesModel(Position.fromString(position, Player.BLACK,
+                EnumSet.of(Castles.WHITE_SHORT_CASTLE, Castles.BLACK_LONG_CASTLE), -1), 3);
+        moves.root().addMove(D5, A5);
+
+        String pgn = new PgnFormatter().format(new GameModel(new GameHeaderModel(), moves)).toString();
+
+        assertTrue(pgn.contains("[SetUp \"1\"]\n[FEN \"rnb1kbnr/ppp1pppp/8/3q4/8/P7/1PPP1PPP/RNBQKBNR b Kq - 0 3\"]\n"));
+        assertTrue(pgn.contains("\n3... Qa5 *\n"));
+    }
+}
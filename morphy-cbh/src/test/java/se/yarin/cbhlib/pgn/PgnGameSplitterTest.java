@@ -0,0 +1,53 @@
+package se.yarin.cbhlib.pgn;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PgnGameSplitterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String GAME1 = "[Event \"A\"]\n[White \"B\"]\n\n1. e4 { a comment with\n[brackets] at line start } e5 1-0\n\n";
+    private static final String GAME2 = "[Event \"C\"]\n% escaped [line\n\n1. d4 ; [not a tag\nd5 *\n";
+    private static final String GAME3 = "[Event \"D\"]\n\n1. c4 *\n";
+
+    private List<String> split(String pgn, int windowSize) throws IOException {
+        File file = folder.newFile();
+        Files.writeString(file.toPath(), pgn);
+        List<String> games = new ArrayList<>();
+        try (PgnGameSplitter splitter = new PgnGameSplitter(file, windowSize)) {
+            byte[] game;
+            while ((game = splitter.next()) != null) {
+                games.add(new String(game, StandardCharsets.UTF_8));
+            }
+            assertEquals(file.length(), splitter.getPosition());
+        }
+        return games;
+    }
+
+    @Test
+    public void testSplitGames() throws IOException {
+        assertEquals(List.of(GAME1, GAME2, GAME3), split(GAME1 + GAME2 + GAME3, 1024));
+    }
+
+    @Test
+    public void testSplitGamesSmallWindow() throws IOException {
+        // The games are larger than the window, forcing remapping
+        assertEquals(List.of(GAME1, GAME2, GAME3), split(GAME1 + GAME2 + GAME3, 7));
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        assertEquals(List.of(), split("\n\n", 1024));
+    }
+}
@@ -0,0 +1,101 @@
+package se.yarin.cbhlib.pgn;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import se.yarin.cbhlib.Database;
+import se.yarin.cbhlib.exceptions.ChessBaseException;
+import se.yarin.cbhlib.storage.EntityStorageException;
+import se.yarin.cbhlib.util.GameGenerator;
+import se.yarin.cbhlib.validation.EntityStatsValidator;
+import se.yarin.chess.GameModel;
+import se.yarin.chess.GameMovesModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PgnImporterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testImportGames() throws IOException, ChessBaseException, EntityStorageException {
+        GameGenerator generator = new GameGenerator(11);
+        PgnFormatter formatter = new PgnFormatter();
+        List<GameModel> games = new ArrayList<>();
+        StringBuilder pgn = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            GameModel game = generator.getRandomGame(true, false);
+            games.add(game);
+            pgn.append(formatter.format(game));
+            if (i == 100) {
+                pgn.append("[Event \"Broken\"]\n\n1. e4 e5 2. Ke3 *\n\n");
+            }
+        }
+        File pgnFile = folder.newFile("games.pgn");
+        Files.writeString(pgnFile.toPath(), pgn, StandardCharsets.UTF_8);
+
+        Database db = Database.create(new File(folder.getRoot(), "games.cbh"), true);
+        try (PgnImporter importer = new PgnImporter(db, 3)) {
+            importer.importFile(pgnFile);
+            assertEquals(200, importer.getGamesImported());
+            assertEquals(1, importer.getGamesFailed());
+        }
+
+        assertEquals(200, db.getHeaderBase().size());
+        for (int i = 0; i < games.size(); i++) {
+            GameModel imported = db.getGameModel(db.getGame(i + 1));
+            assertEquals(games.get(i).header().getWhite(), imported.header().getWhite());
+            assertMovesEqual(games.get(i).moves().root(), imported.moves().root());
+        }
+        new EntityStatsValidator(db).validateEntityStatistics(true);
+        db.close();
+    }
+
+    @Test
+    public void testFailedImportStopsReader() throws IOException, ChessBaseException, InterruptedException {
+        GameGenerator generator = new GameGenerator(11);
+        PgnFormatter formatter = new PgnFormatter();
+        StringBuilder pgn = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            pgn.append(formatter.format(generator.getRandomGame(true, false)));
+        }
+        File pgnFile = folder.newFile("games.pgn");
+        Files.writeString(pgnFile.toPath(), pgn, StandardCharsets.UTF_8);
+
+        Database db = Database.create(new File(folder.getRoot(), "games.cbh"), true);
+        try (PgnImporter importer = new PgnImporter(db, 1)) {
+            // Fail after the reader has filled the queue
+            importer.importFile(pgnFile, StandardCharsets.UTF_8, position -> {
+                if (importer.getGamesImported() == 10) {
+                    throw new IllegalStateException("Import failed");
+                }
+            });
+            fail("Expected the import to fail");
+        } catch (IllegalStateException e) {
+            assertEquals("Import failed", e.getMessage());
+        }
+
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("pgn-reader")) {
+                thread.join(5000);
+                assertFalse(thread.isAlive());
+            }
+        }
+        db.close();
+    }
+
+    private void assertMovesEqual(GameMovesModel.Node expected, GameMovesModel.Node actual) {
+        assertEquals(expected.position(), actual.position());
+        assertEquals(expected.children().size(), actual.children().size());
+        for (int i = 0; i < expected.children().size(); i++) {
+            assertMovesEqual(expected.children().get(i), actual.children().get(i));
+        }
+    }
+}
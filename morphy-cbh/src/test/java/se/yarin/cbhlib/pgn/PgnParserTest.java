@@ -0,0 +1,114 @@
+package se.yarin.cbhlib.pgn;
+
+import org.junit.Test;
+import se.yarin.cbhlib.annotations.SymbolAnnotation;
+import se.yarin.cbhlib.annotations.TextAfterMoveAnnotation;
+import se.yarin.cbhlib.annotations.TextBeforeMoveAnnotation;
+import se.yarin.cbhlib.util.GameGenerator;
+import se.yarin.chess.*;
+
+import static org.junit.Assert.*;
+import static se.yarin.chess.Chess.*;
+
+public class PgnParserTest {
+
+    private static final String GAME =
+            "[Event \"World Championship\"]\n" +
+            "[Site \"London\"]\n" +
+            "[Date \"2018.11.09\"]\n" +
+            "[Round \"1.2\"]\n" +
+            "[White \"Carlsen, Magnus\"]\n" +
+            "[Black \"Caruana, \\\"Fabi\\\"\"]\n" +
+            "[Result \"1/2-1/2\"]\n" +
+            "[WhiteElo \"2850\"]\n" +
+            "[ECO \"C42\"]\n" +
+            "\n" +
+            "{ Start } 1. e4 e5 { The most common reply } 2. Nf3 $1 (2. f4 exf4) { Petroff } 2... Nf6!?\n" +
+            "3.Nxe5 d6 ; rest of line comment\n" +
+            "4. Nf3 Nxe4 5. Bd3 Nf6 6. O-O 1/2-1/2\n";
+
+    @Test
+    public void testParseGame() throws PgnFormatException {
+        GameModel game = new PgnParser().parseGame(GAME);
+
+        GameHeaderModel header = game.header();
+        assertEquals("World Championship", header.getEvent());
+        assertEquals("London", header.getEventSite());
+        assertEquals(new Date(2018, 11, 9), header.getDate());
+        assertEquals(1, (int) header.getRound());
+        assertEquals(2, (int) header.getSubRound());
+        assertEquals("Carlsen, Magnus", header.getWhite());
+        assertEquals("Caruana, \"Fabi\"", header.getBlack());
+        assertEquals(GameResult.DRAW, header.getResult());
+        assertEquals(2850, (int) header.getWhiteElo());
+        assertEquals(new Eco("C42"), header.getEco());
+
+        GameMovesModel.Node root = game.moves().root();
+        assertEquals("Start", root.getAnnotation(TextAfterMoveAnnotation.class).getText());
+        GameMovesModel.Node e5 = root.mainNode().mainNode();
+        assertEquals("The most common reply", e5.getAnnotation(TextAfterMoveAnnotation.class).getText());
+        assertEquals(2, e5.children().size());
+        GameMovesModel.Node nf3 = e5.mainNode();
+        assertEquals(NAG.GOOD_MOVE, nf3.getAnnotation(SymbolAnnotation.class).getMoveComment());
+        GameMovesModel.Node nf6 = nf3.mainNode();
+        assertEquals("Petroff", nf6.getAnnotation(TextBeforeMoveAnnotation.class).getText());
+        assertEquals(NAG.INTERESTING_MOVE, nf6.getAnnotation(SymbolAnnotation.class).getMoveComment());
+        assertEquals(new Move(nf6.parent().position(), G8, F6), nf6.lastMove());
+        assertEquals(11, game.moves().countPly(false));
+        GameMovesModel.Node last = nf6;
+        while (last.hasMoves()) {
+            last = last.mainNode();
+        }
+        assertTrue(last.lastMove().isCastle());
+    }
+
+    @Test
+    public void testParseSetupPosition() throws PgnFormatException {
+        GameModel game = new PgnParser().parseGame(
+                "[FEN \"rnb1kbnr/ppp1pppp/8/3q4/8/P7/1PPP1PPP/RNBQKBNR b Kq - 0 3\"]\n\n3... Qa5 *\n");
+        assertTrue(game.moves().isSetupPosition());
+        assertEquals(new Move(game.moves().root().position(), D5, A5), game.moves().root().mainNode().lastMove());
+    }
+
+    @Test
+    public void testDisambiguationAndPromotion() throws PgnFormatException {
+        GameModel game = new PgnParser().parseGame(
+                "[FEN \"4k3/1P6/8/8/8/8/4K3/R6R w - - 0 1\"]\n\n1. Rad1 Kf7 2. b8=Q Ke6 3. Rh1e1+ *\n");
+        GameMovesModel.Node node = game.moves().root().mainNode();
+        assertEquals(A1, node.lastMove().fromSqi());
+        node = node.mainNode().mainNode();
+        assertEquals(Stone.WHITE_QUEEN, node.lastMove().promotionStone());
+        node = node.mainNode().mainNode();
+        assertEquals(H1, node.lastMove().fromSqi());
+    }
+
+    @Test(expected = PgnFormatException.class)
+    public void testIllegalMove() throws PgnFormatException {
+        new PgnParser().parseGame("1. e4 e5 2. Ke3 *");
+    }
+
+    @Test(expected = PgnFormatException.class)
+    public void testAmbiguousMove() throws PgnFormatException {
+        new PgnParser().parseGame("[FEN \"4k3/8/8/8/8/8/4K3/R6R w - - 0 1\"]\n\n1. Rd1 *");
+    }
+
+    @Test
+    public void testRoundTripRandomGames() throws PgnFormatException {
+        GameGenerator generator = new GameGenerator(7);
+        PgnFormatter formatter = new PgnFormatter();
+        PgnParser parser = new PgnParser();
+        for (int i = 0; i < 100; i++) {
+            GameModel game = generator.getRandomGame(true, false);
+            GameModel parsed = parser.parseGame(formatter.format(game).toString());
+            assertMovesEqual(game.moves().root(), parsed.moves().root());
+        }
+    }
+
+    private void assertMovesEqual(GameMovesModel.Node expected, GameMovesModel.Node actual) {
+        assertEquals(expected.position(), actual.position());
+        assertEquals(expected.children().size(), actual.children().size());
+        for (int i = 0; i < expected.children().size(); i++) {
+            assertMovesEqual(expected.children().get(i), actual.children().get(i));
+        }
+    }
+}
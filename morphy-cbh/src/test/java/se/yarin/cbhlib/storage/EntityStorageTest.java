@@ -822,4 +822,44 @@ public class EntityStorageTest {
         List<String> collect3 = clonedStorage.getAllEntities(true).stream().map(TestEntity::getKey).collect(Collectors.toList());
         assertEquals(Arrays.asList("abc", "bar", "chess", "foo", "xyz"), collect3);
     }
+
+    @Test
+    public void testReadAheadOrderedIteration() throws IOException, EntityStorageException {
+        File file = folder.newFile();
+        file.delete();
+        EntityStorage<TestEntity> storage = EntityStorageImpl.create(file, new TestEntitySerializer());
+        for (int i = 0; i < 2500; i++) {
+            storage.addEntity(new TestEntity(nextRandomString()));
+        }
+        for (int i = 0; i < 2500; i += 3) {
+            storage.deleteEntity(i);
+        }
+
+        List<Integer> expected = storage.streamOrderedAscending().map(TestEntity::getId).collect(Collectors.toList());
+        List<Integer> actual = new ArrayList<>();
+        storage.iterableOrderedAscendingReadAhead().forEach(entity -> actual.add(entity.getId()));
+        assertEquals(storage.getNumEntities(), actual.size());
+        assertEquals(expected, actual);
+        assertFalse(EntityStorageImpl.createInMemory().iterableOrderedAscendingReadAhead().iterator().hasNext());
+    }
+
+    @Test
+    public void testGetEntitiesByIds() throws IOException, EntityStorageException {
+        File file = folder.newFile();
+        file.delete();
+        EntityStorage<TestEntity> storage = EntityStorageImpl.create(file, new TestEntitySerializer());
+        for (int i = 0; i < 200; i++) {
+            storage.addEntity(new TestEntity(nextRandomString()));
+        }
+
+        int[] ids = {150, 3, 4, 150, 199, 0, 70, 200, -1};
+        List<TestEntity> entities = storage.getEntities(ids);
+        assertEquals(ids.length, entities.size());
+        for (int i = 0; i < 7; i++) {
+            assertEquals(ids[i], entities.get(i).getId());
+            assertEquals(storage.getEntity(ids[i]).getKey(), entities.get(i).getKey());
+        }
+        assertNull(entities.get(7));
+        assertNull(entities.get(8));
+    }
 }
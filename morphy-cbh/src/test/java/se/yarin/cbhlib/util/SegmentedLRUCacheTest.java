@@ -0,0 +1,95 @@
+package se.yarin.cbhlib.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SegmentedLRUCacheTest {
+
+    @Test
+    public void testGetAndPut() {
+        SegmentedLRUCache<Integer, String> cache = new SegmentedLRUCache<>(100, String::length);
+        assertNull(cache.get(1));
+        cache.put(1, "one");
+        cache.put(2, "two");
+        assertEquals("one", cache.get(1));
+        assertEquals("two", cache.get(2));
+        cache.put(1, "uno");
+        assertEquals("uno", cache.get(1));
+
+        CacheStats stats = cache.stats();
+        assertEquals(3, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(2, stats.getSize());
+        assertEquals(6, stats.getWeight());
+        assertEquals(0.75, stats.getHitRatio(), 1e-9);
+    }
+
+    @Test
+    public void testInvalidate() {
+        SegmentedLRUCache<Integer, String> cache = new SegmentedLRUCache<>(100, String::length);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.get(2);
+        cache.invalidate(1);
+        cache.invalidate(2);
+        cache.invalidate(3);
+        assertNull(cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals(0, cache.stats().getWeight());
+
+        cache.put(1, "one");
+        cache.invalidateAll();
+        assertNull(cache.get(1));
+        assertEquals(0, cache.stats().getSize());
+    }
+
+    @Test
+    public void testEvictsWhenOverBudget() {
+        SegmentedLRUCache<Integer, String> cache = new SegmentedLRUCache<>(10, String::length);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, "xx");
+        }
+        CacheStats stats = cache.stats();
+        assertEquals(5, stats.getSize());
+        assertEquals(10, stats.getWeight());
+        assertEquals(5, stats.getEvictionCount());
+        // The least recently used values are evicted first
+        assertNull(cache.get(4));
+        assertEquals("xx", cache.get(5));
+    }
+
+    @Test
+    public void testFrequentlyUsedValuesSurviveScan() {
+        SegmentedLRUCache<Integer, String> cache = new SegmentedLRUCache<>(100, value -> 1);
+        for (int i = 0; i < 50; i++) {
+            cache.put(i, "hot");
+            cache.get(i);
+        }
+        // Values that are only seen once only replace each other
+        for (int i = 1000; i < 2000; i++) {
+            cache.put(i, "cold");
+        }
+        for (int i = 0; i < 50; i++) {
+            assertEquals("hot", cache.get(i));
+        }
+        assertEquals(100, cache.stats().getSize());
+    }
+
+    @Test
+    public void testValueHeavierThanBudgetIsNotCached() {
+        SegmentedLRUCache<Integer, String> cache = new SegmentedLRUCache<>(5, String::length);
+        cache.put(1, "abc");
+        cache.put(2, "too heavy");
+        assertNull(cache.get(2));
+        assertEquals("abc", cache.get(1));
+    }
+
+    @Test
+    public void testDisabledCache() {
+        Cache<Integer, String> cache = Cache.disabled();
+        cache.put(1, "one");
+        assertNull(cache.get(1));
+        assertEquals(0.0, cache.stats().getHitRatio(), 1e-9);
+    }
+}
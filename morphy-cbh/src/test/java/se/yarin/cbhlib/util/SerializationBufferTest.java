@@ -0,0 +1,62 @@
+package se.yarin.cbhlib.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class SerializationBufferTest {
+    @Test
+    public void testSerialize() {
+        ByteBuffer buf = SerializationBuffer.serialize(b -> ByteBufferUtil.putIntB(b, 0x01020304));
+        assertEquals(0, buf.position());
+        assertEquals(4, buf.limit());
+        assertEquals(4, buf.capacity());
+        assertEquals(0x01020304, ByteBufferUtil.getIntB(buf));
+    }
+
+    @Test
+    public void testSharedBufferIsReused() {
+        ByteBuffer first = SerializationBuffer.serializeShared(b -> b.put((byte) 1));
+        ByteBuffer second = SerializationBuffer.serializeShared(b -> b.put((byte) 2).put((byte) 3));
+        assertSame(first, second);
+        assertEquals(0, second.position());
+        assertEquals(2, second.limit());
+    }
+
+    @Test
+    public void testGrowsOnDemand() {
+        int size = 2000000;
+        int[] invocations = new int[1];
+        ByteBuffer buf = SerializationBuffer.serialize(b -> {
+            invocations[0]++;
+            for (int i = 0; i < size; i++) {
+                b.put((byte) i);
+            }
+        });
+        assertTrue(invocations[0] > 1);
+        assertEquals(size, buf.remaining());
+        for (int i = 0; i < size; i++) {
+            assertEquals((byte) i, buf.get());
+        }
+
+        // Buffers that have grown too large are not kept
+        ByteBuffer shared = SerializationBuffer.serializeShared(b -> b.put((byte) 1));
+        assertTrue(shared.capacity() < size);
+    }
+
+    @Test
+    public void testNestedSerialization() {
+        ByteBuffer buf = SerializationBuffer.serialize(b -> {
+            b.put((byte) 1);
+            ByteBuffer inner = SerializationBuffer.serializeShared(ib -> ib.put((byte) 2).put((byte) 3));
+            b.put(inner);
+            b.put((byte) 4);
+        });
+        assertEquals(4, buf.remaining());
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, buf.get());
+        }
+    }
+}
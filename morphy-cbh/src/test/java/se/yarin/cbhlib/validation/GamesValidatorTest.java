@@ -0,0 +1,232 @@
+package se.yarin.cbhlib.validation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import se.yarin.cbhlib.Database;
+import se.yarin.cbhlib.exceptions.ChessBaseException;
+import se.yarin.cbhlib.exceptions.ChessBaseInvalidDataException;
+import se.yarin.cbhlib.exceptions.OperationCancelledException;
+import se.yarin.cbhlib.games.GameHeader;
+import se.yarin.cbhlib.games.search.GameSearcher;
+import se.yarin.cbhlib.operations.CancellationToken;
+import se.yarin.cbhlib.operations.CheckpointFile;
+import se.yarin.cbhlib.util.GameGenerator;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class GamesValidatorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Database db;
+    private ForkJoinPool pool;
+
+    @Before
+    public void setupDatabase() throws IOException, ChessBaseInvalidDataException {
+        GameGenerator gameGenerator = new GameGenerator();
+        db = Database.create(new File(folder.getRoot(), "games.cbh"));
+        for (int i = 0; i < 1000; i++) {
+            db.addGame(gameGenerator.getRandomGame());
+        }
+        corruptMoves(db, 5, 250, 251, 600, 999);
+        pool = new ForkJoinPool(3);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        pool.shutdownNow();
+        db.close();
+    }
+
+    @Test
+    public void resumeCancelledScan() throws IOException {
+        EntityStats expectedStats = new EntityStats();
+        int expectedErrors = new GamesValidator(db, 3).scanGames(pool, true, true, expectedStats, () -> {}).report();
+        assertEquals(5, expectedErrors);
+
+        File file = new File(folder.getRoot(), "check.checkpoint");
+        CancellationToken cancellationToken = new CancellationToken();
+        AtomicInteger numProcessed = new AtomicInteger();
+        GamesValidator validator = new GamesValidator(db, 3);
+        validator.setCancellationToken(cancellationToken);
+        validator.setCheckpointFile(new CheckpointFile(file, 0));
+        validator.setCheckpointChunkSize(100);
+        try {
+            validator.scanGames(pool, true, true, new EntityStats(), () -> {
+                if (numProcessed.incrementAndGet() == 450) {
+                    cancellationToken.cancel();
+                }
+            });
+            fail("Expected the scan to be cancelled");
+        } catch (OperationCancelledException e) {
+            // Expected
+        }
+        assertTrue(file.exists());
+        int nextGameId = readCheckpointNextGameId(file);
+        assertTrue(nextGameId > 1 && nextGameId <= 1000);
+
+        // A game that was checked before the checkpoint is corrupted, which is only found if the scan starts over
+        corruptMoves(db, 1);
+
+        EntityStats stats = new EntityStats();
+        numProcessed.set(0);
+        GamesValidator resumed = new GamesValidator(db, 3);
+        resumed.setCheckpointFile(new CheckpointFile(file, 0));
+        resumed.setCheckpointChunkSize(100);
+        assertEquals(expectedErrors, resumed.scanGames(pool, true, true, stats, numProcessed::incrementAndGet).report());
+        assertEquals(1000, numProcessed.get());
+        assertFalse(file.exists());
+
+        assertEquals(expectedStats.players, stats.players);
+        assertEquals(expectedStats.tournaments, stats.tournaments);
+        assertEquals(expectedStats.annotators, stats.annotators);
+        assertEquals(expectedStats.sources, stats.sources);
+        assertEquals(expectedStats.teams, stats.teams);
+        assertEquals(expectedStats.gameTags, stats.gameTags);
+
+        assertEquals(expectedErrors + 1, new GamesValidator(db, 3).scanGames(pool, true, true, null, () -> {}).report());
+    }
+
+    @Test
+    public void checkpointOfOtherOperationIsIgnored() {
+        File file = new File(folder.getRoot(), "stats.checkpoint");
+        CancellationToken cancellationToken = new CancellationToken();
+        AtomicInteger numProcessed = new AtomicInteger();
+        GamesValidator validator = new GamesValidator(db, 2);
+        validator.setCancellationToken(cancellationToken);
+        validator.setCheckpointFile(new CheckpointFile(file, 0));
+        validator.setCheckpointChunkSize(100);
+        try {
+            validator.scanGames(pool, false, false, new EntityStats(), () -> {
+                if (numProcessed.incrementAndGet() == 300) {
+                    cancellationToken.cancel();
+                }
+            });
+            fail("Expected the scan to be cancelled");
+        } catch (OperationCancelledException e) {
+            // Expected
+        }
+        assertTrue(file.exists());
+
+        // The checkpoint was saved by a scan without game checks, so the full check starts over
+        GamesValidator checker = new GamesValidator(db, 2);
+        checker.setCheckpointFile(new CheckpointFile(file, 0));
+        checker.setCheckpointChunkSize(100);
+        assertEquals(5, checker.scanGames(pool, true, true, null, () -> {}).report());
+    }
+
+    @Test
+    public void parallelScanReportsMatchGameOrder() throws IOException, ChessBaseInvalidDataException {
+        GameGenerator gameGenerator = new GameGenerator();
+        Database largeDb = Database.create(new File(folder.getRoot(), "large.cbh"));
+        for (int i = 0; i < 4500; i++) {
+            largeDb.addGame(gameGenerator.getRandomGame());
+        }
+
+        // More corrupt games than are logged per problem, also on the boundaries of the ranges that are checked separately
+        int[] corruptGameIds = {10, 1999, 2000, 2001, 2500, 4000, 4001, 4002};
+        corruptMoves(largeDb, corruptGameIds);
+
+        // The games are checked in ranges starting at 1, 1126, 2251 and 3376. The first game of a range
+        // is only found to overlap the game before it when the ranges are merged.
+        GameHeader header = largeDb.getHeaderBase().getGameHeader(2251);
+        int previousMovesOffset = largeDb.getHeaderBase().getGameHeader(2250).getMovesOffset();
+        largeDb.getHeaderBase().update(2251, header.toBuilder().movesOffset(previousMovesOffset).build());
+
+        // Only the first few move decoding errors are logged, but all critical errors
+        List<String> expectedReports = List.of(
+                "10:MOVE_DECODING_ERROR", "1999:MOVE_DECODING_ERROR", "2000:MOVE_DECODING_ERROR",
+                "2001:MOVE_DECODING_ERROR", "2251:MOVES_OFFSET_DIFFERS", "2251:OVERLAPPING_MOVES",
+                "2500:MOVE_DECODING_ERROR", "4000:CRITICAL_ERROR");
+        assertEquals(5, GamesValidator.Problem.MOVE_DECODING_ERROR.getMaxLogged());
+        assertEquals(0, GamesValidator.Problem.CRITICAL_ERROR.getMaxLogged());
+
+        for (int numThreads : new int[] {1, 2, 5}) {
+            ForkJoinPool threadPool = new ForkJoinPool(numThreads);
+            try {
+                GamesValidator.RangeResult result = new GamesValidator(largeDb, numThreads)
+                        .scanGames(threadPool, true, true, null, () -> {});
+                List<String> reports = new ArrayList<>();
+                for (GamesValidator.Report report : result.getReports()) {
+                    reports.add(report.getGameId() + ":" + report.getProblem());
+                }
+                assertEquals("Reports with " + numThreads + " threads", expectedReports, reports);
+                for (GamesValidator.Problem problem : GamesValidator.Problem.values()) {
+                    int expected;
+                    switch (problem) {
+                        case MOVE_DECODING_ERROR: expected = 7; break;
+                        case MOVES_OFFSET_DIFFERS:
+                        case OVERLAPPING_MOVES:
+                        case CRITICAL_ERROR: expected = 1; break;
+                        default: expected = 0;
+                    }
+                    assertEquals(problem.toString(), expected, result.getNumProblems(problem));
+                }
+                assertEquals(corruptGameIds.length, result.report());
+            } finally {
+                threadPool.shutdownNow();
+            }
+        }
+        assertEquals(0, new GamesValidator(largeDb, 3).processGames(false, () -> {}));
+
+        try {
+            new Validator(3).validate(largeDb, EnumSet.allOf(Validator.Checks.class), true, false);
+            fail("Expected the corrupt games to be found");
+        } catch (ChessBaseException e) {
+            // Expected
+        }
+        largeDb.close();
+    }
+
+    @Test(expected = OperationCancelledException.class)
+    public void cancelledSearch() {
+        CancellationToken cancellationToken = new CancellationToken();
+        GameSearcher searcher = new GameSearcher(db);
+        searcher.setCancellationToken(cancellationToken);
+        searcher.search(0, true, game -> {
+            if (game.getId() == 10) {
+                cancellationToken.cancel();
+            }
+        }, null);
+    }
+
+    private static int readCheckpointNextGameId(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            // Skip the magic, the version and the key of the checkpoint
+            in.readInt();
+            in.readInt();
+            in.readUTF();
+            return in.readInt();
+        }
+    }
+
+    /**
+     * Overwrites the moves of the given games with random bytes, keeping the header of the moves blob
+     */
+    private static void corruptMoves(Database db, int... gameIds) {
+        Random random = new Random(0);
+        for (int gameId : gameIds) {
+            long offset = db.getHeaderBase().getGameHeader(gameId).getMovesOffset();
+            ByteBuffer blob = db.getMovesBase().getStorage().readBlob(offset);
+            for (int i = 4; i < blob.limit(); i++) {
+                blob.put(i, (byte) random.nextInt(256));
+            }
+            db.getMovesBase().getStorage().writeBlob(offset, blob);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package se.yarin.chess;
+
+import org.junit.Test;
+import se.yarin.cbhlib.util.GameGenerator;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static se.yarin.chess.Chess.*;
+import static se.yarin.chess.Player.*;
+
+public class MoveParserTest {
+
+    private int parse(Position position, String text) {
+        return MoveParser.parse(position, text, 0, text.length());
+    }
+
+    @Test
+    public void testSimpleMoves() {
+        Position start = Position.start();
+        assertEquals(new Move(start, G1, F3), MoveParser.parse(start, "Nf3"));
+        assertEquals(new Move(start, E2, E4), MoveParser.parse(start, "e4"));
+        assertEquals(new Move(start, E2, E4), MoveParser.parse(start, "e2-e4"));
+        assertEquals(new Move(start, E2, E4), MoveParser.parse(start, "e2e4"));
+        assertEquals(new Move(start, G1, F3), MoveParser.parse(start, "Ng1-f3"));
+        assertEquals(new Move(start, G1, F3), MoveParser.parse(start, "g1f3"));
+        assertEquals(new Move(start, G1, F3), MoveParser.parse(start, "Nf3!?"));
+    }
+
+    @Test
+    public void testMoveInRange() {
+        String text = "1. e4 e5 2. Nf3";
+        assertEquals(PackedMove.of(E2, E4), MoveParser.parse(Position.start(), text, 3, 5));
+    }
+
+    @Test
+    public void testInvalidMoves() {
+        Position start = Position.start();
+        assertEquals(PackedMove.NO_MOVE, parse(start, "e5"));
+        assertEquals(PackedMove.NO_MOVE, parse(start, "Nd2"));
+        assertEquals(PackedMove.NO_MOVE, parse(start, "O-O"));
+        assertEquals(PackedMove.NO_MOVE, parse(start, "e4=Q"));
+        assertEquals(PackedMove.NO_MOVE, parse(start, "Xe4"));
+        assertEquals(PackedMove.NO_MOVE, parse(start, ""));
+        assertEquals(PackedMove.NO_MOVE, parse(start, "+"));
+        assertEquals(PackedMove.NO_MOVE, parse(start, "éä"));
+    }
+
+    @Test
+    public void testDisambiguation() {
+        Position position = Position.fromString(
+                "....k...\n" +
+                "........\n" +
+                "........\n" +
+                "........\n" +
+                "........\n" +
+                "........\n" +
+                "....K...\n" +
+                "R......R\n", WHITE);
+        assertEquals(PackedMove.AMBIGUOUS_MOVE, parse(position, "Rd1"));
+        assertEquals(PackedMove.of(A1, D1), parse(position, "Rad1"));
+        assertEquals(PackedMove.of(H1, D1), parse(position, "Rhd1"));
+        assertEquals(PackedMove.of(H1, D1), parse(position, "Rh1d1"));
+        assertEquals(PackedMove.NO_MOVE, parse(position, "Rbd1"));
+    }
+
+    @Test
+    public void testPinnedPieceNeedsNoDisambiguation() {
+        Position position = Position.fromString(
+                "....k...\n" +
+                "........\n" +
+                "........\n" +
+                "........\n" +
+                "....r...\n" +
+                "........\n" +
+                "..N.N...\n" +
+                "....K...\n", WHITE);
+        // The knight on e2 is pinned, so Nd4 can only be made by the knight on c2
+        assertEquals(PackedMove.of(C2, D4), parse(position, "Nd4"));
+    }
+
+    @Test
+    public void testPawnMoves() {
+        Position position = Position.fromString(
+                "....k...\n" +
+                ".P......\n" +
+                "........\n" +
+                "..pP....\n" +
+                "........\n" +
+                "........\n" +
+                "........\n" +
+                "....K...\n", WHITE, EnumSet.noneOf(Castles.class), 2);
+        assertEquals(PackedMove.of(D5, C6), parse(position, "dxc6"));
+        assertEquals(PackedMove.of(D5, C6), parse(position, "dc6"));
+        assertEquals(PackedMove.of(D5, D6), parse(position, "d6"));
+        assertEquals(PackedMove.of(B7, B8, Stone.WHITE_QUEEN), parse(position, "b8=Q"));
+        assertEquals(PackedMove.of(B7, B8, Stone.WHITE_KNIGHT), parse(position, "b8N"));
+        assertEquals(PackedMove.of(B7, B8, Stone.WHITE_ROOK), parse(position, "b7b8r"));
+        assertEquals(PackedMove.NO_MOVE, parse(position, "b8"));
+        assertEquals(PackedMove.NO_MOVE, parse(position, "b8=K"));
+    }
+
+    @Test
+    public void testCastles() {
+        Position position = Position.fromString(
+                "r...k..r\n" +
+                "........\n" +
+                "........\n" +
+                "........\n" +
+                "........\n" +
+                "........\n" +
+                "........\n" +
+                "R...K..R\n", BLACK, EnumSet.allOf(Castles.class), NO_COL);
+        assertEquals(Move.shortCastles(position).packed(), parse(position, "O-O"));
+        assertEquals(Move.shortCastles(position).packed(), parse(position, "0-0+"));
+        assertEquals(Move.longCastles(position).packed(), parse(position, "O-O-O"));
+        assertEquals(Move.longCastles(position).packed(), parse(position, "e8c8"));
+        assertEquals(PackedMove.NULL_MOVE, parse(position, "--"));
+    }
+
+    @Test
+    public void testFuzzAgainstGeneratedGames() {
+        GameGenerator generator = new GameGenerator(17);
+        for (int i = 0; i < 100; i++) {
+            checkNode(generator.getRandomGame(true, false).moves().root());
+        }
+    }
+
+    private void checkNode(GameMovesModel.Node node) {
+        Position position = node.position();
+        for (Move move : position.generateAllLegalMoves()) {
+            assertEquals(move.toSAN(), move.packed(), parse(position, move.toSAN()));
+            assertEquals(move.toLAN(), move.packed(), parse(position, move.toLAN()));
+            String uci = move.isShortCastle() || move.isLongCastle()
+                    ? sqiToStr(move.fromSqi()) + sqiToStr(move.toSqi())
+                    : sqiToStr(move.fromSqi()) + sqiToStr(move.toSqi())
+                        + (move.promotionStone().isNoStone() ? "" : Character.toLowerCase(move.promotionStone().toPiece().toChar()));
+            assertEquals(uci, move.packed(), parse(position, uci));
+        }
+        for (GameMovesModel.Node child : node.children()) {
+            checkNode(child);
+        }
+    }
+
+    @Test
+    public void testFuzzRandomText() {
+        // Random text must either be rejected or give a legal move
+        Random random = new Random(0);
+        String alphabet = "abcdefgh12345678NBRQKOxX-=+#0 ";
+        GameGenerator generator = new GameGenerator(5);
+        GameMovesModel.Node node = generator.getRandomGame(false, false).moves().root();
+        while (node.hasMoves()) {
+            Position position = node.position();
+            List<Move> legalMoves = position.generateAllLegalMoves();
+            for (int i = 0; i < 200; i++) {
+                StringBuilder text = new StringBuilder();
+                int length = 1 + random.nextInt(6);
+                for (int j = 0; j < length; j++) {
+                    text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                int move = parse(position, text.toString());
+                if (move != PackedMove.NO_MOVE && move != PackedMove.AMBIGUOUS_MOVE && move != PackedMove.NULL_MOVE) {
+                    assertTrue(text.toString(), legalMoves.contains(new Move(position, move)));
+                }
+            }
+            node = node.mainNode();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package se.yarin.chess;
+
+import org.junit.Test;
+import se.yarin.cbhlib.util.GameGenerator;
+import se.yarin.chess.annotations.Annotation;
+import se.yarin.chess.annotations.CommentaryAfterMoveAnnotation;
+import se.yarin.chess.annotations.NAGAnnotation;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static se.yarin.chess.Chess.*;
+
+public class PackedGameTreeTest {
+
+    @Test
+    public void testEmptyGame() {
+        PackedGameTree tree = PackedGameTree.fromModel(new GameMovesModel());
+        assertEquals(Position.start(), tree.startPosition());
+        assertEquals(0, tree.countPly(true));
+        assertEquals(0, tree.mainLine().size());
+        assertModelsEqual(new GameMovesModel(), tree.toModel());
+    }
+
+    @Test
+    public void testVariationsAndAnnotations() {
+        GameMovesModel model = new GameMovesModel();
+        model.root().addAnnotation(new CommentaryAfterMoveAnnotation("Start"));
+        GameMovesModel.Node e4 = model.root().addMove(E2, E4);
+        e4.addMove(E7, E5).addMove(G1, F3);
+        GameMovesModel.Node c5 = e4.addMove(C7, C5)
+                .addAnnotation(new NAGAnnotation(NAG.GOOD_MOVE))
+                .addAnnotation(new CommentaryAfterMoveAnnotation("Sicilian"));
+        c5.addMove(G1, F3);
+        c5.addMove(C2, C3).addMove(D7, D5);
+        e4.addMove(E7, E6);
+        model.root().addMove(D2, D4);
+
+        PackedGameTree tree = PackedGameTree.fromModel(model);
+        assertEquals(3, tree.countPly(false));
+        assertEquals(9, tree.countPly(true));
+        assertEquals(3, tree.countAnnotations());
+        assertEquals("e4 e5 Nf3", tree.mainLine().stream().map(Move::toSAN).reduce((a, b) -> a + " " + b).get());
+        assertEquals(1, tree.getAnnotations(0).size());
+
+        GameMovesModel unpacked = tree.toModel();
+        assertModelsEqual(model, unpacked);
+        assertEquals(model.toString(), unpacked.toString());
+    }
+
+    @Test
+    public void testTraverse() {
+        GameMovesModel model = new GameMovesModel();
+        GameMovesModel.Node e4 = model.root().addMove(E2, E4);
+        e4.addMove(E7, E5);
+        e4.addMove(C7, C5).addAnnotation(new NAGAnnotation(NAG.GOOD_MOVE));
+        model.root().addMove(D2, D4);
+
+        List<String> events = new ArrayList<>();
+        PackedGameTree.fromModel(model).traverse(new PackedGameTree.Visitor() {
+            @Override
+            public void move(int nodeIndex, Move move, List<Annotation> annotations) {
+                events.add(nodeIndex + ":" + move.toSAN() + (annotations.isEmpty() ? "" : "!"));
+            }
+
+            @Override
+            public void startVariation() {
+                events.add("(");
+            }
+
+            @Override
+            public void endVariation() {
+                events.add(")");
+            }
+        });
+        assertEquals(List.of("1:e4", "(", "2:d4", ")", "3:e5", "(", "4:c5!", ")"), events);
+    }
+
+    @Test
+    public void testSpecialMoves() {
+        // Castles, en passant, promotions and null moves
+        Position position = Position.fromString(
+                "r...k..r\n" +
+                ".P......\n" +
+                "........\n" +
+                "...pP...\n" +
+                "........\n" +
+                "........\n" +
+                "........\n" +
+                "R...K..R\n", Player.WHITE, EnumSet.allOf(Castles.class), 3);
+        GameMovesModel model = new GameMovesModel(position, 30);
+        model.root().addMove(E5, D6);
+        model.root().addMove(B7, B8, Stone.WHITE_KNIGHT).addMove(E8, G8);
+        model.root().addMove(B7, A8, Stone.WHITE_QUEEN);
+        GameMovesModel.Node castles = model.root().addMove(E1, C1);
+        castles.addMove(Move.nullMove(castles.position()));
+
+        GameMovesModel unpacked = PackedGameTree.fromModel(model).toModel();
+        assertEquals(model.root().ply(), unpacked.root().ply());
+        assertModelsEqual(model, unpacked);
+    }
+
+    @Test
+    public void testRandomGames() {
+        GameGenerator generator = new GameGenerator(1);
+        for (int i = 0; i < 50; i++) {
+            GameMovesModel model = generator.getRandomGame(true, true).moves();
+            PackedGameTree tree = PackedGameTree.fromModel(model);
+            assertEquals(model.countPly(false), tree.countPly(false));
+            assertEquals(model.countPly(true), tree.countPly(true));
+            assertEquals(model.countAnnotations(), tree.countAnnotations());
+            assertModelsEqual(model, tree.toModel());
+        }
+    }
+
+    private void assertModelsEqual(GameMovesModel expected, GameMovesModel actual) {
+        assertEquals(expected.root().ply(), actual.root().ply());
+        assertNodesEqual(expected.root(), actual.root());
+    }
+
+    private void assertNodesEqual(GameMovesModel.Node expected, GameMovesModel.Node actual) {
+        assertEquals(expected.position(), actual.position());
+        assertEquals(expected.lastMove(), actual.lastMove());
+        assertEquals(expected.getAnnotations(), actual.getAnnotations());
+        assertEquals(expected.children().size(), actual.children().size());
+        for (int i = 0; i < expected.children().size(); i++) {
+            assertNodesEqual(expected.children().get(i), actual.children().get(i));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package se.yarin.chess;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static se.yarin.chess.Castles.*;
+
+/**
+ * Verifies the move generator against known perft results.
+ * See https://www.chessprogramming.org/Perft_Results
+ */
+public class PerftTest {
+
+    @Test
+    public void testStartPosition() {
+        verifyPerft(Position.start(), 20, 400, 8902, 197281);
+    }
+
+    @Test
+    public void testKiwipete() {
+        // Castles, pins and promotions
+        Position position = fromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq -");
+        verifyPerft(position, 48, 2039, 97862);
+    }
+
+    @Test
+    public void testEnPassantAndDiscoveredChecks() {
+        Position position = fromFen("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - -");
+        verifyPerft(position, 14, 191, 2812, 43238);
+    }
+
+    @Test
+    public void testPromotionsAndChecks() {
+        Position position = fromFen("r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq -");
+        verifyPerft(position, 6, 264, 9467);
+
+        position = fromFen("rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ -");
+        verifyPerft(position, 44, 1486, 62379);
+    }
+
+    @Test
+    public void testChess960() {
+        Position position = fromFen("bqnb1rkr/pp3ppp/3ppn2/2p5/5P2/P2P4/NPP1P1PP/BQ1BNRKR w KQkq -",
+                Chess960.getStartPositionNo("bqnbnrkr"));
+        verifyPerft(position, 21, 528, 12189);
+    }
+
+    @Test
+    public void testChess960StartPositions() {
+        assertEquals(197281, Perft.perft(Chess960.getStartPosition(Chess960.REGULAR_CHESS_SP), 4));
+
+        // Without castling rights, a start position and its mirror image
+        // must have the same number of nodes
+        for (int sp = 0; sp < 960; sp += 37) {
+            Position position = Chess960.getStartPosition(sp);
+            StringBuilder firstRank = new StringBuilder();
+            for (int col = 0; col < 8; col++) {
+                firstRank.append(position.stoneAt(col, 0).toChar());
+            }
+            int mirroredSp = Chess960.getStartPositionNo(firstRank.reverse().toString());
+            Position mirrored = Chess960.getStartPosition(mirroredSp);
+            assertEquals("start position " + sp,
+                    Perft.perft(withoutCastles(position, sp), 4),
+                    Perft.perft(withoutCastles(mirrored, mirroredSp), 4));
+        }
+    }
+
+    private Position withoutCastles(Position position, int chess960sp) {
+        return Position.fromString(position.toString(), position.playerToMove(),
+                EnumSet.noneOf(Castles.class), Chess.NO_COL, chess960sp);
+    }
+
+    @Test
+    public void testDivide() {
+        assertEquals(20, Perft.divide(Position.start(), 2).get("e2-e4").longValue());
+        assertEquals(20, Perft.divide(Position.start(), 1).size());
+    }
+
+    private void verifyPerft(Position position, long... expectedNodes) {
+        for (int depth = 1; depth <= expectedNodes.length; depth++) {
+            assertEquals("depth " + depth, expectedNodes[depth - 1], Perft.perft(position, depth));
+        }
+    }
+
+    private Position fromFen(String fen) {
+        return fromFen(fen, Chess960.REGULAR_CHESS_SP);
+    }
+
+    private Position fromFen(String fen, int chess960sp) {
+        String[] parts = fen.split(" ");
+        StringBuilder board = new StringBuilder();
+        for (char c : parts[0].toCharArray()) {
+            if (c == '/') {
+                board.append('\n');
+            } else if (Character.isDigit(c)) {
+                board.append(".".repeat(c - '0'));
+            } else {
+                board.append(c);
+            }
+        }
+        EnumSet<Castles> castles = EnumSet.noneOf(Castles.class);
+        if (parts[2].contains("K")) castles.add(WHITE_SHORT_CASTLE);
+        if (parts[2].contains("Q")) castles.add(WHITE_LONG_CASTLE);
+        if (parts[2].contains("k")) castles.add(BLACK_SHORT_CASTLE);
+        if (parts[2].contains("q")) castles.add(BLACK_LONG_CASTLE);
+        int epCol = parts[3].equals("-") ? Chess.NO_COL : parts[3].charAt(0) - 'a';
+        Player toMove = parts[1].equals("w") ? Player.WHITE : Player.BLACK;
+        return Position.fromString(board.toString(), toMove, castles, epCol, chess960sp);
+    }
+}
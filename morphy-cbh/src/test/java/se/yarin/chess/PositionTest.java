@@ -4,7 +4,10 @@ import org.junit.Test;
 
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 import static se.yarin.chess.Player.*;
@@ -377,6 +380,32 @@ public class PositionTest {
         assertTrue(moves.contains(new Move(position, H2, H4)));
     }
 
+    @Test
+    public void testGenerateLegalMovesIntoArray() {
+        Position position = Position.fromString(
+                ".......k\n" +
+                "...P....\n" +
+                "........\n" +
+                "........\n" +
+                "........\n" +
+                "........\n" +
+                "........\n" +
+                "R...K..R\n", WHITE, EnumSet.of(WHITE_SHORT_CASTLE, WHITE_LONG_CASTLE), NO_COL);
+
+        int[] moves = new int[Position.MAX_MOVES];
+        int count = position.generateAllLegalMoves(moves);
+        List<Move> legalMoves = position.generateAllLegalMoves();
+        assertEquals(legalMoves.size(), count);
+        for (int i = 0; i < count; i++) {
+            assertTrue(legalMoves.contains(new Move(position, moves[i])));
+        }
+        assertTrue(legalMoves.contains(Move.shortCastles(position)));
+        assertTrue(legalMoves.contains(Move.longCastles(position)));
+        assertTrue(legalMoves.contains(new Move(position, D7, D8, WHITE_KNIGHT)));
+
+        assertEquals(4, position.generateAllPseudoLegalMoves(Piece.PAWN, moves));
+    }
+
     @Test
     public void testIsMoveLegal() {
         Position position = Position.fromString(
@@ -554,6 +583,36 @@ public class PositionTest {
         assertEquals("r....rk.", position.doMove(Move.shortCastles(position)).toString().substring(0, 8));
     }
 
+    @Test
+    public void testIsMoveLegalMatchesGeneratedMoves() {
+        Random random = new Random(0);
+        Stone[] promotionStones = { NO_STONE, WHITE_QUEEN, WHITE_KNIGHT, WHITE_PAWN, BLACK_ROOK, BLACK_KING };
+        for (int game = 0; game < 20; game++) {
+            Position position = game % 4 == 0 ? Chess960.getStartPosition(random.nextInt(960)) : Position.start();
+            for (int ply = 0; ply < 100; ply++) {
+                Set<Move> legalMoves = new HashSet<>(position.generateAllLegalMoves());
+                for (int fromSqi = 0; fromSqi < 64; fromSqi++) {
+                    boolean isPawn = position.stoneAt(fromSqi).toPiece() == Piece.PAWN;
+                    for (int toSqi = 0; toSqi < 64; toSqi++) {
+                        for (Stone promotionStone : promotionStones) {
+                            if (promotionStone != NO_STONE && !isPawn) break;
+                            Move move = new Move(position, fromSqi, toSqi, promotionStone);
+                            if (legalMoves.contains(move) != position.isMoveLegal(move)) {
+                                fail(position + sqiToStr(fromSqi) + sqiToStr(toSqi) + promotionStone);
+                            }
+                        }
+                    }
+                }
+                assertEquals(legalMoves.contains(Move.shortCastles(position)), position.isMoveLegal(Move.shortCastles(position)));
+                assertEquals(legalMoves.contains(Move.longCastles(position)), position.isMoveLegal(Move.longCastles(position)));
+
+                if (legalMoves.size() == 0) break;
+                List<Move> moves = position.generateAllLegalMoves();
+                position = position.doMove(moves.get(random.nextInt(moves.size())));
+            }
+        }
+    }
+
     private int numEmptySquares(Position position) {
         int cnt = 0;
         for (int i = 0; i < 64; i++) {
@@ -78,6 +78,19 @@ public class ShortMoveTest {
         assertTrue(shortMove.moveEquals(move));
     }
 
+    @Test
+    public void testPackedMove() {
+        ShortMove move = new ShortMove(A7, A8, Stone.WHITE_BISHOP);
+        assertEquals(move, ShortMove.fromPacked(move.packed()));
+        assertEquals(A7, PackedMove.fromSqi(move.packed()));
+        assertEquals(A8, PackedMove.toSqi(move.packed()));
+        assertEquals(Stone.WHITE_BISHOP, PackedMove.promotionStone(move.packed()));
+
+        assertTrue(ShortMove.fromPacked(ShortMove.longCastles().packed()).isLongCastle());
+        assertTrue(ShortMove.fromPacked(ShortMove.nullMove().packed()).isNullMove());
+        assertEquals(Chess.NO_SQUARE, ShortMove.nullMove().fromSqi());
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testCreateIllegalMove() {
         new ShortMove(-10, 1);
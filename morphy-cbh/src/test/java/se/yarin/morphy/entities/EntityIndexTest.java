@@ -4,6 +4,7 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import se.yarin.cbhlib.util.Cache;
 import se.yarin.morphy.storage.InMemoryItemStorage;
 
 import java.util.*;
@@ -594,7 +595,7 @@ public class EntityIndexTest {
         iterator.next();
     }
 
-    @Test(expected = IllegalStateException.class)
+    @Test
     public void testOrderedIteratorWhenStorageChanges() {
         FooEntityIndex index = createIndex();
         index.add(FooEntity.of("a"));
@@ -602,7 +603,45 @@ public class EntityIndexTest {
         Iterator<FooEntity> iterator = index.streamOrderedAscending().iterator();
         assertEquals("a", iterator.next().key());
         index.add(FooEntity.of("c"));
-        iterator.next();
+        // The iterator reads from the index as it was when the iteration started
+        assertEquals("b", iterator.next().key());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testReadAheadOrderedIteration() {
+        FooEntityIndex index = createIndex();
+        for (int i = 0; i < 2500; i++) {
+            index.add(FooEntity.of(nextRandomString(), i));
+        }
+        for (int i = 0; i < 2500; i += 3) {
+            index.delete(i);
+        }
+
+        List<FooEntity> ascending = index.streamOrderedAscending().collect(Collectors.toList());
+        assertEquals(index.count(), ascending.size());
+        assertEquals(ascending, index.streamOrderedAscendingReadAhead().collect(Collectors.toList()));
+        assertEquals(ascending, index.getAllOrdered());
+
+        List<FooEntity> descending = new ArrayList<>();
+        index.iterableDescendingReadAhead().forEach(descending::add);
+        Collections.reverse(descending);
+        assertEquals(ascending, descending);
+
+        assertFalse(createIndex().iterableAscendingReadAhead().iterator().hasNext());
+    }
+
+    @Test
+    public void testReadAheadIteratorWhenStorageChanges() {
+        FooEntityIndex index = createIndex();
+        index.add(FooEntity.of("b"));
+        index.add(FooEntity.of("a"));
+        Iterator<FooEntity> iterator = index.iterableAscendingReadAhead().iterator();
+        index.add(FooEntity.of("c"));
+        index.delete(FooEntity.of("a"));
+        assertEquals("a", iterator.next().key());
+        assertEquals("b", iterator.next().key());
+        assertFalse(iterator.hasNext());
     }
 
     @Test
@@ -615,6 +654,47 @@ public class EntityIndexTest {
 
         assertEquals(expected, storage.stream().count());
     }
+
+    @Test
+    public void testBulkLoad() {
+        for (int numEntities : new int[] { 0, 1, 2, 3, 7, 8, 100, 1000 }) {
+            FooEntityIndex index = createIndex();
+            ArrayList<FooEntity> entities = new ArrayList<>();
+            for (int i = 0; i < numEntities; i++) {
+                // Include some duplicate keys
+                String key = i % 10 == 9 ? entities.get(i - 5).key() : nextRandomString();
+                entities.add(ImmutableFooEntity.builder().key(key).value(i).count(i * 2).firstGameId(i * 3).build());
+            }
+            index.bulkLoad(entities);
+            index.validateStructure();
+            assertEquals(numEntities, index.count());
+
+            for (int i = 0; i < numEntities; i++) {
+                FooEntity entity = index.get(i);
+                assertEquals(entities.get(i).key(), entity.key());
+                assertEquals(i, entity.value());
+                assertEquals(i * 2, entity.count());
+                assertEquals(i * 3, entity.firstGameId());
+            }
+            List<String> expectedOrder = entities.stream().map(FooEntity::key).sorted().collect(Collectors.toList());
+            assertEquals(expectedOrder, index.streamOrderedAscending().map(FooEntity::key).collect(Collectors.toList()));
+
+            // The index should be possible to modify as usual afterwards
+            index.add(FooEntity.of("new"));
+            if (numEntities > 0) {
+                index.delete(0);
+            }
+            index.validateStructure();
+            assertNotNull(index.get(FooEntity.of("new")));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBulkLoadNonEmptyIndex() {
+        FooEntityIndex index = createIndex();
+        index.add(FooEntity.of("a"));
+        index.bulkLoad(List.of(FooEntity.of("b")));
+    }
 /*
     @Test
     public void testOpenInMemory() {
@@ -806,4 +886,37 @@ public class EntityIndexTest {
         assertEquals(Arrays.asList("abc", "bar", "chess", "foo", "xyz"), collect3);
     }
      */
+
+    @Test
+    public void testCachedEntitiesAreInvalidatedOnChange() {
+        FooEntityIndex index = createIndex();
+        int id = index.add(FooEntity.of("a", 1)).id();
+        index.add(FooEntity.of("b", 2));
+        assertEquals(1, index.get(id).value());
+        assertEquals(1, index.get(id).value());
+        assertEquals(1, index.getCacheStats().getHitCount());
+
+        index.put(id, FooEntity.of("a", 10));
+        assertEquals(10, index.get(id).value());
+        assertEquals(List.of(10, 2), index.getAll(List.of(id, 1)).stream().map(FooEntity::value).collect(Collectors.toList()));
+
+        EntityIndexTransaction<FooEntity> txn = index.beginTransaction();
+        txn.putEntityById(id, FooEntity.of("a", 20));
+        assertEquals(10, index.get(id).value());
+        txn.commit();
+        assertEquals(20, index.get(id).value());
+
+        index.delete(id);
+        assertNull(index.get(id));
+    }
+
+    @Test
+    public void testDisabledCache() {
+        FooEntityIndex index = createIndex();
+        index.setCache(Cache.disabled());
+        int id = index.add(FooEntity.of("a", 1)).id();
+        assertEquals(1, index.get(id).value());
+        assertEquals(1, index.get(id).value());
+        assertEquals(0, index.getCacheStats().getHitCount());
+    }
 }
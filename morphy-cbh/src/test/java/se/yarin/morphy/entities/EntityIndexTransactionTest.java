@@ -3,6 +3,15 @@ package se.yarin.morphy.entities;
 import org.junit.Test;
 import se.yarin.morphy.storage.InMemoryItemStorage;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
 import static org.junit.Assert.*;
 
 public class EntityIndexTransactionTest {
@@ -130,4 +139,101 @@ public class EntityIndexTransactionTest {
         assertEquals(2, index.count());
         assertEquals(2, index.capacity());
     }
+
+    @Test
+    public void testReadFromSnapshot() {
+        EntityIndex<FooEntity> index = createIndex();
+        index.add(FooEntity.of("a"));
+        index.add(FooEntity.of("b"));
+        index.add(FooEntity.of("c"));
+
+        EntityIndexTransaction<FooEntity> txn = index.beginTransaction();
+        index.delete(FooEntity.of("b"));
+        index.add(FooEntity.of("d"));
+        index.put(0, FooEntity.of("e"));
+
+        // The transaction still sees the index as it was when it began
+        assertEquals("a", txn.get(0).key());
+        assertEquals("b", txn.get(1).key());
+        assertNotNull(txn.get(FooEntity.of("b")));
+        assertNull(txn.get(FooEntity.of("d")));
+        assertEquals(3, txn.header().numEntities());
+        List<String> keys = new ArrayList<>();
+        for (EntityIndexTransaction<FooEntity>.NodePath path = txn.begin(); !path.isEnd(); path = path.successor()) {
+            keys.add(path.getEntity().key());
+        }
+        assertEquals(List.of("a", "b", "c"), keys);
+        txn.close();
+
+        assertEquals("e", index.get(0).key());
+        assertNull(index.get(FooEntity.of("b")));
+        assertEquals(List.of("c", "d", "e"), index.streamOrderedAscending().map(FooEntity::key).collect(Collectors.toList()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCommitAfterOtherCommit() {
+        EntityIndex<FooEntity> index = createIndex();
+
+        EntityIndexTransaction<FooEntity> txn = index.beginTransaction();
+        txn.addEntity(FooEntity.of("a"));
+        index.add(FooEntity.of("b"));
+        txn.commit();
+    }
+
+    @Test
+    public void testConcurrentReadersAndWriters() throws Exception {
+        EntityIndex<FooEntity> index = createIndex();
+        for (int i = 0; i < 100; i++) {
+            index.add(FooEntity.of(String.format("fixed%03d", i)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int w = 0; w < 2; w++) {
+            int writer = w;
+            writers.add(executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    index.add(FooEntity.of(String.format("new%d-%03d", writer, i)));
+                    if (i % 5 == 0) {
+                        index.delete(FooEntity.of(String.format("new%d-%03d", writer, i / 5)));
+                    }
+                }
+            }));
+        }
+        List<Future<?>> readers = new ArrayList<>();
+        for (int r = 0; r < 4; r++) {
+            readers.add(executor.submit(() -> {
+                while (writing.get()) {
+                    for (int i = 0; i < 100; i += 7) {
+                        assertNotNull(index.get(FooEntity.of(String.format("fixed%03d", i))));
+                    }
+                    // A snapshot is consistent even if commits are made while traversing it
+                    try (EntityIndexTransaction<FooEntity> txn = index.beginTransaction()) {
+                        int count = 0;
+                        String previous = "";
+                        for (EntityIndexTransaction<FooEntity>.NodePath path = txn.begin(); !path.isEnd(); path = path.successor()) {
+                            String key = path.getEntity().key();
+                            assertTrue(previous.compareTo(key) <= 0);
+                            previous = key;
+                            count += 1;
+                        }
+                        assertEquals(txn.header().numEntities(), count);
+                    }
+                }
+            }));
+        }
+
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        writing.set(false);
+        for (Future<?> reader : readers) {
+            reader.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        index.validateStructure();
+        assertEquals(100 + 2 * 400, index.count());
+    }
 }
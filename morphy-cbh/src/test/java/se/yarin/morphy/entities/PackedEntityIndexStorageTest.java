@@ -0,0 +1,123 @@
+package se.yarin.morphy.entities;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class PackedEntityIndexStorageTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FooEntityIndex createIndex() {
+        return new FooEntityIndex(new PackedEntityIndexStorage(EntityIndexHeader.empty(FooEntityIndex.SERIALIZED_FOO_SIZE)));
+    }
+
+    @Test
+    public void testAddAndDeleteEntities() {
+        FooEntityIndex index = createIndex();
+        Random random = new Random(0);
+        ArrayList<String> keys = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            String key = "key" + random.nextInt(1000);
+            keys.add(key);
+            index.add(FooEntity.of(key, i));
+        }
+        index.validateStructure();
+        assertEquals(500, index.count());
+
+        for (int i = 0; i < 500; i += 3) {
+            assertTrue(index.delete(i));
+        }
+        index.validateStructure();
+        assertEquals(333, index.count());
+
+        assertEquals(keys.get(1), index.get(1).key());
+        assertEquals(1, index.get(1).value());
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            if (i % 3 != 0) {
+                expected.add(keys.get(i));
+            }
+        }
+        expected.sort(String::compareTo);
+        assertEquals(expected, index.getAllOrdered().stream().map(FooEntity::key).collect(Collectors.toList()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetItemOutOfRange() {
+        createIndex().storage.getItem(0);
+    }
+
+    @Test
+    public void testLoadPlayerIndex() throws IOException {
+        File file = new File(folder.getRoot(), "players.cbp");
+        PlayerIndex fileIndex = PlayerIndex.create(file);
+        fileIndex.bulkLoad(List.of(
+                Player.of("Kasparov", "Garry"),
+                Player.of("Carlsen", "Magnus"),
+                Player.of("Anand", "Viswanathan"),
+                Player.of("Karpov", "Anatoly")));
+        fileIndex.delete(3);
+        fileIndex.close();
+
+        fileIndex = PlayerIndex.open(file);
+        PlayerIndex memoryIndex = PlayerIndex.openInMemory(file);
+        memoryIndex.validateStructure();
+        assertEquals(fileIndex.count(), memoryIndex.count());
+        assertEquals(fileIndex.capacity(), memoryIndex.capacity());
+        assertEquals(fileIndex.getAll(), memoryIndex.getAll());
+        assertEquals(fileIndex.getAllOrdered(), memoryIndex.getAllOrdered());
+        assertEquals(Player.of("Carlsen", "Magnus"), memoryIndex.get(Player.of("Carlsen", "Magnus")));
+        fileIndex.close();
+
+        // Changes to the in-memory index are not written to the file
+        memoryIndex.add(Player.of("Ding", "Liren"));
+        assertEquals(List.of("Anand", "Carlsen", "Ding", "Kasparov"),
+                memoryIndex.streamOrderedAscending().map(Player::lastName).collect(Collectors.toList()));
+        memoryIndex.validateStructure();
+        memoryIndex.close();
+        assertEquals(3, PlayerIndex.openInMemory(file).count());
+    }
+
+    @Test
+    public void testTreeWalkInOlderSnapshot() throws IOException {
+        File file = new File(folder.getRoot(), "players.cbp");
+        PlayerIndex fileIndex = PlayerIndex.create(file);
+        fileIndex.bulkLoad(List.of(
+                Player.of("Kasparov", "Garry"),
+                Player.of("Carlsen", "Magnus"),
+                Player.of("Anand", "Viswanathan")));
+        fileIndex.close();
+
+        PlayerIndex index = PlayerIndex.openInMemory(file);
+        EntityIndexTransaction<Player> txn = index.beginTransaction();
+        // Rebalances the tree, so nodes seen by the open transaction are changed in the storage
+        index.add(Player.of("Ding", "Liren"));
+        index.add(Player.of("Giri", "Anish"));
+        index.add(Player.of("Aronian", "Levon"));
+        index.delete(1);
+
+        List<String> lastNames = new ArrayList<>();
+        for (EntityIndexTransaction<Player>.NodePath path = txn.begin(); !path.isEnd(); path = path.successor()) {
+            lastNames.add(path.getEntity().lastName());
+        }
+        assertEquals(List.of("Anand", "Carlsen", "Kasparov"), lastNames);
+        assertEquals(Player.of("Carlsen", "Magnus"), txn.get(Player.of("Carlsen", "Magnus")));
+        assertNull(txn.get(Player.of("Ding", "Liren")));
+        txn.close();
+
+        assertNull(index.get(Player.of("Carlsen", "Magnus")));
+        assertEquals(List.of("Anand", "Aronian", "Ding", "Giri", "Kasparov"),
+                index.streamOrderedAscending().map(Player::lastName).collect(Collectors.toList()));
+        index.validateStructure();
+    }
+}
@@ -326,4 +326,70 @@ public class PlayerTest {
         }
     }
 
+    @Test
+    public void testCreateAndBulkLoadPlayerIndex() throws IOException {
+        File file = new File(folder.getRoot(), "bulk.cbp");
+        PlayerIndex playerIndex = PlayerIndex.create(file);
+        playerIndex.bulkLoad(List.of(
+                Player.of("Kasparov", "Garry"),
+                Player.of("Carlsen", "Magnus"),
+                Player.of("Anand", "Viswanathan")));
+        playerIndex.close();
+
+        playerIndex = PlayerIndex.open(file);
+        playerIndex.validateStructure();
+        assertEquals(3, playerIndex.count());
+        assertEquals(Player.of("Carlsen", "Magnus"), playerIndex.get(1));
+        assertEquals(List.of("Anand", "Carlsen", "Kasparov"),
+                playerIndex.streamOrderedAscending().map(Player::lastName).collect(Collectors.toList()));
+        playerIndex.close();
+    }
+
+    @Test
+    public void testLargeTransactionOnFile() throws IOException {
+        File file = new File(folder.getRoot(), "txn.cbp");
+        PlayerIndex fileIndex = PlayerIndex.create(file);
+        PlayerIndex memoryIndex = new PlayerIndex();
+        for (PlayerIndex playerIndex : List.of(fileIndex, memoryIndex)) {
+            playerIndex.add(Player.of("Kasparov", "Garry"));
+            playerIndex.add(Player.of("Carlsen", "Magnus"));
+
+            EntityIndexTransaction<Player> txn = playerIndex.beginTransaction();
+            for (int i = 0; i < 500; i++) {
+                txn.addEntity(Player.of(String.format("Player%03d", (i * 37) % 500), "X"));
+            }
+            txn.deleteEntity(0);
+            txn.putEntityById(1, Player.of("Anand", "Viswanathan"));
+            txn.commit();
+        }
+        fileIndex.close();
+
+        fileIndex = PlayerIndex.open(file);
+        fileIndex.validateStructure();
+        assertEquals(501, fileIndex.count());
+        assertEquals(memoryIndex.getAll(), fileIndex.getAll());
+        assertEquals(memoryIndex.getAllOrdered(), fileIndex.getAllOrdered());
+        fileIndex.close();
+    }
+
+    @Test
+    public void testGetAllByIdsOnFile() throws IOException {
+        File file = new File(folder.getRoot(), "multiget.cbp");
+        PlayerIndex playerIndex = PlayerIndex.create(file);
+        for (int i = 0; i < 200; i++) {
+            playerIndex.add(Player.of(String.format("Player%03d", i), "X"));
+        }
+        playerIndex.delete(50);
+
+        List<Integer> ids = List.of(150, 3, 4, 150, 199, 50, 0, 70);
+        List<Player> players = playerIndex.getAll(ids);
+        assertEquals(ids.size(), players.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(playerIndex.get(ids.get(i)), players.get(i));
+        }
+        assertNull(players.get(5));
+        assertEquals("Player150", players.get(0).lastName());
+        assertEquals(List.of(), playerIndex.getAll(List.of()));
+        playerIndex.close();
+    }
 }
@@ -0,0 +1,105 @@
+package se.yarin.morphy.entities;
+
+import org.junit.Before;
+import org.junit.Test;
+import se.yarin.cbhlib.entities.Nation;
+import se.yarin.chess.Date;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Verifies that comparing serialized entities gives the same order as comparing the entities
+ */
+public class SerializedComparatorTest {
+    private Random random;
+
+    @Before
+    public void setupRandom() {
+        random = new Random(0);
+    }
+
+    private String randomString(int maxLength) {
+        // Few distinct characters to get many common prefixes, and some outside of ASCII
+        String chars = "abAB ,.éö";
+        int length = random.nextInt(maxLength + 1);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return sb.toString();
+    }
+
+    private <T extends Entity & Comparable<T>> void assertSameOrder(EntityIndex<T> index, Supplier<T> generator) {
+        Comparator<byte[]> comparator = index.serializedComparator();
+        assertNotNull(comparator);
+
+        List<T> entities = new ArrayList<>();
+        List<byte[]> serialized = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            ByteBuffer buf = ByteBuffer.allocate(index.storageHeader().entitySize() - 8);
+            index.serialize(generator.get(), buf);
+            serialized.add(buf.array());
+            // Compare against the deserialized entity, since serialization may truncate fields
+            entities.add(index.deserialize(i, 0, 0, buf.array()));
+        }
+
+        for (int i = 0; i < entities.size(); i++) {
+            for (int j = 0; j < entities.size(); j++) {
+                int expected = Integer.signum(entities.get(i).compareTo(entities.get(j)));
+                int actual = Integer.signum(comparator.compare(serialized.get(i), serialized.get(j)));
+                assertEquals(entities.get(i) + " vs " + entities.get(j), expected, actual);
+            }
+        }
+    }
+
+    private Date randomDate() {
+        return new Date(1990 + random.nextInt(3), random.nextInt(3), random.nextInt(3));
+    }
+
+    @Test
+    public void testPlayer() {
+        assertSameOrder(new PlayerIndex(), () -> Player.of(randomString(32), randomString(4)));
+    }
+
+    @Test
+    public void testAnnotator() {
+        assertSameOrder(new AnnotatorIndex(), () -> Annotator.of(randomString(5)));
+    }
+
+    @Test
+    public void testSource() {
+        assertSameOrder(new SourceIndex(), () -> Source.of(randomString(27)));
+    }
+
+    @Test
+    public void testTeam() {
+        assertSameOrder(new TeamIndex(), () -> Team.of(randomString(3), random.nextInt(3) - 1,
+                random.nextBoolean(), 1990 + random.nextInt(2), Nation.values()[random.nextInt(3)]));
+    }
+
+    @Test
+    public void testTournament() {
+        assertSameOrder(new TournamentIndex(), () -> Tournament.of(randomString(3), randomString(2), randomDate()));
+    }
+
+    @Test
+    public void testSearchWithTooLongKey() {
+        PlayerIndex index = new PlayerIndex();
+        String longName = "a".repeat(30);
+        index.add(Player.of(longName, "x"));
+        index.add(Player.of("b", "y"));
+
+        // The key can't be serialized exactly, but should still be ordered after the existing player
+        EntityIndexTransaction<Player> txn = index.beginTransaction();
+        assertEquals("b", txn.lowerBound(Player.of(longName + "a", "")).getEntity().lastName());
+        assertEquals(longName, txn.lowerBound(Player.of(longName, "")).getEntity().lastName());
+    }
+}
@@ -4,5 +4,6 @@ module se.yarin.morphy.cli {
     requires progressbar;
     requires org.apache.logging.log4j;
     requires org.apache.logging.log4j.core;
+    requires jdk.httpserver;
     opens se.yarin.morphy.cli.commands to info.picocli;
 }
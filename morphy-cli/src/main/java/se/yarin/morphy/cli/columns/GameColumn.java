@@ -27,6 +27,24 @@ public interface GameColumn {
 
     String getId();
 
+    /**
+     * The name of the column in structured output, such as JSON and CSV.
+     * Unlike the id, it's unique among all columns;
+     * the raw data columns include the file and byte range, e.g. raw_cbh_0_4.
+     */
+    default String getFieldName() {
+        return getId();
+    }
+
+    /**
+     * The value of the column in structured output, such as JSON and CSV.
+     * Like {@link #getValue(Game)} but without any padding; numbers may be returned as {@link Integer}
+     * and missing values as null.
+     */
+    default Object getFieldValue(Game game) {
+        return getValue(game).strip();
+    }
+
     // This also determines in what order the columns will be shown
     GameColumn[] ALL = {
             new GameIdColumn(),
@@ -37,7 +55,7 @@ public interface GameColumn {
             new NameColumn(false),
             new TeamColumn(false),
             new RatingColumn(false),
-            new RatingTypeColumn(true),
+            new RatingTypeColumn(false),
             new ResultsColumn(),
             new NumMovesColumn(),
             new VCSColumn(),
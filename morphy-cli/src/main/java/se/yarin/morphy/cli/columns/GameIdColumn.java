@@ -19,6 +19,11 @@ public class GameIdColumn implements GameColumn {
         return String.format("%8d", game.getId());
     }
 
+    @Override
+    public Object getFieldValue(Game game) {
+        return game.getId();
+    }
+
     @Override
     public String getId() {
         return "id";
@@ -14,6 +14,11 @@ public class GameVersionColumn implements GameColumn {
         return String.format("%4d", game.getGameVersion());
     }
 
+    @Override
+    public Object getFieldValue(Game game) {
+        return game.getGameVersion();
+    }
+
     @Override
     public String getId() {
         return "version";
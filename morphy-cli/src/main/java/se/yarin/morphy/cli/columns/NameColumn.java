@@ -36,6 +36,19 @@ public class NameColumn implements GameColumn {
         return "name";
     }
 
+    @Override
+    public String getFieldName() {
+        return isWhite ? "white" : "black";
+    }
+
+    @Override
+    public Object getFieldValue(Game game) {
+        if (game.isGuidingText()) {
+            return isWhite ? game.getTextTitle() : null;
+        }
+        return (isWhite ? game.getWhite() : game.getBlack()).getFullName();
+    }
+
     @Override
     public int width() {
         return isWhite ? 20 : 22;
@@ -17,6 +17,11 @@ public class NumMovesColumn implements GameColumn {
         return String.format("%3s", numMoves);
     }
 
+    @Override
+    public Object getFieldValue(Game game) {
+        return game.isGuidingText() || game.getNoMoves() <= 0 ? null : game.getNoMoves();
+    }
+
     @Override
     public String getId() {
         return "num-moves";
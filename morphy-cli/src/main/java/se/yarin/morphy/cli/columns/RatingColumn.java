@@ -35,6 +35,17 @@ public class RatingColumn implements GameColumn {
         return "rating";
     }
 
+    @Override
+    public String getFieldName() {
+        return isWhite ? "white-rating" : "black-rating";
+    }
+
+    @Override
+    public Object getFieldValue(Game game) {
+        int rating = isWhite ? game.getWhiteElo() : game.getBlackElo();
+        return game.isGuidingText() || rating == 0 ? null : rating;
+    }
+
     @Override
     public int width() {
         return 4;
@@ -22,6 +22,11 @@ public class RatingTypeColumn implements GameColumn {
         return ratingType.toString();
     }
 
+    @Override
+    public String getFieldName() {
+        return isWhite ? "white-rating-type" : "black-rating-type";
+    }
+
     @Override
     public int width() {
         return 20;
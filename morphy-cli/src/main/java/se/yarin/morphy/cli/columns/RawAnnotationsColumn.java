@@ -20,4 +20,9 @@ public class RawAnnotationsColumn implements GameColumn {
     public String getId() {
         return "raw";
     }
+
+    @Override
+    public String getFieldName() {
+        return "raw_cba";
+    }
 }
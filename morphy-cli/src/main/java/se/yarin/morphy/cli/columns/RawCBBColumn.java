@@ -52,4 +52,9 @@ public class RawCBBColumn implements GameColumn {
     public String getId() {
         return "raw-cbb";
     }
+
+    @Override
+    public String getFieldName() {
+        return String.format("raw_cbb_%d_%d", start, length);
+    }
 }
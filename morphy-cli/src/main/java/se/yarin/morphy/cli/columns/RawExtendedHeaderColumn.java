@@ -55,4 +55,9 @@ public class RawExtendedHeaderColumn implements GameColumn {
     public String getId() {
         return "raw";
     }
+
+    @Override
+    public String getFieldName() {
+        return String.format("raw_cbj_%d_%d", start, length);
+    }
 }
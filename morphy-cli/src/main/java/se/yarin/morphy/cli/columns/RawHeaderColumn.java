@@ -57,4 +57,9 @@ public class RawHeaderColumn implements GameColumn {
         return "raw";
     }
 
+    @Override
+    public String getFieldName() {
+        return String.format("raw_cbh_%d_%d", start, length);
+    }
+
 }
@@ -30,4 +30,9 @@ public class RawMovesColumn implements GameColumn {
     public String getId() {
         return "raw";
     }
+
+    @Override
+    public String getFieldName() {
+        return "raw_cbg";
+    }
 }
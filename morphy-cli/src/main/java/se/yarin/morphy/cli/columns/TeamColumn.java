@@ -35,6 +35,11 @@ public class TeamColumn implements GameColumn {
         return "team";
     }
 
+    @Override
+    public String getFieldName() {
+        return isWhite ? "white-team" : "black-team";
+    }
+
     @Override
     public int width() {
         return 20;
@@ -5,6 +5,9 @@ import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.ConfigurationFactory;
 import org.apache.logging.log4j.core.config.ConfigurationSource;
 import picocli.CommandLine;
+import se.yarin.cbhlib.entities.EntityNameIndex;
+import se.yarin.morphy.cli.server.DatabaseHandle;
+import se.yarin.morphy.cli.server.DatabaseProvider;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -26,6 +29,11 @@ public abstract class BaseCommand {
     @CommandLine.Option(names = "-v", description = "Output info logging; use twice for debug logging")
     private boolean[] verbose;
 
+    @CommandLine.Option(names = "--name-index-cache", description = "A directory where the name indexes of the databases are kept between runs (by default they're rebuilt every run)")
+    private File nameIndexCache;
+
+    private DatabaseProvider databaseProvider = DatabaseProvider.DIRECT;
+
     protected void setupGlobalOptions() {
         if (verbose != null) {
             String level = verbose.length == 1 ? "info" : "debug";
@@ -34,9 +42,28 @@ public abstract class BaseCommand {
             Configuration configuration = ConfigurationFactory.getInstance().getConfiguration(context, configurationSource);
             context.reconfigure(configuration);
         }
+        if (nameIndexCache != null) {
+            EntityNameIndex.setCacheDirectory(nameIndexCache);
+        }
         Locale.setDefault(Locale.US);
     }
 
+    protected File getFile() {
+        return file;
+    }
+
+    void setDatabaseProvider(DatabaseProvider databaseProvider) {
+        this.databaseProvider = databaseProvider;
+    }
+
+    protected DatabaseProvider getDatabaseProvider() {
+        return databaseProvider;
+    }
+
+    protected DatabaseHandle openDatabase(File file) throws IOException {
+        return databaseProvider.open(file);
+    }
+
     protected Stream<File> getDatabaseStream() throws IOException {
         if (file.isDirectory()) {
             return Files.walk(file.toPath(), recursive ? 30 : 1)
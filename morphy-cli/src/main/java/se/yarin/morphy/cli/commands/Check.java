@@ -5,13 +5,19 @@ import org.apache.logging.log4j.Logger;
 import picocli.CommandLine;
 import se.yarin.cbhlib.Database;
 import se.yarin.cbhlib.exceptions.ChessBaseException;
+import se.yarin.cbhlib.exceptions.OperationCancelledException;
+import se.yarin.cbhlib.operations.CancellationToken;
+import se.yarin.cbhlib.operations.CheckpointFile;
+import se.yarin.cbhlib.validation.EntityStatsCalculator;
 import se.yarin.cbhlib.validation.Validator;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
 
 @CommandLine.Command(name = "check", mixinStandardHelpOptions = true)
 public class Check extends BaseCommand implements Callable<Integer> {
@@ -51,16 +57,30 @@ public class Check extends BaseCommand implements Callable<Integer> {
     @CommandLine.Option(names = "--no-entity-integrity", negatable = true, description = "Check entity file integrity (true by default)")
     boolean checkEntityFileIntegrity = true;
 
+    @CommandLine.Option(names = "--repair-entity-stats", description = "Rewrite the entity statistics that are wrong, and delete entities not referenced by any game, before checking")
+    boolean repairEntityStats = false;
+
     @CommandLine.Option(names = "--no-games", negatable = true, description = "Check game headers (true by default)")
     boolean checkGameHeaders = true;
 
     @CommandLine.Option(names = "--no-load-games", negatable = true, description = "Check all moves, annotations etc in game data (true by default)")
     boolean loadGames = true;
 
+    @CommandLine.Option(names = "--threads", description = "The number of threads checking the games (default is the number of processors)")
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Option(names = "--checkpoint-dir", description = "Save checkpoints of the game checks in this directory, and resume from them if the check was interrupted")
+    private File checkpointDirectory;
+
     @Override
     public Integer call() throws IOException {
         setupGlobalOptions();
 
+        if (numThreads < 1) {
+            System.err.println("The number of threads must be at least 1");
+            return 1;
+        }
+
         HashMap<Validator.Checks, Boolean> checkFlags = new HashMap<>();
         checkFlags.put(Validator.Checks.ENTITY_PLAYERS, checkPlayers && checkEntities);
         checkFlags.put(Validator.Checks.ENTITY_TOURNAMENTS, checkTournaments && checkEntities);
@@ -77,14 +97,35 @@ public class Check extends BaseCommand implements Callable<Integer> {
         EnumSet<Validator.Checks> checks = EnumSet.allOf(Validator.Checks.class);
         checks.removeIf(flag -> !checkFlags.get(flag));
 
-        getDatabaseStream().forEach(file -> {
+        if (checkpointDirectory != null && !checkpointDirectory.isDirectory() && !checkpointDirectory.mkdirs()) {
+            System.err.println("Failed to create the checkpoint directory " + checkpointDirectory);
+            return 1;
+        }
+
+        List<File> files = getDatabaseStream().collect(Collectors.toList());
+        for (File file : files) {
             log.info("Opening " + file);
 
-            try (Database db = Database.open(file)) {
-                Validator validator = new Validator();
+            // The interrupt handler is closed last, so the database is closed before the process exits
+            try (InterruptHandler interruptHandler = new InterruptHandler();
+                 Database db = Database.open(file)) {
+                CancellationToken cancellationToken = interruptHandler.getCancellationToken();
+                if (repairEntityStats) {
+                    EntityStatsCalculator calculator = new EntityStatsCalculator(db, numThreads);
+                    calculator.setCancellationToken(cancellationToken);
+                    calculator.setCheckpointFile(checkpointFile(file, "stats"));
+                    int numRepaired = calculator.repair(calculator.calculate(() -> {}));
+                    log.info("Repaired or deleted " + numRepaired + " entities");
+                }
+                Validator validator = new Validator(numThreads);
+                validator.setCancellationToken(cancellationToken);
+                validator.setCheckpointFile(checkpointFile(file, "check"));
                 db.getMovesBase().getMovesSerializer().setLogDetailedErrors(true);
                 validator.validate(db, checks, true, showProgressBar);
                 log.info("Database OK: " + file);
+            } catch (OperationCancelledException e) {
+                log.warn("Check cancelled: " + file);
+                return 1;
             } catch (ChessBaseException e) {
                 // At least one error that the ChessBase integrity checker would consider an error found
                 // It could be just a single game that has some bad moves though
@@ -93,8 +134,15 @@ public class Check extends BaseCommand implements Callable<Integer> {
                 // Something was not caught properly
                 log.error("Database CRITICAL ERROR: " + file, e);
             }
-        });
+        }
 
         return 0;
     }
+
+    private CheckpointFile checkpointFile(File file, String operation) {
+        if (checkpointDirectory == null) {
+            return null;
+        }
+        return new CheckpointFile(new File(checkpointDirectory, file.getName() + "." + operation + ".checkpoint"));
+    }
 }
@@ -1,18 +1,31 @@
 package se.yarin.morphy.cli.commands;
 
 import picocli.CommandLine;
+import se.yarin.morphy.cli.server.MorphyClient;
+
+import java.util.Arrays;
 
 @CommandLine.Command(name = "cb", description = "Performs an operation on a ChessBase file",
         mixinStandardHelpOptions = true,
-        subcommands = { Games.class, Players.class, Tournaments.class, Check.class})
+        subcommands = { Games.class, Players.class, Tournaments.class, Check.class, Import.class, Export.class, Serve.class})
 class ChessBaseCommand implements Runnable {
 
+    @CommandLine.Option(names = "--server", description = "Run the command on a server started with serve, given its port or address")
+    private String server;
+
     @Override
     public void run() {
         System.out.println("A subcommand must be specified; use --help");
     }
 
     public static void main(String[] args) {
+        // Forward the remaining arguments as is, without starting up anything locally
+        if (args.length >= 2 && args[0].equals("--server")) {
+            System.exit(MorphyClient.run(args[1], Arrays.copyOfRange(args, 2, args.length)));
+        }
+        if (args.length >= 1 && args[0].startsWith("--server=")) {
+            System.exit(MorphyClient.run(args[0].substring("--server=".length()), Arrays.copyOfRange(args, 1, args.length)));
+        }
         int exitCode = new CommandLine(new ChessBaseCommand()).execute(args);
         System.exit(exitCode);
     }
@@ -0,0 +1,89 @@
+package se.yarin.morphy.cli.commands;
+
+import me.tongfei.progressbar.ProgressBar;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import picocli.CommandLine;
+import se.yarin.cbhlib.Database;
+import se.yarin.cbhlib.exceptions.OperationCancelledException;
+import se.yarin.cbhlib.export.ColumnarExporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+
+@CommandLine.Command(name = "export", mixinStandardHelpOptions = true,
+        description = "Exports the games, players, tournaments and main line moves of databases to Arrow IPC files")
+public class Export extends BaseCommand implements Callable<Integer> {
+
+    private static final Logger log = LogManager.getLogger();
+
+    @CommandLine.Parameters(index = "1", description = "The directory to write the tables to; if there are multiple databases, each database is exported to a subdirectory")
+    private File directory;
+
+    @CommandLine.Option(names = "--overwrite", description = "Replace the tables if they already exist")
+    private boolean overwrite = false;
+
+    @CommandLine.Option(names = "--threads", description = "The number of threads decoding moves and encoding columns (default is the number of processors)")
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Option(names = "--max-ply", description = "The max number of plies to export for each game, or 0 for all (default is 35)")
+    private int maxPly = 35;
+
+    @CommandLine.Option(names = "--no-progress-bar", negatable = true, description = "Show progress bar")
+    private boolean showProgressBar = true;
+
+    @Override
+    public Integer call() throws IOException {
+        setupGlobalOptions();
+
+        List<File> files = getDatabaseStream().collect(Collectors.toList());
+        for (File file : files) {
+            File target = files.size() == 1 ? directory : new File(directory, databaseName(file));
+            if (!overwrite && new File(target, "games.arrow").exists()) {
+                System.err.println("Tables already exist in " + target + " (use --overwrite)");
+                return 1;
+            }
+        }
+
+        for (File file : files) {
+            File target = files.size() == 1 ? directory : new File(directory, databaseName(file));
+            log.info("Opening " + file);
+            long start = System.currentTimeMillis();
+            // The interrupt handler is closed last, so the tables and the database are closed before the process exits
+            try (InterruptHandler interruptHandler = new InterruptHandler();
+                 Database db = Database.open(file);
+                 ColumnarExporter exporter = new ColumnarExporter(db, target, Math.max(1, numThreads), maxPly)) {
+                exporter.setCancellationToken(interruptHandler.getCancellationToken());
+                exporter.exportPlayers();
+                exporter.exportTournaments();
+                if (showProgressBar) {
+                    try (ProgressBar pb = new ProgressBar(databaseName(file), db.getHeaderBase().size())) {
+                        exporter.exportGames(pb::stepTo);
+                        pb.stepTo(pb.getMax());
+                    }
+                } else {
+                    exporter.exportGames(null);
+                }
+                long elapsed = Math.max(1, System.currentTimeMillis() - start);
+                System.out.printf("%d games and %d positions exported to %s in %.2f s (%d games/s)%n",
+                        exporter.getGamesExported(), exporter.getMovesExported(), target,
+                        elapsed / 1000.0, exporter.getGamesExported() * 1000L / elapsed);
+            } catch (OperationCancelledException e) {
+                System.err.println("Export cancelled; the tables in " + target + " are incomplete");
+                return 1;
+            } catch (IOException e) {
+                System.err.println("IO error when exporting " + file + ": " + e.getMessage());
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    private static String databaseName(File file) {
+        String name = file.getName();
+        return name.substring(0, name.length() - 4);
+    }
+}
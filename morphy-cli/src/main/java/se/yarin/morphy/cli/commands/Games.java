@@ -1,6 +1,5 @@
 package se.yarin.morphy.cli.commands;
 
-import me.tongfei.progressbar.ProgressBar;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import picocli.CommandLine;
@@ -10,15 +9,18 @@ import se.yarin.cbhlib.entities.PlayerSearcher;
 import se.yarin.cbhlib.entities.SinglePlayerSearcher;
 import se.yarin.cbhlib.entities.TournamentSearcher;
 import se.yarin.cbhlib.games.search.*;
+import se.yarin.morphy.cli.games.CsvExporter;
 import se.yarin.morphy.cli.games.DatabaseBuilder;
+import se.yarin.morphy.cli.games.FederatedGameSearcher;
 import se.yarin.morphy.cli.games.GameConsumer;
+import se.yarin.morphy.cli.games.JsonLinesExporter;
+import se.yarin.morphy.cli.games.PgnExporter;
 import se.yarin.morphy.cli.games.StatsGameConsumer;
 import se.yarin.morphy.cli.games.StdoutGamesSummary;
 import se.yarin.morphy.cli.columns.*;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.channels.FileChannel;
 import java.nio.file.FileAlreadyExistsException;
 import java.util.Arrays;
 import java.util.List;
@@ -29,7 +31,7 @@ import java.util.stream.Collectors;
 public class Games extends BaseCommand implements Callable<Integer> {
     private static final Logger log = LogManager.getLogger();
 
-    @CommandLine.Option(names = "--limit", description = "Max number of games to output")
+    @CommandLine.Option(names = "--limit", description = "Max number of games to output, in total over all databases")
     private int limit = 0;
 
     @CommandLine.Option(names = "--id", description = "The id of a game to get")
@@ -41,6 +43,18 @@ public class Games extends BaseCommand implements Callable<Integer> {
     @CommandLine.Option(names = "--player", description = "Show only games with this player (any color)")
     private String[] players;
 
+    @CommandLine.Option(names = "--ignore-case", description = "Ignore case and diacritics when matching player and tournament names")
+    private boolean ignoreCase = false;
+
+    @CommandLine.Option(names = "--contains", description = "Match player and tournament names containing the search string anywhere, not only at the start")
+    private boolean contains = false;
+
+    @CommandLine.Option(names = "--annotator", description = "Show only games by an annotator with a name containing this string (ignoring case)")
+    private String annotator;
+
+    @CommandLine.Option(names = "--source", description = "Show only games from a source with a title containing this string (ignoring case)")
+    private String source;
+
     @CommandLine.Option(names = "--result", description = "Show only games with this result (1-0, 0-1, draw, win, loss etc)")
     private String result;
 
@@ -83,18 +97,24 @@ public class Games extends BaseCommand implements Callable<Integer> {
     @CommandLine.Option(names = "--text", description = "Show only guiding texts")
     private boolean guidingText;
 
-    @CommandLine.Option(names = {"-o", "--output"}, description = "Output database (.cbh or .pgn)")
+    @CommandLine.Option(names = {"-o", "--output"}, description = "Output database (.cbh), PGN file (.pgn), JSON lines file (.jsonl) or CSV file (.csv)")
     private String output;
 
     @CommandLine.Option(names = "--stats", description = "Show statistics about all matching games")
     private boolean stats;
 
-    @CommandLine.Option(names = "--overwrite", description = "If true, overwrite the output database if it already exists.")
+    @CommandLine.Option(names = "--overwrite", description = "If true, overwrite the output database or file if it already exists.")
     private boolean overwrite;
 
     @CommandLine.Option(names = "--columns", description = "A comma separated list on which columns to show. Prefix columns with +/- to only adjust the default columns.")
     private String columns;
 
+    @CommandLine.Option(names = "--format", description = "The format of the games written to stdout: text, jsonl or csv (default is text)")
+    private String format = "text";
+
+    @CommandLine.Option(names = "--threads", description = "The max number of databases to search in parallel (default is the number of processors)")
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+
     @CommandLine.Option(names = "--raw-col-cbh", description = "Show binary CBH data (debug)")
     private String[] rawCbhColumns;
 
@@ -123,38 +143,17 @@ public class Games extends BaseCommand implements Callable<Integer> {
         GameConsumer gameConsumer = createGameConsumer();
         gameConsumer.init();
 
-        getDatabaseStream().forEach(file -> {
-            log.info("Opening " + file);
-            try (Database db = Database.open(file)) {
-                // Speeds up performance quite a lot, and we should be fairly certain that the moves in the CBH databases are valid
-                db.getMovesBase().setValidateDecodedMoves(false);
-
-                GameSearcher gameSearcher = null;
-                try {
-                    gameSearcher = createGameSearcher(db);
-                } catch (IllegalArgumentException e) {
-                    System.err.println(e.getMessage());
-                    System.exit(1);
-                }
-                assert gameSearcher != null;
-
-                GameSearcher.SearchResult result;
-
-                if (!(gameConsumer instanceof StdoutGamesSummary)) {
-                    try (ProgressBar pb = new ProgressBar("Games", gameSearcher.getTotal())) {
-                        result = gameSearcher.search(limit, countAll, gameConsumer, pb::stepTo);
-                    }
-                } else {
-                    result = gameSearcher.search(limit, countAll, gameConsumer, null);
-                }
-
-                gameConsumer.searchDone(result);
-            } catch (IOException e) {
-                System.err.println("IO error when processing " + file);
-            } catch (RuntimeException e) {
-                System.err.println("Unexpected error when processing " + file + ": " + e.getMessage());
-            }
-        });
+        List<File> files = getDatabaseStream().collect(Collectors.toList());
+        // Don't show a progress bar when the hits are printed to stdout
+        boolean showProgressBar = output != null || stats;
+        FederatedGameSearcher searcher = new FederatedGameSearcher(getDatabaseProvider(),
+                this::createGameSearcher, numThreads, limit, countAll, showProgressBar);
+        try {
+            searcher.search(files, gameConsumer);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        }
 
         gameConsumer.finish();
         return 0;
@@ -188,7 +187,7 @@ public class Games extends BaseCommand implements Callable<Integer> {
             for (String player : players) {
                 PlayerSearcher playerSearcher;
                 if (!player.contains("|")) {
-                    playerSearcher = new SinglePlayerSearcher(db.getPlayerBase(), player, true, false);
+                    playerSearcher = new SinglePlayerSearcher(db.getPlayerBase(), player, !ignoreCase, false, contains);
                 } else {
                     playerSearcher = new MultiPlayerSearcher(db.getPlayerBase(), player);
                 }
@@ -230,9 +229,18 @@ public class Games extends BaseCommand implements Callable<Integer> {
             gameSearcher.addFilter(new GameTagFilter(db, gameTag));
         }
 
+        if (annotator != null) {
+            gameSearcher.addFilter(new AnnotatorFilter(db, annotator));
+        }
+
+        if (source != null) {
+            gameSearcher.addFilter(new SourceFilter(db, source));
+        }
+
         TournamentSearcher tournamentSearcher = null;
         if (tournament != null) {
-            tournamentSearcher = new TournamentSearcher(db.getTournamentBase(), tournament, true, false);
+            tournamentSearcher = new TournamentSearcher(db.getTournamentBase());
+            tournamentSearcher.setSearchString(tournament, !ignoreCase, false, contains);
             gameSearcher.addFilter(new TournamentFilter(db, tournamentSearcher));
         }
 
@@ -274,54 +282,61 @@ public class Games extends BaseCommand implements Callable<Integer> {
         return gameSearcher;
     }
 
-    public GameConsumer createGameConsumer() throws IOException {
-        GameConsumer gameConsumer;
-        if (output == null) {
-            if (!stats) {
-                if (columns == null) {
-                    columns = StdoutGamesSummary.DEFAULT_COLUMNS;
-                }
-                List<GameColumn> parsedColumns = StdoutGamesSummary.parseColumns(this.columns);
-                if (rawCbhColumns != null) {
-                    for (String rawCbhColumn : rawCbhColumns) {
-                        String[] parts = rawCbhColumn.split(",");
-                        if (parts.length != 2) {
-                            throw new IllegalArgumentException("Invalid format of raw CBH column");
-                        }
-                        parsedColumns.add(new RawHeaderColumn(Integer.parseInt(parts[0]), Integer.parseInt(parts[1])));
-                    }
-                }
-                if (rawCbjColumns != null) {
-                    for (String rawCbjColumn : rawCbjColumns) {
-                        String[] parts = rawCbjColumn.split(",");
-                        if (parts.length != 2) {
-                            throw new IllegalArgumentException("Invalid format of raw CBJ column");
-                        }
-                        parsedColumns.add(new RawExtendedHeaderColumn(Integer.parseInt(parts[0]), Integer.parseInt(parts[1])));
-                    }
+    private List<GameColumn> createColumns() {
+        List<GameColumn> parsedColumns = StdoutGamesSummary.parseColumns(
+                this.columns == null ? StdoutGamesSummary.DEFAULT_COLUMNS : this.columns);
+        if (rawCbhColumns != null) {
+            for (String rawCbhColumn : rawCbhColumns) {
+                String[] parts = rawCbhColumn.split(",");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Invalid format of raw CBH column");
                 }
-                if (rawCbgColumns) {
-                    parsedColumns.add(new RawMovesColumn());
-                }
-                if (rawCbaColumns) {
-                    parsedColumns.add(new RawAnnotationsColumn());
+                parsedColumns.add(new RawHeaderColumn(Integer.parseInt(parts[0]), Integer.parseInt(parts[1])));
+            }
+        }
+        if (rawCbjColumns != null) {
+            for (String rawCbjColumn : rawCbjColumns) {
+                String[] parts = rawCbjColumn.split(",");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Invalid format of raw CBJ column");
                 }
-                if (rawCbbColumns != null) {
-                    for (String rawCbjColumn : rawCbbColumns) {
-                        String[] parts = rawCbjColumn.split(",");
-                        if (parts.length != 2) {
-                            throw new IllegalArgumentException("Invalid format of raw CBB column");
-                        }
-                        parsedColumns.add(new RawCBBColumn(Integer.parseInt(parts[0]), Integer.parseInt(parts[1])));
-                    }
+                parsedColumns.add(new RawExtendedHeaderColumn(Integer.parseInt(parts[0]), Integer.parseInt(parts[1])));
+            }
+        }
+        if (rawCbgColumns) {
+            parsedColumns.add(new RawMovesColumn());
+        }
+        if (rawCbaColumns) {
+            parsedColumns.add(new RawAnnotationsColumn());
+        }
+        if (rawCbbColumns != null) {
+            for (String rawCbjColumn : rawCbbColumns) {
+                String[] parts = rawCbjColumn.split(",");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Invalid format of raw CBB column");
                 }
+                parsedColumns.add(new RawCBBColumn(Integer.parseInt(parts[0]), Integer.parseInt(parts[1])));
+            }
+        }
+        return parsedColumns;
+    }
 
-                gameConsumer = new StdoutGamesSummary(countAll, parsedColumns);
+    public GameConsumer createGameConsumer() throws IOException {
+        GameConsumer gameConsumer;
+        if (output == null) {
+            if (stats) {
+                gameConsumer = new StatsGameConsumer();
+            } else if (format.equals("text")) {
+                gameConsumer = new StdoutGamesSummary(countAll, createColumns());
                 if (limit == 0) {
                     limit = 50;
                 }
+            } else if (format.equals("jsonl")) {
+                gameConsumer = new JsonLinesExporter(null, createColumns());
+            } else if (format.equals("csv")) {
+                gameConsumer = new CsvExporter(null, createColumns());
             } else {
-                gameConsumer = new StatsGameConsumer();
+                throw new IllegalArgumentException("Unknown output format: " + format);
             }
         } else if (output.endsWith(".cbh")) {
             File file = new File(output);
@@ -332,6 +347,20 @@ public class Games extends BaseCommand implements Callable<Integer> {
                 Database.delete(file);
             }
             gameConsumer = new DatabaseBuilder(file);
+        } else if (output.endsWith(".pgn")) {
+            File file = new File(output);
+            if (!overwrite && file.exists()) {
+                throw new FileAlreadyExistsException(output);
+            }
+            gameConsumer = new PgnExporter(file, overwrite, Runtime.getRuntime().availableProcessors());
+        } else if (output.endsWith(".jsonl") || output.endsWith(".csv")) {
+            File file = new File(output);
+            if (!overwrite && file.exists()) {
+                throw new FileAlreadyExistsException(output);
+            }
+            gameConsumer = output.endsWith(".csv")
+                    ? new CsvExporter(file, createColumns())
+                    : new JsonLinesExporter(file, createColumns());
         } else {
             throw new IllegalArgumentException("Unknown output format: " + output);
         }
@@ -0,0 +1,93 @@
+package se.yarin.morphy.cli.commands;
+
+import me.tongfei.progressbar.ProgressBar;
+import me.tongfei.progressbar.ProgressBarBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import picocli.CommandLine;
+import se.yarin.cbhlib.Database;
+import se.yarin.cbhlib.pgn.PgnImporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "import", mixinStandardHelpOptions = true,
+        description = "Imports the games in PGN files into a ChessBase database")
+public class Import extends BaseCommand implements Callable<Integer> {
+
+    private static final Logger log = LogManager.getLogger();
+
+    @CommandLine.Parameters(index = "1..*", arity = "1..*", description = "The PGN files to import")
+    private List<File> pgnFiles;
+
+    @CommandLine.Option(names = "--append", description = "Add the games to an existing database")
+    private boolean append = false;
+
+    @CommandLine.Option(names = "--overwrite", description = "Replace the database if it already exists")
+    private boolean overwrite = false;
+
+    @CommandLine.Option(names = "--threads", description = "The number of threads parsing games (default is the number of processors)")
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Option(names = "--charset", description = "The encoding of the PGN files (default is UTF-8)")
+    private Charset charset = StandardCharsets.UTF_8;
+
+    @CommandLine.Option(names = "--no-progress-bar", negatable = true, description = "Show progress bar")
+    private boolean showProgressBar = true;
+
+    @Override
+    public Integer call() throws IOException {
+        setupGlobalOptions();
+
+        File file = getFile();
+        for (File pgnFile : pgnFiles) {
+            if (!pgnFile.isFile()) {
+                System.err.println("PGN file does not exist: " + pgnFile);
+                return 1;
+            }
+        }
+        if (file.exists() && !append && !overwrite) {
+            System.err.println("Database already exists: " + file + " (use --append or --overwrite)");
+            return 1;
+        }
+        if (file.exists() && overwrite) {
+            Database.delete(file);
+        }
+
+        long start = System.currentTimeMillis();
+        int imported = 0, failed = 0;
+        // When creating a new database, the entity bases are kept in memory until the database is closed
+        try (Database db = file.exists() ? Database.open(file) : Database.create(file, true);
+             PgnImporter importer = new PgnImporter(db, Math.max(1, numThreads))) {
+            for (File pgnFile : pgnFiles) {
+                log.info("Importing " + pgnFile);
+                if (showProgressBar) {
+                    try (ProgressBar pb = new ProgressBarBuilder()
+                            .setTaskName(pgnFile.getName())
+                            .setInitialMax(pgnFile.length() / 1024)
+                            .setUnit(" KB", 1)
+                            .build()) {
+                        importer.importFile(pgnFile, charset, position -> pb.stepTo(position / 1024));
+                        pb.stepTo(pb.getMax());
+                    }
+                } else {
+                    importer.importFile(pgnFile, charset, null);
+                }
+            }
+            imported = importer.getGamesImported();
+            failed = importer.getGamesFailed();
+        }
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        System.out.printf("%d games imported into %s in %.2f s (%d games/s)%n",
+                imported, file, elapsed / 1000.0, imported * 1000L / elapsed);
+        if (failed > 0) {
+            System.out.printf("%d games could not be imported; run with -v for details%n", failed);
+        }
+        return 0;
+    }
+}
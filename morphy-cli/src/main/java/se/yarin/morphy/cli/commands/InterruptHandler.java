@@ -0,0 +1,46 @@
+package se.yarin.morphy.cli.commands;
+
+import se.yarin.cbhlib.operations.CancellationToken;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancels a long running operation when the process is interrupted, for instance with Ctrl-C.
+ * The shutdown of the process is delayed until the handler has been closed, so the operation
+ * gets a chance to stop cleanly and save its checkpoint.
+ */
+class InterruptHandler implements AutoCloseable {
+    // The max time to wait for the operation to stop after an interrupt
+    private static final long MAX_WAIT_SECONDS = 60;
+
+    private final CancellationToken cancellationToken = new CancellationToken();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final Thread shutdownHook;
+
+    InterruptHandler() {
+        shutdownHook = new Thread(() -> {
+            cancellationToken.cancel();
+            try {
+                stopped.await(MAX_WAIT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "interrupt-handler");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    @Override
+    public void close() {
+        stopped.countDown();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // The process is already shutting down
+        }
+    }
+}
@@ -7,6 +7,7 @@ import se.yarin.cbhlib.Database;
 import se.yarin.cbhlib.entities.PlayerBase;
 import se.yarin.cbhlib.entities.PlayerEntity;
 import se.yarin.cbhlib.util.CBUtil;
+import se.yarin.morphy.cli.server.DatabaseHandle;
 
 import java.io.IOException;
 import java.util.concurrent.Callable;
@@ -22,17 +23,22 @@ public class Players extends BaseCommand implements Callable<Integer> {
     @CommandLine.Option(names = "--hex", description = "Show player key in hexadecimal")
     boolean hex = false;
 
+    @CommandLine.Option(names = "--sorted", description = "List the players in alphabetical order")
+    boolean sorted = false;
+
     @Override
     public Integer call() throws IOException {
         setupGlobalOptions();
 
         getDatabaseStream().forEach(file -> {
             log.info("Opening " + file);
-            try (Database db = Database.open(file)) {
+            try (DatabaseHandle handle = openDatabase(file)) {
+                Database db = handle.getDatabase();
 
                 PlayerBase players = db.getPlayerBase();
                 int count = 0;
-                for (PlayerEntity player : players.iterable()) {
+                Iterable<PlayerEntity> iterable = sorted ? players.iterableOrderedAscendingReadAhead() : players.iterable();
+                for (PlayerEntity player : iterable) {
                     if (count >= maxPlayers) break;
                     String line;
                     if (hex) {
@@ -0,0 +1,138 @@
+package se.yarin.morphy.cli.commands;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import picocli.CommandLine;
+import se.yarin.morphy.cli.server.MorphyServer;
+import se.yarin.morphy.cli.server.SharedDatabases;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+
+@CommandLine.Command(name = "serve", mixinStandardHelpOptions = true,
+        description = "Keeps databases open and runs commands sent with the --server option, to avoid the startup cost")
+public class Serve extends BaseCommand implements Callable<Integer> {
+
+    private static final Logger log = LogManager.getLogger();
+
+    // Only commands that don't modify the databases can be run on the server
+    private static final List<String> SERVED_COMMANDS = List.of("games", "players", "tournaments");
+
+    // Options that make the served commands write files, which the server shouldn't do on behalf of a client
+    private static final List<String> WRITE_OPTIONS = List.of("-o", "--output", "--overwrite", "--name-index-cache");
+
+    @CommandLine.Option(names = "--port", description = "The port to listen on (default is 8478)")
+    private int port = MorphyServer.DEFAULT_PORT;
+
+    @CommandLine.Option(names = "--in-memory", description = "Load the databases into memory")
+    private boolean inMemory = false;
+
+    @Override
+    public Integer call() throws IOException, InterruptedException {
+        setupGlobalOptions();
+
+        SharedDatabases databases = new SharedDatabases(inMemory);
+        for (File file : getDatabaseStream().collect(Collectors.toList())) {
+            try {
+                databases.add(file);
+            } catch (IOException e) {
+                System.err.println("IO error when opening " + file);
+            }
+        }
+
+        MorphyServer server = new MorphyServer(port,
+                (args, workingDirectory, out, err) -> runCommand(databases, args, workingDirectory, out, err));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            databases.close();
+        }));
+        server.start();
+        System.out.printf("Serving %d databases on port %d%n", databases.size(), server.getPort());
+
+        server.join();
+        return 0;
+    }
+
+    private int runCommand(SharedDatabases databases, String[] args, File workingDirectory,
+                           PrintStream out, PrintStream err) {
+        if (args.length == 0 || !SERVED_COMMANDS.contains(args[0])) {
+            err.println("Only these commands can be run on the server: " + String.join(", ", SERVED_COMMANDS));
+            return 2;
+        }
+        for (String arg : args) {
+            if (isWriteOption(arg)) {
+                err.println("Commands that write files can't be run on the server: " + arg);
+                return 2;
+            }
+        }
+
+        CommandLine commandLine = new CommandLine(new ChessBaseCommand(), new SharedDatabasesFactory(databases));
+        if (workingDirectory != null) {
+            // Relative paths are relative to the client
+            commandLine.registerConverter(File.class, value -> {
+                File file = new File(value);
+                return file.isAbsolute() ? file : new File(workingDirectory, value);
+            });
+        }
+        commandLine.setOut(new PrintWriter(out, true));
+        commandLine.setErr(new PrintWriter(err, true));
+
+        PrintStream systemOut = System.out, systemErr = System.err;
+        System.setOut(out);
+        System.setErr(err);
+        try {
+            return commandLine.execute(args);
+        } catch (RuntimeException e) {
+            log.error("Unexpected error when running command", e);
+            err.println("Unexpected error: " + e.getMessage());
+            return 1;
+        } finally {
+            System.setOut(systemOut);
+            System.setErr(systemErr);
+        }
+    }
+
+    /**
+     * Determines if an argument may be a write option. Short options can be clustered, like -vo,
+     * so any short option cluster containing a write option is considered a write option.
+     */
+    private static boolean isWriteOption(String arg) {
+        if (arg.startsWith("--")) {
+            int equals = arg.indexOf('=');
+            return WRITE_OPTIONS.contains(equals < 0 ? arg : arg.substring(0, equals));
+        }
+        if (arg.startsWith("-") && arg.length() > 1) {
+            for (String option : WRITE_OPTIONS) {
+                if (option.length() == 2 && arg.indexOf(option.charAt(1)) > 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the commands so they use the shared databases
+     */
+    private static class SharedDatabasesFactory implements CommandLine.IFactory {
+        private final SharedDatabases databases;
+
+        SharedDatabasesFactory(SharedDatabases databases) {
+            this.databases = databases;
+        }
+
+        @Override
+        public <K> K create(Class<K> cls) throws Exception {
+            K instance = CommandLine.defaultFactory().create(cls);
+            if (instance instanceof BaseCommand) {
+                ((BaseCommand) instance).setDatabaseProvider(databases);
+            }
+            return instance;
+        }
+    }
+}
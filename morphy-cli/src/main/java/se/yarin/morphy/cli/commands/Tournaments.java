@@ -13,15 +13,18 @@ import se.yarin.cbhlib.util.parser.Parser;
 import se.yarin.cbhlib.util.parser.Scanner;
 import se.yarin.morphy.cli.columns.RawTournamentColumn;
 import se.yarin.morphy.cli.columns.TournamentColumn;
+import se.yarin.morphy.cli.server.DatabaseHandle;
 import se.yarin.morphy.cli.tournaments.StdoutTournamentsSummary;
 import se.yarin.morphy.cli.tournaments.TournamentConsumer;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @CommandLine.Command(name = "tournaments", mixinStandardHelpOptions = true)
 public class Tournaments extends BaseCommand implements Callable<Integer> {
@@ -40,6 +43,12 @@ public class Tournaments extends BaseCommand implements Callable<Integer> {
     @CommandLine.Option(names = "--name", description = "Show only tournaments matching this search string")
     private String name;
 
+    @CommandLine.Option(names = "--ignore-case", description = "Ignore case and diacritics when matching the name")
+    private boolean ignoreCase = false;
+
+    @CommandLine.Option(names = "--contains", description = "Match tournaments with a name containing the search string anywhere, not only at the start")
+    private boolean contains = false;
+
     @CommandLine.Option(names = "--date", description = "Date range, e.g. '2015-10-' or '1960-1970'")
     private String dateRange;
 
@@ -81,18 +90,18 @@ public class Tournaments extends BaseCommand implements Callable<Integer> {
         TournamentConsumer tournamentConsumer = createTournamentConsumer();
         tournamentConsumer.init();
 
-        getDatabaseStream().forEach(file -> {
+        for (File file : getDatabaseStream().collect(Collectors.toList())) {
             log.info("Opening " + file);
-            try (Database db = Database.open(file)) {
+            try (DatabaseHandle handle = openDatabase(file)) {
+                Database db = handle.getDatabase();
                 tournamentConsumer.setCurrentDatabase(db);
-                TournamentSearcher tournamentSearcher = null;
+                TournamentSearcher tournamentSearcher;
                 try {
                     tournamentSearcher = createTournamentSearcher(db);
                 } catch (IllegalArgumentException e) {
                     System.err.println(e.getMessage());
-                    System.exit(1);
+                    return 1;
                 }
-                assert tournamentSearcher != null;
 
                 TournamentSearcher.SearchResult result = tournamentSearcher.search(limit, countAll, sorted, tournamentConsumer);
 
@@ -102,7 +111,7 @@ public class Tournaments extends BaseCommand implements Callable<Integer> {
             } catch (RuntimeException e) {
                 System.err.println("Unexpected error when processing " + file + ": " + e.getMessage());
             }
-        });
+        }
 
         tournamentConsumer.finish();
         return 0;
@@ -112,7 +121,7 @@ public class Tournaments extends BaseCommand implements Callable<Integer> {
         TournamentSearcher searcher = new TournamentSearcher(db.getTournamentBase());
 
         if (name != null) {
-            searcher.setSearchString(name, true, false);
+            searcher.setSearchString(name, !ignoreCase, false, contains);
         }
         if (dateRange != null) {
             searcher.setFromDate(DateRangeFilter.parseFromDate(dateRange));
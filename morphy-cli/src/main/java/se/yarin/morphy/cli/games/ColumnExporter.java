@@ -0,0 +1,103 @@
+package se.yarin.morphy.cli.games;
+
+import se.yarin.cbhlib.Game;
+import se.yarin.morphy.cli.columns.GameColumn;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Base class for exporting the values of a selected set of columns, one game per line.
+ *
+ * Only the columns that are exported are evaluated, so entities and data not needed by them are never loaded.
+ * The output is written through a large buffer to a file, or to stdout if no file is given.
+ */
+public abstract class ColumnExporter extends GameConsumerBase {
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    private final File file;
+    private final Writer writer;
+    protected final List<GameColumn> columns;
+    private final StringBuilder line = new StringBuilder();
+
+    private IOException writeException;
+    private int gamesExported = 0;
+
+    /**
+     * Creates a new column exporter
+     * @param file the file to write to, or null to write to stdout
+     * @param columns the columns to export
+     * @throws IOException if the file couldn't be opened
+     */
+    protected ColumnExporter(File file, List<GameColumn> columns) throws IOException {
+        if (columns.size() == 0) {
+            throw new IllegalArgumentException("No columns specified");
+        }
+        this.file = file;
+        this.columns = columns;
+        OutputStream stream = file == null ? System.out : new FileOutputStream(file);
+        this.writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+    }
+
+    /**
+     * Appends the header line, if any, without the line terminator
+     * @return true if there is a header line
+     */
+    protected abstract boolean formatHeader(StringBuilder sb);
+
+    /**
+     * Appends the line with the values of the columns of a game, without the line terminator
+     */
+    protected abstract void formatGame(StringBuilder sb, Game game);
+
+    @Override
+    public void init() {
+        if (formatHeader(line)) {
+            writeLine();
+        }
+    }
+
+    @Override
+    public void accept(Game game) {
+        formatGame(line, game);
+        writeLine();
+        gamesExported++;
+    }
+
+    private void writeLine() {
+        line.append('\n');
+        // After a write error, just skip the remaining games
+        if (writeException == null) {
+            try {
+                writer.append(line);
+            } catch (IOException e) {
+                writeException = e;
+            }
+        }
+        line.setLength(0);
+    }
+
+    @Override
+    public void finish() {
+        try {
+            if (file == null) {
+                writer.flush();
+            } else {
+                writer.close();
+            }
+        } catch (IOException e) {
+            if (writeException == null) {
+                writeException = e;
+            }
+        }
+        if (writeException != null) {
+            throw new UncheckedIOException("Failed to write to " + (file == null ? "stdout" : file), writeException);
+        }
+
+        if (file != null) {
+            System.out.printf("%d games exported to %s in %.2f s%n",
+                    gamesExported, file, totalSearchTime / 1000.0);
+        }
+    }
+}
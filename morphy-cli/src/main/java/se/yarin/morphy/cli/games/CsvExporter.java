@@ -0,0 +1,63 @@
+package se.yarin.morphy.cli.games;
+
+import se.yarin.cbhlib.Game;
+import se.yarin.morphy.cli.columns.GameColumn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Exports the selected columns of games as CSV (RFC 4180), with the field names of the columns in a header line.
+ */
+public class CsvExporter extends ColumnExporter {
+
+    public CsvExporter(File file, List<GameColumn> columns) throws IOException {
+        super(file, columns);
+    }
+
+    @Override
+    protected boolean formatHeader(StringBuilder sb) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            appendField(sb, columns.get(i).getFieldName());
+        }
+        return true;
+    }
+
+    @Override
+    protected void formatGame(StringBuilder sb, Game game) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            Object value = columns.get(i).getFieldValue(game);
+            if (value != null) {
+                appendField(sb, value.toString());
+            }
+        }
+    }
+
+    static void appendField(StringBuilder sb, String s) {
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            sb.append(s);
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+}
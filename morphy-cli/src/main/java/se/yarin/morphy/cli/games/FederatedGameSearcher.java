@@ -0,0 +1,241 @@
+package se.yarin.morphy.cli.games;
+
+import me.tongfei.progressbar.ProgressBar;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import se.yarin.cbhlib.Database;
+import se.yarin.cbhlib.Game;
+import se.yarin.cbhlib.exceptions.OperationCancelledException;
+import se.yarin.cbhlib.games.search.GameSearcher;
+import se.yarin.cbhlib.operations.CancellationToken;
+import se.yarin.morphy.cli.server.DatabaseHandle;
+import se.yarin.morphy.cli.server.DatabaseProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * Searches for games in multiple databases in parallel.
+ *
+ * The databases are opened and searched by a bounded pool of threads, while the hits are passed on to the
+ * game consumer on the calling thread in the same order as a sequential search would give them:
+ * all hits in the first database, then all hits in the second database etc.
+ * Each database has a small bounded queue of hits, so a search is throttled when the consumer is busy
+ * with the previous databases. A database is kept open until all its hits have been consumed.
+ *
+ * If a limit is given, it applies to the total number of hits over all databases,
+ * and the remaining searches are cancelled when it's been reached (unless all hits should be counted).
+ * Databases where the filters can tell that there can be no hits are skipped without searching.
+ */
+public class FederatedGameSearcher {
+    private static final Logger log = LogManager.getLogger();
+
+    private static final int MAX_PENDING_HITS_PER_DATABASE = 1000;
+
+    // Marks the end of the hits in a queue
+    private static final Object END_OF_HITS = new Object();
+
+    private final DatabaseProvider databaseProvider;
+    private final Function<Database, GameSearcher> searcherFactory;
+    private final int numThreads;
+    private final int limit;
+    private final boolean countAll;
+    private final boolean showProgressBar;
+
+    private final CancellationToken cancellationToken = new CancellationToken();
+    private ProgressBar progressBar;
+
+    /**
+     * Creates a new searcher
+     * @param databaseProvider provides the databases to search in
+     * @param searcherFactory creates the searcher for a database; may throw {@link IllegalArgumentException}
+     *                        if the search is invalid, in which case the whole search is aborted
+     * @param numThreads the maximum number of databases to search at the same time
+     * @param limit the maximum number of hits to consume in total, or 0 for no limit
+     * @param countAll if true, count all hits even after the limit has been reached
+     * @param showProgressBar if true, show a progress bar over all the games in all databases
+     */
+    public FederatedGameSearcher(DatabaseProvider databaseProvider, Function<Database, GameSearcher> searcherFactory,
+                                 int numThreads, int limit, boolean countAll, boolean showProgressBar) {
+        this.databaseProvider = databaseProvider;
+        this.searcherFactory = searcherFactory;
+        this.numThreads = numThreads;
+        this.limit = limit;
+        this.countAll = countAll;
+        this.showProgressBar = showProgressBar;
+    }
+
+    /**
+     * The search in a single database
+     */
+    private class DatabaseSearch implements Runnable {
+        private final File file;
+        private final BlockingQueue<Object> hits = new ArrayBlockingQueue<>(MAX_PENDING_HITS_PER_DATABASE);
+        private final CountDownLatch consumed = new CountDownLatch(1);
+        private int lastProgressId;
+        private volatile GameSearcher.SearchResult result;
+        private volatile Exception error;
+        private volatile IllegalArgumentException invalidSearch;
+
+        DatabaseSearch(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public void run() {
+            DatabaseHandle handle = null;
+            try {
+                if (cancellationToken.isCancelled()) {
+                    return;
+                }
+                log.info("Opening " + file);
+                handle = databaseProvider.open(file);
+                GameSearcher gameSearcher;
+                try {
+                    gameSearcher = searcherFactory.apply(handle.getDatabase());
+                } catch (IllegalArgumentException e) {
+                    invalidSearch = e;
+                    return;
+                }
+                // Stops the scan also when no more hits are found in this database
+                gameSearcher.setCancellationToken(cancellationToken);
+                int total = gameSearcher.getTotal();
+                if (progressBar != null) {
+                    synchronized (progressBar) {
+                        progressBar.maxHint(progressBar.getMax() + total);
+                    }
+                }
+                if (gameSearcher.hasNoPossibleHits()) {
+                    log.info("Skipping " + file + " since no games can match the search");
+                    result = new GameSearcher.SearchResult(0, 0, List.of(), 0);
+                } else {
+                    result = gameSearcher.search(countAll ? 0 : limit, countAll, this::put,
+                            progressBar == null ? null : this::updateProgress);
+                }
+                updateProgress(total);
+            } catch (OperationCancelledException e) {
+                // The hits are not needed anymore
+            } catch (IOException | RuntimeException e) {
+                error = e;
+            } finally {
+                try {
+                    putEnd();
+                    // The games must be consumed before the database is closed
+                    consumed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (handle != null) {
+                    try {
+                        handle.close();
+                    } catch (IOException e) {
+                        log.warn("Failed to close " + file, e);
+                    }
+                }
+            }
+        }
+
+        private void put(Game game) {
+            try {
+                while (!hits.offer(game, 100, TimeUnit.MILLISECONDS)) {
+                    cancellationToken.throwIfCancelled();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OperationCancelledException();
+            }
+            cancellationToken.throwIfCancelled();
+        }
+
+        private void putEnd() throws InterruptedException {
+            // The consumer always drains the queue until the end marker, so this won't block forever
+            hits.put(END_OF_HITS);
+        }
+
+        private void updateProgress(int gameId) {
+            if (progressBar != null && gameId > lastProgressId) {
+                progressBar.stepBy(gameId - lastProgressId);
+                lastProgressId = gameId;
+            }
+        }
+    }
+
+    /**
+     * Searches for games in all the given databases
+     * @param files the databases to search in
+     * @param gameConsumer the consumer of the hits; called only from the calling thread
+     * @throws IllegalArgumentException if the search is invalid
+     */
+    public void search(List<File> files, GameConsumer gameConsumer) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, numThreads), runnable -> {
+            Thread thread = new Thread(runnable, "database-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<DatabaseSearch> searches = new ArrayList<>();
+        for (File file : files) {
+            DatabaseSearch search = new DatabaseSearch(file);
+            searches.add(search);
+        }
+
+        progressBar = showProgressBar ? new ProgressBar("Games", 0) : null;
+        IllegalArgumentException invalidSearch = null;
+        try {
+            // The searches are started in order, so the one being consumed is always running or done
+            for (DatabaseSearch search : searches) {
+                executor.execute(search);
+            }
+            int consumedGames = 0;
+            for (DatabaseSearch search : searches) {
+                int consumedInDatabase = 0;
+                while (true) {
+                    Object hit = search.hits.take();
+                    if (hit == END_OF_HITS) {
+                        break;
+                    }
+                    if (limit == 0 || consumedGames < limit) {
+                        gameConsumer.accept((Game) hit);
+                        consumedGames += 1;
+                        consumedInDatabase += 1;
+                    }
+                    if (limit > 0 && consumedGames >= limit && !countAll) {
+                        cancellationToken.cancel();
+                    }
+                }
+                gameConsumer.databaseDone();
+                search.consumed.countDown();
+
+                if (search.invalidSearch != null) {
+                    // The search itself is invalid, so there's no point in searching the other databases
+                    if (invalidSearch == null) {
+                        invalidSearch = search.invalidSearch;
+                    }
+                    cancellationToken.cancel();
+                } else if (search.error instanceof IOException) {
+                    System.err.println("IO error when processing " + search.file);
+                } else if (search.error != null) {
+                    System.err.println("Unexpected error when processing " + search.file + ": " + search.error.getMessage());
+                } else if (search.result != null) {
+                    GameSearcher.SearchResult result = search.result;
+                    gameConsumer.searchDone(new GameSearcher.SearchResult(
+                            result.getTotalGames(), consumedInDatabase, result.getGames(), result.getElapsedTime()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancellationToken.cancel();
+        } finally {
+            executor.shutdownNow();
+            if (progressBar != null) {
+                progressBar.close();
+            }
+        }
+        if (invalidSearch != null) {
+            throw invalidSearch;
+        }
+    }
+}
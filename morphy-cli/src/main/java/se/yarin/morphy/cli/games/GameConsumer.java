@@ -8,6 +8,12 @@ import java.util.function.Consumer;
 public interface GameConsumer extends Consumer<Game> {
     void init();
 
+    /**
+     * Called when all hits in a database have been passed to the consumer, before the database is closed.
+     * Games that the consumer has held on to must be processed before this method returns.
+     */
+    void databaseDone();
+
     void searchDone(GameSearcher.SearchResult searchResult);
 
     void finish();
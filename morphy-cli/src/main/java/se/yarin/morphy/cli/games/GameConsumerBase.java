@@ -11,6 +11,10 @@ public abstract class GameConsumerBase implements GameConsumer {
     public void init() {
     }
 
+    @Override
+    public void databaseDone() {
+    }
+
     @Override
     public void searchDone(GameSearcher.SearchResult result) {
         totalFoundGames += result.getTotalGames();
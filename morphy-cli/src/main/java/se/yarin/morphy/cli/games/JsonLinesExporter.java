@@ -0,0 +1,73 @@
+package se.yarin.morphy.cli.games;
+
+import se.yarin.cbhlib.Game;
+import se.yarin.morphy.cli.columns.GameColumn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Exports the selected columns of games as JSON lines, one JSON object per game
+ * with the field names of the columns as keys.
+ */
+public class JsonLinesExporter extends ColumnExporter {
+    private final String[] keys;
+
+    public JsonLinesExporter(File file, List<GameColumn> columns) throws IOException {
+        super(file, columns);
+        this.keys = new String[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            StringBuilder sb = new StringBuilder();
+            appendString(sb, columns.get(i).getFieldName());
+            keys[i] = sb.append(':').toString();
+        }
+    }
+
+    @Override
+    protected boolean formatHeader(StringBuilder sb) {
+        return false;
+    }
+
+    @Override
+    protected void formatGame(StringBuilder sb, Game game) {
+        sb.append('{');
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(keys[i]);
+            Object value = columns.get(i).getFieldValue(game);
+            if (value == null) {
+                sb.append("null");
+            } else if (value instanceof Number) {
+                sb.append(value);
+            } else {
+                appendString(sb, value.toString());
+            }
+        }
+        sb.append('}');
+    }
+
+    static void appendString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,233 @@
+package se.yarin.morphy.cli.games;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import se.yarin.cbhlib.Database;
+import se.yarin.cbhlib.Game;
+import se.yarin.cbhlib.annotations.AnnotationsSerializer;
+import se.yarin.cbhlib.exceptions.ChessBaseException;
+import se.yarin.cbhlib.pgn.PgnFormatter;
+import se.yarin.chess.GameHeaderModel;
+import se.yarin.chess.GameModel;
+import se.yarin.chess.GameMovesModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Exports games to a PGN file.
+ *
+ * The game headers and the raw move and annotation data are read on the search thread,
+ * in batches so the entities referenced by the games can be fetched together, while the moves are decoded and formatted as PGN by a pool of worker threads.
+ * A separate writer thread writes the formatted games to the file in the same order as they were found.
+ * The number of games being processed at the same time is bounded, so the search is
+ * throttled if the workers or the writer can't keep up.
+ */
+public class PgnExporter extends GameConsumerBase {
+    private static final Logger log = LogManager.getLogger();
+
+    private static final int WRITE_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final int MAX_PENDING_GAMES_PER_THREAD = 256;
+    private static final int HEADER_BATCH_SIZE = 256;
+
+    // Marks the end of the games in the write queue
+    private static final Future<byte[]> END_OF_GAMES = CompletableFuture.completedFuture(null);
+
+    private final File file;
+    private final FileChannel channel;
+    private final ExecutorService workers;
+    private final BlockingQueue<Future<byte[]>> writeQueue;
+    private final Thread writerThread;
+    private final ThreadLocal<PgnFormatter> formatters = ThreadLocal.withInitial(PgnFormatter::new);
+    // Games waiting for their headers to be resolved; always from the same database,
+    // since the batch is flushed before the next database is searched
+    private final List<Game> headerBatch = new ArrayList<>(HEADER_BATCH_SIZE);
+
+    private volatile IOException writeException;
+    private int gamesExported = 0;
+    private long bytesWritten = 0;
+
+    public PgnExporter(File file, boolean overwrite, int numThreads) throws IOException {
+        this.file = file;
+        this.channel = overwrite
+                ? FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+                : FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.workers = Executors.newFixedThreadPool(numThreads, runnable -> {
+            Thread thread = new Thread(runnable, "pgn-encoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writeQueue = new ArrayBlockingQueue<>(numThreads * MAX_PENDING_GAMES_PER_THREAD);
+        this.writerThread = new Thread(this::writeGames, "pgn-writer");
+    }
+
+    @Override
+    public void init() {
+        writerThread.start();
+    }
+
+    @Override
+    public void accept(Game game) {
+        if (game.isGuidingText()) {
+            // Guiding texts have no PGN representation
+            return;
+        }
+
+        headerBatch.add(game);
+        if (headerBatch.size() >= HEADER_BATCH_SIZE) {
+            flushHeaderBatch();
+        }
+    }
+
+    @Override
+    public void databaseDone() {
+        // The database is closed after this, so the games can't be resolved later
+        flushHeaderBatch();
+    }
+
+    private void flushHeaderBatch() {
+        if (headerBatch.isEmpty()) {
+            return;
+        }
+        Database database = headerBatch.get(0).getDatabase();
+        List<GameHeaderModel> headers = null;
+        try {
+            headers = database.getGameHeaderModels(headerBatch);
+        } catch (ChessBaseException | RuntimeException e) {
+            // Get the headers one by one instead, so only the broken games are skipped
+            log.debug("Failed to get the game headers of a batch of games", e);
+        }
+        for (int i = 0; i < headerBatch.size(); i++) {
+            exportGame(headerBatch.get(i), headers == null ? null : headers.get(i));
+        }
+        headerBatch.clear();
+    }
+
+    private void exportGame(Game game, GameHeaderModel resolvedHeader) {
+        GameHeaderModel header;
+        ByteBuffer movesBlob, annotationsBlob;
+        Database database = game.getDatabase();
+        try {
+            header = resolvedHeader != null ? resolvedHeader : database.getGameHeaderModel(game);
+            movesBlob = game.getMovesBlob();
+            annotationsBlob = game.getAnnotationOffset() > 0 ? game.getAnnotationsBlob() : null;
+        } catch (ChessBaseException | RuntimeException e) {
+            log.warn("Failed to get game " + game.getId() + " in the searched database", e);
+            return;
+        }
+
+        int gameId = game.getId();
+        Future<byte[]> pgn = workers.submit(() -> encodeGame(database, gameId, header, movesBlob, annotationsBlob));
+        try {
+            writeQueue.put(pgn);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while exporting games", e);
+        }
+        gamesExported++;
+    }
+
+    private byte[] encodeGame(Database database, int gameId, GameHeaderModel header,
+                              ByteBuffer movesBlob, ByteBuffer annotationsBlob) {
+        GameMovesModel moves;
+        try {
+            moves = database.getMovesBase().decodeMoves(movesBlob, gameId);
+        } catch (ChessBaseException e) {
+            log.warn("Failed to decode the moves of game " + gameId + " in the searched database", e);
+            return null;
+        }
+        if (annotationsBlob != null) {
+            AnnotationsSerializer.deserializeAnnotations(annotationsBlob, moves);
+        }
+        StringBuilder pgn = formatters.get().format(new GameModel(header, moves));
+        return pgn.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void writeGames() {
+        ByteBuffer buf = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        try {
+            while (true) {
+                Future<byte[]> next = writeQueue.take();
+                if (next == END_OF_GAMES) {
+                    break;
+                }
+                byte[] pgn;
+                try {
+                    pgn = next.get();
+                } catch (ExecutionException e) {
+                    log.warn("Failed to export game", e.getCause());
+                    continue;
+                }
+                // After a write error, keep draining the queue so the search doesn't block
+                if (pgn == null || writeException != null) {
+                    continue;
+                }
+                try {
+                    if (pgn.length > buf.remaining()) {
+                        flush(buf);
+                    }
+                    if (pgn.length > buf.capacity()) {
+                        write(ByteBuffer.wrap(pgn));
+                    } else {
+                        buf.put(pgn);
+                    }
+                } catch (IOException e) {
+                    writeException = e;
+                }
+            }
+            if (writeException == null) {
+                flush(buf);
+            }
+        } catch (IOException e) {
+            writeException = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flush(ByteBuffer buf) throws IOException {
+        buf.flip();
+        write(buf);
+        buf.clear();
+    }
+
+    private void write(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            bytesWritten += channel.write(buf);
+        }
+    }
+
+    @Override
+    public void finish() {
+        try {
+            flushHeaderBatch();
+            writeQueue.put(END_OF_GAMES);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while exporting games", e);
+        } finally {
+            workers.shutdownNow();
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close output file");
+        }
+        if (writeException != null) {
+            throw new UncheckedIOException("Failed to write to " + file, writeException);
+        }
+
+        System.out.printf("%d games exported to %s (%d bytes) in %.2f s%n",
+                gamesExported, file, bytesWritten, totalSearchTime / 1000.0);
+    }
+}
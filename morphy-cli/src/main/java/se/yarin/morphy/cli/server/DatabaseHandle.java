@@ -0,0 +1,29 @@
+package se.yarin.morphy.cli.server;
+
+import se.yarin.cbhlib.Database;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A database opened by a {@link DatabaseProvider}.
+ * Closing the handle doesn't necessarily close the database; that's up to the provider.
+ */
+public class DatabaseHandle implements Closeable {
+    private final Database database;
+    private final Closeable onClose;
+
+    DatabaseHandle(Database database, Closeable onClose) {
+        this.database = database;
+        this.onClose = onClose;
+    }
+
+    public Database getDatabase() {
+        return database;
+    }
+
+    @Override
+    public void close() throws IOException {
+        onClose.close();
+    }
+}
@@ -0,0 +1,27 @@
+package se.yarin.morphy.cli.server;
+
+import se.yarin.cbhlib.Database;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Provides the databases that the commands operate on.
+ */
+public interface DatabaseProvider {
+    /**
+     * Opens a database. The returned handle must always be closed when the caller is done with the database.
+     * @param file the database file
+     * @return a handle to the opened database
+     * @throws IOException if an IO error occurred when opening the database
+     */
+    DatabaseHandle open(File file) throws IOException;
+
+    /**
+     * A provider that opens the database from disk every time, and closes it when the handle is closed
+     */
+    DatabaseProvider DIRECT = file -> {
+        Database database = Database.open(file);
+        return new DatabaseHandle(database, database::close);
+    };
+}
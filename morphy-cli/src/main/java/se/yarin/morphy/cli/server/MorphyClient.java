@@ -0,0 +1,80 @@
+package se.yarin.morphy.cli.server;
+
+import java.io.*;
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A thin client that runs a command on a {@link MorphyServer} and prints its output as if it was run locally.
+ * The server must run as the same user, since the client authenticates with the secret the server wrote
+ * to the user's home directory.
+ */
+public final class MorphyClient {
+    private MorphyClient() { }
+
+    /**
+     * Runs a command on the server
+     * @param server the port of the server on localhost, a host:port or a URL
+     * @param args the command line arguments
+     * @return the exit code of the command
+     */
+    public static int run(String server, String[] args) {
+        URL url;
+        try {
+            url = new URL(serverUrl(server) + ServerProtocol.RUN_PATH);
+        } catch (MalformedURLException e) {
+            System.err.println("Invalid server address: " + server);
+            return 2;
+        }
+        int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+        String secret = ServerProtocol.readSecret(port);
+        if (secret == null) {
+            System.err.println("Could not read the secret of the morphy server from " + ServerProtocol.secretFile(port));
+            return 1;
+        }
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", ServerProtocol.CONTENT_TYPE);
+            connection.setRequestProperty(ServerProtocol.SECRET_HEADER, secret);
+            connection.setRequestProperty(ServerProtocol.WORKING_DIRECTORY_HEADER,
+                    URLEncoder.encode(new File("").getAbsolutePath(), StandardCharsets.UTF_8));
+            try (OutputStream output = connection.getOutputStream()) {
+                ServerProtocol.writeArguments(output, args);
+            }
+            int responseCode = connection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_FORBIDDEN) {
+                System.err.println("The morphy server at " + url + " refused the secret in " + ServerProtocol.secretFile(port));
+                return 1;
+            }
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                System.err.println("The morphy server at " + url + " responded with status " + responseCode);
+                return 1;
+            }
+            try (InputStream input = new BufferedInputStream(connection.getInputStream())) {
+                return ServerProtocol.readFrames(input, System.out, System.err);
+            }
+        } catch (ConnectException e) {
+            System.err.println("Could not connect to the morphy server at " + url);
+            return 1;
+        } catch (IOException e) {
+            System.err.println("Lost connection to the morphy server at " + url);
+            return 1;
+        }
+    }
+
+    private static String serverUrl(String server) {
+        if (server.contains("://")) {
+            return server;
+        }
+        if (server.chars().allMatch(Character::isDigit)) {
+            return "http://localhost:" + server;
+        }
+        return "http://" + server;
+    }
+}
@@ -0,0 +1,146 @@
+package se.yarin.morphy.cli.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A server that runs morphy commands on behalf of {@link MorphyClient}, so that the commands
+ * don't have to pay for the JVM startup and opening the databases every time.
+ *
+ * The server only listens on the loopback interface, and only runs commands from clients that can read
+ * the secret it writes to a file only readable by the user, see {@link ServerProtocol}. The output of a command is streamed back to the client
+ * while it runs. Commands are run one at a time, since they write to {@link System#out} and share the databases.
+ */
+public class MorphyServer {
+    private static final Logger log = LogManager.getLogger();
+
+    public static final int DEFAULT_PORT = 8478;
+
+    /**
+     * Runs a command
+     */
+    public interface CommandRunner {
+        /**
+         * @param args the command line arguments
+         * @param workingDirectory the working directory of the client, or null if not known
+         * @param out the stream to write the standard output of the command to
+         * @param err the stream to write the error output of the command to
+         * @return the exit code of the command
+         */
+        int run(String[] args, File workingDirectory, PrintStream out, PrintStream err);
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final CommandRunner runner;
+    private final Object commandLock = new Object();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private byte[] secret;
+
+    public MorphyServer(int port, CommandRunner runner) throws IOException {
+        this.runner = runner;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "morphy-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(ServerProtocol.RUN_PATH, this::handleRun);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Starts the server
+     * @throws IOException if the file with the secret of the server couldn't be written
+     */
+    public void start() throws IOException {
+        secret = ServerProtocol.createSecret(getPort()).getBytes(StandardCharsets.US_ASCII);
+        server.start();
+        log.info("Listening on " + server.getAddress() + " with the secret in " + ServerProtocol.secretFile(getPort()));
+    }
+
+    /**
+     * Stops the server. Commands that are running are not interrupted, but their output is lost.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+        try {
+            Files.deleteIfExists(ServerProtocol.secretFile(getPort()).toPath());
+        } catch (IOException e) {
+            log.warn("Failed to delete " + ServerProtocol.secretFile(getPort()), e);
+        }
+        stopped.countDown();
+    }
+
+    /**
+     * Waits until the server has been stopped
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public void join() throws InterruptedException {
+        stopped.await();
+    }
+
+    private void handleRun(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            // Plain cross-origin form posts from a browser can't have this content type
+            if (!ServerProtocol.CONTENT_TYPE.equals(exchange.getRequestHeaders().getFirst("Content-Type"))) {
+                exchange.sendResponseHeaders(415, -1);
+                return;
+            }
+            String requestSecret = exchange.getRequestHeaders().getFirst(ServerProtocol.SECRET_HEADER);
+            if (requestSecret == null
+                    || !MessageDigest.isEqual(secret, requestSecret.getBytes(StandardCharsets.US_ASCII))) {
+                log.warn("Refused a request without the right secret from " + exchange.getRemoteAddress());
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+            String[] args = ServerProtocol.readArguments(exchange.getRequestBody());
+            String workingDirectory = exchange.getRequestHeaders().getFirst(ServerProtocol.WORKING_DIRECTORY_HEADER);
+
+            exchange.sendResponseHeaders(200, 0);
+            ServerProtocol.FrameWriter writer = new ServerProtocol.FrameWriter(exchange.getResponseBody());
+            PrintStream out = new PrintStream(new BufferedOutputStream(writer.stream(ServerProtocol.FRAME_STDOUT)),
+                    false, StandardCharsets.UTF_8);
+            PrintStream err = new PrintStream(writer.stream(ServerProtocol.FRAME_STDERR), true, StandardCharsets.UTF_8);
+
+            int exitCode;
+            synchronized (commandLock) {
+                long start = System.currentTimeMillis();
+                exitCode = runner.run(args,
+                        workingDirectory == null ? null : new File(URLDecoder.decode(workingDirectory, StandardCharsets.UTF_8)),
+                        out, err);
+                log.info(String.format("Ran %s in %d ms (exit code %d)",
+                        String.join(" ", args), System.currentTimeMillis() - start, exitCode));
+            }
+            out.flush();
+            err.flush();
+            writer.writeExit(exitCode);
+        } catch (IOException e) {
+            log.warn("Failed to handle request", e);
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package se.yarin.morphy.cli.server;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+
+/**
+ * The protocol between the morphy server and the client.
+ *
+ * The client posts the command line arguments to {@link #RUN_PATH}, with the working directory in a header
+ * so that relative paths can be resolved. The request must have the content type {@link #CONTENT_TYPE},
+ * which a browser can't send cross-origin without the server agreeing to it, and the secret of the server
+ * in {@link #SECRET_HEADER}. The server writes its secret to a file that only the user can read,
+ * so only processes run by the same user can run commands. The response is a stream of frames, each starting with
+ * a frame type byte. Output frames are followed by the length and the bytes written to stdout or stderr,
+ * and the final exit frame is followed by the exit code of the command.
+ */
+final class ServerProtocol {
+    static final String RUN_PATH = "/run";
+    static final String WORKING_DIRECTORY_HEADER = "Morphy-Working-Directory";
+    static final String SECRET_HEADER = "Morphy-Secret";
+    static final String CONTENT_TYPE = "application/x-morphy-arguments";
+
+    static final byte FRAME_STDOUT = 1;
+    static final byte FRAME_STDERR = 2;
+    static final byte FRAME_EXIT = 3;
+
+    private ServerProtocol() { }
+
+    /**
+     * @param port the port of the server
+     * @return the file where the server listening on the port stores its secret
+     */
+    static File secretFile(int port) {
+        return new File(System.getProperty("user.home"), ".morphy/server-" + port + ".secret");
+    }
+
+    /**
+     * Generates a new secret and writes it to the secret file, readable only by the current user
+     * @param port the port of the server
+     * @return the secret
+     * @throws IOException if the secret file couldn't be written
+     */
+    static String createSecret(int port) throws IOException {
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder secret = new StringBuilder();
+        for (byte b : bytes) {
+            secret.append(String.format("%02x", b));
+        }
+
+        Path path = secretFile(port).toPath();
+        Path directory = path.getParent();
+        if (!Files.isDirectory(directory)) {
+            try {
+                Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } catch (UnsupportedOperationException e) {
+                Files.createDirectories(directory);
+            }
+        }
+        // Create a new file so that it never has broader permissions, not even before they're set
+        Files.deleteIfExists(path);
+        try {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(path);
+            File file = path.toFile();
+            if (!file.setReadable(false, false) || !file.setReadable(true, true)
+                    || !file.setWritable(false, false) || !file.setWritable(true, true)) {
+                Files.delete(path);
+                throw new IOException("Failed to restrict the permissions of " + path);
+            }
+        }
+        Files.writeString(path, secret);
+        return secret.toString();
+    }
+
+    /**
+     * @param port the port of the server
+     * @return the secret of the server listening on the port, or null if it couldn't be read
+     */
+    static String readSecret(int port) {
+        try {
+            return Files.readString(secretFile(port).toPath()).trim();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    static void writeArguments(OutputStream stream, String[] args) throws IOException {
+        DataOutputStream output = new DataOutputStream(stream);
+        output.writeInt(args.length);
+        for (String arg : args) {
+            output.writeUTF(arg);
+        }
+        output.flush();
+    }
+
+    static String[] readArguments(InputStream stream) throws IOException {
+        DataInputStream input = new DataInputStream(stream);
+        int count = input.readInt();
+        if (count < 0 || count > 10000) {
+            throw new IOException("Invalid number of arguments: " + count);
+        }
+        String[] args = new String[count];
+        for (int i = 0; i < count; i++) {
+            args[i] = input.readUTF();
+        }
+        return args;
+    }
+
+    /**
+     * Reads the frames in a response until the exit frame
+     * @param stream the response stream
+     * @param out the stream to write the stdout frames to
+     * @param err the stream to write the stderr frames to
+     * @return the exit code of the command
+     * @throws IOException if the response ended before the exit frame
+     */
+    static int readFrames(InputStream stream, OutputStream out, OutputStream err) throws IOException {
+        DataInputStream input = new DataInputStream(stream);
+        byte[] buf = new byte[8192];
+        while (true) {
+            byte type = input.readByte();
+            if (type == FRAME_EXIT) {
+                return input.readInt();
+            }
+            if (type != FRAME_STDOUT && type != FRAME_STDERR) {
+                throw new IOException("Invalid frame type: " + type);
+            }
+            OutputStream target = type == FRAME_STDOUT ? out : err;
+            int length = input.readInt();
+            while (length > 0) {
+                int read = input.read(buf, 0, Math.min(length, buf.length));
+                if (read < 0) {
+                    throw new EOFException();
+                }
+                target.write(buf, 0, read);
+                length -= read;
+            }
+            target.flush();
+        }
+    }
+
+    /**
+     * Writes frames to a response stream
+     */
+    static class FrameWriter {
+        private final DataOutputStream output;
+
+        FrameWriter(OutputStream stream) {
+            this.output = new DataOutputStream(stream);
+        }
+
+        /**
+         * @return a stream where every write becomes an output frame of the given type
+         */
+        OutputStream stream(byte type) {
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    if (len > 0) {
+                        writeFrame(type, b, off, len);
+                    }
+                }
+            };
+        }
+
+        private synchronized void writeFrame(byte type, byte[] b, int off, int len) throws IOException {
+            output.writeByte(type);
+            output.writeInt(len);
+            output.write(b, off, len);
+            output.flush();
+        }
+
+        synchronized void writeExit(int exitCode) throws IOException {
+            output.writeByte(FRAME_EXIT);
+            output.writeInt(exitCode);
+            output.flush();
+        }
+    }
+}
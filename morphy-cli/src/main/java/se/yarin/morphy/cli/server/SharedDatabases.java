@@ -0,0 +1,73 @@
+package se.yarin.morphy.cli.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import se.yarin.cbhlib.Database;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A set of databases that are kept open between commands, so that
+ * repeated queries don't have to open them again and get the benefit of warm caches.
+ * Databases not in the set are opened from disk, and closed again when the handle is closed.
+ *
+ * The shared databases are only used for reading; the commands using them must not modify them.
+ */
+public class SharedDatabases implements DatabaseProvider, AutoCloseable {
+    private static final Logger log = LogManager.getLogger();
+
+    private final Map<File, Database> databases = new HashMap<>();
+    private final boolean inMemory;
+
+    /**
+     * Creates a new empty set of shared databases
+     * @param inMemory if true, the databases are loaded into memory when added
+     */
+    public SharedDatabases(boolean inMemory) {
+        this.inMemory = inMemory;
+    }
+
+    /**
+     * Opens a database and keeps it open until this set is closed
+     * @param file the database file
+     * @throws IOException if an IO error occurred when opening the database
+     */
+    public synchronized void add(File file) throws IOException {
+        File key = file.getCanonicalFile();
+        if (!databases.containsKey(key)) {
+            log.info("Opening " + file);
+            databases.put(key, inMemory ? Database.openInMemory(file) : Database.open(file));
+        }
+    }
+
+    public synchronized int size() {
+        return databases.size();
+    }
+
+    @Override
+    public DatabaseHandle open(File file) throws IOException {
+        Database database;
+        synchronized (this) {
+            database = databases.get(file.getCanonicalFile());
+        }
+        if (database == null) {
+            return DIRECT.open(file);
+        }
+        return new DatabaseHandle(database, () -> {});
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Map.Entry<File, Database> entry : databases.entrySet()) {
+            try {
+                entry.getValue().close();
+            } catch (IOException e) {
+                log.warn("Failed to close " + entry.getKey(), e);
+            }
+        }
+        databases.clear();
+    }
+}
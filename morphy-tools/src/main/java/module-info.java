@@ -2,5 +2,4 @@ module se.yarin.morphy.tools {
     requires se.yarin.morphy.cbh;
     requires org.apache.logging.log4j;
     requires org.apache.logging.log4j.core;
-    requires java.sql;
 }
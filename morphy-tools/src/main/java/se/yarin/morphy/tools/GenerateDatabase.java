@@ -0,0 +1,83 @@
+package se.yarin.morphy.tools;
+
+import se.yarin.cbhlib.BulkGameWriter;
+import se.yarin.cbhlib.Database;
+import se.yarin.cbhlib.exceptions.ChessBaseInvalidDataException;
+import se.yarin.chess.GameModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Creates a database with synthetic games, for performance testing without depending on licensed databases.
+ *
+ * Usage: GenerateDatabase &lt;database.cbh&gt; &lt;number of games&gt; [seed] [threads]
+ *
+ * The games are generated by {@link SyntheticGameGenerator} in batches in a pool of threads,
+ * and added in order through a {@link BulkGameWriter}, so the same seed and number of games
+ * always gives the same database regardless of the number of threads.
+ */
+public class GenerateDatabase {
+    private static final int BATCH_SIZE = 250;
+    private static final int MAX_PENDING_BATCHES_PER_THREAD = 4;
+    private static final int PROGRESS_INTERVAL = 100000;
+
+    public static void main(String[] args)
+            throws IOException, ChessBaseInvalidDataException, InterruptedException, ExecutionException {
+        if (args.length < 2 || args.length > 4) {
+            System.err.println("Usage: GenerateDatabase <database.cbh> <number of games> [seed] [threads]");
+            System.exit(1);
+        }
+        File file = new File(args[0]);
+        int numGames = Integer.parseInt(args[1]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        int numThreads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        if (file.exists()) {
+            System.err.println(file + " already exists");
+            System.exit(1);
+        }
+
+        long start = System.currentTimeMillis();
+        SyntheticGameGenerator generator = new SyntheticGameGenerator(numGames, seed);
+        ExecutorService workers = Executors.newFixedThreadPool(numThreads, runnable -> {
+            Thread thread = new Thread(runnable, "game-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (Database db = Database.create(file, true);
+             BulkGameWriter writer = new BulkGameWriter(db)) {
+            // The batches are consumed in the order they were submitted, so the games are added in index order
+            ArrayDeque<Future<List<GameModel>>> pending = new ArrayDeque<>();
+            int nextIndex = 0, numAdded = 0;
+            while (numAdded < numGames) {
+                while (nextIndex < numGames && pending.size() < numThreads * MAX_PENDING_BATCHES_PER_THREAD) {
+                    int fromIndex = nextIndex, toIndex = Math.min(numGames, nextIndex + BATCH_SIZE);
+                    pending.add(workers.submit(() -> generator.getGames(fromIndex, toIndex)));
+                    nextIndex = toIndex;
+                }
+                for (GameModel game : pending.remove().get()) {
+                    writer.add(game);
+                    numAdded++;
+                }
+                if (numAdded % PROGRESS_INTERVAL == 0 && numAdded < numGames) {
+                    long elapsed = Math.max(1, System.currentTimeMillis() - start);
+                    System.out.printf("%d games added (%.0f games/s)%n", numAdded, numAdded * 1000.0 / elapsed);
+                }
+            }
+
+            System.out.printf("Created %s with %d games, %d players, %d tournaments, %d annotators, %d sources and %d teams in %.1f s%n",
+                    file, db.getHeaderBase().size(), db.getPlayerBase().getCount(), db.getTournamentBase().getCount(),
+                    db.getAnnotatorBase().getCount(), db.getSourceBase().getCount(), db.getTeamBase().getCount(),
+                    (System.currentTimeMillis() - start) / 1000.0);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+}
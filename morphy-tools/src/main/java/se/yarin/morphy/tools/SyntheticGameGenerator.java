@@ -0,0 +1,342 @@
+package se.yarin.morphy.tools;
+
+import se.yarin.cbhlib.util.GameGenerator;
+import se.yarin.chess.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic games with realistic distributions of the meta data and the game contents,
+ * for creating large databases to test the performance on.
+ *
+ * The players, tournaments, annotators, sources and teams are taken from pools that are created up front,
+ * sized after the number of games. How often each entity occurs follows a Zipf-Mandelbrot distribution,
+ * so a few players and tournaments occur in a lot of games while most occur in only a few.
+ * Game lengths are log-normally distributed. A minority of the games are annotated, with a skewed
+ * annotation density and variations that are nested a few levels deep.
+ *
+ * A game only depends on the seed and its index, so the games can be generated in any order
+ * and in any number of threads and still give the same database.
+ */
+public class SyntheticGameGenerator {
+    // Roughly the ratios in large real databases
+    private static final int GAMES_PER_PLAYER = 15;
+    private static final int GAMES_PER_TOURNAMENT = 40;
+    private static final int NUM_ANNOTATORS = 300;
+    private static final int NUM_SOURCES = 1000;
+    private static final int NUM_TEAMS = 2000;
+
+    private static final double MEDIAN_PLY = 80;
+    private static final double PLY_SIGMA = 0.45;
+    private static final int MIN_PLY = 10, MAX_PLY = 400;
+
+    private static final double TEAM_GAME_PROBABILITY = 0.05;
+    private static final double ANNOTATED_GAME_PROBABILITY = 0.1;
+    // Of the annotated games
+    private static final double VARIATIONS_PROBABILITY = 0.6;
+    private static final double SUB_VARIATIONS_PROBABILITY = 0.3;
+    private static final int MAX_VARIATION_DEPTH = 4;
+    private static final double MEAN_VARIATION_LENGTH = 6;
+
+    private static final String[] SYLLABLES = new String[] {
+        "an", "ber", "ca", "dor", "el", "fen", "gar", "hol", "in", "ka",
+        "lev", "man", "nov", "or", "pet", "ro", "san", "tek", "ul", "vic",
+        "wal", "yan", "zim", "bra", "che", "dri", "ste", "kov", "ski", "son",
+        "berg", "ler", "mi", "ta", "ru", "go", "shi", "ni", "la", "vo" };
+
+    private static final String[] FIRST_NAMES = new String[] {
+        "Magnus", "Anna", "Viktor", "Judit", "Boris", "Elena", "Peter", "Maria", "Levon", "Alexandra",
+        "Hikaru", "Wenjun", "Sergey", "Nana", "David", "Irina", "Jan", "Kateryna", "Anish", "Humpy",
+        "Vladimir", "Pia", "Richard", "Zhu", "Fabiano", "Nino", "Teimour", "Ju", "Wesley", "Hou",
+        "Alexander", "Valentina", "Pavel", "Antoaneta", "Ian", "Mariya", "Jorden", "Harika", "Vasyl", "Lei" };
+
+    private static final String[] CITIES = new String[] {
+        "Wijk aan Zee", "Linares", "Dortmund", "Biel", "Hastings", "Reykjavik", "Moscow", "London",
+        "Stavanger", "Shamkir", "Saint Louis", "Bilbao", "Gibraltar", "Sitges", "Cappelle", "Budapest",
+        "Prague", "Warsaw", "Berlin", "Paris", "Amsterdam", "Stockholm", "Oslo", "Copenhagen",
+        "Helsinki", "Tallinn", "Riga", "Vilnius", "Minsk", "Kiev", "Belgrade", "Zagreb", "Novi Sad",
+        "Sarajevo", "Sofia", "Bucharest", "Athens", "Istanbul", "Baku", "Tbilisi", "Yerevan", "Tashkent",
+        "Chennai", "Delhi", "Beijing", "Shanghai", "Tokyo", "Manila", "Jakarta", "Sydney", "Melbourne",
+        "Cairo", "Tunis", "Havana", "Mexico City", "Buenos Aires", "Sao Paulo", "New York", "Philadelphia",
+        "Reno", "Toronto", "Montreal" };
+
+    private static final String[] EVENT_TYPES = new String[] {
+        "", "", "", "", "op", "ch", "Rapid", "Blitz", "Open", "Masters", "Cup", "ol" };
+
+    private static final String[] CLUB_SUFFIXES = new String[] { "SK", "SC", "SV", "CC", "Chess Club" };
+
+    private static class Tournament {
+        private final String title;
+        private final String site;
+        private final Date startDate;
+        private final int rounds;
+
+        Tournament(String title, String site, Date startDate, int rounds) {
+            this.title = title;
+            this.site = site;
+            this.startDate = startDate;
+            this.rounds = rounds;
+        }
+    }
+
+    /**
+     * A Zipf-Mandelbrot distribution over ranks 0 to n-1,
+     * where the probability of rank k is proportional to 1 / (k + 1 + offset)^exponent
+     */
+    private static class ZipfDistribution {
+        private final double[] cumulative;
+
+        ZipfDistribution(int n, double exponent, double offset) {
+            cumulative = new double[n];
+            double sum = 0;
+            for (int k = 0; k < n; k++) {
+                sum += 1.0 / Math.pow(k + 1 + offset, exponent);
+                cumulative[k] = sum;
+            }
+            for (int k = 0; k < n; k++) {
+                cumulative[k] /= sum;
+            }
+        }
+
+        int sample(Random random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return Math.min(index, cumulative.length - 1);
+        }
+    }
+
+    private final long seed;
+
+    private final String[] playerNames;
+    private final int[] playerElos;
+    private final Tournament[] tournaments;
+    private final String[] annotators;
+    private final String[] sources;
+    private final String[] teams;
+
+    private final ZipfDistribution playerDistribution;
+    private final ZipfDistribution tournamentDistribution;
+    private final ZipfDistribution annotatorDistribution;
+    private final ZipfDistribution sourceDistribution;
+    private final ZipfDistribution teamDistribution;
+
+    /**
+     * Creates a generator
+     * @param numGames the number of games that will be generated, which determines the number of entities
+     * @param seed the seed that all the games are derived from
+     */
+    public SyntheticGameGenerator(int numGames, long seed) {
+        this.seed = seed;
+        Random random = new Random(seed);
+
+        int numPlayers = Math.max(50, numGames / GAMES_PER_PLAYER);
+        playerNames = new String[numPlayers];
+        playerElos = new int[numPlayers];
+        HashSet<String> names = new HashSet<>();
+        for (int i = 0; i < numPlayers; i++) {
+            do {
+                playerNames[i] = randomSurname(random) + ", " + FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            } while (!names.add(playerNames[i]));
+            // The most frequent players are the strongest ones, and the weakest are unrated
+            int elo = (int) (2850 - 150 * Math.log(1 + i / 20.0) + random.nextGaussian() * 40);
+            playerElos[i] = elo < 1400 ? 0 : elo;
+        }
+
+        int numTournaments = Math.max(5, numGames / GAMES_PER_TOURNAMENT);
+        tournaments = new Tournament[numTournaments];
+        names.clear();
+        for (int i = 0; i < numTournaments; i++) {
+            String city, title;
+            Date startDate;
+            do {
+                city = CITIES[random.nextInt(CITIES.length)];
+                String type = EVENT_TYPES[random.nextInt(EVENT_TYPES.length)];
+                // Recent years are more common
+                double age = random.nextDouble();
+                int year = 2020 - (int) (70 * age * age);
+                startDate = new Date(year, random.nextInt(12) + 1, random.nextInt(20) + 1);
+                title = (type.isEmpty() ? city : city + " " + type) + " " + year;
+            } while (!names.add(title + "|" + startDate));
+            tournaments[i] = new Tournament(title, city, startDate, 5 + random.nextInt(9));
+        }
+
+        annotators = new String[NUM_ANNOTATORS];
+        names.clear();
+        for (int i = 0; i < NUM_ANNOTATORS; i++) {
+            do {
+                annotators[i] = randomSurname(random) + ", " + (char) ('A' + random.nextInt(26));
+            } while (!names.add(annotators[i]));
+        }
+
+        sources = new String[NUM_SOURCES];
+        for (int i = 0; i < NUM_SOURCES; i++) {
+            sources[i] = "CBM " + (NUM_SOURCES - i);
+        }
+
+        teams = new String[NUM_TEAMS];
+        names.clear();
+        for (int i = 0; i < NUM_TEAMS; i++) {
+            do {
+                teams[i] = randomSurname(random) + " " + CLUB_SUFFIXES[random.nextInt(CLUB_SUFFIXES.length)];
+            } while (!names.add(teams[i]));
+        }
+
+        // The offsets flatten the head of the distributions, so that no player plays a large part of all games
+        playerDistribution = new ZipfDistribution(numPlayers, 1.0, 100);
+        tournamentDistribution = new ZipfDistribution(numTournaments, 1.0, 10);
+        annotatorDistribution = new ZipfDistribution(NUM_ANNOTATORS, 1.2, 1);
+        sourceDistribution = new ZipfDistribution(NUM_SOURCES, 1.1, 1);
+        teamDistribution = new ZipfDistribution(NUM_TEAMS, 0.8, 10);
+    }
+
+    private static String randomSurname(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int numSyllables = 2 + random.nextInt(3);
+        for (int i = 0; i < numSyllables; i++) {
+            sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
+        return sb.toString();
+    }
+
+    /**
+     * Generates a range of games
+     * @param fromIndex the index of the first game, inclusive
+     * @param toIndex the index of the last game, exclusive
+     * @return the generated games
+     */
+    public List<GameModel> getGames(int fromIndex, int toIndex) {
+        ArrayList<GameModel> games = new ArrayList<>(toIndex - fromIndex);
+        for (int i = fromIndex; i < toIndex; i++) {
+            games.add(getGame(i));
+        }
+        return games;
+    }
+
+    /**
+     * Generates a game
+     * @param index the index of the game
+     * @return the generated game, which is always the same for the same seed and index
+     */
+    public GameModel getGame(long index) {
+        Random random = new Random(gameSeed(index));
+
+        GameHeaderModel header = new GameHeaderModel();
+        int white = playerDistribution.sample(random), black;
+        do {
+            black = playerDistribution.sample(random);
+        } while (black == white);
+        header.setWhite(playerNames[white]);
+        header.setBlack(playerNames[black]);
+        if (playerElos[white] > 0) {
+            header.setWhiteElo(playerElos[white]);
+        }
+        if (playerElos[black] > 0) {
+            header.setBlackElo(playerElos[black]);
+        }
+
+        Tournament tournament = tournaments[tournamentDistribution.sample(random)];
+        int round = random.nextInt(tournament.rounds) + 1;
+        Date startDate = tournament.startDate;
+        header.setEvent(tournament.title);
+        header.setEventSite(tournament.site);
+        header.setEventDate(startDate);
+        header.setRound(round);
+        header.setDate(new Date(startDate.year(), startDate.month(), Math.min(28, startDate.day() + round - 1)));
+
+        if (random.nextDouble() < TEAM_GAME_PROBABILITY) {
+            int whiteTeam = teamDistribution.sample(random), blackTeam;
+            do {
+                blackTeam = teamDistribution.sample(random);
+            } while (blackTeam == whiteTeam);
+            header.setWhiteTeam(teams[whiteTeam]);
+            header.setBlackTeam(teams[blackTeam]);
+        }
+
+        double result = random.nextDouble();
+        header.setResult(result < 0.38 ? GameResult.WHITE_WINS : result < 0.72 ? GameResult.DRAW : GameResult.BLACK_WINS);
+        header.setEco(Eco.fromInt(random.nextInt(500)));
+        header.setSourceTitle(sources[sourceDistribution.sample(random)]);
+
+        int numPly = (int) Math.round(MEDIAN_PLY * Math.exp(random.nextGaussian() * PLY_SIGMA));
+        GameGenerator generator = new GameGenerator(random.nextInt());
+        GameMovesModel moves = generator.getRandomGameMoves(Math.max(MIN_PLY, Math.min(MAX_PLY, numPly)));
+
+        if (random.nextDouble() < ANNOTATED_GAME_PROBABILITY) {
+            header.setAnnotator(annotators[annotatorDistribution.sample(random)]);
+            if (random.nextDouble() < VARIATIONS_PROBABILITY) {
+                List<GameMovesModel.Node> mainLine = new ArrayList<>();
+                for (GameMovesModel.Node node = moves.root(); node != null; node = node.mainNode()) {
+                    mainLine.add(node);
+                }
+                addVariations(random, mainLine, 1 + geometric(random, mainLine.size() / 30.0), 1, new int[Position.MAX_MOVES]);
+            }
+            // Most annotated games have a few annotations, while some are heavily annotated
+            double density = 0.02 + 0.5 * Math.pow(random.nextDouble(), 3);
+            int numNodes = moves.getAllNodes().size();
+            generator.addRandomAnnotations(moves, Math.max(1, (int) Math.round(density * numNodes)));
+        }
+
+        return new GameModel(header, moves);
+    }
+
+    /**
+     * Adds variations branching off from a line, and possibly sub-variations to these
+     * @param random the random generator of the game
+     * @param line the nodes in the line, starting with the node before the first move
+     * @param numVariations the number of variations to add
+     * @param depth the depth of the added variations; the variations to the main line has depth 1
+     * @param moveBuffer a buffer for generating moves
+     */
+    private void addVariations(Random random, List<GameMovesModel.Node> line, int numVariations, int depth, int[] moveBuffer) {
+        if (line.size() < 2) {
+            return;
+        }
+        for (int i = 0; i < numVariations; i++) {
+            // Only nodes that already have a move in the line can have an alternative move
+            GameMovesModel.Node node = line.get(random.nextInt(line.size() - 1));
+            List<GameMovesModel.Node> variation = new ArrayList<>();
+            variation.add(node);
+            int length = 1 + geometric(random, MEAN_VARIATION_LENGTH - 1);
+            for (int j = 0; j < length; j++) {
+                Position position = node.position();
+                int count = position.generateAllLegalMoves(moveBuffer);
+                if (count == 0) {
+                    break;
+                }
+                node = node.addMoveUnsafe(new Move(position, moveBuffer[random.nextInt(count)]));
+                variation.add(node);
+            }
+            if (depth < MAX_VARIATION_DEPTH && random.nextDouble() < SUB_VARIATIONS_PROBABILITY) {
+                addVariations(random, variation, 1 + geometric(random, 0.5), depth + 1, moveBuffer);
+            }
+        }
+    }
+
+    /**
+     * Samples a geometric distribution, the number of failures before the first success
+     * @param random the random generator
+     * @param mean the mean of the distribution
+     * @return the sampled value
+     */
+    private static int geometric(Random random, double mean) {
+        if (mean <= 0) {
+            return 0;
+        }
+        return (int) (Math.log(1 - random.nextDouble()) / Math.log(mean / (mean + 1)));
+    }
+
+    private long gameSeed(long index) {
+        // The SplitMix64 finalizer, so that the seeds of adjacent games are unrelated
+        long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}